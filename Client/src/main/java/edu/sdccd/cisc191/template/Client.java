@@ -2,68 +2,450 @@ package edu.sdccd.cisc191.template;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * The {@code Client} class represents a client that connects to a server,
  * sends requests, and receives responses.
+ * Messages are {@link Frame}s encoded by a {@link FrameCodec}, the same codec the server uses, so requests and
+ * responses may carry a binary body such as a chart alongside their JSON.
+ *
+ * <p>Requests are pipelined: {@link #request(Frame)} sends a request and returns at once with a future for its
+ * response, so many requests can be in flight on one connection and a slow link costs one round trip for all of
+ * them rather than one each. Every request gets a correlation ID, and a reader thread completes the matching
+ * future when its response arrives, in whatever order responses come. Frames the server sends on its own go to
+ * the push listener. With a response timeout, a request that is not answered in time fails with a
+ * {@link SocketTimeoutException}, and its response is dropped if it comes later.</p>
+ *
+ * <p>With write batching, requests are queued and a writer thread sends everything queued so far with a single
+ * flush, so a burst of small requests goes out in a few packets. Without it, each request is flushed by the
+ * thread that sends it. Futures are completed on the reader thread, so work chained onto them should be quick or
+ * moved to another executor. All methods are thread-safe.</p>
  */
-public class Client {
+public class Client implements Closeable {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "client-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMEOUTS.setRemoveOnCancelPolicy(true); // most requests are answered long before they time out
+    }
 
     private Socket socket;
-    private DataInputStream input;
-    private DataOutputStream output;
+    private InputStream input;
+    private OutputStream output;
     private ObjectMapper objectMapper;
+    private FrameCodec codec;
+    private final Map<Integer, CompletableFuture<Frame>> pending = new ConcurrentHashMap<>();
+    private final Queue<CompletableFuture<Frame>> unclaimed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final BlockingQueue<Frame> outbound;
+    private final Thread reader;
+    private final Thread writer;
+    private volatile Consumer<Frame> pushListener;
+    private volatile IOException failure;
+    private volatile long responseTimeoutMillis;
 
     /**
-     * Constructs a {@code Client} object and connects to the specified server.
+     * Constructs a {@code Client} object and connects to the specified server, flushing each request as it is
+     * sent.
      *
      * @param address the server address
      * @param port    the server port
      * @throws IOException if an I/O error occurs when creating the socket
      */
     public Client(String address, int port) throws IOException {
-        socket = new Socket(address, port);
-        input = new DataInputStream(socket.getInputStream());
-        output = new DataOutputStream(socket.getOutputStream());
+        this(address, port, false);
+    }
+
+    /**
+     * Constructs a {@code Client} object and connects to the specified server.
+     *
+     * @param address      the server address
+     * @param port         the server port
+     * @param batchWrites  {@code true} to send queued requests together from a writer thread
+     * @throws IOException if an I/O error occurs when creating the socket
+     */
+    public Client(String address, int port, boolean batchWrites) throws IOException {
+        this(address, port, batchWrites, 0);
+    }
+
+    /**
+     * Constructs a {@code Client} object and connects to the specified server, giving up if the connection takes
+     * too long.
+     *
+     * @param address              the server address
+     * @param port                 the server port
+     * @param batchWrites          {@code true} to send queued requests together from a writer thread
+     * @param connectTimeoutMillis how long to wait for the connection, or 0 to wait as long as it takes
+     * @throws IOException if an I/O error occurs when creating the socket, or the connection times out
+     */
+    public Client(String address, int port, boolean batchWrites, int connectTimeoutMillis) throws IOException {
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(address, port), connectTimeoutMillis);
+        socket.setTcpNoDelay(true);
+        input = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
         objectMapper = new ObjectMapper();
+        codec = new FrameCodec();
+
+        reader = new Thread(this::readResponses, "client-reader");
+        reader.setDaemon(true);
+        reader.start();
+        if (batchWrites) {
+            outbound = new LinkedBlockingQueue<>();
+            writer = new Thread(this::writeBatches, "client-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            outbound = null;
+            writer = null;
+        }
     }
 
     /**
      * Sends a request to the server.
+     * The response is collected later by {@link #receiveResponse(Class)}; requests sent this way are answered
+     * in the order they were sent.
      *
      * @param request the request object to send
      * @throws IOException if an I/O error occurs when sending the request
      */
     public void sendRequest(Object request) throws IOException {
         String jsonRequest = objectMapper.writeValueAsString(request);
-        output.writeUTF(jsonRequest);
+        CompletableFuture<Frame> response = request(Frame.of(MessageType.REQUEST, jsonRequest));
+        if (response.isCompletedExceptionally()) {
+            await(response); // report a failed send now rather than at receiveResponse
+        }
+        unclaimed.add(response);
     }
 
     /**
-     * Receives a response from the server.
+     * Receives a response from the server, waiting for the oldest request from {@link #sendRequest(Object)}
+     * that has not had its response received yet.
      *
      * @param responseType the class type of the response object
      * @param <T>          the type of the response object
      * @return the response object received from the server
-     * @throws IOException if an I/O error occurs when receiving the response
+     * @throws IOException if an I/O error occurs when receiving the response, or the server reports an error
      */
     public <T> T receiveResponse(Class<T> responseType) throws IOException {
-        String jsonResponse = input.readUTF();
-        return objectMapper.readValue(jsonResponse, responseType);
+        CompletableFuture<Frame> response = unclaimed.poll();
+        if (response == null) {
+            throw new IllegalStateException("No request is waiting for a response");
+        }
+        return parse(await(response), responseType);
+    }
+
+    /**
+     * Sends a request to the server without waiting for the response.
+     *
+     * @param request      the request object to send
+     * @param responseType the class type of the response object
+     * @param <T>          the type of the response object
+     * @return a future for the response object, failed with an {@code IOException} if the request cannot be sent
+     * or the server reports an error
+     */
+    public <T> CompletableFuture<T> request(Object request, Class<T> responseType) {
+        String jsonRequest;
+        try {
+            jsonRequest = objectMapper.writeValueAsString(request);
+        } catch (IOException e) {
+            return failed(e);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        request(Frame.of(MessageType.REQUEST, jsonRequest)).whenComplete((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            try {
+                result.complete(parse(response, responseType));
+            } catch (IOException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
     }
 
     /**
-     * Closes the client connection to the server.
+     * Sends a frame to the server without waiting for the response. The frame is given a new correlation ID.
+     *
+     * @param frame the frame to send
+     * @return a future for the response frame, failed with an {@code IOException} if the frame cannot be sent or
+     * the connection closes first
+     */
+    public CompletableFuture<Frame> request(Frame frame) {
+        int id;
+        do {
+            id = nextId.incrementAndGet();
+        } while (id == 0); // 0 marks frames that answer no request
+        CompletableFuture<Frame> response = new CompletableFuture<>();
+        pending.put(id, response);
+        if (failure != null) {
+            pending.remove(id);
+            response.completeExceptionally(failure);
+            return response;
+        }
+        long timeout = responseTimeoutMillis;
+        if (timeout > 0) {
+            int requestId = id;
+            ScheduledFuture<?> expiry = TIMEOUTS.schedule(() -> {
+                if (pending.remove(requestId, response)) {
+                    response.completeExceptionally(new SocketTimeoutException("No response in " + timeout + " ms"));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            response.whenComplete((answer, error) -> expiry.cancel(false));
+        }
+        try {
+            write(frame.withCorrelationId(id));
+        } catch (IOException e) {
+            pending.remove(id);
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    /**
+     * Sends a frame the server does not answer, such as an {@code UPDATE} with the player's live score.
+     *
+     * @param frame the frame to send
+     * @throws IOException if the connection has failed or the frame cannot be sent
+     */
+    public void send(Frame frame) throws IOException {
+        IOException failed = failure;
+        if (failed != null) {
+            throw new IOException(failed.getMessage(), failed);
+        }
+        write(frame.withCorrelationId(0));
+    }
+
+    /**
+     * Sends a frame to the server, for requests that carry a binary body, and waits for the response.
+     *
+     * @param frame the frame to send
+     * @return the response frame
+     * @throws IOException if an I/O error occurs when sending the frame or receiving the response
+     */
+    public Frame call(Frame frame) throws IOException {
+        return await(request(frame));
+    }
+
+    /**
+     * Sets the listener for frames the server sends without being asked, such as another player's score.
+     * It is called on the reader thread. An exception it throws is logged, and the next push is still delivered.
+     *
+     * @param listener the listener, or {@code null} to ignore such frames
+     */
+    public void setPushListener(Consumer<Frame> listener) {
+        pushListener = listener;
+    }
+
+    /**
+     * Sets how long each request waits for its response before failing.
+     *
+     * @param millis the timeout in milliseconds, or 0 to wait as long as it takes
+     */
+    public void setResponseTimeout(long millis) {
+        responseTimeoutMillis = millis;
+    }
+
+    /**
+     * Returns whether the connection is still usable.
+     *
+     * @return {@code false} once the connection has failed or been closed
+     */
+    public boolean isConnected() {
+        return failure == null && !socket.isClosed();
+    }
+
+    /**
+     * Returns the number of requests sent whose responses have not arrived yet.
+     *
+     * @return the number of requests in flight
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of times queued requests have been flushed to the socket.
+     *
+     * @return the flush count
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Closes the client connection to the server. Requests still waiting for a response fail.
      *
      * @throws IOException if an I/O error occurs when closing the socket
      */
+    @Override
     public void close() throws IOException {
-        input.close();
-        output.close();
+        fail(new IOException("Connection closed"));
+        if (writer != null) {
+            writer.interrupt();
+        }
         socket.close();
     }
+
+    private void write(Frame frame) throws IOException {
+        if (outbound != null) {
+            codec.checkFits(frame); // the writer thread would have to fail the whole connection
+            outbound.add(frame);
+            return;
+        }
+        synchronized (output) {
+            codec.write(output, frame);
+            output.flush();
+        }
+        flushCount.incrementAndGet();
+    }
+
+    /**
+     * Sends queued frames until the connection closes, flushing once for everything queued at the time.
+     * Runs on the writer thread.
+     */
+    private void writeBatches() {
+        List<Frame> batch = new ArrayList<>();
+        try {
+            while (failure == null) {
+                batch.add(outbound.take());
+                outbound.drainTo(batch);
+                for (Frame frame : batch) {
+                    codec.write(output, frame);
+                }
+                output.flush();
+                flushCount.incrementAndGet();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // closing
+        } catch (IOException e) {
+            fail(e);
+            try {
+                socket.close(); // stops the reader too
+            } catch (IOException closeError) {
+                // already broken
+            }
+        }
+    }
+
+    /**
+     * Reads frames until the connection closes and completes the request each one answers.
+     * Runs on the reader thread.
+     */
+    private void readResponses() {
+        try {
+            while (true) {
+                Frame frame = codec.read(input);
+                CompletableFuture<Frame> response = pending.remove(frame.getCorrelationId());
+                if (response != null) {
+                    response.complete(frame);
+                } else if (frame.getCorrelationId() == 0) {
+                    deliverPush(frame);
+                } // otherwise a late answer to a request that timed out
+            }
+        } catch (EOFException e) {
+            fail(new EOFException("Server closed the connection"));
+        } catch (IOException e) {
+            fail(e);
+        } catch (RuntimeException e) {
+            System.err.println("Error reading response: " + e.getMessage());
+            fail(new IOException(e));
+        }
+    }
+
+    /**
+     * Passes a pushed frame to the push listener, if one is set. A failing listener must not stop the reader
+     * thread, since every request on the connection depends on it.
+     *
+     * @param frame the pushed frame
+     */
+    private void deliverPush(Frame frame) {
+        Consumer<Frame> listener = pushListener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.accept(frame);
+        } catch (RuntimeException e) {
+            System.err.println("Error in push listener: " + e);
+        }
+    }
+
+    /**
+     * Fails every request waiting for a response, and all later ones.
+     *
+     * @param cause why the connection can no longer be used
+     */
+    private void fail(IOException cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        for (Integer id : pending.keySet()) {
+            CompletableFuture<Frame> response = pending.remove(id);
+            if (response != null) {
+                response.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private <T> T parse(Frame response, Class<T> responseType) throws IOException {
+        if (response.getType() == MessageType.ERROR) {
+            throw new IOException("Server error: " + response.getJson());
+        }
+        return objectMapper.readValue(response.getJson(), responseType);
+    }
+
+    private static Frame await(CompletableFuture<Frame> response) throws IOException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a response", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
 }
@@ -0,0 +1,449 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code ClientPool} class shares a bounded number of {@link Client} connections to one server between the
+ * parts of the game that talk to it, so each of them neither pays for its own connection nor waits on another's.
+ *
+ * <p>Connections are opened lazily, when a borrower finds none idle, and the pool never holds more than its
+ * maximum, counting borrowed and idle ones together; a borrower waits for one to be returned, up to a timeout.
+ * The most recently returned connection is lent first, so the rest stay idle long enough to be closed by the
+ * evictor. A connection is checked before it is lent and when it is returned, and a broken one is closed rather
+ * than pooled.</p>
+ *
+ * <p>When the server cannot be reached, further attempts back off exponentially from the base delay to the
+ * maximum, with random jitter so that many clients do not all retry at once. A borrower waits out the backoff
+ * if its own timeout allows, and otherwise fails at once without trying to connect. The first successful
+ * connection resets the backoff.</p>
+ *
+ * <p>Settings may be changed at any time and affect connections and attempts made afterwards. All methods are
+ * thread-safe.</p>
+ */
+public class ClientPool implements Closeable {
+    private final String host;
+    private final int port;
+    private final int maxSize;
+    private final Semaphore permits;
+    private final Deque<IdleClient> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private volatile boolean batchWrites;
+    private volatile int connectTimeoutMillis = 5_000;
+    private volatile long readTimeoutMillis = 10_000;
+    private volatile long idleTimeoutMillis = 60_000;
+    private volatile long backoffBaseMillis = 100;
+    private volatile long backoffMaxMillis = 30_000;
+
+    private final Object backoffLock = new Object();
+    private int consecutiveFailures; // guarded by backoffLock
+    private long nextConnectAt;      // guarded by backoffLock, in System.nanoTime() units
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong connectCount = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Constructs a {@code ClientPool}. No connection is opened until one is borrowed.
+     *
+     * @param host    the server address
+     * @param port    the server port
+     * @param maxSize the most connections open at once
+     */
+    public ClientPool(String host, int port, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.host = host;
+        this.port = port;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "client-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sets whether new connections batch their writes.
+     *
+     * @param batchWrites {@code true} to send queued requests together from a writer thread
+     */
+    public void setBatchWrites(boolean batchWrites) {
+        this.batchWrites = batchWrites;
+    }
+
+    /**
+     * Sets how long opening a connection may take.
+     *
+     * @param millis the connect timeout in milliseconds, or 0 for no limit
+     */
+    public void setConnectTimeout(int millis) {
+        connectTimeoutMillis = millis;
+    }
+
+    /**
+     * Sets how long each request waits for its response.
+     *
+     * @param millis the read timeout in milliseconds, or 0 for no limit
+     */
+    public void setReadTimeout(long millis) {
+        readTimeoutMillis = millis;
+    }
+
+    /**
+     * Sets how long a connection may sit idle in the pool before it is closed.
+     *
+     * @param millis the idle timeout in milliseconds
+     */
+    public void setIdleTimeout(long millis) {
+        idleTimeoutMillis = millis;
+    }
+
+    /**
+     * Sets the delays between attempts to reach a server that is down.
+     *
+     * @param baseMillis the delay after the first failure, doubled after each further one
+     * @param maxMillis  the longest delay
+     */
+    public void setBackoff(long baseMillis, long maxMillis) {
+        backoffBaseMillis = baseMillis;
+        backoffMaxMillis = maxMillis;
+    }
+
+    /**
+     * Borrows a connection, opening one if none is idle and the pool is not full. Give it back with
+     * {@link #release(Client)}.
+     *
+     * @param timeoutMillis how long to wait for a connection to be returned or the backoff to pass
+     * @return a connected client
+     * @throws IOException if no connection is available in time or the server cannot be reached
+     */
+    public Client borrow(long timeoutMillis) throws IOException {
+        if (closed) {
+            throw new IOException("Pool is closed");
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.incrementAndGet();
+                throw new IOException("No connection available within " + timeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection", e);
+        }
+        long waited = System.nanoTime() - start;
+
+        try {
+            Client client = takeIdle();
+            if (client == null) {
+                client = connect(deadline);
+            }
+            client.setResponseTimeout(readTimeoutMillis);
+            activeCount.incrementAndGet();
+            borrowCount.incrementAndGet();
+            recordWait(waited);
+            return client;
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool, or closes it if it is broken or the pool is closed.
+     *
+     * @param client a client from {@link #borrow(long)}
+     */
+    public void release(Client client) {
+        activeCount.decrementAndGet();
+        try {
+            if (!closed && client.isConnected() && client.getPendingCount() == 0) {
+                synchronized (idle) {
+                    idle.addFirst(new IdleClient(client, System.nanoTime()));
+                }
+                client = null;
+            }
+        } finally {
+            if (client != null) {
+                closeQuietly(client);
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * Sends a request on a pooled connection and waits for the response. The connection is closed rather than
+     * returned to the pool if the request fails.
+     *
+     * @param request the frame to send
+     * @return the response frame
+     * @throws IOException if no connection is available, or the request fails or times out
+     */
+    public Frame call(Frame request) throws IOException {
+        Client client = borrow(connectTimeoutMillis + readTimeoutMillis);
+        try {
+            return client.call(request);
+        } catch (IOException e) {
+            closeQuietly(client); // a connection that failed or timed out is not trusted again
+            throw e;
+        } finally {
+            release(client);
+        }
+    }
+
+    /**
+     * Returns the number of connections currently borrowed.
+     *
+     * @return the active count
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * Returns the number of open connections waiting in the pool.
+     *
+     * @return the idle count
+     */
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /**
+     * Returns the most connections the pool opens at once.
+     *
+     * @return the maximum size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of successful borrows.
+     *
+     * @return the borrow count
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Returns the average time borrowers waited for a free slot in the pool.
+     *
+     * @return the mean wait in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : totalWaitNanos.get() / 1e6 / borrows;
+    }
+
+    /**
+     * Returns the longest time a borrower waited for a free slot in the pool.
+     *
+     * @return the longest wait in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns the number of connections opened.
+     *
+     * @return the connect count
+     */
+    public long getConnectCount() {
+        return connectCount.get();
+    }
+
+    /**
+     * Returns the number of failed attempts to open a connection.
+     *
+     * @return the connect failure count
+     */
+    public long getConnectFailureCount() {
+        return connectFailures.get();
+    }
+
+    /**
+     * Returns the number of borrows that gave up waiting for a free slot.
+     *
+     * @return the borrow timeout count
+     */
+    public long getBorrowTimeoutCount() {
+        return borrowTimeouts.get();
+    }
+
+    /**
+     * Returns the number of idle or broken connections the pool has closed.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Closes every idle connection and stops lending. Borrowed connections are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        synchronized (idle) {
+            for (IdleClient entry : idle) {
+                closeQuietly(entry.client);
+            }
+            idle.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d active, %d idle of %d; %d borrows, wait avg %.2f ms max %.2f ms; "
+                        + "%d connects, %d connect failures, %d borrow timeouts, %d evictions",
+                getActiveCount(), getIdleCount(), maxSize, getBorrowCount(), getAverageWaitMillis(),
+                getMaxWaitMillis(), getConnectCount(), getConnectFailureCount(), getBorrowTimeoutCount(),
+                getEvictionCount());
+    }
+
+    /**
+     * Takes the most recently returned idle connection that is still connected, closing broken ones on the way.
+     *
+     * @return a connected client, or {@code null} if none is idle
+     */
+    private Client takeIdle() {
+        while (true) {
+            IdleClient entry;
+            synchronized (idle) {
+                entry = idle.pollFirst();
+            }
+            if (entry == null) {
+                return null;
+            }
+            if (entry.client.isConnected()) {
+                return entry.client;
+            }
+            evictionCount.incrementAndGet();
+            closeQuietly(entry.client);
+        }
+    }
+
+    /**
+     * Opens a new connection once any backoff from earlier failures has passed.
+     *
+     * @param deadline the latest time to wait until, in {@link System#nanoTime()} units
+     * @return the connected client
+     * @throws IOException if the backoff lasts past the deadline or the connection fails
+     */
+    private Client connect(long deadline) throws IOException {
+        long wait;
+        synchronized (backoffLock) {
+            wait = nextConnectAt - System.nanoTime();
+        }
+        if (wait > 0) {
+            if (System.nanoTime() + wait > deadline) {
+                throw new ConnectException("Server unreachable; retrying in "
+                        + TimeUnit.NANOSECONDS.toMillis(wait) + " ms");
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting to reconnect", e);
+            }
+        }
+
+        try {
+            Client client = new Client(host, port, batchWrites, connectTimeoutMillis);
+            synchronized (backoffLock) {
+                consecutiveFailures = 0;
+                nextConnectAt = 0;
+            }
+            connectCount.incrementAndGet();
+            return client;
+        } catch (IOException e) {
+            connectFailures.incrementAndGet();
+            synchronized (backoffLock) {
+                consecutiveFailures++;
+                long backoff = Math.min(backoffMaxMillis,
+                        backoffBaseMillis << Math.min(consecutiveFailures - 1, 30));
+                // Wait between half and all of the backoff, so clients that failed together spread out
+                long jittered = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                nextConnectAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(jittered);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Closes connections that have been idle too long or have broken. Runs on the evictor thread.
+     */
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        synchronized (idle) {
+            Iterator<IdleClient> entries = idle.iterator();
+            while (entries.hasNext()) {
+                IdleClient entry = entries.next();
+                if (entry.since - cutoff < 0 || !entry.client.isConnected()) {
+                    entries.remove();
+                    evictionCount.incrementAndGet();
+                    closeQuietly(entry.client);
+                }
+            }
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos)) {
+            // another borrower raised the maximum first; try again
+        }
+    }
+
+    private static void closeQuietly(Client client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            // nothing more to release
+        }
+    }
+
+    /**
+     * The {@code IdleClient} class is a connection waiting in the pool and when it was returned.
+     */
+    private static class IdleClient {
+        final Client client;
+        final long since;
+
+        IdleClient(Client client, long since) {
+            this.client = client;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LoadGenerator} class drives a server with many simulated players over loopback and reports how it
+ * holds up: requests per second, errors, and round-trip latency percentiles, second by second.
+ * Start a {@code Server} first, then run
+ * {@code java -cp Common/target/classes:Client/target/classes:<jackson jars> edu.sdccd.cisc191.template.LoadGenerator
+ * --clients 2000 --ramp 20 --duration 60 --rate 5 --think 50 --csv run.csv}.
+ *
+ * <p>Each simulated player has its own {@link Client} connection and behaves like a person: it sends one
+ * request, waits for the answer, thinks for the think time, and then waits until its rate allows the next
+ * request. Requests are picked at random according to the message mix. Players connect evenly spread over the
+ * ramp-up time, so the report shows how latency changes as the load builds. All players share a few scheduler
+ * threads; only each connection's reader thread is its own, so thousands of players fit in one process once
+ * {@code ulimit -n} allows that many sockets.</p>
+ *
+ * <p>Latency is measured from sending a request to its response arriving and kept in a {@link LatencyHistogram}.
+ * A request fails if the server answers with an {@code ERROR}, does not answer within the response timeout, or
+ * the connection breaks; connections that cannot be made count as errors too. Each interval's figures can be
+ * written as CSV to compare one build with another.</p>
+ */
+public class LoadGenerator {
+    /**
+     * The kinds of request a simulated player sends.
+     */
+    public enum Message {
+        /** A {@code PING}, which measures the server's overhead alone. */
+        PING,
+        /** A {@code submitScore} request with a random score. */
+        SUBMIT_SCORE,
+        /** A {@code topScores} request. */
+        TOP_SCORES,
+        /** A {@code playerRank} request. */
+        PLAYER_RANK;
+
+        /**
+         * Returns the message with the specified name, written as in {@code submitScore} or {@code SUBMIT_SCORE}.
+         *
+         * @param name the message name
+         * @return the message
+         * @throws IllegalArgumentException if there is no message with that name
+         */
+        public static Message of(String name) {
+            String wanted = name.trim().replace("_", "");
+            for (Message message : values()) {
+                if (message.name().replace("_", "").equalsIgnoreCase(wanted)) {
+                    return message;
+                }
+            }
+            throw new IllegalArgumentException("Unknown message: " + name);
+        }
+    }
+
+    private static final int SONGS = 20;
+    private static final String CSV_HEADER =
+            "elapsed_s,clients,requests,requests_per_s,errors,mean_us,p50_us,p99_us,p999_us,max_us";
+
+    private final String host;
+    private final int port;
+    private int clients = 100;
+    private long rampUpMillis = 10_000;
+    private long durationMillis = 30_000;
+    private double ratePerClient = 10;
+    private long thinkTimeMillis;
+    private long responseTimeoutMillis = 5_000;
+    private long intervalMillis = 1_000;
+    private final Map<Message, Integer> mix = new EnumMap<>(Message.class);
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final List<Interval> intervals = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+
+    /**
+     * Constructs a {@code LoadGenerator} against the specified server, with an even mix of every message.
+     *
+     * @param host the server address
+     * @param port the server port
+     */
+    public LoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+        for (Message message : Message.values()) {
+            mix.put(message, 1);
+        }
+    }
+
+    /**
+     * Sets the number of simulated players.
+     *
+     * @param clients the player count
+     */
+    public void setClients(int clients) {
+        this.clients = clients;
+    }
+
+    /**
+     * Sets the time over which players connect.
+     *
+     * @param millis the ramp-up time, or 0 to connect them all at once
+     */
+    public void setRampUp(long millis) {
+        this.rampUpMillis = millis;
+    }
+
+    /**
+     * Sets how long the test runs once it has started, counting the ramp-up.
+     *
+     * @param millis the duration
+     */
+    public void setDuration(long millis) {
+        this.durationMillis = millis;
+    }
+
+    /**
+     * Sets the most requests each player sends a second.
+     *
+     * @param requestsPerSecond the rate, or 0 for as fast as the think time allows
+     */
+    public void setRatePerClient(double requestsPerSecond) {
+        this.ratePerClient = requestsPerSecond;
+    }
+
+    /**
+     * Sets the pause between a response arriving and the player's next request.
+     *
+     * @param millis the think time
+     */
+    public void setThinkTime(long millis) {
+        this.thinkTimeMillis = millis;
+    }
+
+    /**
+     * Sets how long a request may wait for its response before it counts as an error.
+     *
+     * @param millis the response timeout
+     */
+    public void setResponseTimeout(long millis) {
+        this.responseTimeoutMillis = millis;
+    }
+
+    /**
+     * Sets how often a line of figures is taken.
+     *
+     * @param millis the interval
+     */
+    public void setInterval(long millis) {
+        this.intervalMillis = millis;
+    }
+
+    /**
+     * Sets how often each message is sent relative to the others. Messages not given are not sent.
+     *
+     * @param weights each message's weight, such as {@code submitScore=3} against {@code topScores=1}
+     * @throws IllegalArgumentException if no message has a positive weight
+     */
+    public void setMix(Map<Message, Integer> weights) {
+        if (weights.values().stream().noneMatch(weight -> weight > 0)) {
+            throw new IllegalArgumentException("The message mix needs a positive weight");
+        }
+        mix.clear();
+        mix.putAll(weights);
+    }
+
+    /**
+     * Runs the test: connects the players over the ramp-up time, keeps them sending until the duration is up,
+     * then disconnects them. Prints each interval's figures as they are taken.
+     *
+     * @throws InterruptedException if interrupted while the test runs
+     */
+    public void run() throws InterruptedException {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger number = new AtomicInteger();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "load-scheduler-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Player> players = Collections.synchronizedList(new ArrayList<>());
+        long startNanos = System.nanoTime();
+        running = true;
+        System.out.println(CSV_HEADER);
+        try {
+            for (int i = 0; i < clients; i++) {
+                Player player = new Player(i, scheduler);
+                players.add(player);
+                long delay = clients <= 1 ? 0 : rampUpMillis * i / (clients - 1);
+                scheduler.schedule(player::connect, delay, TimeUnit.MILLISECONDS);
+            }
+            scheduler.scheduleAtFixedRate(() -> takeInterval(startNanos), intervalMillis, intervalMillis,
+                    TimeUnit.MILLISECONDS);
+            Thread.sleep(durationMillis);
+        } finally {
+            running = false;
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            synchronized (players) {
+                for (Player player : players) {
+                    player.close();
+                }
+            }
+        }
+    }
+
+    private void takeInterval(long startNanos) {
+        LatencyHistogram window = latency.snapshotAndReset();
+        totalLatency.add(window);
+        double seconds = intervalMillis / 1000.0;
+        Interval interval = new Interval((System.nanoTime() - startNanos) / 1e9, connected.get(),
+                window.getCount(), errors.sumThenReset(), window, seconds); // counted with its latency
+        intervals.add(interval);
+        System.out.println(interval.toCsv());
+    }
+
+    /**
+     * Returns the figures of every interval so far.
+     *
+     * @return the intervals in order
+     */
+    public List<Interval> getIntervals() {
+        return Collections.unmodifiableList(intervals);
+    }
+
+    /**
+     * Returns the latency of every request answered in the intervals so far.
+     *
+     * @return the round-trip times in nanoseconds
+     */
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * Writes every interval's figures as CSV, with a header line.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCsv(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println(CSV_HEADER);
+            for (Interval interval : intervals) {
+                out.println(interval.toCsv());
+            }
+        }
+    }
+
+    private Message pick() {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += Math.max(0, weight);
+        }
+        int choice = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Message, Integer> entry : mix.entrySet()) {
+            choice -= Math.max(0, entry.getValue());
+            if (choice < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("empty mix");
+    }
+
+    /**
+     * Runs a load test from the command line and prints a summary at the end.
+     *
+     * @param args {@code --host}, {@code --port}, {@code --clients}, {@code --ramp} and {@code --duration} in
+     *             seconds, {@code --rate} per player per second, {@code --think} in milliseconds, {@code --mix}
+     *             as {@code ping=1,submitScore=3,...}, and {@code --csv} for the file to write
+     * @throws Exception if the test cannot run or the CSV file cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = 4444;
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an option, not " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        LoadGenerator generator = new LoadGenerator(options.getOrDefault("host", host),
+                Integer.parseInt(options.getOrDefault("port", String.valueOf(port))));
+        if (options.containsKey("clients")) {
+            generator.setClients(Integer.parseInt(options.get("clients")));
+        }
+        if (options.containsKey("ramp")) {
+            generator.setRampUp((long) (Double.parseDouble(options.get("ramp")) * 1000));
+        }
+        if (options.containsKey("duration")) {
+            generator.setDuration((long) (Double.parseDouble(options.get("duration")) * 1000));
+        }
+        if (options.containsKey("rate")) {
+            generator.setRatePerClient(Double.parseDouble(options.get("rate")));
+        }
+        if (options.containsKey("think")) {
+            generator.setThinkTime(Long.parseLong(options.get("think")));
+        }
+        if (options.containsKey("mix")) {
+            Map<Message, Integer> weights = new EnumMap<>(Message.class);
+            for (String part : options.get("mix").split(",")) {
+                String[] pair = part.split("=");
+                weights.put(Message.of(pair[0]), pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1);
+            }
+            generator.setMix(weights);
+        }
+
+        generator.run();
+        System.out.println("total latency (us): " + generator.getTotalLatency().summary(1000));
+        if (options.containsKey("csv")) {
+            generator.writeCsv(Paths.get(options.get("csv")));
+        }
+    }
+
+    /**
+     * The {@code Player} class is one simulated player and its connection.
+     */
+    private class Player {
+        private final ScheduledExecutorService scheduler;
+        private final String name;
+        private volatile Client client;
+        private long nextSendNanos;
+
+        Player(int id, ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            this.name = "load-" + id;
+        }
+
+        void connect() {
+            if (!running) {
+                return;
+            }
+            try {
+                Client connection = new Client(host, port, false, (int) responseTimeoutMillis);
+                connection.setResponseTimeout(responseTimeoutMillis);
+                client = connection;
+                connected.incrementAndGet();
+                nextSendNanos = System.nanoTime();
+                send();
+            } catch (IOException e) {
+                errors.increment();
+            }
+        }
+
+        /**
+         * Sends one request and, once it is answered, schedules the next. Runs on a scheduler thread or on the
+         * connection's reader thread.
+         */
+        void send() {
+            Client connection = client;
+            if (!running || connection == null) {
+                return;
+            }
+            long sent = System.nanoTime();
+            if (ratePerClient > 0) {
+                nextSendNanos = Math.max(nextSendNanos, sent) + (long) (1e9 / ratePerClient);
+            }
+            connection.request(request(pick())).whenComplete((response, failure) -> {
+                long received = System.nanoTime();
+                if (failure != null || response.getType() == MessageType.ERROR) {
+                    errors.increment();
+                } else {
+                    latency.record(received - sent);
+                }
+                if (failure != null && !connection.isConnected()) {
+                    dropConnection(connection);
+                    return;
+                }
+                long wake = Math.max(received + TimeUnit.MILLISECONDS.toNanos(thinkTimeMillis), nextSendNanos);
+                try {
+                    scheduler.schedule(this::send, Math.max(0, wake - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    // the test is over
+                }
+            });
+        }
+
+        private Frame request(Message message) {
+            int song = ThreadLocalRandom.current().nextInt(SONGS);
+            switch (message) {
+                case SUBMIT_SCORE:
+                    int score = ThreadLocalRandom.current().nextInt(1_000_000);
+                    return Frame.of(MessageType.REQUEST, "{\"action\":\"submitScore\",\"song\":\"song-" + song
+                            + "\",\"player\":\"" + name + "\",\"score\":" + score + "}");
+                case TOP_SCORES:
+                    return Frame.of(MessageType.REQUEST, "{\"action\":\"topScores\",\"song\":\"song-" + song + "\"}");
+                case PLAYER_RANK:
+                    return Frame.of(MessageType.REQUEST, "{\"action\":\"playerRank\",\"song\":\"song-" + song
+                            + "\",\"player\":\"" + name + "\"}");
+                default:
+                    return Frame.of(MessageType.PING, null);
+            }
+        }
+
+        private void dropConnection(Client connection) {
+            if (client == connection) {
+                client = null;
+                connected.decrementAndGet();
+                closeQuietly(connection);
+            }
+        }
+
+        void close() {
+            Client connection = client;
+            if (connection != null) {
+                dropConnection(connection);
+            }
+        }
+
+        private void closeQuietly(Client connection) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    /**
+     * The {@code Interval} class is the figures of one reporting interval.
+     */
+    public static final class Interval {
+        private final double elapsedSeconds;
+        private final int clients;
+        private final long requests;
+        private final long errors;
+        private final LatencyHistogram latency;
+        private final double seconds;
+
+        Interval(double elapsedSeconds, int clients, long requests, long errors, LatencyHistogram latency,
+                 double seconds) {
+            this.elapsedSeconds = elapsedSeconds;
+            this.clients = clients;
+            this.requests = requests;
+            this.errors = errors;
+            this.latency = latency;
+            this.seconds = seconds;
+        }
+
+        /**
+         * Returns the time since the test started.
+         *
+         * @return the elapsed time in seconds
+         */
+        public double getElapsedSeconds() {
+            return elapsedSeconds;
+        }
+
+        /**
+         * Returns the number of players connected at the end of the interval.
+         *
+         * @return the connected players
+         */
+        public int getClients() {
+            return clients;
+        }
+
+        /**
+         * Returns the number of requests answered in the interval.
+         *
+         * @return the request count
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Returns the number of requests and connections that failed in the interval.
+         *
+         * @return the error count
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Returns the requests answered per second in the interval.
+         *
+         * @return the throughput
+         */
+        public double getRequestsPerSecond() {
+            return requests / seconds;
+        }
+
+        /**
+         * Returns the round-trip times of the requests answered in the interval.
+         *
+         * @return the latencies in nanoseconds
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * Returns the figures as one line of CSV, with latencies in microseconds.
+         *
+         * @return the CSV line
+         */
+        public String toCsv() {
+            return String.format(Locale.ROOT, "%.1f,%d,%d,%.1f,%d,%.1f,%.1f,%.1f,%.1f,%.1f", elapsedSeconds,
+                    clients, requests, getRequestsPerSecond(), errors, latency.getMean() / 1000,
+                    latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                    latency.getValueAtPercentile(99.9) / 1000.0, latency.getMax() / 1000.0);
+        }
+
+        @Override
+        public String toString() {
+            return toCsv();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package edu.sdccd.cisc191.template;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClientTests {
+    private static final FrameCodec CODEC = new FrameCodec();
+
+    // Client Tests
+    @Test
+    public void testClientMatchesResponsesAnsweredOutOfOrder() throws Exception {
+        int requests = 200;
+        try (ServerSocket server = new ServerSocket(0)) {
+            // Answers only once every request has arrived, newest first
+            Thread answerer = serve(server, (in, out) -> {
+                List<Frame> received = new ArrayList<>();
+                for (int i = 0; i < requests; i++) {
+                    received.add(CODEC.read(in));
+                }
+                Collections.reverse(received);
+                for (Frame request : received) {
+                    CODEC.write(out, Frame.of(MessageType.RESPONSE, request.getJson().replace("song", "note"))
+                            .withCorrelationId(request.getCorrelationId()));
+                }
+                CODEC.write(out, Frame.of(MessageType.RESPONSE, "{\"pushed\":false}"));
+                CODEC.write(out, Frame.of(MessageType.RESPONSE, "{\"pushed\":true}"));
+                out.flush();
+            });
+
+            try (Client client = new Client("localhost", server.getLocalPort(), true)) {
+                CompletableFuture<Map<String, Object>> pushed = new CompletableFuture<>();
+                // The first push makes the listener throw, which must not stop the second from arriving
+                client.setPushListener(frame -> {
+                    Map<String, Object> push = parse(frame);
+                    if (Boolean.FALSE.equals(push.get("pushed"))) {
+                        throw new IllegalStateException("listener failed");
+                    }
+                    pushed.complete(push);
+                });
+                // A frame too long to send fails on its own, before it reaches the writer thread
+                CompletableFuture<Frame> tooLong = client.request(Frame.of(MessageType.REQUEST, "{}",
+                        new byte[FrameCodec.DEFAULT_MAX_FRAME_LENGTH]));
+                try {
+                    tooLong.getNow(null);
+                    Assert.fail("An oversized frame was queued");
+                } catch (CompletionException e) {
+                    Assert.assertTrue(e.getCause() instanceof ProtocolException);
+                }
+                List<CompletableFuture<NoteResponse>> responses = new ArrayList<>();
+                for (int i = 0; i < requests; i++) {
+                    responses.add(client.request(Collections.singletonMap("song", i), NoteResponse.class));
+                }
+                for (int i = 0; i < requests; i++) {
+                    Assert.assertEquals(i, responses.get(i).get(10, TimeUnit.SECONDS).note);
+                }
+                Assert.assertEquals(true, pushed.get(10, TimeUnit.SECONDS).get("pushed"));
+                Assert.assertEquals(0, client.getPendingCount());
+                // The writer thread sent the burst in far fewer flushes than requests
+                Assert.assertTrue(client.getFlushCount() < requests / 2);
+            }
+            answerer.join();
+        }
+    }
+
+    @Test
+    public void testClientFailsPendingRequestsWhenServerCloses() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            Thread answerer = serve(server, (in, out) -> {
+                Frame request = CODEC.read(in);
+                CODEC.write(out, Frame.of(MessageType.RESPONSE, "\"ok\"").withCorrelationId(request.getCorrelationId()));
+                out.flush();
+                CODEC.read(in); // then hang up without answering
+            });
+
+            try (Client client = new Client("localhost", server.getLocalPort())) {
+                client.sendRequest("first");
+                Assert.assertEquals("ok", client.receiveResponse(String.class));
+                CompletableFuture<Frame> unanswered = client.request(Frame.of(MessageType.REQUEST, "\"second\""));
+                try {
+                    unanswered.get(10, TimeUnit.SECONDS);
+                    Assert.fail("expected the request to fail");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof IOException);
+                }
+                Assert.assertTrue(client.request(Frame.of(MessageType.PING, null)).isCompletedExceptionally());
+            }
+            answerer.join();
+        }
+    }
+
+    // ClientPool Tests
+    @Test
+    public void testClientPoolReusesBoundedConnections() throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0)) {
+            startEchoServer(server, accepted);
+            try (ClientPool pool = new ClientPool("localhost", server.getLocalPort(), 2)) {
+                Assert.assertEquals(0, accepted.get()); // nothing until the first borrow
+
+                Client first = pool.borrow(1000);
+                Client second = pool.borrow(1000);
+                Assert.assertEquals(2, pool.getActiveCount());
+                try {
+                    pool.borrow(100);
+                    Assert.fail("expected the full pool to time out");
+                } catch (IOException e) {
+                    Assert.assertEquals(1, pool.getBorrowTimeoutCount());
+                }
+                pool.release(first);
+                Assert.assertSame(first, pool.borrow(100));
+                pool.release(first);
+                pool.release(second);
+                Assert.assertEquals(2, pool.getIdleCount());
+
+                for (int i = 0; i < 20; i++) {
+                    Assert.assertEquals("hit " + i, pool.call(Frame.of(MessageType.REQUEST, "hit " + i)).getJson());
+                }
+                Assert.assertEquals(2, accepted.get());
+                Assert.assertEquals(2, pool.getConnectCount());
+
+                // Idle connections are closed once they pass the idle timeout
+                pool.setIdleTimeout(100);
+                long deadline = System.currentTimeMillis() + 5_000;
+                while (pool.getIdleCount() > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(50);
+                }
+                Assert.assertEquals(0, pool.getIdleCount());
+                Assert.assertEquals(2, pool.getEvictionCount());
+            }
+        }
+    }
+
+    @Test
+    public void testClientPoolBacksOffAndTimesOutReads() throws Exception {
+        int port;
+        try (ServerSocket unused = new ServerSocket(0)) {
+            port = unused.getLocalPort();
+        }
+        try (ClientPool pool = new ClientPool("localhost", port, 4)) {
+            pool.setBackoff(60_000, 60_000);
+            for (int i = 0; i < 3; i++) {
+                try {
+                    pool.borrow(100);
+                    Assert.fail("expected nothing to be listening");
+                } catch (ConnectException e) {
+                    // the first attempt is refused, later ones are held back by the backoff
+                }
+            }
+            Assert.assertEquals(1, pool.getConnectFailureCount());
+            Assert.assertEquals(0, pool.getActiveCount());
+        }
+
+        try (ServerSocket silent = new ServerSocket(0);
+             ClientPool pool = new ClientPool("localhost", silent.getLocalPort(), 1)) {
+            pool.setReadTimeout(200);
+            try {
+                pool.call(Frame.of(MessageType.PING, null));
+                Assert.fail("expected the unanswered request to time out");
+            } catch (SocketTimeoutException e) {
+                Assert.assertEquals(0, pool.getIdleCount()); // a timed-out connection is not reused
+            }
+        }
+    }
+
+    // LoadGenerator Tests
+    @Test
+    public void testLoadGeneratorRampsUpAndReportsIntervals() throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        try (ServerSocket server = new ServerSocket(0)) {
+            startEchoServer(server, accepted);
+            LoadGenerator generator = new LoadGenerator("localhost", server.getLocalPort());
+            generator.setClients(8);
+            generator.setRampUp(400);
+            generator.setDuration(1_200);
+            generator.setInterval(200);
+            generator.setRatePerClient(50);
+            generator.setThinkTime(5);
+            Map<LoadGenerator.Message, Integer> mix = new EnumMap<>(LoadGenerator.Message.class);
+            mix.put(LoadGenerator.Message.PING, 1);
+            mix.put(LoadGenerator.Message.SUBMIT_SCORE, 3);
+            generator.setMix(mix);
+            generator.run();
+
+            List<LoadGenerator.Interval> intervals = generator.getIntervals();
+            Assert.assertTrue(intervals.size() >= 4);
+            Assert.assertEquals(8, accepted.get());
+            // Players connect over the ramp-up, so the first interval sees fewer of them than the last
+            Assert.assertTrue(intervals.get(0).getClients() < 8);
+            Assert.assertEquals(8, intervals.get(intervals.size() - 1).getClients());
+            long answered = 0;
+            for (LoadGenerator.Interval interval : intervals) {
+                Assert.assertEquals(0, interval.getErrors());
+                answered += interval.getRequests();
+            }
+            Assert.assertTrue(answered > 50);
+            // The rate caps each player at 50 a second
+            Assert.assertTrue(answered <= 8 * 50 * 1.3);
+            Assert.assertEquals(answered, generator.getTotalLatency().getCount());
+            Assert.assertTrue(generator.getTotalLatency().getValueAtPercentile(99) > 0);
+
+            Path csv = Files.createTempFile("load", ".csv");
+            try {
+                generator.writeCsv(csv);
+                List<String> lines = Files.readAllLines(csv);
+                Assert.assertEquals(intervals.size() + 1, lines.size());
+                Assert.assertTrue(lines.get(0).startsWith("elapsed_s,clients,requests"));
+                Assert.assertEquals(10, lines.get(1).split(",").length);
+            } finally {
+                Files.delete(csv);
+            }
+        }
+    }
+
+    /**
+     * The {@code Conversation} interface is what a test server says to its one client.
+     */
+    private interface Conversation {
+        void run(InputStream in, OutputStream out) throws IOException;
+    }
+
+    private static Thread serve(ServerSocket server, Conversation conversation) {
+        Thread thread = new Thread(() -> {
+            try (Socket socket = server.accept()) {
+                conversation.run(new BufferedInputStream(socket.getInputStream()),
+                        new BufferedOutputStream(socket.getOutputStream()));
+            } catch (IOException e) {
+                System.err.println("Error in test server: " + e.getMessage());
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void startEchoServer(ServerSocket server, AtomicInteger accepted) {
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    accepted.incrementAndGet();
+                    Thread connection = new Thread(() -> {
+                        try (Socket client = socket) {
+                            InputStream in = new BufferedInputStream(client.getInputStream());
+                            OutputStream out = client.getOutputStream();
+                            while (true) {
+                                Frame request = CODEC.read(in);
+                                CODEC.write(out, Frame.of(MessageType.RESPONSE, request.getJson())
+                                        .withCorrelationId(request.getCorrelationId()));
+                            }
+                        } catch (IOException e) {
+                            // the client went away
+                        }
+                    });
+                    connection.setDaemon(true);
+                    connection.start();
+                } catch (IOException e) {
+                    // the test is over
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parse(Frame frame) {
+        try {
+            return new ObjectMapper().readValue(frame.getJson(), Map.class);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class NoteResponse { // what the out-of-order test's server answers
+        public int note;
+    }
+}
@@ -0,0 +1,125 @@
+package edu.sdccd.cisc191.template;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code BufferPool} class hands out heap byte buffers and takes them back for reuse, so encoding and
+ * decoding network messages does not allocate a new array for every message.
+ *
+ * <p>Buffers come in power-of-two sizes from {@value #MIN_CAPACITY} bytes to {@value #MAX_CAPACITY} bytes, and
+ * each size keeps at most a fixed number of free buffers. Larger requests are allocated directly and dropped
+ * when released. A buffer must not be used after it is released. All methods are thread-safe.</p>
+ */
+public class BufferPool {
+    /**
+     * The smallest buffer size handed out.
+     */
+    public static final int MIN_CAPACITY = 1 << 10;
+    /**
+     * The largest buffer size kept for reuse.
+     */
+    public static final int MAX_CAPACITY = 1 << 20;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+    private static final int MAX_SHIFT = Integer.numberOfTrailingZeros(MAX_CAPACITY);
+
+    /**
+     * A pool shared by the whole process. It is declared after the shifts it is built from.
+     */
+    public static final BufferPool SHARED = new BufferPool(64);
+
+    private final int maxFreePerSize;
+    private final List<Queue<ByteBuffer>> free = new ArrayList<>();
+    private final List<AtomicInteger> freeCounts = new ArrayList<>();
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+    /**
+     * Constructs a {@code BufferPool}.
+     *
+     * @param maxFreePerSize the most free buffers kept of each size
+     */
+    public BufferPool(int maxFreePerSize) {
+        this.maxFreePerSize = maxFreePerSize;
+        for (int shift = MIN_SHIFT; shift <= MAX_SHIFT; shift++) {
+            free.add(new ConcurrentLinkedQueue<>());
+            freeCounts.add(new AtomicInteger());
+        }
+    }
+
+    /**
+     * Returns an empty buffer with at least the specified capacity.
+     *
+     * @param capacity the number of bytes needed
+     * @return a cleared buffer
+     */
+    public ByteBuffer acquire(int capacity) {
+        int shift = shiftFor(capacity);
+        if (shift > MAX_SHIFT) {
+            allocations.incrementAndGet();
+            return ByteBuffer.allocate(capacity);
+        }
+        ByteBuffer buffer = free.get(shift - MIN_SHIFT).poll();
+        if (buffer == null) {
+            allocations.incrementAndGet();
+            return ByteBuffer.allocate(1 << shift);
+        }
+        freeCounts.get(shift - MIN_SHIFT).decrementAndGet();
+        reuses.incrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer back to the pool.
+     *
+     * @param buffer a buffer from {@link #acquire(int)}, or {@code null}
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() || Integer.bitCount(buffer.capacity()) != 1) {
+            return;
+        }
+        int shift = Integer.numberOfTrailingZeros(buffer.capacity());
+        if (shift < MIN_SHIFT || shift > MAX_SHIFT) {
+            return;
+        }
+        AtomicInteger count = freeCounts.get(shift - MIN_SHIFT);
+        if (count.incrementAndGet() > maxFreePerSize) {
+            count.decrementAndGet();
+            return;
+        }
+        ((Buffer) buffer).clear();
+        free.get(shift - MIN_SHIFT).add(buffer);
+    }
+
+    /**
+     * Returns the number of buffers that had to be allocated.
+     *
+     * @return the allocation count
+     */
+    public long getAllocationCount() {
+        return allocations.get();
+    }
+
+    /**
+     * Returns the number of buffers handed out again after being released.
+     *
+     * @return the reuse count
+     */
+    public long getReuseCount() {
+        return reuses.get();
+    }
+
+    private static int shiftFor(int capacity) {
+        if (capacity <= MIN_CAPACITY) {
+            return MIN_SHIFT;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1);
+    }
+}
@@ -0,0 +1,252 @@
+package edu.sdccd.cisc191.template;
+
+import javax.sound.midi.MidiSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * The {@code ChartConverter} class converts a directory tree of MIDI files into chart files ahead of time.
+ * Each MIDI file is parsed with {@code MidiInterpreter} and written next to its place in the output tree as a
+ * {@link ChartFile}.
+ *
+ * <p>Files are converted in parallel. The directory walk hands files to a fixed pool of workers through a
+ * bounded queue; when the queue is full the walking thread converts the file itself, so a huge pack never builds
+ * up an unbounded backlog. A file whose chart was made from a MIDI file with the same SHA-256 hash is skipped.
+ * A file that cannot be read or parsed is recorded as a failure and the rest of the batch carries on.</p>
+ *
+ * <p>Usage: {@code ChartConverter <midi directory> [chart directory] [--threads n]}</p>
+ */
+public class ChartConverter {
+    private final Path sourceDirectory;
+    private final Path outputDirectory;
+    private final int threads;
+
+    /**
+     * Constructs a {@code ChartConverter}.
+     *
+     * @param sourceDirectory the directory tree to read MIDI files from
+     * @param outputDirectory the directory tree to write chart files to
+     * @param threads         the number of files to convert at once
+     */
+    public ChartConverter(Path sourceDirectory, Path outputDirectory, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threads);
+        }
+        this.sourceDirectory = sourceDirectory;
+        this.outputDirectory = outputDirectory;
+        this.threads = threads;
+    }
+
+    /**
+     * Converts every MIDI file in the source tree and waits for the batch to finish.
+     *
+     * @return the results of the batch
+     * @throws IOException if the source directory cannot be walked
+     */
+    public Report convertAll() throws IOException {
+        Report report = new Report();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), runnable -> {
+            Thread thread = new Thread(runnable, "chart-converter");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        long start = System.nanoTime();
+        try (Stream<Path> files = Files.walk(sourceDirectory)) {
+            files.filter(ChartConverter::isMidiFile).forEach(file -> pool.execute(() -> convert(file, report)));
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            report.elapsedNanos = System.nanoTime() - start;
+        }
+        return report;
+    }
+
+    /**
+     * Converts one MIDI file, recording the outcome in the report.
+     *
+     * @param file   the MIDI file
+     * @param report the report to update
+     */
+    private void convert(Path file, Report report) {
+        try {
+            byte[] midi = Files.readAllBytes(file);
+            report.bytesRead.addAndGet(midi.length);
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(midi);
+            Path chart = chartPath(file);
+            if (ChartFile.isCurrent(chart, hash)) {
+                report.skipped.incrementAndGet();
+                return;
+            }
+            List<MidiInterpreter.NoteEvent> noteEvents =
+                    new MidiInterpreter().parseSequence(MidiSystem.getSequence(new ByteArrayInputStream(midi)));
+            Files.createDirectories(chart.getParent());
+            report.bytesWritten.addAndGet(ChartFile.write(chart, hash, noteEvents));
+            report.converted.incrementAndGet();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every Java platform provides SHA-256
+        } catch (Exception e) {
+            report.fail(sourceDirectory.relativize(file).toString(), e);
+        }
+    }
+
+    /**
+     * Returns where the chart for a MIDI file is written, mirroring its place in the source tree.
+     *
+     * @param file the MIDI file
+     * @return the chart file path
+     */
+    public Path chartPath(Path file) {
+        String name = file.getFileName().toString();
+        String chartName = name.substring(0, name.lastIndexOf('.')) + ChartFile.EXTENSION;
+        return outputDirectory.resolve(sourceDirectory.relativize(file)).resolveSibling(chartName);
+    }
+
+    private static boolean isMidiFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Files.isRegularFile(file) && (name.endsWith(".mid") || name.endsWith(".midi"));
+    }
+
+    /**
+     * Runs the converter from the command line and prints its report.
+     *
+     * @param args the MIDI directory, optionally the chart directory, and optionally {@code --threads n}
+     */
+    public static void main(String[] args) {
+        Path source = null;
+        Path output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (source == null) {
+                source = Paths.get(args[i]);
+            } else {
+                output = Paths.get(args[i]);
+            }
+        }
+        if (source == null) {
+            System.err.println("Usage: ChartConverter <midi directory> [chart directory] [--threads n]");
+            System.exit(2);
+        }
+
+        try {
+            Report report = new ChartConverter(source, output != null ? output : source, threads).convertAll();
+            System.out.println(report);
+            report.getFailures().forEach((file, reason) -> System.err.println("Error converting " + file + ": " + reason));
+            if (!report.getFailures().isEmpty()) {
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading " + source + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The {@code Report} class counts the outcome of a batch and measures its throughput.
+     */
+    public static class Report {
+        private final AtomicInteger converted = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final Map<String, String> failures = new TreeMap<>();
+        private volatile long elapsedNanos;
+
+        private synchronized void fail(String file, Exception e) {
+            failures.put(file, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+
+        /**
+         * Returns the number of files converted.
+         *
+         * @return the converted file count
+         */
+        public int getConverted() {
+            return converted.get();
+        }
+
+        /**
+         * Returns the number of files skipped because their chart was already up to date.
+         *
+         * @return the skipped file count
+         */
+        public int getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * Returns the files that could not be converted and why, in file name order.
+         *
+         * @return a copy of the failures, keyed by path relative to the source directory
+         */
+        public synchronized Map<String, String> getFailures() {
+            return new TreeMap<>(failures);
+        }
+
+        /**
+         * Returns the number of MIDI bytes read.
+         *
+         * @return the bytes read
+         */
+        public long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        /**
+         * Returns the number of chart bytes written.
+         *
+         * @return the bytes written
+         */
+        public long getBytesWritten() {
+            return bytesWritten.get();
+        }
+
+        /**
+         * Returns how many files were processed per second, including skipped and failed files.
+         *
+         * @return the file throughput
+         */
+        public double getFilesPerSecond() {
+            int files = converted.get() + skipped.get() + getFailures().size();
+            return elapsedNanos == 0 ? 0 : files * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Returns how many MIDI bytes were processed per second.
+         *
+         * @return the byte throughput
+         */
+        public double getBytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytesRead.get() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Converted %d, skipped %d, failed %d in %.2f s (%.1f files/s, %.1f KB/s, %d chart bytes)",
+                    getConverted(), getSkipped(), getFailures().size(), elapsedNanos / 1e9, getFilesPerSecond(),
+                    getBytesPerSecond() / 1024, getBytesWritten());
+        }
+    }
+}
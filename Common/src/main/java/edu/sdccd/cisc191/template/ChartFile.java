@@ -0,0 +1,155 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The {@code ChartFile} class reads and writes precomputed charts: the note events {@code MidiInterpreter}
+ * produces for a MIDI file, stored so they can be loaded without parsing the MIDI file again.
+ *
+ * <p>A chart file starts with the magic number {@code "JHCF"}, a format version and the SHA-256 hash of the MIDI
+ * file it was made from, followed by the number of events and the length of the event data. Events are stored in
+ * time order, each as three unsigned varints: the ticks since the previous event, the microseconds since the
+ * previous event, and the note number shifted left by two bits with the track in the low two bits. A typical
+ * event takes four or five bytes.</p>
+ */
+public final class ChartFile {
+    /**
+     * The file extension used for chart files.
+     */
+    public static final String EXTENSION = ".chart";
+
+    private static final int MAGIC = 0x4A484346; // "JHCF"
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+    private static final int GROUP_BITS = 2;
+
+    private ChartFile() {
+    }
+
+    /**
+     * Writes a chart to a temporary file and moves it over the specified file, so readers never see a partly
+     * written chart.
+     *
+     * @param file       the chart file to write
+     * @param sourceHash the SHA-256 hash of the MIDI file the chart was made from
+     * @param noteEvents the notes of the chart, in any order
+     * @return the number of bytes written
+     * @throws IOException if an I/O error occurs while writing the file
+     */
+    public static long write(Path file, byte[] sourceHash, List<MidiInterpreter.NoteEvent> noteEvents) throws IOException {
+        if (sourceHash.length != HASH_LENGTH) {
+            throw new IllegalArgumentException("Expected a SHA-256 hash: " + sourceHash.length + " bytes");
+        }
+        List<MidiInterpreter.NoteEvent> sorted = new ArrayList<>(noteEvents);
+        sorted.sort(Comparator.comparingLong((MidiInterpreter.NoteEvent event) -> event.timestamp)
+                .thenComparingInt(event -> event.note));
+
+        byte[] buffer = new byte[sorted.size() * 3 * 10];
+        int length = 0;
+        long lastTick = 0;
+        long lastMicros = 0;
+        for (MidiInterpreter.NoteEvent event : sorted) {
+            long micros = Math.round(event.timeInSeconds * 1_000_000);
+            length = VarInt.write(event.timestamp - lastTick, buffer, length);
+            length = VarInt.write(Math.max(0, micros - lastMicros), buffer, length);
+            length = VarInt.write(((long) event.note << GROUP_BITS) | event.noteGroup, buffer, length);
+            lastTick = event.timestamp;
+            lastMicros = Math.max(lastMicros, micros);
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.write(sourceHash);
+            out.writeInt(sorted.size());
+            out.writeInt(length);
+            out.write(buffer, 0, length);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(file);
+    }
+
+    /**
+     * Reads the hash of the MIDI file a chart was made from, without reading its events.
+     *
+     * @param file the chart file
+     * @return the SHA-256 hash, or {@code null} if the file does not exist or is not a chart
+     */
+    public static byte[] readSourceHash(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                return null;
+            }
+            byte[] hash = new byte[HASH_LENGTH];
+            in.readFully(hash);
+            return hash;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether a chart file exists and was made from a MIDI file with the specified hash.
+     *
+     * @param file       the chart file
+     * @param sourceHash the SHA-256 hash of the MIDI file
+     * @return {@code true} if the chart is up to date, {@code false} otherwise
+     */
+    public static boolean isCurrent(Path file, byte[] sourceHash) {
+        return Arrays.equals(readSourceHash(file), sourceHash);
+    }
+
+    /**
+     * Reads the notes of a chart.
+     *
+     * @param file the chart file
+     * @return the note events in time order
+     * @throws IOException if the file cannot be read or is not a valid chart
+     */
+    public static List<MidiInterpreter.NoteEvent> read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a chart file: " + file);
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported chart version: " + version);
+            }
+            in.readFully(new byte[HASH_LENGTH]);
+            int eventCount = in.readInt();
+            int length = in.readInt();
+            if (eventCount < 0 || length < 0) {
+                throw new IOException("Corrupt chart file: " + file);
+            }
+            byte[] buffer = new byte[length];
+            in.readFully(buffer);
+
+            List<MidiInterpreter.NoteEvent> noteEvents = new ArrayList<>(eventCount);
+            int[] next = new int[1];
+            int position = 0;
+            long tick = 0;
+            long micros = 0;
+            for (int i = 0; i < eventCount; i++) {
+                tick += VarInt.read(buffer, position, length, next);
+                micros += VarInt.read(buffer, next[0], length, next);
+                long packed = VarInt.read(buffer, next[0], length, next);
+                position = next[0];
+                int note = (int) (packed >>> GROUP_BITS);
+                int group = (int) (packed & ((1 << GROUP_BITS) - 1));
+                noteEvents.add(new MidiInterpreter.NoteEvent(note, tick, micros / 1_000_000.0, group));
+            }
+            return noteEvents;
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The {@code ConcurrentMusicPlaylist} class is a playlist that any number of threads can use at once.
+ *
+ * <p>The songs are held in an immutable queue behind an {@link AtomicReference}. Every change builds a new
+ * queue that shares most of its structure with the old one and installs it with a compare-and-set, so
+ * {@link #addSong(String)} and {@link #playNext()} never block and never lose or repeat a song. Because a
+ * queue never changes once published, {@link #displayPlaylist()} and {@link #getSongs()} always see one
+ * consistent version of the playlist without copying under a lock.</p>
+ *
+ * <p>Changes are saved in the background. Every version of the queue is numbered, and each change is recorded
+ * with the number of the version it created. Shortly after a change the recorded changes are appended to a
+ * {@link PlaylistJournal} in version order, whatever order the threads that made them recorded them in, so
+ * replaying the journal always gives a version the playlist actually had. Once the journal holds as many
+ * records as {@link PlaylistJournal#compactIfNeeded} would allow, the playlist is written as a whole snapshot
+ * through {@link PlaylistJournal#checkpoint(Collection)}. Use a single instance per playlist file.</p>
+ *
+ * <p>A {@link SongSearchIndex} is updated after each change with the songs that change actually added or
+ * removed. Its counts do not depend on the order updates arrive in, so it matches the playlist once concurrent
+ * changes have finished.</p>
+ *
+ * <p>If a {@link SongPrefetcher} is set, the first {@value #PREFETCH_DEPTH} songs of the playlist are passed to
+ * it after each change that can alter them, so they are already loaded when they are played. Adding songs behind
+ * them does not, so building a long playlist does not look at its upcoming songs again for every song.</p>
+ */
+public class ConcurrentMusicPlaylist implements Closeable {
+    /**
+     * The delay, in milliseconds, between a change and the journal append that saves it.
+     */
+    public static final long SAVE_DELAY_MILLIS = 50;
+    /**
+     * The number of upcoming songs passed to the prefetcher.
+     */
+    public static final int PREFETCH_DEPTH = 2;
+
+    private static final String FILE_NAME = "playlist.dat";
+
+    private final AtomicReference<SongQueue> songs;
+    private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final TreeMap<Long, Change> outOfOrder = new TreeMap<>();
+    private long savedVersion;
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final SongSearchIndex searchIndex = new SongSearchIndex();
+    private final PlaylistJournal journal;
+    private volatile SongPrefetcher prefetcher;
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "playlist-saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a {@code ConcurrentMusicPlaylist} and loads the playlist from the default file if it exists.
+     */
+    public ConcurrentMusicPlaylist() {
+        this(FILE_NAME);
+    }
+
+    /**
+     * Constructs a {@code ConcurrentMusicPlaylist} backed by the specified file and loads the playlist from it
+     * if it exists. If no existing playlist is found, a new playlist is started.
+     *
+     * @param fileName the path of the playlist file
+     */
+    public ConcurrentMusicPlaylist(String fileName) {
+        journal = new PlaylistJournal(fileName);
+        List<String> saved = new ArrayList<>();
+        journal.recover().forEach(saved::add);
+        saved.forEach(searchIndex::add);
+        songs = new AtomicReference<>(SongQueue.of(saved, 0));
+    }
+
+    /**
+     * Adds a song to the end of the playlist.
+     *
+     * @param song the song to add
+     */
+    public void addSong(String song) {
+        SongQueue current;
+        SongQueue updated;
+        do {
+            current = songs.get();
+            updated = current.offer(song);
+        } while (!songs.compareAndSet(current, updated));
+        searchIndex.add(song);
+        record(updated, PlaylistJournal.ADD, song);
+        if (current.size < PREFETCH_DEPTH) {
+            prefetchUpcoming();
+        }
+    }
+
+    /**
+     * Adds several songs to the end of the playlist in one step, so no other song is placed between them.
+     *
+     * @param added the songs to add, in order
+     */
+    public void addAll(Collection<String> added) {
+        SongQueue current;
+        SongQueue updated;
+        do {
+            current = songs.get();
+            updated = current;
+            for (String song : added) {
+                updated = updated.offer(song);
+            }
+        } while (!songs.compareAndSet(current, updated));
+        added.forEach(searchIndex::add);
+        if (updated != current) {
+            PlaylistJournal.Batch batch = new PlaylistJournal.Batch();
+            added.forEach(song -> batch.add(PlaylistJournal.ADD, song));
+            // The batch covers the versions of every song in it
+            changes.add(new Change(current.version + 1, updated.version, PlaylistJournal.BATCH, null, batch));
+            scheduleSave();
+        }
+        if (current.size < PREFETCH_DEPTH && updated != current) {
+            prefetchUpcoming();
+        }
+    }
+
+    /**
+     * Removes the first occurrence of a song from the playlist.
+     *
+     * @param song the song to remove
+     * @return {@code true} if the song was in the playlist, {@code false} otherwise
+     */
+    public boolean removeSong(String song) {
+        SongQueue current;
+        SongQueue updated;
+        do {
+            current = songs.get();
+            updated = current.remove(song);
+            if (updated == current) {
+                return false;
+            }
+        } while (!songs.compareAndSet(current, updated));
+        searchIndex.remove(song);
+        record(updated, PlaylistJournal.REMOVE, song);
+        prefetchUpcoming();
+        return true;
+    }
+
+    /**
+     * Plays and removes the next song from the playlist. Each song is returned to exactly one caller.
+     *
+     * @return the next song in the playlist, or {@code null} if the playlist is empty
+     */
+    public String playNext() {
+        // Reversing the rear is the only step of a poll that takes more than constant time, so it is done once
+        // here, and every retry below reuses it
+        SongQueue current = songs.get();
+        Cell rear = current.front != null && current.front.next == null ? current.rear : null;
+        Cell reversed = SongQueue.reverse(rear);
+        SongQueue updated;
+        do {
+            current = songs.get();
+            if (current.size == 0) {
+                return null;
+            }
+            updated = current.poll(rear, reversed);
+        } while (!songs.compareAndSet(current, updated));
+        String song = current.front.song;
+        searchIndex.remove(song);
+        record(updated, PlaylistJournal.POLL, null);
+        prefetchUpcoming();
+        return song;
+    }
+
+    /**
+     * Plays the previous song by adding the last played song back to the playlist.
+     *
+     * @param lastPlayed the last played song
+     * @return the song now at the start of the playlist
+     */
+    public String playPrevious(String lastPlayed) {
+        addSong(lastPlayed);
+        SongQueue current = songs.get();
+        return current.size > 0 ? current.front.song : null;
+    }
+
+    /**
+     * Clears all songs from the playlist.
+     */
+    public void clearPlaylist() {
+        SongQueue current;
+        SongQueue cleared;
+        do {
+            current = songs.get();
+            cleared = current.clear();
+        } while (!songs.compareAndSet(current, cleared));
+        current.toList().forEach(searchIndex::remove);
+        record(cleared, PlaylistJournal.CLEAR, null);
+    }
+
+    /**
+     * Returns the number of songs in the playlist.
+     *
+     * @return the size of the playlist
+     */
+    public int size() {
+        return songs.get().size;
+    }
+
+    /**
+     * Returns the songs of one consistent version of the playlist.
+     *
+     * @return an unmodifiable list of the songs in playlist order
+     */
+    public List<String> getSongs() {
+        return Collections.unmodifiableList(songs.get().toList());
+    }
+
+    /**
+     * Returns the songs that will be played next.
+     *
+     * @param count the maximum number of songs to return
+     * @return the first songs of the playlist in order
+     */
+    public List<String> getUpcoming(int count) {
+        return songs.get().peek(count);
+    }
+
+    /**
+     * Sets the prefetcher that loads upcoming songs in the background, and passes it the current upcoming songs.
+     *
+     * @param prefetcher the prefetcher to use, or {@code null} to stop prefetching
+     */
+    public void setPrefetcher(SongPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+        prefetchUpcoming();
+    }
+
+    /**
+     * Finds songs in the playlist by the start of their title, ignoring case and accents and allowing for typos.
+     *
+     * @param query the text to search for
+     * @param limit the maximum number of songs to return
+     * @return the matching songs, best first
+     */
+    public List<String> searchSongs(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * Finds the song in the playlist whose title matches the query, ignoring case and accents.
+     *
+     * @param query the title to look for
+     * @return the title as it appears in the playlist, or {@code null} if there is none
+     */
+    public String findSong(String query) {
+        return searchIndex.find(query);
+    }
+
+    /**
+     * Displays the current playlist. If the playlist is empty, a message is displayed.
+     */
+    public void displayPlaylist() {
+        List<String> snapshot = songs.get().toList();
+        if (snapshot.isEmpty()) {
+            System.out.println("The playlist is empty.");
+        } else {
+            System.out.println("Current Playlist:");
+            snapshot.forEach(System.out::println);
+        }
+    }
+
+    /**
+     * Saves the current version of the playlist before returning.
+     */
+    public void flush() {
+        saveScheduled.set(false);
+        save(true);
+    }
+
+    /**
+     * Saves the current version of the playlist and closes the playlist files.
+     */
+    @Override
+    public void close() {
+        saver.shutdown();
+        try {
+            saver.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        journal.close();
+    }
+
+    /**
+     * Records the change that created a version of the queue and schedules it to be saved.
+     *
+     * @param queue the queue the change created
+     * @param op    the journal operation
+     * @param song  the song the operation applies to, or {@code null} for operations without one
+     */
+    private void record(SongQueue queue, byte op, String song) {
+        changes.add(new Change(queue.version, queue.version, op, song, null));
+        scheduleSave();
+    }
+
+    /**
+     * Schedules a save unless one is already pending. Changes made before the save runs are saved together
+     * with it.
+     */
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            try {
+                saver.schedule(this::saveIfScheduled, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                saveScheduled.set(false); // closing; close() saves the final version
+            }
+        }
+    }
+
+    private void prefetchUpcoming() {
+        SongPrefetcher current = prefetcher;
+        if (current != null) {
+            current.prefetch(getUpcoming(PREFETCH_DEPTH));
+        }
+    }
+
+    private void saveIfScheduled() {
+        if (saveScheduled.getAndSet(false)) {
+            save(false);
+        }
+    }
+
+    /**
+     * Appends the recorded changes to the journal in version order, as far as every version is known. A thread
+     * that has installed a version but not yet recorded its change leaves a gap, and the changes after the gap
+     * wait for the next save. Once the journal has grown long enough, or when {@code complete} is set and a
+     * gap remains, the current version is written as a snapshot instead, and changes it already contains are
+     * dropped when they arrive.
+     *
+     * @param complete whether the current version must be saved before returning
+     */
+    private synchronized void save(boolean complete) {
+        for (Change change = changes.poll(); change != null; change = changes.poll()) {
+            if (change.last > savedVersion) {
+                outOfOrder.put(change.first, change);
+            }
+        }
+        for (Change next = outOfOrder.remove(savedVersion + 1); next != null;
+             next = outOfOrder.remove(savedVersion + 1)) {
+            if (next.batch != null) {
+                journal.append(next.batch);
+            } else {
+                journal.append(next.op, next.song);
+            }
+            savedVersion = next.last;
+        }
+
+        // Read after the changes were taken, so every change appended so far is part of this version
+        SongQueue current = songs.get();
+        boolean behind = current.version > savedVersion;
+        int threshold = Math.max(PlaylistJournal.COMPACTION_THRESHOLD, current.size);
+        if ((complete && behind) || (!behind && journal.getRecordCount() >= threshold)) {
+            journal.checkpoint(current.toList());
+            savedVersion = current.version;
+            outOfOrder.headMap(savedVersion, true).clear();
+        } else if (complete) {
+            journal.flush();
+        } else if (behind) {
+            scheduleSave();
+        }
+    }
+
+    /**
+     * The {@code SongQueue} class is an immutable first-in, first-out queue made of two singly linked lists:
+     * {@code front} holds the oldest songs in order and {@code rear} holds the newest songs in reverse order.
+     * {@code front} is only empty when the whole queue is, so the next song is always {@code front.song}.
+     * Each change creates a queue whose {@code version} is one more than that of the queue it was made from.
+     */
+    private static final class SongQueue {
+        final Cell front;
+        final Cell rear;
+        final int size;
+        final long version;
+
+        SongQueue(Cell front, Cell rear, int size, long version) {
+            this.front = front;
+            this.rear = rear;
+            this.size = size;
+            this.version = version;
+        }
+
+        static SongQueue of(List<String> songs, long version) {
+            Cell front = null;
+            for (int i = songs.size() - 1; i >= 0; i--) {
+                front = new Cell(songs.get(i), front);
+            }
+            return new SongQueue(front, null, songs.size(), version);
+        }
+
+        SongQueue offer(String song) {
+            if (front == null) {
+                return new SongQueue(new Cell(song, null), null, 1, version + 1);
+            }
+            return new SongQueue(front, new Cell(song, rear), size + 1, version + 1);
+        }
+
+        /**
+         * Removes the first song. If the front is used up, the rear becomes the new front. A reversal made
+         * earlier is reused if the rear it was made from is still the oldest part of this rear, and only the
+         * songs offered since then stay behind in the rear.
+         *
+         * @param earlierRear an earlier rear, or {@code null}
+         * @param reversed    {@code earlierRear} in oldest-first order
+         * @return the queue without its first song
+         */
+        SongQueue poll(Cell earlierRear, Cell reversed) {
+            if (front.next != null) {
+                return new SongQueue(front.next, rear, size - 1, version + 1);
+            }
+            if (earlierRear == null) {
+                return new SongQueue(reverse(rear), null, size - 1, version + 1);
+            }
+            List<Cell> newer = new ArrayList<>();
+            Cell cell = rear;
+            while (cell != earlierRear) {
+                if (cell == null) {
+                    // The rear was replaced since the reversal was made
+                    return new SongQueue(reverse(rear), null, size - 1, version + 1);
+                }
+                newer.add(cell);
+                cell = cell.next;
+            }
+            Cell newRear = null;
+            for (int i = newer.size() - 1; i >= 0; i--) {
+                newRear = new Cell(newer.get(i).song, newRear);
+            }
+            return new SongQueue(reversed, newRear, size - 1, version + 1);
+        }
+
+        SongQueue clear() {
+            return new SongQueue(null, null, 0, version + 1);
+        }
+
+        static Cell reverse(Cell cells) {
+            Cell reversed = null;
+            for (Cell cell = cells; cell != null; cell = cell.next) {
+                reversed = new Cell(cell.song, reversed);
+            }
+            return reversed;
+        }
+
+        List<String> peek(int count) {
+            int wanted = Math.min(count, size);
+            List<String> list = new ArrayList<>(wanted);
+            for (Cell cell = front; cell != null && list.size() < wanted; cell = cell.next) {
+                list.add(cell.song);
+            }
+            int frontSize = list.size();
+            if (frontSize < wanted) {
+                // The whole front was taken; the songs after it are the oldest, so last, cells of the rear
+                Cell cell = rear;
+                for (int skip = size - wanted; skip > 0; skip--) {
+                    cell = cell.next;
+                }
+                for (; cell != null; cell = cell.next) {
+                    list.add(cell.song);
+                }
+                Collections.reverse(list.subList(frontSize, list.size()));
+            }
+            return list;
+        }
+
+        SongQueue remove(String song) {
+            List<String> list = toList();
+            return list.remove(song) ? of(list, version + 1) : this;
+        }
+
+        List<String> toList() {
+            List<String> list = new ArrayList<>(size);
+            for (Cell cell = front; cell != null; cell = cell.next) {
+                list.add(cell.song);
+            }
+            int rearStart = list.size();
+            for (Cell cell = rear; cell != null; cell = cell.next) {
+                list.add(cell.song);
+            }
+            Collections.reverse(list.subList(rearStart, list.size()));
+            return list;
+        }
+    }
+
+    /**
+     * The {@code Change} class is a change waiting to be appended to the journal, with the versions of the
+     * queue it created, {@code first} to {@code last}.
+     */
+    private static final class Change {
+        final long first;
+        final long last;
+        final byte op;
+        final String song;
+        final PlaylistJournal.Batch batch;
+
+        Change(long first, long last, byte op, String song, PlaylistJournal.Batch batch) {
+            this.first = first;
+            this.last = last;
+            this.op = op;
+            this.song = song;
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * The {@code Cell} class is one immutable link of a {@code SongQueue} list.
+     */
+    private static final class Cell {
+        final String song;
+        final Cell next;
+
+        Cell(String song, Cell next) {
+            this.song = song;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code Frame} class is one message between the client and the server. Every frame has a
+ * {@link MessageType}, a JSON part for structured data, and a binary body for bulk data such as MIDI files and
+ * charts, which would be slow and large as JSON. Either part may be empty.
+ *
+ * <p>A frame also carries a correlation ID, so a client can have many requests in flight on one connection and
+ * still match each response to its request: the server gives every response the ID of the request it answers.
+ * Frames the server sends on its own have the ID 0. Frames are immutable.</p>
+ *
+ * <p>A frame built by the server may instead have a {@link FrameBody}, such as a file, that the server writes
+ * straight to the connection. Such a body is read into a byte array only if {@link #getBody()} asks for it.</p>
+ */
+public final class Frame {
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final MessageType type;
+    private final int correlationId;
+    private final byte[] json;
+    private final byte[] body;
+    private final FrameBody externalBody;
+
+    /**
+     * Constructs a {@code Frame} from its encoded parts.
+     *
+     * @param type          the message type
+     * @param correlationId the ID matching a response to its request
+     * @param json          the JSON part as UTF-8 bytes
+     * @param body          the binary body
+     */
+    Frame(MessageType type, int correlationId, byte[] json, byte[] body) {
+        this(type, correlationId, json, body, null);
+    }
+
+    private Frame(MessageType type, int correlationId, byte[] json, byte[] body, FrameBody externalBody) {
+        this.type = type;
+        this.correlationId = correlationId;
+        this.json = json != null ? json : NO_BYTES;
+        this.body = body != null ? body : NO_BYTES;
+        this.externalBody = externalBody;
+    }
+
+    /**
+     * Creates a frame with a JSON part and no body.
+     *
+     * @param type the message type
+     * @param json the JSON text, or {@code null} for none
+     * @return the frame
+     */
+    public static Frame of(MessageType type, String json) {
+        return of(type, json, (byte[]) null);
+    }
+
+    /**
+     * Creates a frame with a JSON part and a binary body.
+     *
+     * @param type the message type
+     * @param json the JSON text, or {@code null} for none
+     * @param body the binary body, or {@code null} for none; it is not copied, so it must not be changed
+     * @return the frame
+     */
+    public static Frame of(MessageType type, String json, byte[] body) {
+        return new Frame(type, 0, json != null ? json.getBytes(StandardCharsets.UTF_8) : null, body);
+    }
+
+    /**
+     * Creates a frame with a JSON part and a body that is written straight from where it lives.
+     *
+     * @param type the message type
+     * @param json the JSON text, or {@code null} for none
+     * @param body the body, which whoever sends the frame closes once it has been sent
+     * @return the frame
+     */
+    public static Frame of(MessageType type, String json, FrameBody body) {
+        return new Frame(type, 0, json != null ? json.getBytes(StandardCharsets.UTF_8) : null, null, body);
+    }
+
+    /**
+     * Returns a copy of this frame with a different correlation ID. The JSON and body are shared, not copied.
+     *
+     * @param id the correlation ID
+     * @return the frame with that ID
+     */
+    public Frame withCorrelationId(int id) {
+        return id == correlationId ? this : new Frame(type, id, json, body, externalBody);
+    }
+
+    /**
+     * Returns the message type.
+     *
+     * @return the type
+     */
+    public MessageType getType() {
+        return type;
+    }
+
+    /**
+     * Returns the ID that matches a response to its request.
+     *
+     * @return the correlation ID, or 0 if there is none
+     */
+    public int getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * Returns the JSON part.
+     *
+     * @return the JSON text, or an empty string if there is none
+     */
+    public String getJson() {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the binary body. The array is shared, so it must not be changed.
+     *
+     * @return the body, or an empty array if there is none
+     * @throws UncheckedIOException if the body is a {@link FrameBody} that cannot be read
+     */
+    public byte[] getBody() {
+        if (externalBody == null) {
+            return body;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(externalBody.length());
+        WritableByteChannel channel = Channels.newChannel(bytes);
+        try {
+            for (long written = 0; written < externalBody.length(); ) {
+                written += externalBody.writeTo(channel, written);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the number of bytes in the body.
+     *
+     * @return the body length
+     */
+    public int getBodyLength() {
+        return externalBody != null ? externalBody.length() : body.length;
+    }
+
+    /**
+     * Returns the body if it is written straight from where it lives rather than held in this frame.
+     *
+     * @return the body, or {@code null} if the body is a byte array
+     */
+    public FrameBody getExternalBody() {
+        return externalBody;
+    }
+
+    byte[] getJsonBytes() {
+        return json;
+    }
+
+    /**
+     * Returns the number of bytes this frame takes on the wire, including its length field.
+     *
+     * @return the encoded size
+     */
+    public int getEncodedLength() {
+        return FrameCodec.LENGTH_FIELD + FrameCodec.HEADER_LENGTH + json.length + getBodyLength();
+    }
+
+    @Override
+    public String toString() {
+        return type + " #" + correlationId + " (" + json.length + " bytes of JSON, " + getBodyLength() + " bytes of body)";
+    }
+}
@@ -0,0 +1,121 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The {@code FrameBody} class is a frame body that is not held in a byte array, such as a file or a direct
+ * buffer. It is written straight from where it lives to the connection, so the server can send large files
+ * without copying them through the Java heap.
+ *
+ * <p>Whoever sends a frame with such a body closes the body once the frame has been written or the connection
+ * has failed, whichever comes first.</p>
+ */
+public abstract class FrameBody implements Closeable {
+    /**
+     * Returns the number of bytes in the body.
+     *
+     * @return the length
+     */
+    public abstract int length();
+
+    /**
+     * Writes as much of the body as the channel takes in one go.
+     *
+     * @param target the channel to write to
+     * @param offset the number of bytes of the body already written
+     * @return the number of bytes written, which may be 0 if a non-blocking channel is full
+     * @throws IOException if the body cannot be read or the channel cannot be written
+     */
+    public abstract long writeTo(WritableByteChannel target, long offset) throws IOException;
+
+    /**
+     * Releases whatever the body holds. The default does nothing.
+     *
+     * @throws IOException if the body cannot be released
+     */
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Creates a body that shares the remaining bytes of a buffer, which must not change while it is sent.
+     *
+     * @param buffer the bytes to send, from its position to its limit
+     * @return the body
+     */
+    public static FrameBody of(ByteBuffer buffer) {
+        return new BufferBody(buffer.slice());
+    }
+
+    /**
+     * Creates a body that sends part of a file with {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+     * which lets the operating system copy the file to a socket without it passing through the application.
+     * Closing the body closes the channel.
+     *
+     * @param channel  the open file
+     * @param position where in the file the body starts
+     * @param length   the number of bytes to send
+     * @return the body
+     */
+    public static FrameBody of(FileChannel channel, long position, int length) {
+        return new FileBody(channel, position, length);
+    }
+
+    /**
+     * The {@code BufferBody} class is a body in a buffer, usually a direct one shared by many sends.
+     */
+    private static class BufferBody extends FrameBody {
+        private final ByteBuffer buffer;
+
+        BufferBody(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int length() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public long writeTo(WritableByteChannel target, long offset) throws IOException {
+            ByteBuffer view = buffer.duplicate(); // each send keeps its own position
+            ((Buffer) view).position((int) offset);
+            return target.write(view);
+        }
+    }
+
+    /**
+     * The {@code FileBody} class is a body read from a file region as it is written.
+     */
+    private static class FileBody extends FrameBody {
+        private final FileChannel channel;
+        private final long position;
+        private final int length;
+
+        FileBody(FileChannel channel, long position, int length) {
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public long writeTo(WritableByteChannel target, long offset) throws IOException {
+            return channel.transferTo(position + offset, length - offset, target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
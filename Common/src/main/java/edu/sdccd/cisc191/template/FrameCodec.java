@@ -0,0 +1,271 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The {@code FrameCodec} class turns {@link Frame}s into bytes and back, for both blocking streams and
+ * non-blocking channels. The client and the server use the same codec, so they always agree on the framing.
+ *
+ * <p>Each frame on the wire is laid out as:</p>
+ * <pre>
+ *   int     length       number of bytes after this field
+ *   byte    type         the {@link MessageType} code
+ *   byte    flags        reserved, written as 0
+ *   int     correlation  the correlation ID
+ *   int     jsonLength   number of bytes of JSON
+ *   byte[]  json         UTF-8 JSON text
+ *   byte[]  body         the binary body, filling the rest of the frame
+ * </pre>
+ *
+ * <p>All integers are big-endian. Frames longer than the codec's maximum are rejected before anything is
+ * allocated for them. A stream read does not trust even a valid length: its buffer starts at
+ * {@value #READ_CHUNK} bytes and doubles only as the frame's bytes arrive, so a peer that announces a large
+ * frame and sends nothing more costs a reader no more than it has actually sent. Encoding and stream reads use
+ * buffers from a {@link BufferPool}. Codecs are immutable and may be shared between threads.</p>
+ */
+public class FrameCodec {
+    /**
+     * The size of the length field at the start of every frame.
+     */
+    public static final int LENGTH_FIELD = 4;
+    /**
+     * The size of the header after the length field.
+     */
+    public static final int HEADER_LENGTH = 10;
+    /**
+     * The default largest frame, in bytes after the length field.
+     */
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    /**
+     * The most a stream read allocates for a frame before any of its bytes after the length field arrive.
+     */
+    public static final int READ_CHUNK = 64 * 1024;
+
+    private final int maxFrameLength;
+    private final BufferPool pool;
+
+    /**
+     * Constructs a {@code FrameCodec} with the default maximum frame length and the shared buffer pool.
+     */
+    public FrameCodec() {
+        this(DEFAULT_MAX_FRAME_LENGTH, BufferPool.SHARED);
+    }
+
+    /**
+     * Constructs a {@code FrameCodec}.
+     *
+     * @param maxFrameLength the largest frame accepted, in bytes after the length field
+     * @param pool           the pool buffers are taken from
+     */
+    public FrameCodec(int maxFrameLength, BufferPool pool) {
+        if (maxFrameLength < HEADER_LENGTH) {
+            throw new IllegalArgumentException("Maximum frame length must be at least " + HEADER_LENGTH);
+        }
+        this.maxFrameLength = maxFrameLength;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the largest frame this codec accepts.
+     *
+     * @return the maximum length in bytes after the length field
+     */
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * Returns the pool this codec takes buffers from.
+     *
+     * @return the buffer pool
+     */
+    public BufferPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Encodes a frame into a pooled buffer. Give the buffer back with {@link #release(ByteBuffer)} once it has
+     * been written. If the frame's body is a {@link FrameBody}, the buffer holds everything before the body,
+     * and the body is written after it.
+     *
+     * @param frame the frame to encode
+     * @return a buffer holding the whole frame, ready to write
+     * @throws ProtocolException if the frame is longer than the maximum
+     */
+    public ByteBuffer encode(Frame frame) throws ProtocolException {
+        int length = checkFits(frame);
+        byte[] json = frame.getJsonBytes();
+        boolean inlineBody = frame.getExternalBody() == null;
+        ByteBuffer buffer = pool.acquire(LENGTH_FIELD + length - (inlineBody ? 0 : frame.getBodyLength()));
+        buffer.putInt(length)
+                .put((byte) frame.getType().getCode())
+                .put((byte) 0)
+                .putInt(frame.getCorrelationId())
+                .putInt(json.length)
+                .put(json);
+        if (inlineBody) {
+            buffer.put(frame.getBody());
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    /**
+     * Checks that a frame is no longer than the maximum, so it can be turned away before it is queued.
+     *
+     * @param frame the frame to check
+     * @return the frame's length after the length field
+     * @throws ProtocolException if the frame is longer than the maximum
+     */
+    public int checkFits(Frame frame) throws ProtocolException {
+        int length = frame.getEncodedLength() - LENGTH_FIELD;
+        if (length < 0 || length > maxFrameLength) {
+            throw new ProtocolException("Frame of " + frame.getEncodedLength() + " bytes is longer than "
+                    + maxFrameLength);
+        }
+        return length;
+    }
+
+    /**
+     * Gives a buffer from {@link #encode(Frame)} back to the pool.
+     *
+     * @param buffer the buffer, which must not be used afterwards
+     */
+    public void release(ByteBuffer buffer) {
+        pool.release(buffer);
+    }
+
+    /**
+     * Returns the total size of the frame at the start of a buffer, without consuming anything.
+     *
+     * @param in the received bytes, positioned at the start of a frame
+     * @return the frame's size including its length field, or -1 if the length field has not all arrived
+     * @throws ProtocolException if the length is invalid
+     */
+    public int frameSize(ByteBuffer in) throws ProtocolException {
+        if (in.remaining() < LENGTH_FIELD) {
+            return -1;
+        }
+        return LENGTH_FIELD + checkLength(in.getInt(in.position()));
+    }
+
+    /**
+     * Decodes the frame at the start of a buffer if all of it has arrived.
+     *
+     * @param in the received bytes, positioned at the start of a frame
+     * @return the frame, with the buffer positioned after it, or {@code null} if the frame is incomplete, with
+     * the buffer unchanged
+     * @throws ProtocolException if the frame is malformed
+     */
+    public Frame decode(ByteBuffer in) throws ProtocolException {
+        int size = frameSize(in);
+        if (size < 0 || in.remaining() < size) {
+            return null;
+        }
+        int length = in.getInt();
+        int code = in.get() & 0xFF;
+        in.get(); // flags
+        int correlationId = in.getInt();
+        int jsonLength = in.getInt();
+        MessageType type = MessageType.of(code);
+        if (type == null) {
+            throw new ProtocolException("Unknown message type " + code);
+        }
+        if (jsonLength < 0 || jsonLength > length - HEADER_LENGTH) {
+            throw new ProtocolException("JSON length " + jsonLength + " does not fit a frame of " + length);
+        }
+        byte[] json = new byte[jsonLength];
+        in.get(json);
+        byte[] body = new byte[length - HEADER_LENGTH - jsonLength];
+        in.get(body);
+        return new Frame(type, correlationId, json, body);
+    }
+
+    /**
+     * Writes a frame to a stream. The stream is not flushed, and a {@link FrameBody} is not closed.
+     *
+     * @param out   the stream to write to
+     * @param frame the frame to write
+     * @throws IOException if the frame is too long or cannot be written
+     */
+    public void write(OutputStream out, Frame frame) throws IOException {
+        ByteBuffer buffer = encode(frame);
+        try {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } finally {
+            release(buffer);
+        }
+        FrameBody body = frame.getExternalBody();
+        if (body != null) {
+            WritableByteChannel channel = Channels.newChannel(out);
+            for (long written = 0; written < body.length(); ) {
+                written += body.writeTo(channel, written);
+            }
+        }
+    }
+
+    /**
+     * Reads the next frame from a stream, waiting until all of it has arrived.
+     *
+     * @param in the stream to read from
+     * @return the frame
+     * @throws EOFException      if the stream ends before a frame starts or in the middle of one
+     * @throws ProtocolException if the frame is malformed
+     * @throws IOException       if the stream cannot be read
+     */
+    public Frame read(InputStream in) throws IOException {
+        byte[] lengthField = new byte[LENGTH_FIELD];
+        readFully(in, lengthField, 0, LENGTH_FIELD);
+        int size = LENGTH_FIELD + checkLength(ByteBuffer.wrap(lengthField).getInt());
+
+        ByteBuffer buffer = pool.acquire(Math.min(size, READ_CHUNK));
+        try {
+            buffer.put(lengthField);
+            while (buffer.position() < size) {
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer larger = pool.acquire(Math.min(size, buffer.capacity() * 2));
+                    ((Buffer) buffer).flip();
+                    larger.put(buffer);
+                    pool.release(buffer);
+                    buffer = larger;
+                }
+                int count = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                        Math.min(buffer.remaining(), size - buffer.position()));
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                ((Buffer) buffer).position(buffer.position() + count);
+            }
+            ((Buffer) buffer).flip();
+            return decode(buffer);
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    private int checkLength(int length) throws ProtocolException {
+        if (length < HEADER_LENGTH || length > maxFrameLength) {
+            throw new ProtocolException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    private static void readFully(InputStream in, byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = in.read(bytes, offset, length);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            offset += count;
+            length -= count;
+        }
+    }
+}
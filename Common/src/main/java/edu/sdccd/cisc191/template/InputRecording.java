@@ -0,0 +1,243 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * The {@code InputRecording} class captures the lane presses of a play session so it can be replayed later.
+ * Each press is stored as a single varint holding the time since the previous press (in microseconds of
+ * song time) shifted left by two bits, with the lane index in the low two bits. Recording writes straight
+ * into a preallocated byte array, so the input path does not allocate.
+ */
+public class InputRecording {
+    private static final int MAGIC = 0x4A484952; // "JHIR"
+    private static final int VERSION = 1;
+    private static final int LANE_BITS = 2;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    /**
+     * The number of lanes that can be recorded.
+     */
+    public static final int LANE_COUNT = 1 << LANE_BITS;
+
+    private final String songName;
+    private byte[] buffer;
+    private int length;
+    private int eventCount;
+    private long lastTimeMicros;
+
+    /**
+     * Constructs an empty {@code InputRecording} for the specified song.
+     *
+     * @param songName the name of the MIDI file that was played
+     */
+    public InputRecording(String songName) {
+        this(songName, new byte[INITIAL_CAPACITY], 0, 0, 0);
+    }
+
+    private InputRecording(String songName, byte[] buffer, int length, int eventCount, long lastTimeMicros) {
+        this.songName = songName;
+        this.buffer = buffer;
+        this.length = length;
+        this.eventCount = eventCount;
+        this.lastTimeMicros = lastTimeMicros;
+    }
+
+    /**
+     * Records a lane press. Presses must be recorded in time order; a time earlier than the previous
+     * press is clamped to the previous press.
+     *
+     * @param lane       the lane that was pressed (0 to {@link #LANE_COUNT} - 1)
+     * @param timeMicros the song-relative time of the press in microseconds
+     */
+    public void record(int lane, long timeMicros) {
+        if (lane < 0 || lane >= LANE_COUNT) {
+            throw new IllegalArgumentException("Lane out of range: " + lane);
+        }
+        long delta = Math.max(0, timeMicros - lastTimeMicros);
+        if (length + 10 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        length = VarInt.write((delta << LANE_BITS) | lane, buffer, length);
+        lastTimeMicros += delta;
+        eventCount++;
+    }
+
+    /**
+     * Returns the name of the song this recording was made against.
+     *
+     * @return the song name
+     */
+    public String getSongName() {
+        return songName;
+    }
+
+    /**
+     * Returns the number of presses in this recording.
+     *
+     * @return the event count
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the number of bytes used by the encoded presses.
+     *
+     * @return the encoded size in bytes
+     */
+    public int getEncodedSize() {
+        return length;
+    }
+
+    /**
+     * Returns a new {@code Player} positioned at the first press of this recording.
+     *
+     * @return a player over the recorded presses
+     */
+    public Player player() {
+        return new Player();
+    }
+
+    /**
+     * Saves the recording to a file.
+     *
+     * @param filePath the path of the file to write
+     * @throws IOException if an I/O error occurs while writing the file
+     */
+    public void save(String filePath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(songName);
+            out.writeInt(eventCount);
+            out.writeInt(length);
+            out.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Loads a recording from a file.
+     *
+     * @param filePath the path of the file to read
+     * @return the loaded recording
+     * @throws IOException if the file cannot be read or is not a valid recording
+     */
+    public static InputRecording load(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an input recording: " + filePath);
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported input recording version: " + version);
+            }
+            String songName = in.readUTF();
+            int eventCount = in.readInt();
+            int length = in.readInt();
+            if (eventCount < 0 || length < 0 || eventCount > length) {
+                throw new IOException("Corrupt input recording: " + filePath);
+            }
+            byte[] buffer = readEvents(in, length);
+
+            // Walk the events once to validate them and find the time of the last press
+            int[] next = new int[1];
+            int position = 0;
+            long lastTimeMicros = 0;
+            for (int i = 0; i < eventCount; i++) {
+                lastTimeMicros += VarInt.read(buffer, position, length, next) >>> LANE_BITS;
+                position = next[0];
+            }
+            return new InputRecording(songName, buffer, length, eventCount, lastTimeMicros);
+        }
+    }
+
+    /**
+     * Reads the encoded events. The buffer grows as the bytes arrive instead of being sized by the stored
+     * length up front, so a corrupt length fails once the file runs out rather than allocating it all.
+     *
+     * @param in     the stream positioned at the events
+     * @param length the number of bytes the file says the events take
+     * @return a buffer holding the events
+     * @throws IOException if the file ends before {@code length} bytes
+     */
+    private static byte[] readEvents(DataInputStream in, int length) throws IOException {
+        byte[] buffer = new byte[Math.max(Math.min(length, INITIAL_CAPACITY), 16)];
+        int read = 0;
+        while (read < length) {
+            if (read == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(length, 2L * buffer.length));
+            }
+            int count = in.read(buffer, read, Math.min(buffer.length, length) - read);
+            if (count < 0) {
+                throw new EOFException("Input recording ends after " + read + " of " + length + " event bytes");
+            }
+            read += count;
+        }
+        return buffer;
+    }
+
+    /**
+     * The {@code Player} class walks the presses of a recording in order without allocating.
+     */
+    public class Player {
+        private final int[] next = new int[1];
+        private int position;
+        private int remaining = eventCount;
+        private long nextTimeMicros;
+        private int nextLane;
+
+        private Player() {
+            decode();
+        }
+
+        /**
+         * Checks whether there is another press to replay.
+         *
+         * @return {@code true} if another press is available, {@code false} otherwise
+         */
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        /**
+         * Returns the song-relative time of the next press in microseconds.
+         *
+         * @return the time of the next press
+         */
+        public long peekTimeMicros() {
+            return nextTimeMicros;
+        }
+
+        /**
+         * Returns the lane of the next press.
+         *
+         * @return the lane of the next press
+         */
+        public int peekLane() {
+            return nextLane;
+        }
+
+        /**
+         * Moves past the current press to the following one.
+         */
+        public void advance() {
+            remaining--;
+            decode();
+        }
+
+        private void decode() {
+            if (remaining <= 0) {
+                return;
+            }
+            try {
+                long value = VarInt.read(buffer, position, length, next);
+                position = next[0];
+                nextTimeMicros += value >>> LANE_BITS;
+                nextLane = (int) (value & (LANE_COUNT - 1));
+            } catch (IOException e) {
+                remaining = 0;
+            }
+        }
+    }
+}
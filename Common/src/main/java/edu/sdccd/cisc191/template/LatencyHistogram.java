@@ -0,0 +1,177 @@
+package edu.sdccd.cisc191.template;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code LatencyHistogram} class counts how often values such as response times fall in each of a fixed set
+ * of buckets, so percentiles can be read off without keeping every value.
+ *
+ * <p>Values below 16 each have their own bucket. Above that every power of two is split into 16 buckets, so a
+ * value is reported at most 1/16 (6.25%) above what was recorded, whether it was a microsecond or an hour,
+ * and the whole histogram is under 8 KB. Recording is lock-free: it increments one bucket and a couple of
+ * adders, so many threads can record at once without slowing each other down.</p>
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param value the value, such as a time in nanoseconds; negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+        long highest = max.get();
+        while (value > highest && !max.compareAndSet(highest, value)) {
+            highest = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : sum.sum() / (double) count;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return the maximum, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value that the specified percentage of recorded values are at or below, to within 6.25%.
+     *
+     * @param percentile the percentage, from 0 to 100, such as 99.9
+     * @return the value, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Adds every value recorded by another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        sum.add(other.sum.sum());
+        long otherMax = other.max.get();
+        long highest = max.get();
+        while (otherMax > highest && !max.compareAndSet(highest, otherMax)) {
+            highest = max.get();
+        }
+    }
+
+    /**
+     * Moves everything recorded so far into a new histogram and starts this one again from empty, so each call
+     * returns the values of one interval. A value recorded during the call lands in this interval or the next,
+     * never both.
+     *
+     * @return the values recorded since the last call
+     */
+    public LatencyHistogram snapshotAndReset() {
+        LatencyHistogram interval = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts.get(i) != 0) {
+                interval.counts.set(i, counts.getAndSet(i, 0));
+            }
+        }
+        interval.sum.add(sum.sumThenReset());
+        interval.max.set(max.getAndSet(0));
+        return interval;
+    }
+
+    /**
+     * Returns the count, mean, median, tail percentiles and maximum, with values divided by a unit such as
+     * 1000 to turn nanoseconds into microseconds.
+     *
+     * @param unit the amount each value is divided by
+     * @return the summary
+     */
+    public String summary(double unit) {
+        return String.format(Locale.ROOT, "count=%d mean=%.1f p50=%.1f p99=%.1f p999=%.1f max=%.1f", getCount(),
+                getMean() / unit, getValueAtPercentile(50) / unit, getValueAtPercentile(99) / unit,
+                getValueAtPercentile(99.9) / unit, getMax() / unit);
+    }
+
+    @Override
+    public String toString() {
+        return summary(1);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long highestIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
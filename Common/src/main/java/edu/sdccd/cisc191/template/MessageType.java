@@ -0,0 +1,55 @@
+package edu.sdccd.cisc191.template;
+
+/**
+ * The {@code MessageType} enum lists the kinds of messages the client and server exchange. Each is sent as a
+ * single byte in the header of a {@link Frame}.
+ */
+public enum MessageType {
+    /** A request whose details are in the JSON part. */
+    REQUEST(1),
+    /** A successful reply to a request. */
+    RESPONSE(2),
+    /** A failed request; the JSON part describes the error. */
+    ERROR(3),
+    /** A check that the other side is still there. */
+    PING(4),
+    /** The reply to a {@code PING}. */
+    PONG(5),
+    /** Live game state from the client, such as its score; the server does not answer it. */
+    UPDATE(6),
+    /** Live game state the server pushes to the client without being asked, such as its room's scores. */
+    BROADCAST(7);
+
+    private static final MessageType[] BY_CODE = new MessageType[256];
+
+    static {
+        for (MessageType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final int code;
+
+    MessageType(int code) {
+        this.code = code;
+    }
+
+    /**
+     * Returns the byte that identifies this type on the wire.
+     *
+     * @return the type code
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Returns the type with the specified code.
+     *
+     * @param code the type code
+     * @return the message type, or {@code null} if the code is unknown
+     */
+    public static MessageType of(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
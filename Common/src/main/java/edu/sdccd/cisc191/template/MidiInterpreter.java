@@ -56,9 +56,19 @@ public class MidiInterpreter {
      * @throws Exception if an error occurs while reading the file
      */
     public List<NoteEvent> parseMidiFile(String filePath) throws Exception {
+        return parseSequence(MidiSystem.getSequence(new File(filePath)));
+    }
+
+    /**
+     * Parses an already loaded MIDI sequence and returns a list of {@code NoteEvent} objects representing
+     * the notes in the sequence.
+     *
+     * @param sequence the MIDI sequence to parse
+     * @return a list of {@code NoteEvent} objects
+     */
+    public List<NoteEvent> parseSequence(Sequence sequence) {
         Map<Integer, List<NoteEvent>> noteEventsMap = new HashMap<>();
         List<Integer> notes = new ArrayList<>();
-        Sequence sequence = MidiSystem.getSequence(new File(filePath));
         int resolution = sequence.getResolution();
         double tempo = 500000; // default 120 BPM (500,000 microseconds per quarter note)
 
@@ -89,7 +99,7 @@ public class MidiInterpreter {
 
         if (minNote.isPresent() && maxNote.isPresent()) {
             int range = maxNote.getAsInt() - minNote.getAsInt();
-            int groupSize = (range + 3) / 4; // Divide into 4 groups, making sure we cover all rows
+            int groupSize = Math.max(1, (range + 3) / 4); // Divide into 4 groups, making sure we cover all rows
 
             for (Track track : sequence.getTracks()) {
                 for (int i = 0; i < track.size(); i++) {
@@ -37,25 +37,70 @@ public class MidiUtils {
     public static void playMidiFile(String filePath, MidiCallback callback) {
         new Thread(() -> {
             try {
-                Sequencer sequencer = MidiSystem.getSequencer();
-                sequencer.open();
-                Sequence sequence = MidiSystem.getSequence(new File(filePath));
-                sequencer.setSequence(sequence);
-                sequencer.start();
-
-                while (sequencer.isRunning()) {
-                    double currentTimeInSeconds = sequencer.getMicrosecondPosition() / 1_000_000.0;
-                    callback.onTimeUpdate(currentTimeInSeconds);
-                    Thread.sleep(10); // Check every 10 milliseconds
-                }
-
-                sequencer.close();
+                Sequencer sequencer = prepareSequencer(MidiSystem.getSequence(new File(filePath)));
+                runSequencer(sequencer, callback);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }).start();
     }
 
+    /**
+     * Opens a sequencer and loads the specified sequence into it without starting playback.
+     * This does the slow device setup ahead of time so playback can start immediately later.
+     *
+     * @param sequence the sequence to load
+     * @return an open sequencer ready to be started
+     * @throws Exception if the sequencer cannot be opened or the sequence cannot be loaded
+     */
+    public static Sequencer prepareSequencer(Sequence sequence) throws Exception {
+        Sequencer sequencer = MidiSystem.getSequencer();
+        sequencer.open();
+        try {
+            sequencer.setSequence(sequence);
+        } catch (InvalidMidiDataException e) {
+            sequencer.close();
+            throw e;
+        }
+        return sequencer;
+    }
+
+    /**
+     * Starts a prepared sequencer and uses a callback to provide updates on the current time in seconds.
+     * The sequencer is closed once playback finishes.
+     *
+     * @param sequencer the prepared sequencer to play
+     * @param callback  the callback to receive updates on the current time in seconds
+     */
+    public static void playSequencer(Sequencer sequencer, MidiCallback callback) {
+        new Thread(() -> {
+            try {
+                runSequencer(sequencer, callback);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).start();
+    }
+
+    /**
+     * Starts a sequencer on the calling thread and reports its position until playback finishes.
+     *
+     * @param sequencer the prepared sequencer to play
+     * @param callback  the callback to receive updates on the current time in seconds
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private static void runSequencer(Sequencer sequencer, MidiCallback callback) throws InterruptedException {
+        sequencer.start();
+
+        while (sequencer.isRunning()) {
+            double currentTimeInSeconds = sequencer.getMicrosecondPosition() / 1_000_000.0;
+            callback.onTimeUpdate(currentTimeInSeconds);
+            Thread.sleep(10); // Check every 10 milliseconds
+        }
+
+        sequencer.close();
+    }
+
     /**
      * Retrieves the BPM (Beats Per Minute) from the specified MIDI file.
      *
@@ -1,43 +1,167 @@
 package edu.sdccd.cisc191.template;
 
-import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * The {@code MusicPlaylist} class manages a playlist of songs using a custom linked list.
  * It supports adding, removing, and playing songs, as well as saving and loading the playlist
- * from a file.
+ * from a file. Each change is appended to a {@code PlaylistJournal} rather than rewriting the whole file.
+ * Journal writes are group committed in the background; call {@link #flush()} where a change must be on disk.
+ * A {@code SongSearchIndex} is kept up to date with the playlist so songs can be found by prefix or with typos.
+ * If a {@code SongPrefetcher} is set, the next songs are loaded in the background after each change.
  */
 public class MusicPlaylist {
     private MyLinkedList<String> playlist;
+    private final SongSearchIndex searchIndex = new SongSearchIndex();
+    private final PlaylistJournal journal;
+    private volatile SongPrefetcher prefetcher;
     private static final String FILE_NAME = "playlist.dat";
+    private static final int PREFETCH_DEPTH = 2;
 
     /**
      * Constructs a {@code MusicPlaylist} object and loads the playlist from a file if it exists.
      * If no existing playlist is found, a new playlist is started.
      */
     public MusicPlaylist() {
-        playlist = new MyLinkedList<>();
+        this(FILE_NAME);
+    }
+
+    /**
+     * Constructs a {@code MusicPlaylist} object backed by the specified file and loads the playlist from it
+     * if it exists. If no existing playlist is found, a new playlist is started.
+     *
+     * @param fileName the path of the playlist file
+     */
+    public MusicPlaylist(String fileName) {
+        journal = new PlaylistJournal(fileName);
         loadPlaylist();
     }
 
     /**
-     * Adds a song to the playlist and saves the updated playlist to a file.
+     * Adds a song to the playlist and records the change.
      *
      * @param song the song to add
      */
     public void addSong(String song) {
         playlist.add(song);
-        savePlaylist();
+        searchIndex.add(song);
+        savePlaylist(PlaylistJournal.ADD, song);
     }
 
     /**
-     * Removes a song from the playlist and saves the updated playlist to a file.
+     * Removes a song from the playlist and records the change.
      *
      * @param song the song to remove
      */
     public void removeSong(String song) {
-        playlist.remove(song);
-        savePlaylist();
+        if (playlist.contains(song)) {
+            playlist.remove(song);
+            searchIndex.remove(song);
+        }
+        savePlaylist(PlaylistJournal.REMOVE, song);
+    }
+
+    /**
+     * Adds several songs to the end of the playlist and records them as one journal record.
+     *
+     * @param songs the songs to add, in order
+     */
+    public void addAll(Collection<String> songs) {
+        batch(batch -> songs.forEach(batch::addSong));
+    }
+
+    /**
+     * Removes the first occurrence of each of several songs and records the removals as one journal record.
+     *
+     * @param songs the songs to remove
+     */
+    public void removeAll(Collection<String> songs) {
+        batch(batch -> songs.forEach(batch::removeSong));
+    }
+
+    /**
+     * Makes several changes as one transaction. The changes are collected while {@code edits} runs and are
+     * then applied and journaled together, so a crash never leaves only some of them saved. If {@code edits}
+     * throws, none of the changes are made.
+     *
+     * @param edits the changes to make
+     */
+    public void batch(Consumer<Batch> edits) {
+        Batch batch = new Batch();
+        edits.accept(batch);
+        if (batch.changes.size() > 0) {
+            for (int i = 0; i < batch.changes.size(); i++) {
+                applyChange(batch.changes.getOp(i), batch.changes.getSong(i));
+            }
+            journal.append(batch.changes);
+            journal.compactIfNeeded(playlist);
+            prefetchUpcoming();
+        }
+    }
+
+    /**
+     * Returns the songs that will be played next.
+     *
+     * @param count the maximum number of songs to return
+     * @return the first songs of the playlist in order
+     */
+    public List<String> getUpcoming(int count) {
+        List<String> upcoming = new ArrayList<>(count);
+        for (Iterator<String> songs = playlist.iterator(); songs.hasNext() && upcoming.size() < count; ) {
+            upcoming.add(songs.next());
+        }
+        return upcoming;
+    }
+
+    /**
+     * Sets the prefetcher that loads the next songs in the background, and passes it the current next songs.
+     *
+     * @param prefetcher the prefetcher to use, or {@code null} to stop prefetching
+     */
+    public void setPrefetcher(SongPrefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+        prefetchUpcoming();
+    }
+
+    /**
+     * Finds songs in the playlist by the start of their title, ignoring case and accents and allowing for typos.
+     *
+     * @param query the text to search for
+     * @param limit the maximum number of songs to return
+     * @return the matching songs, best first
+     */
+    public List<String> searchSongs(String query, int limit) {
+        return searchIndex.search(query, limit);
+    }
+
+    /**
+     * Finds the song in the playlist whose title matches the query, ignoring case and accents.
+     *
+     * @param query the title to look for
+     * @return the title as it appears in the playlist, or {@code null} if there is none
+     */
+    public String findSong(String query) {
+        return searchIndex.find(query);
+    }
+
+    /**
+     * Writes every recorded change to disk before returning.
+     */
+    public void flush() {
+        journal.flush();
+    }
+
+    /**
+     * Returns how many journal writes group commit has saved so far.
+     *
+     * @return the number of changes that did not need a write of their own
+     */
+    public long getWritesSaved() {
+        return journal.getWritesSaved();
     }
 
     /**
@@ -58,7 +182,12 @@ public class MusicPlaylist {
      * @return the next song in the playlist, or {@code null} if the playlist is empty
      */
     public String playNext() {
-        return playlist.pollFirst(); // Retrieves and removes the first song
+        String song = playlist.pollFirst(); // Retrieves and removes the first song
+        if (song != null) {
+            searchIndex.remove(song);
+            savePlaylist(PlaylistJournal.POLL, null);
+        }
+        return song;
     }
 
     /**
@@ -69,30 +198,68 @@ public class MusicPlaylist {
      */
     public String playPrevious(String lastPlayed) {
         playlist.add(lastPlayed); // Add the last played song back to the start
+        searchIndex.add(lastPlayed);
+        savePlaylist(PlaylistJournal.ADD, lastPlayed);
         return playlist.peekFirst(); // Peek at the first song
     }
 
     /**
-     * Saves the playlist to a file.
+     * Records a change in the journal and compacts the journal in the background once it grows large.
+     *
+     * @param op   the journal operation
+     * @param song the song the operation applies to, or {@code null}
+     */
+    private void savePlaylist(byte op, String song) {
+        journal.append(op, song);
+        journal.compactIfNeeded(playlist);
+        prefetchUpcoming();
+    }
+
+    /**
+     * Passes the next songs to the prefetcher, if one is set.
      */
-    private void savePlaylist() {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(FILE_NAME))) {
-            out.writeObject(playlist);
-        } catch (IOException e) {
-            System.err.println("Error saving playlist: " + e.getMessage());
+    private void prefetchUpcoming() {
+        SongPrefetcher current = prefetcher;
+        if (current != null) {
+            current.prefetch(getUpcoming(PREFETCH_DEPTH));
         }
     }
 
     /**
-     * Loads the playlist from a file. If the file does not exist, a new playlist is started.
+     * Loads the playlist from its snapshot and journal. If neither exists, a new playlist is started.
      */
     private void loadPlaylist() {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(FILE_NAME))) {
-            playlist = (MyLinkedList<String>) in.readObject();
-        } catch (FileNotFoundException e) {
-            System.out.println("No existing playlist found. Starting a new one.");
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading playlist: " + e.getMessage());
+        playlist = journal.recover();
+        playlist.forEach(searchIndex::add);
+    }
+
+    /**
+     * Applies one change to the playlist and the search index without journaling it.
+     *
+     * @param op   the journal operation
+     * @param song the song the operation applies to, or {@code null}
+     */
+    private void applyChange(byte op, String song) {
+        switch (op) {
+            case PlaylistJournal.ADD:
+                playlist.add(song);
+                searchIndex.add(song);
+                break;
+            case PlaylistJournal.REMOVE:
+                if (playlist.contains(song)) {
+                    playlist.remove(song);
+                    searchIndex.remove(song);
+                }
+                break;
+            case PlaylistJournal.CLEAR:
+                playlist.clear();
+                searchIndex.clear();
+                break;
+            case PlaylistJournal.POLL:
+                searchIndex.remove(playlist.pollFirst());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown playlist change: " + op);
         }
     }
 
@@ -106,10 +273,53 @@ public class MusicPlaylist {
     }
 
     /**
-     * Clears all songs from the playlist and saves the empty playlist to a file.
+     * Clears all songs from the playlist and records the change.
      */
     public void clearPlaylist() {
         playlist.clear();
-        savePlaylist();
+        searchIndex.clear();
+        savePlaylist(PlaylistJournal.CLEAR, null);
+    }
+
+    /**
+     * Writes any pending changes, waits for any background compaction to finish and closes the playlist files.
+     */
+    public void close() {
+        journal.close();
+    }
+
+    /**
+     * The {@code Batch} class collects the changes made in one call to {@link MusicPlaylist#batch(Consumer)}.
+     */
+    public class Batch {
+        private final PlaylistJournal.Batch changes = new PlaylistJournal.Batch();
+
+        private Batch() {
+        }
+
+        /**
+         * Adds a song to the end of the playlist when the batch is applied.
+         *
+         * @param song the song to add
+         */
+        public void addSong(String song) {
+            changes.add(PlaylistJournal.ADD, song);
+        }
+
+        /**
+         * Removes the first occurrence of a song when the batch is applied.
+         *
+         * @param song the song to remove
+         */
+        public void removeSong(String song) {
+            changes.add(PlaylistJournal.REMOVE, song);
+        }
+
+        /**
+         * Removes every song when the batch is applied.
+         */
+        public void clearPlaylist() {
+            changes.add(PlaylistJournal.CLEAR, null);
+        }
     }
 }
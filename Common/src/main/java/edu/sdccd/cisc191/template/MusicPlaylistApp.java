@@ -1,22 +1,32 @@
 package edu.sdccd.cisc191.template;
 
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Scanner;
 
 /**
  * The {@code MusicPlaylistApp} class provides a console-based application for managing a music playlist.
- * It allows users to add, browse, and remove songs, as well as play the next song in the playlist.
+ * It allows users to add, browse, search, and remove songs, as well as play the next song in the playlist.
  */
 public class MusicPlaylistApp {
 
-    private MusicPlaylist playlist;
+    private ConcurrentMusicPlaylist playlist;
     private Scanner scanner;
 
     /**
      * Constructs a {@code MusicPlaylistApp} object and initializes the music playlist and scanner.
      */
     public MusicPlaylistApp() {
-        playlist = new MusicPlaylist(); // Ensure this is properly initialized
+        this(new ConcurrentMusicPlaylist());
+    }
+
+    /**
+     * Constructs a {@code MusicPlaylistApp} object that manages a playlist shared with other threads.
+     *
+     * @param playlist the playlist to manage
+     */
+    public MusicPlaylistApp(ConcurrentMusicPlaylist playlist) {
+        this.playlist = playlist; // Ensure this is properly initialized
         scanner = new Scanner(System.in); // Ensure the scanner is properly initialized
     }
 
@@ -32,7 +42,8 @@ public class MusicPlaylistApp {
             System.out.println("2. Browse playlist");
             System.out.println("3. Remove a song");
             System.out.println("4. Play next song");
-            System.out.println("5. Exit");
+            System.out.println("5. Search playlist");
+            System.out.println("6. Exit");
 
             System.out.print("Choose an option: ");
             try {
@@ -53,14 +64,18 @@ public class MusicPlaylistApp {
                         playNextSong();
                         break;
                     case 5:
+                        searchPlaylist();
+                        break;
+                    case 6:
                         running = false;
+                        playlist.flush();
                         System.out.println("Exiting the playlist menu. Goodbye!");
                         break;
                     default:
                         System.out.println("Invalid option. Please try again.");
                 }
             } catch (InputMismatchException e) {
-                System.out.println("Invalid input. Please enter a number between 1 and 5.");
+                System.out.println("Invalid input. Please enter a number between 1 and 6.");
                 scanner.nextLine();  // Clear the invalid input
             }
         }
@@ -85,12 +100,47 @@ public class MusicPlaylistApp {
 
     /**
      * Prompts the user to enter the name of a song to remove from the playlist.
+     * The name does not need to match in case, and close matches are suggested if nothing matches.
      */
     private void removeSong() {
         System.out.print("Enter the name of the song to remove: ");
-        String song = scanner.nextLine();
-        playlist.removeSong(song);
-        System.out.println("Song removed: " + song);
+        String query = scanner.nextLine();
+        String song = playlist.findSong(query);
+        if (song != null && playlist.removeSong(song)) {
+            System.out.println("Song removed: " + song);
+        } else {
+            System.out.println("Song not found: " + query);
+            printMatches(playlist.searchSongs(query, 5), "Did you mean:");
+        }
+    }
+
+    /**
+     * Prompts the user for part of a title and lists the matching songs in the playlist.
+     */
+    private void searchPlaylist() {
+        System.out.print("Enter the start of a song title: ");
+        String query = scanner.nextLine();
+        if (!printMatches(playlist.searchSongs(query, 10), "Matching songs:")) {
+            System.out.println("No songs match: " + query);
+        }
+    }
+
+    /**
+     * Prints a heading followed by the specified songs, if there are any.
+     *
+     * @param songs   the songs to print
+     * @param heading the heading to print before them
+     * @return {@code true} if any songs were printed, {@code false} otherwise
+     */
+    private boolean printMatches(List<String> songs, String heading) {
+        if (songs.isEmpty()) {
+            return false;
+        }
+        System.out.println(heading);
+        for (String song : songs) {
+            System.out.println("  " + song);
+        }
+        return true;
     }
 
     /**
@@ -1,25 +1,80 @@
 package edu.sdccd.cisc191.template;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * The {@code MyLinkedList} class implements a singly linked list that can store elements of any type.
+ * The {@code MyLinkedList} class implements a doubly linked list that can store elements of any type.
  * It supports basic operations such as adding, removing, and retrieving elements, as well as clearing the list.
+ * The list keeps a reference to its tail so appending is O(1). An optional hash index from each element to
+ * the nodes holding it makes removing an element by value O(1) as well.
+ *
+ * <p>The list is {@link Iterable} and can be streamed, sequentially or in parallel. Its spliterator hands out
+ * batches of nodes copied into arrays of growing size, so a parallel stream splits a long list without first
+ * copying all of it. Iterators and spliterators are fail-fast: changing the list other than through the
+ * iterator itself makes them throw {@link ConcurrentModificationException}.</p>
  *
  * @param <T> the type of elements in this list
  */
-public class MyLinkedList<T> implements Serializable {
+public class MyLinkedList<T> implements Iterable<T>, Serializable {
     private static final long serialVersionUID = 1L; // Add a serialVersionUID for version control
 
-    private Node<T> head;
+    /**
+     * The serialized form is the element count and the index flag followed by the elements in order.
+     * The {@code head} field is kept so lists written by the old singly linked version can still be read.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("head", Node.class),
+            new ObjectStreamField("size", int.class),
+            new ObjectStreamField("indexed", boolean.class)
+    };
+
+    private transient Node<T> head;
+    private transient Node<T> tail;
+    private transient Map<T, ArrayDeque<Node<T>>> index;
     private int size;
+    private transient int modCount;
 
     /**
-     * Constructs an empty {@code MyLinkedList}.
+     * Constructs an empty {@code MyLinkedList} without a hash index.
      */
     public MyLinkedList() {
+        this(false);
+    }
+
+    /**
+     * Constructs an empty {@code MyLinkedList}.
+     *
+     * @param indexed whether to keep a hash index so elements can be removed by value in O(1)
+     */
+    public MyLinkedList(boolean indexed) {
         head = null;
+        tail = null;
         size = 0;
+        index = indexed ? new HashMap<>() : null;
+    }
+
+    /**
+     * Returns whether this list keeps a hash index of its elements.
+     *
+     * @return {@code true} if removal by value is O(1), {@code false} if it is a linear scan
+     */
+    public boolean isIndexed() {
+        return index != null;
     }
 
     /**
@@ -27,7 +82,12 @@ public class MyLinkedList<T> implements Serializable {
      */
     public void clear() {
         head = null;
+        tail = null;
         size = 0;
+        modCount++;
+        if (index != null) {
+            index.clear();
+        }
     }
 
     /**
@@ -37,16 +97,18 @@ public class MyLinkedList<T> implements Serializable {
      */
     public void add(T data) {
         Node<T> newNode = new Node<>(data);
-        if (head == null) {
+        if (tail == null) {
             head = newNode;
         } else {
-            Node<T> current = head;
-            while (current.next != null) {
-                current = current.next;
-            }
-            current.next = newNode;
+            tail.next = newNode;
+            newNode.prev = tail;
         }
+        tail = newNode;
         size++;
+        modCount++;
+        if (index != null) {
+            index.computeIfAbsent(data, k -> new ArrayDeque<>(1)).addLast(newNode);
+        }
     }
 
     /**
@@ -55,23 +117,20 @@ public class MyLinkedList<T> implements Serializable {
      * @param data the element to be removed
      */
     public void remove(T data) {
-        if (head == null) return;
-
-        if (head.data.equals(data)) {
-            head = head.next;
-            size--;
-            return;
-        }
-
-        Node<T> current = head;
-        while (current.next != null && !current.next.data.equals(data)) {
-            current = current.next;
+        Node<T> node = index != null ? firstIndexed(data) : find(data);
+        if (node != null) {
+            unlink(node);
         }
+    }
 
-        if (current.next != null) {
-            current.next = current.next.next;
-            size--;
-        }
+    /**
+     * Checks whether the linked list contains the specified element.
+     *
+     * @param data the element to look for
+     * @return {@code true} if the element is in the list, {@code false} otherwise
+     */
+    public boolean contains(T data) {
+        return index != null ? index.containsKey(data) : find(data) != null;
     }
 
     /**
@@ -83,8 +142,7 @@ public class MyLinkedList<T> implements Serializable {
         if (head == null) return null;
 
         T data = head.data;
-        head = head.next;
-        size--;
+        unlink(head);
         return data;
     }
 
@@ -97,6 +155,69 @@ public class MyLinkedList<T> implements Serializable {
         return (head != null) ? head.data : null;
     }
 
+    /**
+     * Retrieves, but does not remove, the last element of the linked list.
+     *
+     * @return the last element of the linked list, or {@code null} if the list is empty
+     */
+    public T peekLast() {
+        return (tail != null) ? tail.data : null;
+    }
+
+    /**
+     * Performs the given action for each element of the linked list in order.
+     *
+     * @param action the action to perform
+     */
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        int expectedModCount = modCount;
+        for (Node<T> current = head; current != null; current = current.next) {
+            action.accept(current.data);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns an iterator over the elements of the linked list in order.
+     *
+     * @return an iterator that supports {@link Iterator#remove()}
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Itr();
+    }
+
+    /**
+     * Returns a spliterator over the elements of the linked list.
+     *
+     * @return an ordered, sized spliterator
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new NodeSpliterator<>(this);
+    }
+
+    /**
+     * Returns a sequential stream over the elements of the linked list.
+     *
+     * @return a stream of the elements in order
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream over the elements of the linked list.
+     *
+     * @return a possibly parallel stream of the elements
+     */
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
     /**
      * Displays all elements in the linked list.
      */
@@ -118,7 +239,253 @@ public class MyLinkedList<T> implements Serializable {
     }
 
     /**
-     * The {@code Node} class represents a node in a singly linked list, storing a reference to its data and the next node.
+     * Finds the first node holding the specified element by walking the list.
+     *
+     * @param data the element to look for
+     * @return the first matching node, or {@code null} if there is none
+     */
+    private Node<T> find(T data) {
+        Node<T> current = head;
+        while (current != null && !current.data.equals(data)) {
+            current = current.next;
+        }
+        return current;
+    }
+
+    /**
+     * Finds the first node holding the specified element using the hash index.
+     * Nodes are only ever appended, so the oldest node in an element's bucket is the first occurrence.
+     *
+     * @param data the element to look for
+     * @return the first matching node, or {@code null} if there is none
+     */
+    private Node<T> firstIndexed(T data) {
+        ArrayDeque<Node<T>> nodes = index.get(data);
+        return nodes != null ? nodes.peekFirst() : null;
+    }
+
+    /**
+     * Unlinks a node from the list and from the hash index.
+     *
+     * @param node the node to remove
+     */
+    private void unlink(Node<T> node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        size--;
+        modCount++;
+
+        if (index != null) {
+            ArrayDeque<Node<T>> nodes = index.get(node.data);
+            if (nodes != null) {
+                nodes.remove(node); // the node is the oldest entry, so this stops at the first element
+                if (nodes.isEmpty()) {
+                    index.remove(node.data);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the list as its size followed by each element, so long lists do not overflow the stack the way
+     * a recursively serialized node chain does.
+     *
+     * @param out the stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("head", null);
+        fields.put("size", size);
+        fields.put("indexed", index != null);
+        out.writeFields();
+        for (Node<T> current = head; current != null; current = current.next) {
+            out.writeObject(current.data);
+        }
+    }
+
+    /**
+     * Reads a list written by {@link #writeObject(ObjectOutputStream)} or by the old singly linked version,
+     * which serialized its node chain directly.
+     *
+     * @param in the stream to read from
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if an element class cannot be found
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Node<T> oldHead = (Node<T>) fields.get("head", null);
+        int count = fields.get("size", 0);
+        boolean indexed = fields.get("indexed", false);
+
+        index = indexed ? new HashMap<>() : null;
+        head = null;
+        tail = null;
+        size = 0;
+        if (oldHead != null) {
+            for (Node<T> current = oldHead; current != null; current = current.next) {
+                add(current.data);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                add((T) in.readObject());
+            }
+        }
+    }
+
+    /**
+     * The {@code Itr} class iterates over the list and can remove the element it returned last.
+     */
+    private class Itr implements Iterator<T> {
+        private Node<T> next = head;
+        private Node<T> lastReturned;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            checkForComodification();
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = next.next;
+            return lastReturned.data;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            unlink(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * The {@code NodeSpliterator} class traverses the list for streams. Each split copies the next batch of
+     * elements into an array, one batch larger than the last, and leaves the rest of the list to this
+     * spliterator. This is the same policy {@code java.util.LinkedList} uses.
+     *
+     * @param <T> the type of elements in the list
+     */
+    private static final class NodeSpliterator<T> implements Spliterator<T> {
+        private static final int BATCH_UNIT = 1 << 10;
+        private static final int MAX_BATCH = 1 << 25;
+
+        private final MyLinkedList<T> list;
+        private Node<T> current;
+        private int remaining = -1; // bound on first use, so the list can change until traversal starts
+        private int expectedModCount;
+        private int batch;
+
+        NodeSpliterator(MyLinkedList<T> list) {
+            this.list = list;
+        }
+
+        private int bind() {
+            if (remaining < 0) {
+                current = list.head;
+                remaining = list.size;
+                expectedModCount = list.modCount;
+            }
+            return remaining;
+        }
+
+        @Override
+        public long estimateSize() {
+            return bind();
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int available = bind();
+            if (available <= 1 || current == null) {
+                return null;
+            }
+            int n = Math.min(Math.min(batch + BATCH_UNIT, MAX_BATCH), available);
+            Object[] items = new Object[n];
+            int j = 0;
+            Node<T> node = current;
+            while (j < n && node != null) {
+                items[j++] = node.data;
+                node = node.next;
+            }
+            current = node;
+            remaining -= j;
+            batch = j;
+            return Spliterators.spliterator(items, 0, j, ORDERED);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int n = bind();
+            Node<T> node = current;
+            current = null;
+            remaining = 0;
+            while (n-- > 0 && node != null) {
+                action.accept(node.data);
+                node = node.next;
+            }
+            if (list.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (bind() > 0 && current != null) {
+                T data = current.data;
+                current = current.next;
+                remaining--;
+                action.accept(data);
+                if (list.modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+    }
+
+    /**
+     * The {@code Node} class represents a node in a doubly linked list, storing a reference to its data and
+     * the previous and next nodes.
      *
      * @param <T> the type of element in this node
      */
@@ -127,6 +494,7 @@ public class MyLinkedList<T> implements Serializable {
 
         T data;
         Node<T> next;
+        transient Node<T> prev;
 
         /**
          * Constructs a {@code Node} with the specified data.
@@ -136,6 +504,7 @@ public class MyLinkedList<T> implements Serializable {
         Node(T data) {
             this.data = data;
             this.next = null;
+            this.prev = null;
         }
     }
 }
@@ -0,0 +1,216 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * The {@code PlaylistFile} class reads and writes the binary playlist format.
+ *
+ * <p>A playlist file starts with a 20-byte header: the magic number {@code "JHPL"}, the format version, the
+ * number of songs and the journal generation the file contains. An offset index of one {@code int} per song
+ * follows, and then a string table of length-prefixed UTF-8 titles. Offsets are relative to the start of the
+ * string table. All numbers are big-endian.</p>
+ *
+ * <p>Files are opened through a memory-mapped {@link FileChannel}. Opening reads only the header, and a
+ * title is decoded only when {@link #get(int)} asks for it, so even very large playlists open immediately.
+ * {@link #close()} unmaps the file at once rather than whenever the buffer is garbage collected, since some
+ * systems, Windows among them, refuse to replace a file while it is mapped.</p>
+ */
+public class PlaylistFile implements Closeable {
+    /**
+     * The current format version.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x4A48504C; // "JHPL"
+    private static final int HEADER_SIZE = 20;
+
+    private final MappedByteBuffer buffer;
+    private boolean closed;
+    private final int count;
+    private final long generation;
+    private final int tableStart;
+
+    private PlaylistFile(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a playlist file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported playlist file version: " + version);
+        }
+        this.count = buffer.getInt(8);
+        this.generation = buffer.getLong(12);
+        if (count < 0 || count > (buffer.capacity() - HEADER_SIZE) / 4) {
+            throw new IOException("Corrupt playlist file");
+        }
+        this.tableStart = HEADER_SIZE + 4 * count;
+    }
+
+    /**
+     * Opens a playlist file by mapping it into memory.
+     *
+     * @param path the file to open
+     * @return the opened playlist file
+     * @throws IOException if the file cannot be read or is not a playlist file
+     */
+    public static PlaylistFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return new PlaylistFile(buffer);
+        }
+    }
+
+    /**
+     * Checks whether a file starts with the playlist file magic number.
+     *
+     * @param path the file to check
+     * @return {@code true} if the file is in the binary playlist format, {@code false} otherwise
+     */
+    public static boolean isPlaylistFile(Path path) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes songs to a playlist file and forces the file to disk.
+     *
+     * @param path       the file to write
+     * @param songs      the songs in playlist order
+     * @param generation the newest journal generation contained in the file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, Collection<String> songs, long generation) throws IOException {
+        int[] offsets = new int[songs.size()];
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream tableOut = new DataOutputStream(table);
+        int i = 0;
+        for (String song : songs) {
+            offsets[i++] = tableOut.size();
+            byte[] bytes = song.getBytes(StandardCharsets.UTF_8);
+            tableOut.writeInt(bytes.length);
+            tableOut.write(bytes);
+        }
+
+        try (FileOutputStream file = new FileOutputStream(path.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(offsets.length);
+            out.writeLong(generation);
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            table.writeTo(out);
+            out.flush();
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * Returns the number of songs in the file.
+     *
+     * @return the song count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the newest journal generation contained in the file.
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Decodes the song at the specified position.
+     *
+     * @param index the position of the song, starting at 0
+     * @return the song title
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws IllegalStateException     if the entry points outside the file
+     */
+    public String get(int index) {
+        if (closed) {
+            throw new IllegalStateException("Playlist file closed");
+        }
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        int position = tableStart + buffer.getInt(HEADER_SIZE + 4 * index);
+        if (position < tableStart || position + 4 > buffer.capacity()) {
+            throw new IllegalStateException("Corrupt playlist entry " + index);
+        }
+        int length = buffer.getInt(position);
+        if (length < 0 || position + 4 + length > buffer.capacity()) {
+            throw new IllegalStateException("Corrupt playlist entry " + index);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer entry = buffer.duplicate();
+        ((Buffer) entry).position(position + 4); // cast keeps the Java 8 method signature
+        entry.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Unmaps the file. Titles cannot be read afterwards. The file must not be read by another thread while it
+     * is being closed.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            unmap(buffer);
+        }
+    }
+
+    /**
+     * Releases a mapping without waiting for the garbage collector, through {@code Unsafe.invokeCleaner} on
+     * Java 9 and later or the buffer's cleaner on Java 8. If neither is available the mapping is left to the
+     * garbage collector.
+     *
+     * @param buffer the mapped buffer, which must not be used afterwards
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (NoSuchMethodException e) {
+            // Java 8, where the buffer has its own cleaner
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+}
@@ -0,0 +1,717 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code PlaylistJournal} class persists a playlist as a snapshot plus a write-ahead journal.
+ * Every mutation appends one small record to the journal instead of rewriting the whole playlist. Loading
+ * reads the snapshot and replays the journal on top of it. Once the journal grows past a threshold, a new
+ * journal is started and the snapshot is rewritten in the background, after which older journals are deleted.
+ *
+ * <p>Journals are named {@code <snapshot>.<generation>.journal}. The snapshot records the newest generation it
+ * contains, so a crash at any point during compaction never replays a record twice. Each record carries a
+ * length and a CRC32, and replay stops at the first record that is torn or corrupt.</p>
+ *
+ * <p>Records are group committed. Appended records are buffered and written with a single write and fsync
+ * once a batch of them has built up or shortly after the first one arrives, whichever comes first.
+ * {@link #flush()} writes and forces everything appended so far. A {@link Batch} of mutations is written as a
+ * single {@link #BATCH} record, so it is either replayed completely or not at all.</p>
+ */
+public class PlaylistJournal implements Closeable {
+    /**
+     * Appends a song to the end of the playlist.
+     */
+    public static final byte ADD = 1;
+    /**
+     * Removes the first occurrence of a song.
+     */
+    public static final byte REMOVE = 2;
+    /**
+     * Removes every song.
+     */
+    public static final byte CLEAR = 3;
+    /**
+     * Removes the first song.
+     */
+    public static final byte POLL = 4;
+    /**
+     * Applies a {@link Batch} of the other operations atomically.
+     */
+    public static final byte BATCH = 5;
+
+    /**
+     * The minimum number of journal records before a compaction is started.
+     */
+    public static final int COMPACTION_THRESHOLD = 1000;
+
+    /**
+     * The default longest time, in milliseconds, an appended record waits before it is written.
+     */
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50;
+
+    /**
+     * The default number of buffered mutations that triggers an immediate write.
+     */
+    public static final int DEFAULT_FLUSH_BATCH_SIZE = 256;
+
+    private static final int JOURNAL_MAGIC = 0x4A484A4C; // "JHJL"
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_OVERHEAD = 9; // length, op and CRC
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final Path snapshotPath;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "playlist-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "playlist-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final CRC32 crc = new CRC32();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final long flushIntervalMillis;
+    private final int flushBatchSize;
+    private ScheduledFuture<?> scheduledFlush;
+    private int pendingMutations;
+    private FileChannel journal;
+    private long generation;
+    private int records;
+    private long mutations;
+    private long writes;
+
+    /**
+     * Constructs a {@code PlaylistJournal} for the specified snapshot file with the default flush policy.
+     * Call {@link #recover()} before appending.
+     *
+     * @param snapshotFile the path of the playlist snapshot file
+     */
+    public PlaylistJournal(String snapshotFile) {
+        this(snapshotFile, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_FLUSH_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a {@code PlaylistJournal} for the specified snapshot file.
+     * Call {@link #recover()} before appending.
+     *
+     * @param snapshotFile        the path of the playlist snapshot file
+     * @param flushIntervalMillis the longest time an appended record waits before it is written
+     * @param flushBatchSize      the number of buffered mutations that triggers an immediate write
+     */
+    public PlaylistJournal(String snapshotFile, long flushIntervalMillis, int flushBatchSize) {
+        this.snapshotPath = Paths.get(snapshotFile).toAbsolutePath();
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.flushBatchSize = Math.max(1, flushBatchSize);
+    }
+
+    /**
+     * Loads the snapshot, replays every newer journal on top of it and opens the newest journal for appending.
+     * A torn or corrupt record at the end of the newest journal is cut off.
+     *
+     * @return the recovered playlist
+     */
+    public synchronized MyLinkedList<String> recover() {
+        MyLinkedList<String> playlist = new MyLinkedList<>(true);
+        long snapshotGeneration = readSnapshot(playlist);
+
+        TreeMap<Long, Path> journals = findJournals();
+        generation = snapshotGeneration + 1;
+        for (Map.Entry<Long, Path> entry : journals.entrySet()) {
+            if (entry.getKey() <= snapshotGeneration) {
+                deleteQuietly(entry.getValue());
+                continue;
+            }
+            long validLength = replay(entry.getValue(), playlist);
+            if (entry.getKey().equals(journals.lastKey())) {
+                generation = entry.getKey();
+                truncate(entry.getValue(), validLength);
+            }
+        }
+        if (journals.isEmpty() && !Files.exists(snapshotPath)) {
+            System.out.println("No existing playlist found. Starting a new one.");
+        }
+
+        try {
+            openJournal(generation);
+        } catch (IOException e) {
+            System.err.println("Error opening playlist journal: " + e.getMessage());
+        }
+        return playlist;
+    }
+
+    /**
+     * Appends a record to the journal.
+     *
+     * @param op   the operation ({@link #ADD}, {@link #REMOVE}, {@link #CLEAR} or {@link #POLL})
+     * @param song the song the operation applies to, or {@code null} for operations without one
+     */
+    public synchronized void append(byte op, String song) {
+        byte[] payload = song == null ? new byte[0] : song.getBytes(StandardCharsets.UTF_8);
+        appendRecord(op, payload, 1);
+    }
+
+    /**
+     * Appends a batch of mutations to the journal as a single record.
+     *
+     * @param batch the mutations to append
+     */
+    public synchronized void append(Batch batch) {
+        if (batch.size() > 0) {
+            appendRecord(BATCH, batch.encode(), batch.size());
+        }
+    }
+
+    /**
+     * Writes every buffered record to the journal and forces it to disk.
+     */
+    public synchronized void flush() {
+        if (pending.size() == 0 || journal == null) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        pending.reset();
+        pendingMutations = 0;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        try {
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+            journal.force(false);
+            writes++;
+        } catch (IOException e) {
+            System.err.println("Error saving playlist: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a background compaction if the journal has grown past the threshold. The threshold scales with
+     * the playlist size, so the cost of rewriting the snapshot stays O(1) per mutation on average.
+     *
+     * @param playlist the current playlist contents
+     */
+    public synchronized void compactIfNeeded(MyLinkedList<String> playlist) {
+        if (records >= Math.max(COMPACTION_THRESHOLD, playlist.size()) && compacting.compareAndSet(false, true)) {
+            compact(playlist);
+        }
+    }
+
+    /**
+     * Writes the complete playlist as the new snapshot and starts an empty journal. Used by owners that
+     * persist whole snapshots instead of appending individual mutations.
+     *
+     * @param songs the songs in playlist order
+     */
+    public synchronized void checkpoint(Collection<String> songs) {
+        if (journal == null) {
+            return;
+        }
+        flush();
+        long snapshotGeneration = generation;
+        try {
+            closeJournal();
+            openJournal(generation + 1);
+            writeSnapshot(songs, snapshotGeneration);
+            for (Map.Entry<Long, Path> entry : findJournals().headMap(snapshotGeneration, true).entrySet()) {
+                deleteQuietly(entry.getValue());
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving playlist: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of mutations in the current journal.
+     *
+     * @return the mutation count since the last compaction
+     */
+    public synchronized int getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Returns the number of mutations appended since the journal was opened.
+     *
+     * @return the mutation count
+     */
+    public synchronized long getMutationCount() {
+        return mutations;
+    }
+
+    /**
+     * Returns the number of writes, each followed by an fsync, made to the journal since it was opened.
+     *
+     * @return the write count
+     */
+    public synchronized long getWriteCount() {
+        return writes;
+    }
+
+    /**
+     * Returns how many writes group commit has saved compared with writing every mutation on its own.
+     *
+     * @return the mutation count minus the write count
+     */
+    public synchronized long getWritesSaved() {
+        return mutations - writes - pendingMutations;
+    }
+
+    /**
+     * Writes any buffered records, waits for any running compaction and closes the journal.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        flusher.shutdownNow();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeJournal();
+    }
+
+    /**
+     * Buffers a record and writes the buffer once enough mutations have built up. Otherwise a write is
+     * scheduled so no record waits longer than the flush interval.
+     *
+     * @param op        the operation
+     * @param payload   the encoded operand
+     * @param mutations the number of mutations the record holds
+     */
+    private void appendRecord(byte op, byte[] payload, int mutations) {
+        if (journal == null) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.length);
+        record.putInt(payload.length);
+        record.put(op);
+        record.put(payload);
+        crc.reset();
+        crc.update(record.array(), 4, 1 + payload.length);
+        record.putInt((int) crc.getValue());
+        pending.write(record.array(), 0, record.capacity());
+        records += mutations;
+        pendingMutations += mutations;
+        this.mutations += mutations;
+
+        if (pendingMutations >= flushBatchSize) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = flusher.schedule(this::flush, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Switches to a new journal generation and rewrites the snapshot on the compactor thread.
+     *
+     * @param playlist the current playlist contents
+     */
+    private void compact(MyLinkedList<String> playlist) {
+        List<String> songs = new ArrayList<>(playlist.size());
+        playlist.forEach(songs::add);
+        long snapshotGeneration = generation;
+        flush();
+        try {
+            closeJournal();
+            openJournal(generation + 1);
+        } catch (IOException e) {
+            System.err.println("Error rotating playlist journal: " + e.getMessage());
+            compacting.set(false);
+            return;
+        }
+        compactor.execute(() -> {
+            try {
+                writeSnapshot(songs, snapshotGeneration);
+                for (Map.Entry<Long, Path> entry : findJournals().headMap(snapshotGeneration, true).entrySet()) {
+                    deleteQuietly(entry.getValue());
+                }
+            } catch (IOException e) {
+                System.err.println("Error compacting playlist: " + e.getMessage());
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    /**
+     * Writes a snapshot to a temporary file, forces it to disk and moves it over the old snapshot.
+     *
+     * @param songs      the songs to write
+     * @param generation the newest journal generation contained in the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    private void writeSnapshot(Collection<String> songs, long generation) throws IOException {
+        Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        PlaylistFile.write(temp, songs, generation);
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshot into the playlist. A snapshot in the old Java serialization format is migrated to
+     * the binary {@code PlaylistFile} format the first time it is read.
+     *
+     * @param playlist the playlist to fill
+     * @return the newest journal generation contained in the snapshot
+     */
+    private long readSnapshot(MyLinkedList<String> playlist) {
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+        if (!PlaylistFile.isPlaylistFile(snapshotPath)) {
+            return migrateSerializedSnapshot(playlist);
+        }
+        // Closed before returning, so the mapping is gone before compaction replaces the snapshot
+        try (PlaylistFile file = PlaylistFile.open(snapshotPath)) {
+            for (int i = 0; i < file.size(); i++) {
+                playlist.add(file.get(i));
+            }
+            return file.getGeneration();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading playlist: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Reads a snapshot written with {@code ObjectOutputStream} and rewrites it in the binary format.
+     * Snapshots written before journaling was added have no generation and are treated as generation 0.
+     *
+     * @param playlist the playlist to fill
+     * @return the newest journal generation contained in the snapshot
+     */
+    @SuppressWarnings("unchecked")
+    private long migrateSerializedSnapshot(MyLinkedList<String> playlist) {
+        long snapshotGeneration;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshotPath.toFile())))) {
+            MyLinkedList<String> saved = (MyLinkedList<String>) in.readObject();
+            saved.forEach(playlist::add);
+            try {
+                snapshotGeneration = in.readLong();
+            } catch (EOFException e) {
+                snapshotGeneration = 0;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Error loading playlist: " + e.getMessage());
+            return 0;
+        }
+
+        List<String> songs = new ArrayList<>(playlist.size());
+        playlist.forEach(songs::add);
+        try {
+            writeSnapshot(songs, snapshotGeneration);
+            System.out.println("Migrated playlist to the binary format.");
+        } catch (IOException e) {
+            System.err.println("Error migrating playlist: " + e.getMessage());
+        }
+        return snapshotGeneration;
+    }
+
+    /**
+     * Replays the records of one journal onto the playlist, stopping at the first torn or corrupt record.
+     *
+     * @param path     the journal to replay
+     * @param playlist the playlist to apply the records to
+     * @return the length of the valid prefix of the journal
+     */
+    private long replay(Path path, MyLinkedList<String> playlist) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != JOURNAL_MAGIC) {
+                return 0;
+            }
+            in.readLong();
+            long validLength = HEADER_SIZE;
+            long fileSize = Files.size(path);
+            CRC32 check = new CRC32();
+            while (true) {
+                int length;
+                byte op;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    if (length < 0 || length > fileSize) {
+                        break;
+                    }
+                    op = in.readByte();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    int expected = in.readInt();
+                    check.reset();
+                    check.update(op);
+                    check.update(payload, 0, length);
+                    if ((int) check.getValue() != expected) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                if (op == BATCH) {
+                    Batch batch = Batch.decode(payload);
+                    if (batch == null) {
+                        break;
+                    }
+                    batch.applyTo(playlist);
+                } else {
+                    apply(op, new String(payload, StandardCharsets.UTF_8), playlist);
+                }
+                validLength += RECORD_OVERHEAD + length;
+            }
+            return validLength;
+        } catch (IOException e) {
+            System.err.println("Error loading playlist journal: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Applies one journal record to the playlist.
+     *
+     * @param op       the operation
+     * @param song     the song the operation applies to
+     * @param playlist the playlist to change
+     */
+    static void apply(byte op, String song, MyLinkedList<String> playlist) {
+        switch (op) {
+            case ADD:
+                playlist.add(song);
+                break;
+            case REMOVE:
+                playlist.remove(song);
+                break;
+            case CLEAR:
+                playlist.clear();
+                break;
+            case POLL:
+                playlist.pollFirst();
+                break;
+            default:
+                System.err.println("Unknown playlist journal record: " + op);
+        }
+    }
+
+    /**
+     * Opens a journal for appending, writing its header if it is new.
+     *
+     * @param journalGeneration the generation of the journal
+     * @throws IOException if the journal cannot be opened
+     */
+    private void openJournal(long journalGeneration) throws IOException {
+        Path path = journalPath(journalGeneration);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(JOURNAL_MAGIC).putLong(journalGeneration);
+            ((Buffer) header).flip();
+            channel.truncate(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+        channel.position(channel.size());
+        journal = channel;
+        generation = journalGeneration;
+        records = 0;
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing playlist journal: " + e.getMessage());
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Cuts a journal back to its valid prefix.
+     *
+     * @param path   the journal to truncate
+     * @param length the length of the valid prefix
+     */
+    private void truncate(Path path, long length) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (length < HEADER_SIZE) {
+                channel.truncate(0); // rewritten with a fresh header when opened
+            } else if (channel.size() > length) {
+                System.err.println("Discarding torn playlist journal record in " + path.getFileName());
+                channel.truncate(length);
+            }
+        } catch (IOException e) {
+            System.err.println("Error repairing playlist journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the journals that belong to the snapshot, ordered by generation.
+     *
+     * @return the journals keyed by generation
+     */
+    private TreeMap<Long, Path> findJournals() {
+        TreeMap<Long, Path> journals = new TreeMap<>();
+        Path directory = snapshotPath.getParent();
+        String prefix = snapshotPath.getFileName() + ".";
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + JOURNAL_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                String number = name.substring(prefix.length(), name.length() - JOURNAL_SUFFIX.length());
+                try {
+                    journals.put(Long.parseLong(number), path);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error listing playlist journals: " + e.getMessage());
+        }
+        return journals;
+    }
+
+    private Path journalPath(long journalGeneration) {
+        return snapshotPath.resolveSibling(snapshotPath.getFileName() + "." + journalGeneration + JOURNAL_SUFFIX);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Error deleting " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The {@code Batch} class collects mutations that are journaled as one atomic record.
+     */
+    public static class Batch {
+        private byte[] ops = new byte[16];
+        private final List<String> songs = new ArrayList<>();
+
+        /**
+         * Adds a mutation to the batch.
+         *
+         * @param op   the operation ({@link #ADD}, {@link #REMOVE}, {@link #CLEAR} or {@link #POLL})
+         * @param song the song the operation applies to, or {@code null} for operations without one
+         */
+        public void add(byte op, String song) {
+            if (op == BATCH) {
+                throw new IllegalArgumentException("Batches cannot be nested");
+            }
+            if (songs.size() == ops.length) {
+                ops = Arrays.copyOf(ops, ops.length * 2);
+            }
+            ops[songs.size()] = op;
+            songs.add(song);
+        }
+
+        /**
+         * Returns the number of mutations in the batch.
+         *
+         * @return the mutation count
+         */
+        public int size() {
+            return songs.size();
+        }
+
+        /**
+         * Returns the operation of a mutation in the batch.
+         *
+         * @param i the position of the mutation, starting at 0
+         * @return the operation
+         */
+        public byte getOp(int i) {
+            return ops[i];
+        }
+
+        /**
+         * Returns the song of a mutation in the batch.
+         *
+         * @param i the position of the mutation, starting at 0
+         * @return the song the operation applies to, or {@code null} for operations without one
+         */
+        public String getSong(int i) {
+            return songs.get(i);
+        }
+
+        /**
+         * Applies every mutation in the batch to a playlist in order.
+         *
+         * @param playlist the playlist to change
+         */
+        public void applyTo(MyLinkedList<String> playlist) {
+            for (int i = 0; i < songs.size(); i++) {
+                apply(ops[i], songs.get(i), playlist);
+            }
+        }
+
+        /**
+         * Encodes the batch as a sequence of op byte, payload length and UTF-8 payload.
+         *
+         * @return the encoded batch
+         */
+        byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                for (int i = 0; i < songs.size(); i++) {
+                    String song = songs.get(i);
+                    byte[] payload = song == null ? new byte[0] : song.getBytes(StandardCharsets.UTF_8);
+                    out.writeByte(ops[i]);
+                    out.writeInt(payload.length);
+                    out.write(payload);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // not thrown by an in-memory stream
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Decodes a batch written by {@link #encode()}.
+         *
+         * @param payload the encoded batch
+         * @return the decoded batch, or {@code null} if the payload is malformed
+         */
+        static Batch decode(byte[] payload) {
+            Batch batch = new Batch();
+            ByteBuffer in = ByteBuffer.wrap(payload);
+            while (in.hasRemaining()) {
+                if (in.remaining() < 5) {
+                    return null;
+                }
+                byte op = in.get();
+                int length = in.getInt();
+                if (op == BATCH || length < 0 || length > in.remaining()) {
+                    return null;
+                }
+                batch.add(op, new String(payload, in.position(), length, StandardCharsets.UTF_8));
+                ((Buffer) in).position(in.position() + length);
+            }
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package edu.sdccd.cisc191.template;
+
+import javax.sound.midi.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The {@code SongAnalysis} class holds the statistics the song catalog shows for one MIDI file: how many notes
+ * it has, how long it is, its tempo, and the densest stretch of notes, from which a difficulty is derived.
+ */
+public class SongAnalysis {
+    /**
+     * The length, in seconds, of the sliding window used to find the densest stretch of notes.
+     */
+    public static final double WINDOW_SECONDS = 2.0;
+
+    /**
+     * Orders songs by title.
+     */
+    public static final Comparator<SongAnalysis> BY_TITLE = Comparator.comparing(SongAnalysis::getSongName);
+    /**
+     * Orders songs from easiest to hardest.
+     */
+    public static final Comparator<SongAnalysis> BY_DIFFICULTY =
+            Comparator.comparingDouble(SongAnalysis::getPeakNotesPerSecond).thenComparing(BY_TITLE);
+    /**
+     * Orders songs from shortest to longest.
+     */
+    public static final Comparator<SongAnalysis> BY_DURATION =
+            Comparator.comparingDouble(SongAnalysis::getDurationSeconds).thenComparing(BY_TITLE);
+    /**
+     * Orders songs from slowest to fastest tempo.
+     */
+    public static final Comparator<SongAnalysis> BY_BPM =
+            Comparator.comparingDouble(SongAnalysis::getBpm).thenComparing(BY_TITLE);
+
+    /**
+     * The difficulty levels of the catalog, each covering a range of peak notes per second.
+     */
+    public enum Difficulty {
+        EASY("Easy", 0),
+        MEDIUM("Medium", 3),
+        HARD("Hard", 6),
+        EXPERT("Expert", 10);
+
+        private final String label;
+        private final double minPeakNotesPerSecond;
+
+        Difficulty(String label, double minPeakNotesPerSecond) {
+            this.label = label;
+            this.minPeakNotesPerSecond = minPeakNotesPerSecond;
+        }
+
+        /**
+         * Returns the difficulty for a song with the specified peak note density.
+         *
+         * @param peakNotesPerSecond the highest notes per second over any window
+         * @return the difficulty level
+         */
+        public static Difficulty of(double peakNotesPerSecond) {
+            Difficulty result = EASY;
+            for (Difficulty difficulty : values()) {
+                if (peakNotesPerSecond >= difficulty.minPeakNotesPerSecond) {
+                    result = difficulty;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final String songName;
+    private final int noteCount;
+    private final double durationSeconds;
+    private final double bpm;
+    private final double peakNotesPerSecond;
+    private final Difficulty difficulty;
+
+    /**
+     * Constructs a {@code SongAnalysis} with the specified statistics.
+     *
+     * @param songName           the name of the MIDI file
+     * @param noteCount          the number of notes
+     * @param durationSeconds    the length of the song in seconds
+     * @param bpm                the initial tempo in beats per minute
+     * @param peakNotesPerSecond the highest notes per second over any {@value #WINDOW_SECONDS}-second window
+     */
+    public SongAnalysis(String songName, int noteCount, double durationSeconds, double bpm, double peakNotesPerSecond) {
+        this.songName = songName;
+        this.noteCount = noteCount;
+        this.durationSeconds = durationSeconds;
+        this.bpm = bpm;
+        this.peakNotesPerSecond = peakNotesPerSecond;
+        this.difficulty = Difficulty.of(peakNotesPerSecond);
+    }
+
+    /**
+     * Analyzes a MIDI sequence. Note times follow every tempo change in the sequence, and each note-on event
+     * counts as one note, as it becomes one falling block in the game.
+     *
+     * @param songName the name of the MIDI file
+     * @param sequence the sequence to analyze
+     * @return the analysis
+     */
+    public static SongAnalysis analyze(String songName, Sequence sequence) {
+        List<long[]> tempoChanges = new ArrayList<>(); // tick and microseconds per quarter note
+        long[] noteTicks = new long[1024];
+        int noteCount = 0;
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                MidiMessage message = event.getMessage();
+                if (message instanceof MetaMessage && ((MetaMessage) message).getType() == 0x51) {
+                    byte[] data = ((MetaMessage) message).getData();
+                    if (data.length >= 3) {
+                        int mpq = ((data[0] & 0xff) << 16) | ((data[1] & 0xff) << 8) | (data[2] & 0xff);
+                        tempoChanges.add(new long[]{event.getTick(), mpq});
+                    }
+                } else if (message instanceof ShortMessage) {
+                    ShortMessage sm = (ShortMessage) message;
+                    if (sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() > 0) {
+                        if (noteCount == noteTicks.length) {
+                            noteTicks = Arrays.copyOf(noteTicks, noteCount * 2);
+                        }
+                        noteTicks[noteCount++] = event.getTick();
+                    }
+                }
+            }
+        }
+        Arrays.sort(noteTicks, 0, noteCount);
+        tempoChanges.sort(Comparator.comparingLong(change -> change[0]));
+
+        // Convert note ticks to seconds, walking the tempo changes alongside the sorted notes
+        double[] noteSeconds = new double[noteCount];
+        boolean ppq = sequence.getDivisionType() == Sequence.PPQ;
+        double ticksPerSecondSmpte = sequence.getDivisionType() * sequence.getResolution();
+        double microsPerQuarter = 500000; // default 120 BPM until the first tempo change
+        boolean tempoAtStart = !tempoChanges.isEmpty() && tempoChanges.get(0)[0] == 0;
+        double firstBpm = 60_000_000.0 / (tempoAtStart ? tempoChanges.get(0)[1] : microsPerQuarter);
+        long lastTick = 0;
+        double seconds = 0;
+        int nextTempo = 0;
+        for (int n = 0; n < noteCount; n++) {
+            long tick = noteTicks[n];
+            if (!ppq) {
+                noteSeconds[n] = tick / ticksPerSecondSmpte;
+                continue;
+            }
+            while (nextTempo < tempoChanges.size() && tempoChanges.get(nextTempo)[0] <= tick) {
+                long[] change = tempoChanges.get(nextTempo++);
+                seconds += (change[0] - lastTick) * microsPerQuarter / (sequence.getResolution() * 1_000_000.0);
+                lastTick = change[0];
+                microsPerQuarter = change[1];
+            }
+            seconds += (tick - lastTick) * microsPerQuarter / (sequence.getResolution() * 1_000_000.0);
+            lastTick = tick;
+            noteSeconds[n] = seconds;
+        }
+
+        // Slide a window over the notes and keep the largest number inside it
+        int peak = 0;
+        int start = 0;
+        for (int end = 0; end < noteCount; end++) {
+            while (noteSeconds[end] - noteSeconds[start] >= WINDOW_SECONDS) {
+                start++;
+            }
+            peak = Math.max(peak, end - start + 1);
+        }
+
+        double duration = Math.max(sequence.getMicrosecondLength() / 1_000_000.0,
+                noteCount > 0 ? noteSeconds[noteCount - 1] : 0);
+        return new SongAnalysis(songName, noteCount, duration, firstBpm, peak / WINDOW_SECONDS);
+    }
+
+    /**
+     * Returns the name of the MIDI file.
+     *
+     * @return the song name
+     */
+    public String getSongName() {
+        return songName;
+    }
+
+    /**
+     * Returns the number of notes in the song.
+     *
+     * @return the note count
+     */
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    /**
+     * Returns the length of the song.
+     *
+     * @return the duration in seconds
+     */
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * Returns the tempo at the start of the song.
+     *
+     * @return the tempo in beats per minute
+     */
+    public double getBpm() {
+        return bpm;
+    }
+
+    /**
+     * Returns the highest note density over any {@value #WINDOW_SECONDS}-second window.
+     *
+     * @return the peak notes per second
+     */
+    public double getPeakNotesPerSecond() {
+        return peakNotesPerSecond;
+    }
+
+    /**
+     * Returns the difficulty computed from the peak note density.
+     *
+     * @return the difficulty level
+     */
+    public Difficulty getDifficulty() {
+        return difficulty;
+    }
+
+    @Override
+    public String toString() {
+        long totalSeconds = Math.round(durationSeconds);
+        return String.format("%s (%s, %d notes, %d:%02d, %.0f BPM, %.1f peak notes/s)", songName, difficulty,
+                noteCount, totalSeconds / 60, totalSeconds % 60, bpm, peakNotesPerSecond);
+    }
+}
@@ -0,0 +1,274 @@
+package edu.sdccd.cisc191.template;
+
+import javax.sound.midi.MidiSystem;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code SongCatalog} class lists every song in a {@code SongLibrary} together with its
+ * {@code SongAnalysis}. Songs are analyzed in parallel, one task per MIDI file, and the results are cached in a
+ * file keyed by each song's version, so later runs only analyze songs that were added or changed.
+ *
+ * <p>The cache file starts with the magic number {@code "JHSC"} and a format version, followed by the number of
+ * entries and, for each entry, the song name, its version, the note count, the duration, the tempo and the peak
+ * notes per second.</p>
+ */
+public class SongCatalog {
+    /**
+     * The system property naming the directory the default cache file is kept in.
+     */
+    public static final String CACHE_DIR_PROPERTY = "javahero.cacheDir";
+
+    /**
+     * The default cache file name.
+     */
+    public static final String CACHE_FILE = "song-catalog.dat";
+
+    private static final int MAGIC = 0x4A485343; // "JHSC"
+    private static final int VERSION = 1;
+
+    private final SongLibrary library;
+    private final Path cacheFile;
+    private final Map<String, CachedAnalysis> analyses = new HashMap<>();
+    private volatile List<SongAnalysis> songs = Collections.emptyList();
+    private volatile SongSearchIndex searchIndex = new SongSearchIndex();
+
+    /**
+     * Constructs a {@code SongCatalog} over the specified library, cached in the default cache file.
+     *
+     * @param library the songs to catalog
+     * @see #defaultCacheFile()
+     */
+    public SongCatalog(SongLibrary library) {
+        this(library, defaultCacheFile());
+    }
+
+    /**
+     * Constructs a {@code SongCatalog} over the specified library and reads the cache file if it exists.
+     * Call {@link #refresh()} to bring the catalog up to date with the library.
+     *
+     * @param library   the songs to catalog
+     * @param cacheFile the file holding cached analyses
+     */
+    public SongCatalog(SongLibrary library, Path cacheFile) {
+        this.library = library;
+        this.cacheFile = cacheFile;
+        readCache();
+    }
+
+    /**
+     * Returns the default cache file, {@value #CACHE_FILE} in the directory named by the
+     * {@value #CACHE_DIR_PROPERTY} system property, or in a {@code .javahero} directory in the user's home
+     * directory if the property is not set.
+     *
+     * @return the default cache file
+     */
+    public static Path defaultCacheFile() {
+        String directory = System.getProperty(CACHE_DIR_PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return Paths.get(System.getProperty("user.home"), ".javahero", CACHE_FILE);
+        }
+        return Paths.get(directory, CACHE_FILE);
+    }
+
+    /**
+     * Analyzes every song in the library that is not cached or has changed, drops songs that were removed, and
+     * saves the cache if anything changed.
+     *
+     * @return the number of songs that were analyzed
+     */
+    public synchronized int refresh() {
+        List<String> names = library.getSongNames();
+        Map<String, String> stale = new HashMap<>();
+        for (String name : names) {
+            String version = library.getVersion(name);
+            CachedAnalysis cached = analyses.get(name);
+            if (cached == null || version == null || !version.equals(cached.version)) {
+                stale.put(name, version != null ? version : "");
+            }
+        }
+        Set<String> current = new HashSet<>(names);
+        boolean changed = analyses.keySet().retainAll(current);
+
+        if (!stale.isEmpty()) {
+            analyzeAll(stale);
+            changed = true;
+        }
+        if (changed || songs.size() != analyses.size()) {
+            List<SongAnalysis> list = new ArrayList<>();
+            for (CachedAnalysis cached : analyses.values()) {
+                list.add(cached.analysis);
+            }
+            list.sort(SongAnalysis.BY_TITLE);
+            SongSearchIndex index = new SongSearchIndex();
+            list.forEach(song -> index.add(song.getSongName()));
+            songs = Collections.unmodifiableList(list);
+            searchIndex = index;
+        }
+        if (changed) {
+            writeCache();
+        }
+        return stale.size();
+    }
+
+    /**
+     * Returns every song in the catalog in title order.
+     *
+     * @return an unmodifiable list of analyses
+     */
+    public List<SongAnalysis> getSongs() {
+        return songs;
+    }
+
+    /**
+     * Returns the songs that match a search and a difficulty, in the specified order.
+     *
+     * @param query      the start of a title, possibly misspelled, or {@code null} or empty for every song
+     * @param difficulty the difficulty to show, or {@code null} for every difficulty
+     * @param order      the order to sort the songs in
+     * @return the matching songs
+     */
+    public List<SongAnalysis> browse(String query, SongAnalysis.Difficulty difficulty, Comparator<SongAnalysis> order) {
+        List<SongAnalysis> all = songs;
+        Set<String> matches = null;
+        if (query != null && !query.isEmpty()) {
+            matches = new HashSet<>(searchIndex.search(query, all.size()));
+        }
+        List<SongAnalysis> result = new ArrayList<>();
+        for (SongAnalysis song : all) {
+            if ((matches == null || matches.contains(song.getSongName()))
+                    && (difficulty == null || song.getDifficulty() == difficulty)) {
+                result.add(song);
+            }
+        }
+        result.sort(order);
+        return result;
+    }
+
+    /**
+     * Analyzes songs in parallel, using one thread per processor.
+     *
+     * @param stale the songs to analyze, mapped to their current versions
+     */
+    private void analyzeAll(Map<String, String> stale) {
+        int threads = Math.max(1, Math.min(stale.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "catalog-analyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<String, Future<SongAnalysis>> results = new HashMap<>();
+            for (String name : stale.keySet()) {
+                results.put(name, pool.submit(() -> analyze(name)));
+            }
+            for (Map.Entry<String, Future<SongAnalysis>> result : results.entrySet()) {
+                String name = result.getKey();
+                try {
+                    analyses.put(name, new CachedAnalysis(stale.get(name), result.getValue().get()));
+                } catch (ExecutionException e) {
+                    System.err.println("Error analyzing " + name + ": " + e.getCause().getMessage());
+                    analyses.remove(name);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private SongAnalysis analyze(String name) throws Exception {
+        try (InputStream in = new BufferedInputStream(library.open(name))) {
+            return SongAnalysis.analyze(name, MidiSystem.getSequence(in));
+        }
+    }
+
+    /**
+     * Reads the cache file. A missing or unreadable cache is treated as empty.
+     */
+    private void readCache() {
+        if (!Files.exists(cacheFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String version = in.readUTF();
+                SongAnalysis analysis = new SongAnalysis(name, in.readInt(), in.readDouble(), in.readDouble(), in.readDouble());
+                analyses.put(name, new CachedAnalysis(version, analysis));
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable song catalog cache: " + e.getMessage());
+            analyses.clear();
+        }
+    }
+
+    /**
+     * Writes the cache to a temporary file and moves it over the old cache. The cache directory is created if
+     * it does not exist.
+     */
+    private void writeCache() {
+        Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            System.err.println("Error saving song catalog cache: " + e.getMessage());
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(analyses.size());
+            for (Map.Entry<String, CachedAnalysis> entry : analyses.entrySet()) {
+                SongAnalysis analysis = entry.getValue().analysis;
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue().version);
+                out.writeInt(analysis.getNoteCount());
+                out.writeDouble(analysis.getDurationSeconds());
+                out.writeDouble(analysis.getBpm());
+                out.writeDouble(analysis.getPeakNotesPerSecond());
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving song catalog cache: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error saving song catalog cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The {@code CachedAnalysis} class pairs an analysis with the version of the song it was computed from.
+     */
+    private static class CachedAnalysis {
+        final String version;
+        final SongAnalysis analysis;
+
+        CachedAnalysis(String version, SongAnalysis analysis) {
+            this.version = version;
+            this.analysis = analysis;
+        }
+    }
+}
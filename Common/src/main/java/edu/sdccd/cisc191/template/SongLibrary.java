@@ -0,0 +1,448 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * The {@code SongLibrary} class keeps an index of the MIDI files available to the game.
+ * The index is built once from the class path (both directories and jar files) and from any number of user
+ * directories. User directories and class path directories are then watched with a {@link WatchService}, so
+ * files that are added or removed update the index incrementally instead of triggering a rescan.
+ * Looking up a song by name is a single hash lookup.
+ *
+ * <p>Songs are named by their file name. If the same file name is found in more than one place, the first one
+ * found is the song, and the others stand in for it once it is removed.</p>
+ */
+public class SongLibrary implements Closeable {
+    /**
+     * The system property listing extra song directories, separated by the platform path separator.
+     */
+    public static final String SONG_DIRS_PROPERTY = "javahero.songDirs";
+
+    private static final String MIDI_EXTENSION = ".mid";
+
+    private final Map<String, SongEntry> songs = new ConcurrentHashMap<>(); // by name
+    private final Map<String, SongEntry> sources = new ConcurrentHashMap<>(); // every file found, by location
+    private final Map<WatchKey, WatchedDirectory> watchedDirectories = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong(); // bumped by every change to the index
+    private volatile SortedNames sortedNames;
+    private WatchService watchService;
+    private Thread watcher;
+
+    /**
+     * Constructs a {@code SongLibrary} over the class path and the directories named by the
+     * {@value #SONG_DIRS_PROPERTY} system property.
+     */
+    public SongLibrary() {
+        this(directoriesFromProperty(), true);
+    }
+
+    /**
+     * Constructs a {@code SongLibrary} over the specified user directories.
+     *
+     * @param userDirectories  the directories to index and watch
+     * @param includeClasspath whether MIDI files on the class path are indexed as well
+     */
+    public SongLibrary(List<Path> userDirectories, boolean includeClasspath) {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            System.err.println("Song directories will not be watched: " + e.getMessage());
+        }
+        if (includeClasspath) {
+            indexClasspath();
+        }
+        for (Path directory : userDirectories) {
+            indexDirectory(directory, null);
+        }
+        if (watchService != null && !watchedDirectories.isEmpty()) {
+            watcher = new Thread(this::watch, "song-library-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    /**
+     * Returns the names of all indexed songs in alphabetical order.
+     *
+     * @return an unmodifiable list of song names
+     */
+    public List<String> getSongNames() {
+        SortedNames cached = sortedNames;
+        long current = version.get();
+        if (cached != null && cached.version == current) {
+            return cached.names;
+        }
+        // Read the version before the names, so a list that raced with a change is never taken as current
+        List<String> names = new ArrayList<>(songs.keySet());
+        Collections.sort(names);
+        names = Collections.unmodifiableList(names);
+        sortedNames = new SortedNames(current, names);
+        return names;
+    }
+
+    /**
+     * Checks whether a song with the specified name is indexed.
+     *
+     * @param songName the name of the MIDI file
+     * @return {@code true} if the song is available, {@code false} otherwise
+     */
+    public boolean contains(String songName) {
+        return songs.containsKey(songName);
+    }
+
+    /**
+     * Returns the number of indexed songs.
+     *
+     * @return the number of songs
+     */
+    public int size() {
+        return songs.size();
+    }
+
+    /**
+     * Returns a file path from which the specified song can be read.
+     * Songs found on disk are returned directly; songs packaged on the class path are extracted first.
+     *
+     * @param songName the name of the MIDI file
+     * @return the path of a readable MIDI file
+     * @throws Exception if the song is not in the library or cannot be extracted
+     */
+    public String resolve(String songName) throws Exception {
+        SongEntry entry = songs.get(songName);
+        if (entry == null) {
+            // Fall back to a direct class path lookup for names the index has not seen
+            return MidiUtils.loadMidiFile(songName);
+        }
+        if (entry.file != null) {
+            return entry.file.toString();
+        }
+        return MidiUtils.loadMidiFile(entry.resourceName);
+    }
+
+    /**
+     * Opens the specified song for reading without extracting it to a file.
+     *
+     * @param songName the name of the MIDI file
+     * @return a stream of the file contents
+     * @throws IOException if the song cannot be found or opened
+     */
+    public InputStream open(String songName) throws IOException {
+        SongEntry entry = songs.get(songName);
+        if (entry != null && entry.source != null && entry.version == null) {
+            return Files.newInputStream(entry.source);
+        }
+        String resourceName = entry != null ? entry.resourceName : songName;
+        InputStream in = SongLibrary.class.getClassLoader().getResourceAsStream(resourceName);
+        if (in == null) {
+            throw new FileNotFoundException("MIDI file not found: " + songName);
+        }
+        return in;
+    }
+
+    /**
+     * Returns a string that changes whenever the contents of the specified song change, so results computed
+     * from a song can be cached. Files on disk are identified by their size and modification time, and jar
+     * entries by their size and CRC.
+     *
+     * @param songName the name of the MIDI file
+     * @return the version of the song, or {@code null} if it is not indexed or cannot be read
+     */
+    public String getVersion(String songName) {
+        SongEntry entry = songs.get(songName);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.version != null) {
+            return entry.version;
+        }
+        try {
+            return Files.size(entry.source) + ":" + Files.getLastModifiedTime(entry.source).toMillis();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops watching the song directories.
+     */
+    @Override
+    public void close() {
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                System.err.println("Error closing song watcher: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Indexes MIDI files found in the directories and jar files of the class path.
+     */
+    private void indexClasspath() {
+        String classPath = System.getProperty("java.class.path", "");
+        for (String element : classPath.split(File.pathSeparator)) {
+            if (element.isEmpty()) {
+                continue;
+            }
+            Path path = Paths.get(element);
+            if (Files.isDirectory(path)) {
+                indexDirectory(path, path);
+            } else if (element.endsWith(".jar") && Files.isRegularFile(path)) {
+                indexJar(path);
+            }
+        }
+    }
+
+    /**
+     * Indexes the MIDI entries of a jar file as class path resources.
+     *
+     * @param jar the jar file to scan
+     */
+    private void indexJar(Path jar) {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!entry.isDirectory() && name.endsWith(MIDI_EXTENSION)) {
+                    String fileName = name.substring(name.lastIndexOf('/') + 1);
+                    String version = "jar:" + entry.getSize() + ":" + Long.toHexString(entry.getCrc());
+                    put(new SongEntry(fileName, null, name, jar, version));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading " + jar + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Indexes every MIDI file under a directory and registers the directory tree with the watch service.
+     *
+     * @param directory    the directory to scan
+     * @param resourceRoot the class path root the directory belongs to, or {@code null} for user directories
+     */
+    private void indexDirectory(Path directory, Path resourceRoot) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.forEach(path -> {
+                if (Files.isDirectory(path)) {
+                    register(path, resourceRoot);
+                } else {
+                    addFile(path, resourceRoot);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error indexing " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registers a directory with the watch service.
+     *
+     * @param directory    the directory to watch
+     * @param resourceRoot the class path root the directory belongs to, or {@code null} for user directories
+     */
+    private void register(Path directory, Path resourceRoot) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+            watchedDirectories.put(key, new WatchedDirectory(directory, resourceRoot));
+        } catch (IOException e) {
+            System.err.println("Cannot watch " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds a MIDI file to the index.
+     *
+     * @param file         the file to add
+     * @param resourceRoot the class path root the file belongs to, or {@code null} for user directories
+     */
+    private void addFile(Path file, Path resourceRoot) {
+        String fileName = file.getFileName().toString();
+        if (!fileName.endsWith(MIDI_EXTENSION)) {
+            return;
+        }
+        if (resourceRoot == null) {
+            put(new SongEntry(fileName, file.toAbsolutePath(), null, file.toAbsolutePath(), null));
+        } else {
+            String resourceName = resourceRoot.relativize(file).toString().replace(File.separatorChar, '/');
+            put(new SongEntry(fileName, null, resourceName, file.toAbsolutePath(), null));
+        }
+    }
+
+    /**
+     * Removes every song read from a deleted file or from anywhere under a deleted directory.
+     *
+     * @param path the file or directory that was removed
+     */
+    private void removePath(Path path) {
+        Path removed = path.toAbsolutePath();
+        if (sources.values().removeIf(entry -> entry.version == null && entry.source.startsWith(removed))) {
+            songs.values().removeIf(entry -> entry.version == null && entry.source.startsWith(removed));
+            // A song also found somewhere else is read from there now
+            for (SongEntry entry : sources.values()) {
+                songs.putIfAbsent(entry.name, entry);
+            }
+            changed();
+        }
+    }
+
+    /**
+     * Adds a song to the index, unless a file with the same name in another place is already the song.
+     * Only the constructor and the watcher thread change the index, so this needs no further locking.
+     *
+     * @param entry the song to add
+     */
+    private void put(SongEntry entry) {
+        String location = entry.getLocation();
+        sources.put(location, entry);
+        SongEntry current = songs.putIfAbsent(entry.name, entry);
+        if (current != null && current.getLocation().equals(location)) {
+            songs.put(entry.name, entry); // the same file found again
+        }
+        changed();
+    }
+
+    /**
+     * Marks the sorted names as out of date. Called after every change to the index.
+     */
+    private void changed() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Applies file system events to the index until the library is closed.
+     */
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            WatchedDirectory watched = watchedDirectories.get(key);
+            if (watched != null) {
+                Path directory = watched.directory;
+                Path resourceRoot = watched.resourceRoot;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // Events were lost, so rescan just this directory
+                        indexDirectory(directory, resourceRoot);
+                        continue;
+                    }
+                    Path path = directory.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_DELETE) {
+                        removePath(path);
+                    } else if (Files.isDirectory(path)) {
+                        indexDirectory(path, resourceRoot);
+                    } else {
+                        addFile(path, resourceRoot);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Reads the song directories named by the {@value #SONG_DIRS_PROPERTY} system property.
+     *
+     * @return the configured directories
+     */
+    private static List<Path> directoriesFromProperty() {
+        List<Path> directories = new ArrayList<>();
+        String property = System.getProperty(SONG_DIRS_PROPERTY, "");
+        for (String directory : property.split(File.pathSeparator)) {
+            if (!directory.isEmpty()) {
+                directories.add(Paths.get(directory));
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * The {@code WatchedDirectory} class remembers which directory a watch key belongs to.
+     */
+    private static class WatchedDirectory {
+        final Path directory;
+        final Path resourceRoot;
+
+        WatchedDirectory(Path directory, Path resourceRoot) {
+            this.directory = directory;
+            this.resourceRoot = resourceRoot;
+        }
+    }
+
+    /**
+     * The {@code SortedNames} class is the sorted song names as of one version of the index.
+     */
+    private static class SortedNames {
+        final long version;
+        final List<String> names;
+
+        SortedNames(long version, List<String> names) {
+            this.version = version;
+            this.names = names;
+        }
+    }
+
+    /**
+     * The {@code SongEntry} class records where an indexed song can be read from. {@code source} is the file on
+     * disk holding the song, which is the jar file for jar entries; jar entries carry a fixed {@code version}
+     * taken from the jar directory.
+     */
+    private static class SongEntry {
+        final String name;
+        final Path file;
+        final String resourceName;
+        final Path source;
+        final String version;
+
+        SongEntry(String name, Path file, String resourceName, Path source, String version) {
+            this.name = name;
+            this.file = file;
+            this.resourceName = resourceName;
+            this.source = source;
+            this.version = version;
+        }
+
+        /**
+         * Returns where the song was found, which tells apart songs with the same name.
+         *
+         * @return the file, or the jar file and the entry in it
+         */
+        String getLocation() {
+            return version == null ? source.toString() : source + "!/" + resourceName;
+        }
+    }
+}
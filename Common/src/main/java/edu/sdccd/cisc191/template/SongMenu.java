@@ -1,38 +1,72 @@
 package edu.sdccd.cisc191.template;
 
+import java.util.Comparator;
+import java.util.List;
 import java.util.Scanner;
 
 /**
  * The {@code SongMenu} class provides a simple console-based menu for browsing and displaying a catalog of songs.
- * It uses a 2D array to store the song titles and their corresponding difficulty levels.
+ * The catalog is a {@code SongCatalog} built by analyzing every available MIDI file. Whoever opens the menu owns
+ * the catalog and passes the same one each time, so it is only brought up to date, not rebuilt. Songs can be
+ * searched, sorted and filtered by difficulty, and long lists are shown a page at a time.
  */
 public class SongMenu {
-    private static String[][] songGrid = {
-            {"Twinkle Twinkle Little Star", "Easy"},
-            {"Wii Channel Music", "Medium"},
-            {"Moonlight Sonata", "Hard"}
-    };
+    private static final int PAGE_SIZE = 20;
+
+    private static SongCatalog defaultCatalog;
 
     /**
-     * Starts the song catalog browsing menu, allowing the user to display songs or exit the menu.
+     * Starts the song catalog browsing menu over the songs found on the class path and in the configured
+     * song directories.
      */
     public static void browseCatalog() {
+        browseCatalog(getDefaultCatalog());
+    }
+
+    /**
+     * Starts the song catalog browsing menu, allowing the user to display, search, sort and filter songs or exit
+     * the menu. Songs added to the catalog's library since it was last refreshed are analyzed first.
+     *
+     * @param songs the catalog to browse
+     */
+    public static void browseCatalog(SongCatalog songs) {
+        int analyzed = songs.refresh();
+        if (analyzed > 0) {
+            System.out.println("Analyzed " + analyzed + " songs.");
+        }
         Scanner scanner = new Scanner(System.in);
+        Comparator<SongAnalysis> order = SongAnalysis.BY_TITLE;
+        SongAnalysis.Difficulty difficulty = null;
         boolean running = true;
 
         while (running) {
             System.out.println("\n--- Song Catalog ---");
             System.out.println("1. Display Songs");
-            System.out.println("2. Exit");
+            System.out.println("2. Search Songs");
+            System.out.println("3. Sort Songs");
+            System.out.println("4. Filter by Difficulty");
+            System.out.println("5. Exit");
 
             System.out.print("Choose an option: ");
             int choice = scanner.nextInt();
+            scanner.nextLine(); // Consume newline
 
             switch (choice) {
                 case 1:
-                    displaySongs();
+                    displaySongs(songs.browse(null, difficulty, order), scanner);
                     break;
                 case 2:
+                    System.out.print("Enter the start of a song title: ");
+                    displaySongs(songs.browse(scanner.nextLine(), difficulty, order), scanner);
+                    break;
+                case 3:
+                    order = chooseOrder(scanner, order);
+                    break;
+                case 4:
+                    difficulty = chooseDifficulty(scanner);
+                    System.out.println("Showing " + (difficulty == null ? "all" : difficulty) + " songs.");
+                    break;
+                case 5:
                     running = false;
                     break;
                 default:
@@ -44,12 +78,85 @@ public class SongMenu {
     }
 
     /**
-     * Displays the list of songs stored in the {@code songGrid} array, showing the song title and difficulty level.
+     * Returns the catalog used when no catalog is given, creating it over a new {@code SongLibrary} on first use.
+     *
+     * @return the shared catalog
+     */
+    static synchronized SongCatalog getDefaultCatalog() {
+        if (defaultCatalog == null) {
+            defaultCatalog = new SongCatalog(new SongLibrary());
+        }
+        return defaultCatalog;
+    }
+
+    /**
+     * Asks the user how to sort the songs.
+     *
+     * @param scanner the input to read from
+     * @param current the order to keep if the choice is invalid
+     * @return the chosen order
      */
-    private static void displaySongs() {
+    private static Comparator<SongAnalysis> chooseOrder(Scanner scanner, Comparator<SongAnalysis> current) {
+        System.out.println("Sort by: 1. Title  2. Difficulty  3. Length  4. Tempo");
+        System.out.print("Choose an option: ");
+        String choice = scanner.nextLine().trim();
+        switch (choice) {
+            case "1":
+                return SongAnalysis.BY_TITLE;
+            case "2":
+                return SongAnalysis.BY_DIFFICULTY;
+            case "3":
+                return SongAnalysis.BY_DURATION;
+            case "4":
+                return SongAnalysis.BY_BPM;
+            default:
+                System.out.println("Invalid option. Keeping the current order.");
+                return current;
+        }
+    }
+
+    /**
+     * Asks the user which difficulty to show.
+     *
+     * @param scanner the input to read from
+     * @return the chosen difficulty, or {@code null} for every difficulty
+     */
+    private static SongAnalysis.Difficulty chooseDifficulty(Scanner scanner) {
+        SongAnalysis.Difficulty[] levels = SongAnalysis.Difficulty.values();
+        StringBuilder prompt = new StringBuilder("Show: 0. All");
+        for (int i = 0; i < levels.length; i++) {
+            prompt.append("  ").append(i + 1).append(". ").append(levels[i]);
+        }
+        System.out.println(prompt);
+        System.out.print("Choose an option: ");
+        try {
+            int choice = Integer.parseInt(scanner.nextLine().trim());
+            return choice >= 1 && choice <= levels.length ? levels[choice - 1] : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Displays songs a page at a time, showing each song's title, difficulty level and statistics.
+     *
+     * @param songs   the songs to display
+     * @param scanner the input to read from between pages
+     */
+    private static void displaySongs(List<SongAnalysis> songs, Scanner scanner) {
         System.out.println("\n--- Song List ---");
-        for (int i = 0; i < songGrid.length; i++) {
-            System.out.printf("%d: %s (%s)\n", i + 1, songGrid[i][0], songGrid[i][1]);
+        if (songs.isEmpty()) {
+            System.out.println("No songs found.");
+            return;
+        }
+        for (int i = 0; i < songs.size(); i++) {
+            System.out.printf("%d: %s\n", i + 1, songs.get(i));
+            if ((i + 1) % PAGE_SIZE == 0 && i + 1 < songs.size()) {
+                System.out.print("-- " + (i + 1) + " of " + songs.size() + ", press Enter for more or q to stop --");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    return;
+                }
+            }
         }
     }
 }
@@ -0,0 +1,242 @@
+package edu.sdccd.cisc191.template;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code SongPrefetcher} class reads and parses songs before they are played. A playlist passes it the
+ * songs that are coming up next, which are loaded on a background thread and kept in a small cache, so starting
+ * one of them does not have to wait for the MIDI file to be read and parsed.
+ *
+ * <p>The cache holds at most {@code capacity} songs and drops the least recently used one when it is full.
+ * Every call to {@link #get(String)} counts as a hit if the song had already been requested, even if it is
+ * still loading, and as a miss if it has to be loaded on the spot. Songs that are not in the library are
+ * ignored by {@link #prefetch(Collection)}.</p>
+ */
+public class SongPrefetcher implements Closeable {
+    /**
+     * The default number of songs kept in the cache.
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private final SongLibrary library;
+    private final Map<String, Future<PreparedSong>> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "song-prefetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a {@code SongPrefetcher} with the default capacity.
+     *
+     * @param library the library the songs are read from
+     */
+    public SongPrefetcher(SongLibrary library) {
+        this(library, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a {@code SongPrefetcher}.
+     *
+     * @param library  the library the songs are read from
+     * @param capacity the maximum number of songs kept in the cache
+     */
+    public SongPrefetcher(SongLibrary library, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        this.library = library;
+        this.cache = new LinkedHashMap<String, Future<PreparedSong>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Future<PreparedSong>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Starts loading the specified songs in the background, in order, unless they are already cached.
+     *
+     * @param songs the songs that will be played soon
+     */
+    public synchronized void prefetch(Collection<String> songs) {
+        for (String song : songs) {
+            if (song == null || cache.containsKey(song) || !library.contains(song)) {
+                continue;
+            }
+            try {
+                cache.put(song, loader.submit(() -> load(song)));
+            } catch (RejectedExecutionException e) {
+                return; // closed
+            }
+        }
+    }
+
+    /**
+     * Returns a song ready to play, waiting for it if it is still being prefetched and loading it on the calling
+     * thread if it was never requested.
+     *
+     * @param songName the name of the MIDI file
+     * @return the loaded song
+     * @throws Exception if the song cannot be read
+     */
+    public PreparedSong get(String songName) throws Exception {
+        Future<PreparedSong> future;
+        synchronized (this) {
+            future = cache.get(songName);
+        }
+        if (future == null) {
+            misses.incrementAndGet();
+            PreparedSong song = load(songName);
+            synchronized (this) {
+                cache.put(songName, CompletableFuture.completedFuture(song));
+            }
+            return song;
+        }
+        hits.incrementAndGet();
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                cache.remove(songName, future);
+            }
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Returns whether a song is in the cache, either loaded or loading.
+     *
+     * @param songName the name of the MIDI file
+     * @return {@code true} if the song is cached, {@code false} otherwise
+     */
+    public synchronized boolean isCached(String songName) {
+        return cache.containsKey(songName);
+    }
+
+    /**
+     * Returns the songs in the cache, from least to most recently used.
+     *
+     * @return a copy of the cached song names
+     */
+    public synchronized List<String> getCachedSongs() {
+        return new ArrayList<>(cache.keySet());
+    }
+
+    /**
+     * Returns the number of requests served from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests that had to load the song on the spot.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the fraction of requests served from the cache.
+     *
+     * @return the hit rate between 0 and 1, or 0 if nothing has been requested
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Stops the background loader, cancels any loads still in progress and empties the cache.
+     */
+    @Override
+    public synchronized void close() {
+        loader.shutdownNow();
+        cache.values().forEach(future -> future.cancel(true));
+        cache.clear();
+    }
+
+    private PreparedSong load(String songName) throws Exception {
+        Sequence sequence;
+        try (InputStream in = new BufferedInputStream(library.open(songName))) {
+            sequence = MidiSystem.getSequence(in);
+        }
+        List<MidiInterpreter.NoteEvent> noteEvents = new MidiInterpreter().parseSequence(sequence);
+        return new PreparedSong(songName, sequence, Collections.unmodifiableList(noteEvents));
+    }
+
+    /**
+     * The {@code PreparedSong} class holds a song's sequence and parsed notes.
+     */
+    public static class PreparedSong {
+        private final String songName;
+        private final Sequence sequence;
+        private final List<MidiInterpreter.NoteEvent> noteEvents;
+
+        /**
+         * Constructs a {@code PreparedSong}.
+         *
+         * @param songName   the name of the MIDI file
+         * @param sequence   the song's sequence
+         * @param noteEvents the song's notes in time order
+         */
+        public PreparedSong(String songName, Sequence sequence, List<MidiInterpreter.NoteEvent> noteEvents) {
+            this.songName = songName;
+            this.sequence = sequence;
+            this.noteEvents = noteEvents;
+        }
+
+        /**
+         * Returns the name of the MIDI file.
+         *
+         * @return the song name
+         */
+        public String getSongName() {
+            return songName;
+        }
+
+        /**
+         * Returns the song's sequence.
+         *
+         * @return the sequence
+         */
+        public Sequence getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Returns the song's notes.
+         *
+         * @return an unmodifiable list of note events in time order
+         */
+        public List<MidiInterpreter.NoteEvent> getNoteEvents() {
+            return noteEvents;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package edu.sdccd.cisc191.template;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The {@code SongSearchIndex} class finds song titles by prefix or with typos, and is updated one title at a time
+ * as songs are added and removed.
+ *
+ * <p>Titles are case-folded (lower case, accents removed) and kept in a sorted map, which serves as a compact
+ * trie: every run of titles sharing a prefix is a contiguous range of keys. Prefix queries are a single range
+ * lookup. Typo-tolerant queries walk the sorted titles computing one edit distance row per character. Rows are
+ * reused for the prefix a title shares with the previous one, and once every entry of a row exceeds the allowed
+ * number of edits the whole range of titles under that prefix is skipped. The only memory used beyond the map is
+ * one row per query character.</p>
+ *
+ * <p>The index keeps a count per title, so a title added twice must be removed twice. Counts may briefly go below
+ * zero when a removal is applied before the matching addition; such titles are simply not found, which lets
+ * concurrent owners apply updates in any order. All methods are thread-safe.</p>
+ */
+public class SongSearchIndex {
+    private static final char MAX_CHAR = Character.MAX_VALUE;
+
+    private final TreeMap<String, Title> titles = new TreeMap<>();
+    private int visibleCount;
+
+    /**
+     * Constructs an empty {@code SongSearchIndex}.
+     */
+    public SongSearchIndex() {
+    }
+
+    /**
+     * Constructs a {@code SongSearchIndex} containing the specified titles.
+     *
+     * @param songs the titles to index
+     */
+    public SongSearchIndex(Collection<String> songs) {
+        songs.forEach(this::add);
+    }
+
+    /**
+     * Adds one occurrence of a title to the index.
+     *
+     * @param song the title to add
+     */
+    public synchronized void add(String song) {
+        adjust(song, 1);
+    }
+
+    /**
+     * Removes one occurrence of a title from the index.
+     *
+     * @param song the title to remove
+     */
+    public synchronized void remove(String song) {
+        adjust(song, -1);
+    }
+
+    /**
+     * Removes every title from the index.
+     */
+    public synchronized void clear() {
+        titles.clear();
+        visibleCount = 0;
+    }
+
+    /**
+     * Returns the number of distinct titles in the index.
+     *
+     * @return the number of titles that can be found
+     */
+    public synchronized int size() {
+        return visibleCount;
+    }
+
+    /**
+     * Finds the indexed title that matches the query exactly, ignoring case and accents.
+     *
+     * @param query the title to look for
+     * @return the title as it was added, or {@code null} if there is none
+     */
+    public synchronized String find(String query) {
+        Title title = titles.get(fold(query));
+        return title != null && title.count > 0 ? title.song : null;
+    }
+
+    /**
+     * Finds titles that start with the query, ignoring case and accents.
+     *
+     * @param prefix the start of the title
+     * @param limit  the maximum number of titles to return
+     * @return the matching titles in alphabetical order of their folded form
+     */
+    public synchronized List<String> prefixSearch(String prefix, int limit) {
+        List<String> results = new ArrayList<>();
+        String folded = fold(prefix);
+        for (Title title : titles.subMap(folded, true, folded + MAX_CHAR, false).values()) {
+            if (results.size() >= limit) {
+                break;
+            }
+            if (title.count > 0) {
+                results.add(title.song);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds titles that start with the query allowing for typos. Queries of four to seven characters allow one
+     * edit (an insertion, deletion or substitution) and longer queries allow two.
+     *
+     * @param query the start of the title, possibly misspelled
+     * @param limit the maximum number of titles to return
+     * @return the matching titles, closest first
+     */
+    public synchronized List<String> fuzzySearch(String query, int limit) {
+        String folded = fold(query);
+        int m = folded.length();
+        int maxEdits = m < 4 ? 0 : m < 8 ? 1 : 2;
+        if (maxEdits == 0) {
+            return prefixSearch(query, limit);
+        }
+
+        // rows[d][i] is the edit distance between the first i query characters and the first d title characters,
+        // and best[d] is the smallest distance between the whole query and a title prefix of at most d characters
+        int maxDepth = m + maxEdits;
+        int[][] rows = new int[maxDepth + 1][m + 1];
+        int[] best = new int[maxDepth + 1];
+        for (int i = 0; i <= m; i++) {
+            rows[0][i] = i;
+        }
+        best[0] = m;
+
+        List<List<String>> byDistance = new ArrayList<>();
+        for (int distance = 0; distance <= maxEdits; distance++) {
+            byDistance.add(new ArrayList<>());
+        }
+        String previous = "";
+        int computed = 0;
+        String key = titles.isEmpty() ? null : titles.firstKey();
+        while (key != null) {
+            int depth = Math.min(key.length(), maxDepth);
+            int shared = 0;
+            int reusable = Math.min(computed, depth);
+            while (shared < reusable && previous.charAt(shared) == key.charAt(shared)) {
+                shared++;
+            }
+
+            int d = shared;
+            boolean pruned = false;
+            while (d < depth) {
+                d++;
+                int[] above = rows[d - 1];
+                int[] row = rows[d];
+                char c = key.charAt(d - 1);
+                row[0] = d;
+                int rowMin = d;
+                for (int i = 1; i <= m; i++) {
+                    int cost = folded.charAt(i - 1) == c ? 0 : 1;
+                    row[i] = Math.min(Math.min(above[i] + 1, row[i - 1] + 1), above[i - 1] + cost);
+                    rowMin = Math.min(rowMin, row[i]);
+                }
+                best[d] = Math.min(best[d - 1], row[m]);
+                if (rowMin > maxEdits) {
+                    pruned = true;
+                    break;
+                }
+            }
+            previous = key;
+            computed = d;
+
+            if (pruned || depth == maxDepth) {
+                // Deeper characters cannot change the distance, so every title sharing this prefix has the same one
+                String prefix = key.substring(0, d);
+                if (best[d] <= maxEdits) {
+                    List<String> bucket = byDistance.get(best[d]);
+                    for (Title title : titles.subMap(prefix, true, prefix + MAX_CHAR, false).values()) {
+                        if (bucket.size() >= limit) {
+                            break;
+                        }
+                        if (title.count > 0) {
+                            bucket.add(title.song);
+                        }
+                    }
+                }
+                key = titles.ceilingKey(prefix + MAX_CHAR);
+            } else {
+                Title title = titles.get(key);
+                if (best[depth] <= maxEdits && title.count > 0 && byDistance.get(best[depth]).size() < limit) {
+                    byDistance.get(best[depth]).add(title.song);
+                }
+                key = titles.higherKey(key);
+            }
+        }
+
+        List<String> results = new ArrayList<>();
+        for (List<String> bucket : byDistance) {
+            for (String song : bucket) {
+                if (results.size() >= limit) {
+                    return results;
+                }
+                results.add(song);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds titles for a search box: exact prefix matches first, followed by typo-tolerant matches.
+     *
+     * @param query the text typed so far
+     * @param limit the maximum number of titles to return
+     * @return the matching titles, best first
+     */
+    public synchronized List<String> search(String query, int limit) {
+        Set<String> results = new LinkedHashSet<>(prefixSearch(query, limit));
+        if (results.size() < limit) {
+            for (String song : fuzzySearch(query, limit)) {
+                if (results.size() >= limit) {
+                    break;
+                }
+                results.add(song);
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Changes the count of a title, adding it to the map the first time it is seen.
+     *
+     * @param song  the title
+     * @param delta the change in the number of occurrences
+     */
+    private void adjust(String song, int delta) {
+        if (song == null) {
+            return;
+        }
+        String folded = fold(song);
+        Title title = titles.get(folded);
+        if (title == null) {
+            title = new Title(song);
+            titles.put(folded, title);
+        }
+
+        boolean wasVisible = title.count > 0;
+        title.count += delta;
+        if (title.count > 0 && !wasVisible) {
+            visibleCount++;
+        } else if (title.count <= 0 && wasVisible) {
+            visibleCount--;
+        }
+        if (title.count == 0) {
+            titles.remove(folded);
+        }
+    }
+
+    /**
+     * Case-folds a title by removing accents and converting it to lower case.
+     *
+     * @param song the title
+     * @return the folded title
+     */
+    static String fold(String song) {
+        String decomposed = Normalizer.normalize(song, Normalizer.Form.NFKD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(c);
+            }
+        }
+        return folded.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The {@code Title} class is one distinct folded title and how many times it has been added.
+     */
+    private static class Title {
+        final String song;
+        int count;
+
+        Title(String song) {
+            this.song = song;
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The {@code UnrolledLinkedList} class is a linked list of array chunks with the same operations as
+ * {@code MyLinkedList}. Each chunk holds up to {@value #CHUNK_CAPACITY} elements in a contiguous array, so a
+ * list costs roughly one reference per element instead of one node object per element, and walking it touches
+ * far fewer cache lines. The list is serialized as a flat sequence of elements.
+ *
+ * <p>Like {@code MyLinkedList}, the list is {@link Iterable} and can be streamed. Splitting its spliterator
+ * hands off a run of whole chunks, found by hopping from chunk to chunk, so parallel streams never copy
+ * elements. Iterators and spliterators are fail-fast.</p>
+ *
+ * @param <T> the type of elements in this list
+ */
+public class UnrolledLinkedList<T> implements Iterable<T>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of elements stored in one chunk.
+     */
+    public static final int CHUNK_CAPACITY = 64;
+
+    private transient Chunk head;
+    private transient Chunk tail;
+    private transient int size;
+    private transient int modCount;
+
+    /**
+     * Constructs an empty {@code UnrolledLinkedList}.
+     */
+    public UnrolledLinkedList() {
+        head = null;
+        tail = null;
+        size = 0;
+    }
+
+    /**
+     * Clears the list, removing all elements.
+     */
+    public void clear() {
+        head = null;
+        tail = null;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Adds an element to the end of the list.
+     *
+     * @param data the element to be added
+     */
+    public void add(T data) {
+        if (tail == null || tail.start + tail.count == CHUNK_CAPACITY) {
+            Chunk chunk = new Chunk();
+            if (tail == null) {
+                head = chunk;
+            } else {
+                tail.next = chunk;
+                chunk.prev = tail;
+            }
+            tail = chunk;
+        }
+        tail.items[tail.start + tail.count] = data;
+        tail.count++;
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from the list.
+     *
+     * @param data the element to be removed
+     */
+    public void remove(T data) {
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            int end = chunk.start + chunk.count;
+            for (int i = chunk.start; i < end; i++) {
+                if (chunk.items[i].equals(data)) {
+                    removeAt(chunk, i);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the list contains the specified element.
+     *
+     * @param data the element to look for
+     * @return {@code true} if the element is in the list, {@code false} otherwise
+     */
+    public boolean contains(T data) {
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            int end = chunk.start + chunk.count;
+            for (int i = chunk.start; i < end; i++) {
+                if (chunk.items[i].equals(data)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves and removes the first element of the list.
+     *
+     * @return the first element of the list, or {@code null} if the list is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T pollFirst() {
+        if (head == null) return null;
+
+        T data = (T) head.items[head.start];
+        head.items[head.start] = null;
+        head.start++;
+        head.count--;
+        size--;
+        modCount++;
+        if (head.count == 0) {
+            unlink(head);
+        }
+        return data;
+    }
+
+    /**
+     * Retrieves, but does not remove, the first element of the list.
+     *
+     * @return the first element of the list, or {@code null} if the list is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T peekFirst() {
+        return (head != null) ? (T) head.items[head.start] : null;
+    }
+
+    /**
+     * Retrieves, but does not remove, the last element of the list.
+     *
+     * @return the last element of the list, or {@code null} if the list is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T peekLast() {
+        return (tail != null) ? (T) tail.items[tail.start + tail.count - 1] : null;
+    }
+
+    /**
+     * Performs the given action for each element of the list in order.
+     *
+     * @param action the action to perform
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super T> action) {
+        int expectedModCount = modCount;
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            Object[] items = chunk.items;
+            int end = chunk.start + chunk.count;
+            for (int i = chunk.start; i < end; i++) {
+                action.accept((T) items[i]);
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Returns an iterator over the elements of the list in order.
+     *
+     * @return an iterator that does not support removal
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private final Spliterator<T> elements = spliterator();
+            private boolean ready;
+            private T next;
+
+            @Override
+            public boolean hasNext() {
+                if (!ready) {
+                    ready = elements.tryAdvance(item -> next = item);
+                }
+                return ready;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Returns a spliterator over the elements of the list.
+     *
+     * @return an ordered, sized spliterator
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new ChunkSpliterator();
+    }
+
+    /**
+     * Returns a sequential stream over the elements of the list.
+     *
+     * @return a stream of the elements in order
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream over the elements of the list.
+     *
+     * @return a possibly parallel stream of the elements
+     */
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Displays all elements in the list.
+     */
+    public void display() {
+        forEach(System.out::println);
+    }
+
+    /**
+     * Returns the number of elements in the list.
+     *
+     * @return the size of the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes the element at a position within a chunk, shifting the rest of the chunk down.
+     * A chunk that becomes small enough is merged with its successor to keep the chunks dense.
+     *
+     * @param chunk    the chunk holding the element
+     * @param position the array index of the element within the chunk
+     */
+    private void removeAt(Chunk chunk, int position) {
+        int end = chunk.start + chunk.count;
+        System.arraycopy(chunk.items, position + 1, chunk.items, position, end - position - 1);
+        chunk.items[end - 1] = null;
+        chunk.count--;
+        size--;
+        modCount++;
+
+        if (chunk.count == 0) {
+            unlink(chunk);
+        } else if (chunk.next != null && chunk.count + chunk.next.count <= CHUNK_CAPACITY / 2) {
+            Chunk next = chunk.next;
+            compact(chunk);
+            System.arraycopy(next.items, next.start, chunk.items, chunk.count, next.count);
+            chunk.count += next.count;
+            unlink(next);
+        }
+    }
+
+    /**
+     * Moves the elements of a chunk to the front of its array.
+     *
+     * @param chunk the chunk to compact
+     */
+    private void compact(Chunk chunk) {
+        if (chunk.start > 0) {
+            System.arraycopy(chunk.items, chunk.start, chunk.items, 0, chunk.count);
+            Arrays.fill(chunk.items, chunk.count, chunk.start + chunk.count, null);
+            chunk.start = 0;
+        }
+    }
+
+    /**
+     * Unlinks a chunk from the list.
+     *
+     * @param chunk the chunk to remove
+     */
+    private void unlink(Chunk chunk) {
+        if (chunk.prev == null) {
+            head = chunk.next;
+        } else {
+            chunk.prev.next = chunk.next;
+        }
+        if (chunk.next == null) {
+            tail = chunk.prev;
+        } else {
+            chunk.next.prev = chunk.prev;
+        }
+    }
+
+    /**
+     * Writes the list as its size followed by each element.
+     *
+     * @param out the stream to write to
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            int end = chunk.start + chunk.count;
+            for (int i = chunk.start; i < end; i++) {
+                out.writeObject(chunk.items[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads a list written by {@link #writeObject(ObjectOutputStream)}.
+     *
+     * @param in the stream to read from
+     * @throws IOException            if an I/O error occurs
+     * @throws ClassNotFoundException if an element class cannot be found
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            add((T) in.readObject());
+        }
+    }
+
+    /**
+     * The {@code ChunkSpliterator} class traverses a range of the list given by a starting chunk, a position in
+     * that chunk and an element count. Splitting gives the first half of the range away and skips this
+     * spliterator past it.
+     */
+    private final class ChunkSpliterator implements Spliterator<T> {
+        private Chunk chunk;
+        private int position;
+        private int remaining = -1; // bound on first use, so the list can change until traversal starts
+        private int expectedModCount;
+
+        ChunkSpliterator() {
+        }
+
+        private ChunkSpliterator(Chunk chunk, int position, int remaining, int expectedModCount) {
+            this.chunk = chunk;
+            this.position = position;
+            this.remaining = remaining;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private int bind() {
+            if (remaining < 0) {
+                chunk = head;
+                position = head != null ? head.start : 0;
+                remaining = size;
+                expectedModCount = modCount;
+            }
+            return remaining;
+        }
+
+        @Override
+        public long estimateSize() {
+            return bind();
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int available = bind();
+            if (available < 2 * CHUNK_CAPACITY) {
+                return null;
+            }
+            int half = available / 2;
+            ChunkSpliterator prefix = new ChunkSpliterator(chunk, position, half, expectedModCount);
+            int skip = half;
+            while (skip > 0) {
+                int inChunk = chunk.start + chunk.count - position;
+                if (skip < inChunk) {
+                    position += skip;
+                    break;
+                }
+                skip -= inChunk;
+                chunk = chunk.next;
+                position = chunk.start;
+            }
+            remaining -= half;
+            return prefix;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            int n = bind();
+            while (n > 0) {
+                int end = Math.min(chunk.start + chunk.count, position + n);
+                Object[] items = chunk.items;
+                for (int i = position; i < end; i++) {
+                    action.accept((T) items[i]);
+                }
+                n -= end - position;
+                if (n > 0) {
+                    chunk = chunk.next;
+                    if (chunk == null) {
+                        break; // the list shrank underneath us
+                    }
+                    position = chunk.start;
+                } else {
+                    position = end;
+                }
+            }
+            remaining = 0;
+            checkForComodification();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (bind() == 0) {
+                return false;
+            }
+            if (position == chunk.start + chunk.count) {
+                chunk = chunk.next;
+                if (chunk == null) {
+                    checkForComodification();
+                    return false;
+                }
+                position = chunk.start;
+            }
+            T item = (T) chunk.items[position++];
+            remaining--;
+            action.accept(item);
+            checkForComodification();
+            return true;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * The {@code Chunk} class holds a run of consecutive elements. Elements occupy
+     * {@code items[start]} to {@code items[start + count - 1]}.
+     */
+    private static class Chunk {
+        final Object[] items = new Object[CHUNK_CAPACITY];
+        int start;
+        int count;
+        Chunk prev;
+        Chunk next;
+    }
+}
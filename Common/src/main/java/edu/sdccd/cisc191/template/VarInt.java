@@ -0,0 +1,94 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The {@code VarInt} class provides helpers for reading and writing unsigned LEB128 variable-length integers.
+ * Small values take a single byte, which keeps delta-encoded streams such as input recordings compact.
+ */
+public final class VarInt {
+
+    private VarInt() {
+    }
+
+    /**
+     * Returns the number of bytes needed to encode the specified value.
+     *
+     * @param value the non-negative value to encode
+     * @return the encoded length in bytes (1 to 10)
+     */
+    public static int size(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the specified value into a byte array.
+     *
+     * @param value  the non-negative value to encode
+     * @param buffer the destination array, which must have room for {@link #size(long)} bytes
+     * @param offset the index at which to start writing
+     * @return the index just past the last byte written
+     */
+    public static int write(long value, byte[] buffer, int offset) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Reads a value from a byte array.
+     *
+     * @param buffer the source array
+     * @param offset the index of the first byte of the value
+     * @param limit  the index just past the last readable byte
+     * @param next   a one-element array that receives the index just past the value
+     * @return the decoded value
+     * @throws IOException if the value is truncated or longer than 10 bytes
+     */
+    public static long read(byte[] buffer, int offset, int limit, int[] next) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (offset >= limit) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = buffer[offset++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                next[0] = offset;
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a value from an input stream.
+     *
+     * @param in the stream to read from
+     * @return the decoded value
+     * @throws IOException if the stream ends early or the value is malformed
+     */
+    public static long read(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated varint");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
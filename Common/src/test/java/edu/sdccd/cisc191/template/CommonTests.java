@@ -1,5 +1,6 @@
 package edu.sdccd.cisc191.template;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -13,7 +14,43 @@ import edu.sdccd.cisc191.template.MyLinkedList;
 import edu.sdccd.cisc191.template.SongMenu;
 import edu.sdccd.cisc191.template.MusicPlaylistApp;
 
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.ProtocolException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CommonTests {
 
@@ -47,6 +84,236 @@ public class CommonTests {
         assertEquals(0, playlist.size());
     }
 
+    @Test
+    public void testPlaylistSurvivesTornJournalRecord() throws Exception {
+        Path directory = Files.createTempDirectory("playlist");
+        try {
+            String fileName = directory.resolve("playlist.dat").toString();
+            MusicPlaylist first = new MusicPlaylist(fileName);
+            first.addSong("Song 1");
+            first.addSong("Song 2");
+            first.addSong("Song 3");
+            first.removeSong("Song 2");
+            first.close();
+
+            // Simulate a crash halfway through writing the next record
+            Path journal = directory.resolve("playlist.dat.1.journal");
+            Files.write(journal, new byte[]{0, 0, 0, 20, PlaylistJournal.ADD, 'S', 'o'}, StandardOpenOption.APPEND);
+
+            MusicPlaylist recovered = new MusicPlaylist(fileName);
+            Assert.assertEquals(2, recovered.size());
+            recovered.addSong("Song 4");
+            recovered.close();
+
+            MusicPlaylist reopened = new MusicPlaylist(fileName);
+            Assert.assertEquals("Song 1", reopened.playNext());
+            Assert.assertEquals("Song 3", reopened.playNext());
+            Assert.assertEquals("Song 4", reopened.playNext());
+            Assert.assertNull(reopened.playNext());
+            reopened.close();
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testPlaylistCompactsJournalIntoSnapshot() throws Exception {
+        Path directory = Files.createTempDirectory("playlist");
+        try {
+            String fileName = directory.resolve("playlist.dat").toString();
+            MusicPlaylist playlist = new MusicPlaylist(fileName);
+            int count = PlaylistJournal.COMPACTION_THRESHOLD + 10;
+            for (int i = 0; i < count; i++) {
+                playlist.addSong("Song " + i);
+            }
+            playlist.close();
+
+            Assert.assertTrue(Files.exists(directory.resolve("playlist.dat")));
+            Assert.assertFalse(Files.exists(directory.resolve("playlist.dat.1.journal")));
+
+            MusicPlaylist reopened = new MusicPlaylist(fileName);
+            Assert.assertEquals(count, reopened.size());
+            Assert.assertEquals("Song 0", reopened.playNext());
+            reopened.close();
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testPlaylistBatchIsGroupCommittedAtomically() throws Exception {
+        Path directory = Files.createTempDirectory("playlist");
+        try {
+            String fileName = directory.resolve("playlist.dat").toString();
+            MusicPlaylist playlist = new MusicPlaylist(fileName);
+            List<String> songs = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                songs.add("Song " + i);
+            }
+            playlist.addAll(songs);
+            playlist.flush();
+            Assert.assertEquals(499, playlist.getWritesSaved()); // 500 changes, one write
+
+            playlist.batch(batch -> {
+                batch.removeSong("Song 0");
+                batch.addSong("Song 500");
+            });
+            playlist.close();
+
+            // Cut off the last byte of the second batch, as if the process died while writing it
+            Path journal = directory.resolve("playlist.dat.1.journal");
+            try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+                channel.truncate(channel.size() - 1);
+            }
+
+            MusicPlaylist reopened = new MusicPlaylist(fileName);
+            Assert.assertEquals(500, reopened.size());
+            Assert.assertEquals("Song 0", reopened.playNext());
+            reopened.close();
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testConcurrentPlaylistNeverLosesOrRepeatsSongs() throws Exception {
+        Path directory = Files.createTempDirectory("playlist");
+        try {
+            String fileName = directory.resolve("playlist.dat").toString();
+            ConcurrentMusicPlaylist playlist = new ConcurrentMusicPlaylist(fileName);
+            int producers = 4;
+            int songsPerProducer = 5000;
+            int total = producers * songsPerProducer;
+            AtomicInteger played = new AtomicInteger();
+            Set<String> seen = ConcurrentHashMap.newKeySet();
+            AtomicBoolean duplicate = new AtomicBoolean();
+            AtomicBoolean inconsistent = new AtomicBoolean();
+
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < songsPerProducer; i++) {
+                        playlist.addSong(producer + "-" + i);
+                    }
+                }));
+            }
+            for (int c = 0; c < 4; c++) {
+                threads.add(new Thread(() -> {
+                    while (played.get() < total) {
+                        String song = playlist.playNext();
+                        if (song != null) {
+                            if (!seen.add(song)) {
+                                duplicate.set(true);
+                            }
+                            played.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            threads.add(new Thread(() -> {
+                while (played.get() < total) {
+                    // Each producer's songs must stay in the order they were added
+                    int[] last = new int[producers];
+                    Arrays.fill(last, -1);
+                    for (String song : playlist.getSongs()) {
+                        int dash = song.indexOf('-');
+                        int producer = Integer.parseInt(song.substring(0, dash));
+                        int index = Integer.parseInt(song.substring(dash + 1));
+                        if (index <= last[producer]) {
+                            inconsistent.set(true);
+                        }
+                        last[producer] = index;
+                    }
+                }
+            }));
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join(60_000);
+            }
+
+            Assert.assertFalse(duplicate.get());
+            Assert.assertFalse(inconsistent.get());
+            Assert.assertEquals(total, seen.size());
+            Assert.assertNull(playlist.playNext());
+
+            // Changes made at once by several threads are journaled in the order they took effect
+            List<Thread> editors = new ArrayList<>();
+            for (int e = 0; e < 4; e++) {
+                int editor = e;
+                editors.add(new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        playlist.addSong(editor + "-" + i);
+                        if (i % 3 == 0) {
+                            playlist.playNext();
+                        }
+                        if (i % 50 == 0) {
+                            playlist.addAll(Arrays.asList(editor + "-a" + i, editor + "-b" + i));
+                            playlist.removeSong(editor + "-a" + i);
+                        }
+                    }
+                }));
+            }
+            for (Thread editor : editors) {
+                editor.start();
+            }
+            for (Thread editor : editors) {
+                editor.join(60_000);
+            }
+            List<String> expected = playlist.getSongs();
+            playlist.close();
+            ConcurrentMusicPlaylist reopened = new ConcurrentMusicPlaylist(fileName);
+            Assert.assertEquals(expected, reopened.getSongs());
+            reopened.close();
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testPlaylistFileDecodesEntriesOnDemand() throws Exception {
+        Path file = Files.createTempFile("playlist", ".dat");
+        try {
+            PlaylistFile.write(file, Arrays.asList("Für Elise", "", "Wii Channel Music"), 7);
+
+            try (PlaylistFile playlistFile = PlaylistFile.open(file)) {
+                Assert.assertEquals(3, playlistFile.size());
+                Assert.assertEquals(7, playlistFile.getGeneration());
+                Assert.assertEquals("Wii Channel Music", playlistFile.get(2));
+                Assert.assertEquals("", playlistFile.get(1));
+                Assert.assertEquals("Für Elise", playlistFile.get(0));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testPlaylistMigratesSerializedFile() throws Exception {
+        // legacy-playlist.dat was written by the original MyLinkedList, before playlists had their own format
+        Path directory = Files.createTempDirectory("playlist");
+        Path file = directory.resolve("playlist.dat");
+        try {
+            try (InputStream in = getClass().getResourceAsStream("/legacy-playlist.dat")) {
+                Files.copy(in, file);
+            }
+
+            MusicPlaylist playlist = new MusicPlaylist(file.toString());
+            Assert.assertEquals(3, playlist.size());
+            playlist.close();
+            Assert.assertTrue(PlaylistFile.isPlaylistFile(file));
+            try (PlaylistFile migrated = PlaylistFile.open(file)) {
+                Assert.assertEquals("F\u00fcr Elise", migrated.get(0));
+                Assert.assertEquals("Song 2", migrated.get(1));
+                Assert.assertEquals("Wii Channel Music", migrated.get(2));
+            }
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
     // MyLinkedList Tests
     private MyLinkedList<String> myLinkedList;
 
@@ -70,4 +337,473 @@ public class CommonTests {
         assertEquals(initialSize - 1, myLinkedList.size());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testMyLinkedListIndexSurvivesDuplicateRemoval() {
+        MyLinkedList<String> list = new MyLinkedList<>(true);
+        list.add("a");
+        list.add("b");
+        list.add("a");
+        list.add("c");
+
+        list.remove("a"); // only the first one
+        Assert.assertEquals(Arrays.asList("b", "a", "c"), list.stream().collect(Collectors.toList()));
+        Assert.assertTrue(list.contains("a"));
+        list.remove("a");
+        Assert.assertFalse(list.contains("a"));
+        Assert.assertEquals(Arrays.asList("b", "c"), list.stream().collect(Collectors.toList()));
+
+        list.add("b");
+        Assert.assertEquals("b", list.pollFirst());
+        Assert.assertTrue(list.contains("b")); // the copy added last is still there
+        list.remove("b");
+        Assert.assertFalse(list.contains("b"));
+        Assert.assertEquals(1, list.size());
+    }
+
+    @Test
+    public void testMyLinkedListPeeksAndPollsAfterRemovals() {
+        for (boolean indexed : new boolean[]{false, true}) {
+            MyLinkedList<Integer> list = new MyLinkedList<>(indexed);
+            for (int i = 1; i <= 5; i++) {
+                list.add(i);
+            }
+            list.remove(5);
+            Assert.assertEquals(Integer.valueOf(4), list.peekLast());
+            list.remove(1);
+            Assert.assertFalse(list.contains(1));
+            Assert.assertEquals(Integer.valueOf(2), list.pollFirst());
+            Assert.assertFalse(list.contains(2));
+            Assert.assertTrue(list.contains(3));
+            list.remove(3);
+            list.remove(4);
+            Assert.assertEquals(0, list.size());
+            Assert.assertNull(list.peekLast());
+            Assert.assertNull(list.pollFirst());
+            list.add(6);
+            Assert.assertEquals(Integer.valueOf(6), list.peekFirst());
+            Assert.assertEquals(Integer.valueOf(6), list.peekLast());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMyLinkedListSerializedFormRoundTrips() throws Exception {
+        for (boolean indexed : new boolean[]{false, true}) {
+            MyLinkedList<String> list = new MyLinkedList<>(indexed);
+            for (String song : Arrays.asList("Für Elise", "Canon", "Für Elise", "Minuet")) {
+                list.add(song);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(list);
+            }
+            MyLinkedList<String> copy;
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                copy = (MyLinkedList<String>) in.readObject();
+            }
+
+            Assert.assertEquals(indexed, copy.isIndexed());
+            Assert.assertEquals(4, copy.size());
+            Assert.assertEquals(list.stream().collect(Collectors.toList()), copy.stream().collect(Collectors.toList()));
+            Assert.assertEquals("Minuet", copy.peekLast());
+            copy.remove("Für Elise");
+            Assert.assertTrue(copy.contains("Für Elise"));
+            Assert.assertEquals("Canon", copy.pollFirst());
+            copy.add("Gymnopedie");
+            Assert.assertEquals(Arrays.asList("Für Elise", "Minuet", "Gymnopedie"),
+                    copy.stream().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testMyLinkedListStreamsInParallel() {
+        MyLinkedList<Integer> list = new MyLinkedList<>();
+        UnrolledLinkedList<Integer> unrolled = new UnrolledLinkedList<>();
+        for (int i = 0; i < 100_000; i++) {
+            list.add(i % 1000);
+            unrolled.add(i % 1000);
+        }
+        long expectedSum = 100L * (999 * 1000 / 2);
+
+        Assert.assertEquals(expectedSum, list.parallelStream().mapToLong(Integer::longValue).sum());
+        Assert.assertEquals(1000, list.parallelStream().distinct().count());
+        Assert.assertEquals(expectedSum, unrolled.parallelStream().mapToLong(Integer::longValue).sum());
+        Assert.assertEquals(1000, unrolled.parallelStream().distinct().count());
+        Assert.assertEquals(Integer.valueOf(999), unrolled.stream().skip(99_999).findFirst().orElse(null));
+
+        Iterator<Integer> iterator = list.iterator();
+        iterator.next();
+        iterator.remove();
+        Assert.assertEquals(99_999, list.size());
+        list.add(7);
+        try {
+            iterator.next();
+            Assert.fail("Expected the iterator to detect the change");
+        } catch (ConcurrentModificationException expected) {
+            // fail-fast
+        }
+    }
+
+    // UnrolledLinkedList Tests
+    @Test
+    public void testUnrolledLinkedListKeepsOrderAcrossChunks() {
+        UnrolledLinkedList<Integer> list = new UnrolledLinkedList<>();
+        for (int i = 0; i < 200; i++) {
+            list.add(i);
+        }
+        for (int i = 0; i < 200; i += 2) {
+            list.remove(i); // forces chunks to shrink and merge
+        }
+        Assert.assertEquals(Integer.valueOf(1), list.pollFirst());
+        Assert.assertEquals(Integer.valueOf(199), list.peekLast());
+        Assert.assertEquals(99, list.size());
+
+        List<Integer> remaining = new ArrayList<>();
+        list.forEach(remaining::add);
+        for (int i = 0; i < remaining.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(3 + 2 * i), remaining.get(i));
+        }
+    }
+
+    // SongSearchIndex Tests
+    @Test
+    public void testSongSearchIndexFindsPrefixesAndTypos() {
+        SongSearchIndex index = new SongSearchIndex(Arrays.asList(
+                "Moonlight Sonata", "Für Elise", "Wii Channel Music", "Twinkle Twinkle Little Star"));
+
+        Assert.assertEquals(Collections.singletonList("Moonlight Sonata"), index.prefixSearch("MOON", 10));
+        Assert.assertEquals(Collections.singletonList("Für Elise"), index.prefixSearch("fur e", 10));
+        Assert.assertEquals(Collections.singletonList("Moonlight Sonata"), index.fuzzySearch("moonlite", 10));
+        Assert.assertEquals(Collections.singletonList("Wii Channel Music"), index.search("wii chanel", 10));
+
+        index.add("Moonlight Sonata");
+        index.remove("Moonlight Sonata");
+        Assert.assertEquals("Moonlight Sonata", index.find("moonlight sonata")); // one copy is still indexed
+        index.remove("Moonlight Sonata");
+        Assert.assertNull(index.find("moonlight sonata"));
+        Assert.assertTrue(index.search("moonlite", 10).isEmpty());
+        Assert.assertEquals(3, index.size());
+    }
+
+    // InputRecording Tests
+    @Test
+    public void testInputRecordingRoundTrip() throws Exception {
+        InputRecording recording = new InputRecording("wii.mid");
+        recording.record(0, 1_000_000);
+        recording.record(3, 1_000_250);
+        recording.record(2, 1_000_250);
+        recording.record(1, 90_000_000);
+
+        File file = File.createTempFile("session", ".jhr");
+        file.deleteOnExit();
+        recording.save(file.getAbsolutePath());
+        InputRecording loaded = InputRecording.load(file.getAbsolutePath());
+
+        Assert.assertEquals("wii.mid", loaded.getSongName());
+        Assert.assertEquals(4, loaded.getEventCount());
+        InputRecording.Player player = loaded.player();
+        int[] lanes = {0, 3, 2, 1};
+        long[] times = {1_000_000, 1_000_250, 1_000_250, 90_000_000};
+        for (int i = 0; i < lanes.length; i++) {
+            Assert.assertTrue(player.hasNext());
+            Assert.assertEquals(lanes[i], player.peekLane());
+            Assert.assertEquals(times[i], player.peekTimeMicros());
+            player.advance();
+        }
+        Assert.assertFalse(player.hasNext());
+
+        // A corrupt event length must fail when the file runs out, not allocate what it claims
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4).putInt(Integer.MAX_VALUE - 8);
+            ((Buffer) length).flip();
+            channel.write(length, 4 + 1 + 2 + "wii.mid".length() + 4);
+        }
+        try {
+            InputRecording.load(file.getAbsolutePath());
+            Assert.fail("Loaded a recording with a corrupt length");
+        } catch (EOFException expected) {
+            // the events end long before the length says
+        }
+    }
+
+    @Test
+    public void testInputRecordingUsesCompactDeltas() {
+        InputRecording recording = new InputRecording("wii.mid");
+        for (int i = 0; i < 1000; i++) {
+            recording.record(i % 4, i * 10_000L); // 10ms apart fits in three bytes
+        }
+        Assert.assertEquals(1000, recording.getEventCount());
+        Assert.assertTrue(recording.getEncodedSize() <= 3 * 1000);
+    }
+
+    // SongLibrary Tests
+    @Test
+    public void testSongLibraryTracksAddedAndRemovedFiles() throws Exception {
+        Path directory = Files.createTempDirectory("songs");
+        try {
+            Files.write(directory.resolve("first.mid"), new byte[0]);
+            Files.write(directory.resolve("notes.txt"), new byte[0]);
+
+            try (SongLibrary library = new SongLibrary(Collections.singletonList(directory), false)) {
+                Assert.assertEquals(Collections.singletonList("first.mid"), library.getSongNames());
+                Assert.assertEquals(directory.resolve("first.mid").toAbsolutePath().toString(), library.resolve("first.mid"));
+
+                Path second = Files.write(directory.resolve("second.mid"), new byte[0]);
+                waitFor(() -> library.contains("second.mid"));
+                Assert.assertEquals(2, library.size());
+
+                Files.delete(second);
+                waitFor(() -> !library.contains("second.mid"));
+                Assert.assertEquals(Collections.singletonList("first.mid"), library.getSongNames());
+
+                // Moving a directory out is one delete event, which must take the songs nested in it along
+                Path album = Files.createTempDirectory("album");
+                Files.createDirectories(album.resolve("disc1"));
+                Files.write(album.resolve("disc1/nested.mid"), new byte[0]);
+                Path moved = directory.resolve("album");
+                Files.move(album, moved);
+                waitFor(() -> library.contains("nested.mid"));
+                Assert.assertEquals(Arrays.asList("first.mid", "nested.mid"), library.getSongNames());
+                Files.move(moved, album);
+                waitFor(() -> !library.contains("nested.mid"));
+                Assert.assertEquals(Collections.singletonList("first.mid"), library.getSongNames());
+                Files.delete(album.resolve("disc1/nested.mid"));
+                Files.delete(album.resolve("disc1"));
+                Files.delete(album);
+
+                // A song found in two places stays the first one found, and is read from the other once it goes
+                Path copy = Files.createDirectory(directory.resolve("copy"));
+                Files.write(copy.resolve("first.mid"), new byte[1]);
+                Files.write(copy.resolve("third.mid"), new byte[0]);
+                waitFor(() -> library.contains("third.mid"));
+                Assert.assertEquals(directory.resolve("first.mid").toAbsolutePath().toString(), library.resolve("first.mid"));
+                Files.delete(directory.resolve("first.mid"));
+                waitFor(() -> String.valueOf(library.getVersion("first.mid")).startsWith("1:"));
+                Assert.assertEquals(copy.resolve("first.mid").toAbsolutePath().toString(), library.resolve("first.mid"));
+                Files.delete(copy.resolve("first.mid"));
+                waitFor(() -> !library.contains("first.mid"));
+                Assert.assertEquals(Collections.singletonList("third.mid"), library.getSongNames());
+            }
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    // SongCatalog Tests
+    @Test
+    public void testSongCatalogAnalyzesOnlyNewSongs() throws Exception {
+        // At the default 120 BPM and 480 ticks per beat, one note every 120 ticks is eight notes per second
+        Sequence sequence = sequenceOf(40, 120);
+        SongAnalysis analysis = SongAnalysis.analyze("fast.mid", sequence);
+        Assert.assertEquals(40, analysis.getNoteCount());
+        Assert.assertEquals(120, analysis.getBpm(), 0.001);
+        Assert.assertEquals(8, analysis.getPeakNotesPerSecond(), 0.001);
+        Assert.assertEquals(SongAnalysis.Difficulty.HARD, analysis.getDifficulty());
+
+        // A tempo change after the start does not change the starting tempo
+        Sequence slowing = sequenceOf(40, 120);
+        byte[] sixtyBpm = {0x0F, 0x42, 0x40}; // 1,000,000 microseconds per quarter note
+        slowing.getTracks()[0].add(new MidiEvent(new MetaMessage(0x51, sixtyBpm, 3), 960));
+        SongAnalysis slowed = SongAnalysis.analyze("slowing.mid", slowing);
+        Assert.assertEquals(120, slowed.getBpm(), 0.001);
+
+        Path directory = Files.createTempDirectory("catalog");
+        Path songs = Files.createDirectory(directory.resolve("songs"));
+        MidiSystem.write(sequence, 1, songs.resolve("fast.mid").toFile());
+        Path cache = directory.resolve("catalog.dat");
+        System.setProperty(SongCatalog.CACHE_DIR_PROPERTY, directory.resolve("cache").toString());
+        try (SongLibrary library = new SongLibrary(Collections.singletonList(songs), false);
+             SongLibrary empty = new SongLibrary(Collections.emptyList(), false)) {
+            Assert.assertEquals(1, new SongCatalog(library, cache).refresh());
+
+            SongCatalog reopened = new SongCatalog(library, cache);
+            Assert.assertEquals(0, reopened.refresh());
+            Assert.assertEquals(1, reopened.browse("fadt", SongAnalysis.Difficulty.HARD, SongAnalysis.BY_TITLE).size());
+            Assert.assertTrue(reopened.browse(null, SongAnalysis.Difficulty.EASY, SongAnalysis.BY_TITLE).isEmpty());
+
+            // Catalogs without a cache file of their own are cached in the cache directory
+            SongCatalog defaultCached = new SongCatalog(library);
+            Assert.assertEquals(1, defaultCached.refresh());
+            Assert.assertEquals(1, defaultCached.browse(null, null, SongAnalysis.BY_TITLE).size());
+            Assert.assertTrue(Files.exists(directory.resolve("cache").resolve(SongCatalog.CACHE_FILE)));
+            SongCatalog emptyCatalog = new SongCatalog(empty);
+            emptyCatalog.refresh();
+            Assert.assertTrue(emptyCatalog.browse(null, null, SongAnalysis.BY_TITLE).isEmpty());
+        } finally {
+            System.clearProperty(SongCatalog.CACHE_DIR_PROPERTY);
+            deleteRecursively(directory);
+        }
+    }
+
+    // SongPrefetcher Tests
+    @Test
+    public void testPlaylistPrefetchesUpcomingSongs() throws Exception {
+        Path directory = Files.createTempDirectory("prefetch");
+        try {
+            for (String song : Arrays.asList("a.mid", "b.mid", "c.mid", "d.mid")) {
+                MidiSystem.write(sequenceOf(8, 240), 1, directory.resolve(song).toFile());
+            }
+            try (SongLibrary library = new SongLibrary(Collections.singletonList(directory), false);
+                 SongPrefetcher prefetcher = new SongPrefetcher(library);
+                 ConcurrentMusicPlaylist songs = new ConcurrentMusicPlaylist(directory.resolve("playlist.dat").toString())) {
+                songs.setPrefetcher(prefetcher);
+                songs.addAll(Arrays.asList("a.mid", "b.mid", "c.mid"));
+                Assert.assertEquals(Arrays.asList("a.mid", "b.mid"), prefetcher.getCachedSongs());
+
+                Assert.assertEquals("a.mid", songs.playNext());
+                Assert.assertTrue(prefetcher.isCached("c.mid"));
+                Assert.assertEquals(8, prefetcher.get("b.mid").getNoteEvents().size());
+                Assert.assertEquals(8, prefetcher.get("d.mid").getNoteEvents().size());
+                Assert.assertEquals(1, prefetcher.getHitCount());
+                Assert.assertEquals(0.5, prefetcher.getHitRate(), 0.001);
+
+                // Upcoming songs run on from the front of the queue into the songs added after it
+                songs.addSong("d.mid");
+                songs.addSong("e.mid");
+                Assert.assertEquals(Arrays.asList("b.mid", "c.mid", "d.mid"), songs.getUpcoming(3));
+                Assert.assertEquals(Arrays.asList("b.mid", "c.mid", "d.mid", "e.mid"), songs.getUpcoming(10));
+            }
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    // ChartConverter Tests
+    @Test
+    public void testChartConverterSkipsUnchangedAndSurvivesBadFiles() throws Exception {
+        Path source = Files.createTempDirectory("midi-pack");
+        Path output = Files.createTempDirectory("charts");
+        try {
+            Files.createDirectories(source.resolve("pack"));
+            MidiSystem.write(sequenceOf(40, 120), 1, source.resolve("pack/fast.mid").toFile());
+            Files.write(source.resolve("broken.mid"), new byte[]{'M', 'T', 'h', 'd', 0, 0});
+
+            ChartConverter converter = new ChartConverter(source, output, 2);
+            ChartConverter.Report first = converter.convertAll();
+            Assert.assertEquals(1, first.getConverted());
+            Assert.assertEquals(Collections.singleton("broken.mid"), first.getFailures().keySet());
+
+            List<NoteEvent> chart = ChartFile.read(output.resolve("pack/fast.chart"));
+            Assert.assertEquals(40, chart.size());
+            Assert.assertEquals(0.125, chart.get(1).timeInSeconds - chart.get(0).timeInSeconds, 1e-6);
+
+            ChartConverter.Report second = converter.convertAll();
+            Assert.assertEquals(0, second.getConverted());
+            Assert.assertEquals(1, second.getSkipped());
+            Assert.assertEquals(1, second.getFailures().size());
+        } finally {
+            deleteRecursively(source);
+            deleteRecursively(output);
+        }
+    }
+
+    // FrameCodec Tests
+    @Test
+    public void testFrameCodecDecodesFramesSplitAcrossReads() throws Exception {
+        FrameCodec codec = new FrameCodec(1 << 20, new BufferPool(4));
+        byte[] chart = new byte[200_000];
+        new Random(7).nextBytes(chart);
+        Frame[] frames = {
+                Frame.of(MessageType.REQUEST, "{\"song\":\"Für Elise\"}"),
+                Frame.of(MessageType.RESPONSE, "{\"notes\":3}", chart).withCorrelationId(-5),
+                Frame.of(MessageType.PING, null)
+        };
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        for (Frame frame : frames) {
+            codec.write(wire, frame);
+        }
+
+        // Feed the bytes in small pieces, as a socket might deliver them
+        ByteBuffer in = ByteBuffer.allocate(wire.size());
+        List<Frame> decoded = new ArrayList<>();
+        byte[] bytes = wire.toByteArray();
+        for (int offset = 0; offset < bytes.length; offset += 1000) {
+            in.put(bytes, offset, Math.min(1000, bytes.length - offset));
+            ((Buffer) in).flip();
+            Frame frame;
+            while ((frame = codec.decode(in)) != null) {
+                decoded.add(frame);
+            }
+            in.compact();
+        }
+        Assert.assertEquals(3, decoded.size());
+        Assert.assertEquals("{\"song\":\"Für Elise\"}", decoded.get(0).getJson());
+        Assert.assertArrayEquals(chart, decoded.get(1).getBody());
+        Assert.assertEquals(-5, decoded.get(1).getCorrelationId());
+        Assert.assertEquals(MessageType.PING, decoded.get(2).getType());
+        Assert.assertEquals("", decoded.get(2).getJson());
+
+        ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+        for (Frame frame : frames) {
+            Assert.assertEquals(frame.toString(), codec.read(stream).toString());
+        }
+        Assert.assertTrue(codec.getPool().getReuseCount() > 0);
+        Assert.assertEquals(1 << 18, BufferPool.SHARED.acquire(chart.length).capacity());
+
+        byte[] tooLong = {0x7F, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+        Assert.assertThrows(ProtocolException.class, () -> codec.read(new ByteArrayInputStream(tooLong)));
+    }
+
+    // LatencyHistogram Tests
+    @Test
+    public void testLatencyHistogramPercentilesFromConcurrentRecorders() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] recorders = new Thread[4];
+        for (int t = 0; t < recorders.length; t++) {
+            int offset = t;
+            recorders[t] = new Thread(() -> {
+                for (int i = offset + 1; i <= 100_000; i += recorders.length) {
+                    histogram.record(i * 1000L); // 1 us to 100 ms in nanoseconds
+                }
+            });
+            recorders[t].start();
+        }
+        for (Thread recorder : recorders) {
+            recorder.join();
+        }
+
+        Assert.assertEquals(100_000, histogram.getCount());
+        Assert.assertEquals(100_000_000, histogram.getMax());
+        Assert.assertEquals(50_000_500, histogram.getMean(), 1);
+        for (double percentile : new double[]{50, 99, 99.9}) {
+            double exact = percentile * 1_000_000;
+            long reported = histogram.getValueAtPercentile(percentile);
+            Assert.assertTrue(percentile + ": " + reported, reported >= exact && reported <= exact * 1.0625);
+        }
+
+        LatencyHistogram interval = histogram.snapshotAndReset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+        histogram.record(7);
+        histogram.add(interval);
+        Assert.assertEquals(100_001, histogram.getCount());
+        Assert.assertEquals(7, histogram.getValueAtPercentile(0));
+        Assert.assertEquals(100_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    private static Sequence sequenceOf(int notes, long ticksApart) throws Exception {
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        Track track = sequence.createTrack();
+        for (int i = 0; i < notes; i++) {
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 60, 100), i * ticksApart));
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 60, 0), i * ticksApart + ticksApart / 2));
+        }
+        return sequence;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertTrue(condition.getAsBoolean());
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package edu.sdccd.cisc191.template;
+
+import java.util.Random;
+
+/**
+ * The {@code MyLinkedListBenchmark} class compares {@code MyLinkedList} against the original singly linked
+ * implementation, which walked to the tail on every append and scanned the list on every removal.
+ * Run it with {@code java -cp Common/target/classes:Common/target/test-classes
+ * edu.sdccd.cisc191.template.MyLinkedListBenchmark}. Each result is the best of several timed runs after a
+ * warm-up, in milliseconds; the removal and poll timings include building the list first.
+ */
+public class MyLinkedListBenchmark {
+    private static final int WARMUP_RUNS = 3;
+    private static final int TIMED_RUNS = 5;
+    private static final int REMOVALS = 1_000;
+
+    /**
+     * Runs the benchmark at 10^5 and 10^6 elements.
+     *
+     * @param args the command-line arguments (not used)
+     */
+    public static void main(String[] args) {
+        for (int size : new int[]{100_000, 1_000_000}) {
+            String[] values = new String[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = "Song " + i;
+            }
+            String[] removals = new String[REMOVALS];
+            Random random = new Random(42);
+            for (int i = 0; i < REMOVALS; i++) {
+                removals[i] = values[random.nextInt(size)];
+            }
+
+            System.out.printf("%n--- %,d elements ---%n", size);
+            report("append (indexed)", time(() -> fillIndexed(values)));
+            report("append (plain)", time(() -> fillPlain(values)));
+            report("remove x" + REMOVALS + " (indexed)", time(() -> removeIndexed(values, removals)));
+            report("remove x" + REMOVALS + " (plain)", time(() -> removePlain(values, removals)));
+            report("poll all (indexed)", time(() -> pollIndexed(values)));
+            if (size <= 100_000) {
+                // The original append is O(n^2), so it is only measured at the smaller size
+                report("append (original)", time(() -> fillOriginal(values)));
+                report("remove x" + REMOVALS + " (original)", time(() -> removeOriginal(values, removals)));
+            } else {
+                System.out.println("append (original): skipped, O(n^2) at this size");
+            }
+        }
+    }
+
+    private static MyLinkedList<String> fillIndexed(String[] values) {
+        MyLinkedList<String> list = new MyLinkedList<>(true);
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static MyLinkedList<String> fillPlain(String[] values) {
+        MyLinkedList<String> list = new MyLinkedList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static Object removeIndexed(String[] values, String[] removals) {
+        MyLinkedList<String> list = fillIndexed(values);
+        for (String value : removals) {
+            list.remove(value);
+        }
+        return list;
+    }
+
+    private static Object removePlain(String[] values, String[] removals) {
+        MyLinkedList<String> list = fillPlain(values);
+        for (String value : removals) {
+            list.remove(value);
+        }
+        return list;
+    }
+
+    private static Object pollIndexed(String[] values) {
+        MyLinkedList<String> list = fillIndexed(values);
+        while (list.pollFirst() != null) {
+            // drain
+        }
+        return list;
+    }
+
+    private static OriginalList<String> fillOriginal(String[] values) {
+        OriginalList<String> list = new OriginalList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static Object removeOriginal(String[] values, String[] removals) {
+        OriginalList<String> list = fillOriginal(values);
+        for (String value : removals) {
+            list.remove(value);
+        }
+        return list;
+    }
+
+    private static double time(Workload workload) {
+        Object sink = null;
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            sink = workload.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            sink = workload.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == null) {
+            throw new IllegalStateException();
+        }
+        return best / 1_000_000.0;
+    }
+
+    private static void report(String name, double millis) {
+        System.out.printf("%-32s %10.2f ms%n", name, millis);
+    }
+
+    private interface Workload {
+        Object run();
+    }
+
+    /**
+     * A copy of the original singly linked {@code add} and {@code remove}, kept as the baseline.
+     */
+    private static class OriginalList<T> {
+        private Node<T> head;
+        private int size;
+
+        void add(T data) {
+            Node<T> newNode = new Node<>(data);
+            if (head == null) {
+                head = newNode;
+            } else {
+                Node<T> current = head;
+                while (current.next != null) {
+                    current = current.next;
+                }
+                current.next = newNode;
+            }
+            size++;
+        }
+
+        void remove(T data) {
+            if (head == null) return;
+            if (head.data.equals(data)) {
+                head = head.next;
+                size--;
+                return;
+            }
+            Node<T> current = head;
+            while (current.next != null && !current.next.data.equals(data)) {
+                current = current.next;
+            }
+            if (current.next != null) {
+                current.next = current.next.next;
+                size--;
+            }
+        }
+
+        private static class Node<T> {
+            T data;
+            Node<T> next;
+
+            Node(T data) {
+                this.data = data;
+            }
+        }
+    }
+}
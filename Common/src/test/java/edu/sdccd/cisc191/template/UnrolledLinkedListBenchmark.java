@@ -0,0 +1,128 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+/**
+ * The {@code UnrolledLinkedListBenchmark} class compares {@code UnrolledLinkedList} with {@code MyLinkedList}
+ * for heap use per element, traversal and serialization. Run it with {@code java -cp
+ * Common/target/classes:Common/target/test-classes edu.sdccd.cisc191.template.UnrolledLinkedListBenchmark}.
+ * Timings are the best of several runs after a warm-up, in milliseconds.
+ */
+public class UnrolledLinkedListBenchmark {
+    private static final int WARMUP_RUNS = 3;
+    private static final int TIMED_RUNS = 5;
+
+    /**
+     * Runs the benchmark at 10^5 and 10^6 elements.
+     *
+     * @param args the command-line arguments (not used)
+     */
+    public static void main(String[] args) {
+        for (int size : new int[]{100_000, 1_000_000}) {
+            String[] values = new String[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = "Song " + i;
+            }
+            MyLinkedList<String> linked = new MyLinkedList<>();
+            UnrolledLinkedList<String> unrolled = new UnrolledLinkedList<>();
+            for (String value : values) {
+                linked.add(value);
+                unrolled.add(value);
+            }
+
+            System.out.printf("%n--- %,d elements ---%n", size);
+            System.out.printf("%-28s %10.1f bytes%n", "heap/element (linked)", bytesPerElement(() -> {
+                MyLinkedList<String> list = new MyLinkedList<>();
+                for (String value : values) {
+                    list.add(value);
+                }
+                return list;
+            }, size));
+            System.out.printf("%-28s %10.1f bytes%n", "heap/element (unrolled)", bytesPerElement(() -> {
+                UnrolledLinkedList<String> list = new UnrolledLinkedList<>();
+                for (String value : values) {
+                    list.add(value);
+                }
+                return list;
+            }, size));
+            report("traverse (linked)", time(() -> {
+                long[] total = new long[1];
+                linked.forEach(value -> total[0] += value.length());
+                return total[0];
+            }));
+            report("traverse (unrolled)", time(() -> {
+                long[] total = new long[1];
+                unrolled.forEach(value -> total[0] += value.length());
+                return total[0];
+            }));
+            report("serialize round trip (linked)", time(() -> roundTrip(linked)));
+            report("serialize round trip (unrolled)", time(() -> roundTrip(unrolled)));
+        }
+    }
+
+    private static Object roundTrip(Object list) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(list);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return in.readObject();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double bytesPerElement(Supplier<Object> builder, int size) {
+        long before = usedHeap();
+        Object list = builder.get();
+        long after = usedHeap();
+        if (list == null) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / (double) size;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double time(Supplier<Object> workload) {
+        Object sink = null;
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            sink = workload.get();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            sink = workload.get();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (sink == null) {
+            throw new IllegalStateException();
+        }
+        return best / 1_000_000.0;
+    }
+
+    private static void report(String name, double millis) {
+        System.out.printf("%-32s %10.2f ms%n", name, millis);
+    }
+}
@@ -0,0 +1,513 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code BlockingServer} class serves each client with its own {@code ClientHandler}, which reads request
+ * frames and writes response frames with plain blocking streams.
+ *
+ * <p>Handlers run either on platform threads, one per connection, or on virtual threads. Virtual threads are
+ * cheap enough to create one per connection for tens of thousands of clients: a virtual thread blocked on a
+ * socket gives its carrier thread back, and its stack lives on the heap and only grows as deep as it is used.
+ * They need Java 21 or later and are looked up when the server starts, so the server still builds and runs on
+ * older Java versions in platform-thread mode.</p>
+ *
+ * <p>Frames pushed to a client with {@link ClientSession#send(Frame)} are queued and written by a task on the
+ * same kind of thread, so a client that reads slowly blocks only that task and not whoever pushed the frame.</p>
+ *
+ * <p>How much it takes on is bounded by its {@link ServerLimits}. Connections beyond the limit are turned away as
+ * they are accepted. Each connection has at most one request in hand, since it is answered before the next is
+ * read, and a connection with too many pushes waiting is not read again until they have been written. A sweeper
+ * thread checks the connections about once a second and closes those whose writes have been stuck too long,
+ * which also frees the threads blocked on them.</p>
+ *
+ * <p>Traffic and handling times are counted in its {@link ServerMetrics}. Failed requests are logged through
+ * {@link SampledLogger#SHARED}, as is a sample of the requests handled.</p>
+ *
+ * <p>If accepting fails, usually because the process has run out of file descriptors, the acceptor waits before
+ * trying again, doubling the wait up to a second while the failures go on, rather than spinning on the error.</p>
+ */
+public class BlockingServer implements ConnectionServer {
+    private static final int BUFFER_SIZE = 1024; // small, since every connection holds two
+    private static final long MIN_ACCEPT_BACKOFF_MILLIS = 5;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+    private final RequestHandler handler;
+    private final FrameCodec codec = new FrameCodec();
+    private final boolean virtualThreads;
+    private final ExecutorService handlers;
+    private final Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final ServerLimits limits;
+    private final ScheduledExecutorService sweeper;
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    /**
+     * Constructs a {@code BlockingServer} with the default limits.
+     *
+     * @param handler        the logic that answers requests
+     * @param virtualThreads {@code true} to run each connection on a virtual thread, {@code false} for a
+     *                       platform thread
+     * @throws UnsupportedOperationException if virtual threads are requested but not supported by this Java
+     */
+    public BlockingServer(RequestHandler handler, boolean virtualThreads) {
+        this(handler, virtualThreads, ServerLimits.DEFAULT);
+    }
+
+    /**
+     * Constructs a {@code BlockingServer}.
+     *
+     * @param handler        the logic that answers requests
+     * @param virtualThreads {@code true} to run each connection on a virtual thread, {@code false} for a
+     *                       platform thread
+     * @param limits         how much the server takes on
+     * @throws UnsupportedOperationException if virtual threads are requested but not supported by this Java
+     */
+    public BlockingServer(RequestHandler handler, boolean virtualThreads, ServerLimits limits) {
+        this.handler = handler;
+        this.virtualThreads = virtualThreads;
+        this.limits = limits;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "slow-client-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (virtualThreads) {
+            handlers = newVirtualThreadPerTaskExecutor();
+        } else {
+            AtomicInteger number = new AtomicInteger();
+            handlers = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "client-handler-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Returns whether this Java supports virtual threads.
+     *
+     * @return {@code true} on Java 21 or later, {@code false} otherwise
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invoke();
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later, not "
+                    + System.getProperty("java.version"));
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual threads", e);
+        }
+    }
+
+    @Override
+    public synchronized void start(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(port), 1024);
+        acceptor = new Thread(this::acceptLoop, "server-acceptor");
+        acceptor.start();
+        long sweepMillis = Math.max(1, Math.min(1000, limits.getSlowClientMillis() / 2));
+        sweeper.scheduleWithFixedDelay(this::closeSlowClients, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    @Override
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns whether connections run on virtual threads.
+     *
+     * @return {@code true} for virtual threads, {@code false} for platform threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        if (acceptor != null) {
+            acceptor.join();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing server socket: " + e.getMessage());
+        }
+        for (ClientHandler client : clients) {
+            closeQuietly(client.clientSocket);
+        }
+        sweeper.shutdownNow();
+        handlers.shutdown();
+        try {
+            awaitTermination();
+            handlers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        long backoffMillis = 0;
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) {
+                    break;
+                }
+                backoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS,
+                        Math.max(MIN_ACCEPT_BACKOFF_MILLIS, backoffMillis * 2));
+                String message = "Error accepting connection, retrying in " + backoffMillis + " ms: " + e.getMessage();
+                if (backoffMillis == MIN_ACCEPT_BACKOFF_MILLIS) {
+                    SampledLogger.SHARED.log(message); // the first failure of a run is always logged
+                } else {
+                    SampledLogger.SHARED.sample(() -> message);
+                }
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                continue;
+            }
+            backoffMillis = 0;
+            if (connectionCount.get() >= limits.getMaxConnections()) {
+                reject(socket);
+                continue;
+            }
+            connectionCount.incrementAndGet(); // counted now, so a burst of connections cannot overshoot
+            try {
+                handlers.execute(new ClientHandler(socket));
+            } catch (RejectedExecutionException e) {
+                connectionCount.decrementAndGet();
+                closeQuietly(socket); // closing
+            }
+        }
+    }
+
+    /**
+     * Tells a client the server is full and disconnects it. The frame is small enough for an empty socket buffer,
+     * so writing it does not block.
+     *
+     * @param socket the client's socket
+     */
+    private void reject(Socket socket) {
+        metrics.connectionRejected();
+        SampledLogger.SHARED.sample(() -> "Turned away a connection with " + connectionCount.get() + " open");
+        try (Socket client = socket) {
+            codec.write(client.getOutputStream(), ServerLimits.serverFull());
+        } catch (IOException e) {
+            // it is being disconnected anyway
+        }
+    }
+
+    /**
+     * Closes every connection whose writes have been stuck for too long. Runs on the sweeper thread.
+     */
+    private void closeSlowClients() {
+        long now = System.nanoTime();
+        for (ClientHandler client : clients) {
+            String stall = client.getStall(now);
+            if (stall != null && !client.clientSocket.isClosed()) {
+                metrics.slowClientClosed();
+                SampledLogger.SHARED.log("Closing slow client: " + stall);
+                closeQuietly(client.clientSocket); // its threads notice and clean up
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing more to release
+        }
+    }
+
+    /**
+     * The {@code ClientHandler} class handles communication with one connected client. It reads each request,
+     * passes it to the handler and writes the response before reading the next one.
+     */
+    private class ClientHandler implements Runnable, ClientSession {
+        private final Socket clientSocket;
+        private final Queue<Frame> pushes = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger backlog = new AtomicInteger();
+        private final AtomicBoolean pushScheduled = new AtomicBoolean();
+        private final Object drained = new Object(); // notified as pushes are written
+        private volatile OutputStream out; // writes are guarded by it
+        private volatile long lastProgressNanos = System.nanoTime();
+        private volatile long respondingSince; // 0 unless a response is being written
+
+        /**
+         * Constructs a {@code ClientHandler} for the specified client socket.
+         *
+         * @param socket the client socket
+         */
+        ClientHandler(Socket socket) {
+            this.clientSocket = socket;
+        }
+
+        /**
+         * Reads and answers requests until the client disconnects, then closes the connection.
+         */
+        @Override
+        public void run() {
+            clients.add(this);
+            metrics.connectionAccepted();
+            try (Socket socket = clientSocket;
+                 InputStream in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+                 OutputStream output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE)) {
+                socket.setTcpNoDelay(true);
+                out = output;
+                schedulePushes(); // frames pushed before the stream was ready
+                while (true) {
+                    Frame request;
+                    try {
+                        if (!awaitPushesWritten()) {
+                            break; // disconnected as a slow client
+                        }
+                        request = codec.read(in);
+                    } catch (EOFException | SocketException e) {
+                        break; // the client disconnected
+                    } catch (ProtocolException e) {
+                        metrics.protocolError();
+                        SampledLogger.SHARED.log("Error decoding request: " + e.getMessage());
+                        break; // the stream can no longer be trusted
+                    }
+                    metrics.frameReceived(request);
+                    long start = System.nanoTime();
+                    try {
+                        Frame response = handler.handle(request, this);
+                        if (response != null) {
+                            respondingSince = System.nanoTime();
+                            try {
+                                synchronized (output) {
+                                    codec.write(output, response.withCorrelationId(request.getCorrelationId()));
+                                }
+                                metrics.frameSent(response);
+                            } finally {
+                                respondingSince = 0;
+                                closeQuietly(response.getExternalBody());
+                            }
+                        }
+                    } catch (SocketException e) {
+                        break; // disconnected while the response was being written
+                    } catch (ProtocolException e) {
+                        metrics.requestFailed();
+                        SampledLogger.SHARED.log("Error sending response: " + e.getMessage());
+                    } catch (Exception e) {
+                        metrics.requestFailed();
+                        SampledLogger.SHARED.log("Error handling request: " + e.getMessage());
+                    }
+                    long nanos = System.nanoTime() - start;
+                    metrics.handled(request.getType(), nanos);
+                    Frame handled = request;
+                    SampledLogger.SHARED.sample(() -> "Handled " + handled + " in " + nanos / 1000 + " us");
+                    if (in.available() == 0) {
+                        respondingSince = System.nanoTime();
+                        synchronized (output) {
+                            output.flush(); // write responses together when requests arrive together
+                        }
+                        respondingSince = 0;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                if (!clientSocket.isClosed()) {
+                    System.err.println("Error serving client: " + e.getMessage());
+                }
+            } finally {
+                clients.remove(this);
+                connectionCount.decrementAndGet();
+                metrics.connectionClosed();
+                Frame unsent;
+                while ((unsent = pushes.poll()) != null) {
+                    closeQuietly(unsent.getExternalBody());
+                    backlog.decrementAndGet();
+                }
+                try {
+                    handler.disconnected(this);
+                } catch (RuntimeException e) {
+                    System.err.println("Error closing session: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Waits, without reading, while too many pushes are waiting to be written to the client. Runs on the
+         * reading thread.
+         *
+         * @return {@code false} if the connection was closed while waiting
+         * @throws InterruptedException if interrupted while waiting
+         */
+        private boolean awaitPushesWritten() throws InterruptedException {
+            if (backlog.get() < limits.getMaxPendingResponses()) {
+                return true;
+            }
+            metrics.readPaused();
+            synchronized (drained) {
+                while (backlog.get() >= limits.getMaxPendingResponses() && isOpen()) {
+                    drained.wait(100); // the sweeper closes the socket if the client stops reading
+                }
+            }
+            return isOpen();
+        }
+
+        /**
+         * Returns how a write to this client has been stuck for too long, if one has.
+         *
+         * @param now the current {@link System#nanoTime()}
+         * @return what is stuck, or {@code null} if the client is keeping up
+         */
+        String getStall(long now) {
+            long slowMillis = limits.getSlowClientMillis();
+            long slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+            long responding = respondingSince;
+            if (responding != 0 && now - responding > slowNanos) {
+                return "response write stuck for more than " + slowMillis + " ms";
+            }
+            int waiting = backlog.get();
+            if (waiting > 0 && now - lastProgressNanos > slowNanos) {
+                return waiting + " pushes waiting with none written for more than " + slowMillis + " ms";
+            }
+            return null;
+        }
+
+        /**
+         * Queues a frame for this client. If the client already has too many frames waiting, the frame is dropped
+         * and the client disconnected.
+         *
+         * @param frame the frame to send
+         * @throws IOException if the frame is too long
+         */
+        @Override
+        public void send(Frame frame) throws IOException {
+            if (frame.getEncodedLength() - FrameCodec.LENGTH_FIELD > codec.getMaxFrameLength()) {
+                closeQuietly(frame.getExternalBody());
+                throw new ProtocolException("Frame too long: " + frame.getEncodedLength() + " bytes");
+            }
+            if (!isOpen()) {
+                closeQuietly(frame.getExternalBody());
+                return;
+            }
+            if (backlog.get() >= limits.getMaxBacklog()) {
+                closeQuietly(frame.getExternalBody());
+                metrics.slowClientClosed();
+                SampledLogger.SHARED.log("Closing slow client with " + backlog.get() + " frames waiting");
+                closeQuietly(clientSocket);
+                return;
+            }
+            if (backlog.incrementAndGet() == 1) {
+                lastProgressNanos = System.nanoTime(); // the client has been waited on from now
+            }
+            pushes.add(frame);
+            schedulePushes();
+        }
+
+        private void schedulePushes() {
+            if (out != null && !pushes.isEmpty() && pushScheduled.compareAndSet(false, true)) {
+                try {
+                    handlers.execute(this::writePushes);
+                } catch (RejectedExecutionException e) {
+                    pushScheduled.set(false); // closing
+                }
+            }
+        }
+
+        /**
+         * Writes queued pushes and flushes them together. Runs on a thread of its own, which may block while the
+         * client is slow to read.
+         */
+        private void writePushes() {
+            OutputStream output = out;
+            try {
+                Frame frame;
+                synchronized (output) {
+                    while ((frame = pushes.poll()) != null) {
+                        try {
+                            codec.write(output, frame);
+                            metrics.frameSent(frame);
+                            lastProgressNanos = System.nanoTime();
+                        } finally {
+                            closeQuietly(frame.getExternalBody());
+                            backlog.decrementAndGet();
+                        }
+                    }
+                    output.flush();
+                }
+                synchronized (drained) {
+                    drained.notifyAll();
+                }
+            } catch (IOException e) {
+                closeQuietly(clientSocket); // the reading thread notices and cleans up
+            } finally {
+                pushScheduled.set(false);
+            }
+            schedulePushes(); // a frame may have been pushed after the queue was found empty
+        }
+
+        @Override
+        public int getBacklog() {
+            return backlog.get();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !clientSocket.isClosed();
+        }
+    }
+}
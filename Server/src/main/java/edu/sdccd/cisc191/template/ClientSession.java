@@ -0,0 +1,35 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.IOException;
+
+/**
+ * The {@code ClientSession} interface is one client's connection as the game logic sees it, so a
+ * {@link RequestHandler} can push frames the client did not ask for, such as the scores of the other players in
+ * its room.
+ */
+public interface ClientSession {
+    /**
+     * Queues a frame to be sent to the client without waiting for it to be written. The frame should have
+     * correlation ID 0, which marks it as answering no request. Frames sent after the connection has closed are
+     * dropped.
+     *
+     * @param frame the frame to send
+     * @throws IOException if the frame cannot be encoded
+     */
+    void send(Frame frame) throws IOException;
+
+    /**
+     * Returns the number of frames queued for the client that have not been written to its socket yet. A client
+     * that reads slowly builds up a backlog.
+     *
+     * @return the frames waiting to be written
+     */
+    int getBacklog();
+
+    /**
+     * Returns whether the connection is still open.
+     *
+     * @return {@code false} once the connection has closed
+     */
+    boolean isOpen();
+}
@@ -0,0 +1,52 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The {@code ConnectionServer} interface is a way of accepting clients and running their requests through a
+ * {@link RequestHandler}. The {@code Server} picks one according to its {@link Server.Mode}.
+ */
+public interface ConnectionServer extends Closeable {
+    /**
+     * Binds to the specified port and starts serving. Returns once the server is accepting connections.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    void start(int port) throws IOException;
+
+    /**
+     * Returns the port the server is listening on.
+     *
+     * @return the local port
+     */
+    int getPort();
+
+    /**
+     * Returns the number of open client connections.
+     *
+     * @return the connection count
+     */
+    int getConnectionCount();
+
+    /**
+     * Returns the counts and timings of everything the server has done.
+     *
+     * @return the metrics
+     */
+    ServerMetrics getMetrics();
+
+    /**
+     * Waits until the server has been closed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitTermination() throws InterruptedException;
+
+    /**
+     * Stops accepting connections and closes every open connection.
+     */
+    @Override
+    void close();
+}
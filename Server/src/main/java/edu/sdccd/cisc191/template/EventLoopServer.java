@@ -0,0 +1,760 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code EventLoopServer} class serves many clients with a few threads using non-blocking I/O.
+ *
+ * <p>A small number of I/O threads each run a {@link Selector} over a share of the connections; the first one
+ * also accepts new connections and deals them out in turn. I/O threads only move bytes: complete requests are
+ * passed to a separate pool of worker threads running the {@link RequestHandler}, and responses are queued on
+ * the connection and written by its I/O thread when the socket can take them.</p>
+ *
+ * <p>Messages are {@link Frame}s encoded by a {@link FrameCodec}. An idle connection holds no buffers. Reads go
+ * into a buffer shared by all connections of an I/O thread, and a connection only borrows a buffer from the
+ * codec's pool while it has half a frame. That buffer holds the bytes received so far and doubles as more
+ * arrive, so a client that announces a large frame and sends nothing more holds only what it has sent. Encoded
+ * responses are pooled buffers too, given back once written. A response whose body is a {@link FrameBody} is
+ * written from it directly, so a file goes from the page cache to the socket with
+ * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} and never
+ * through the heap. A connection that sends a malformed frame is closed. Requests from one connection are
+ * handled one at a time, so responses come back in request order.</p>
+ *
+ * <p>How much it takes on is bounded by its {@link ServerLimits}. Connections beyond the limit are turned away as
+ * they are accepted. A connection whose requests or responses queue up past their limits is taken out of the
+ * selector's read interest until it has caught up, so a client that sends faster than it is served, or faster
+ * than it reads its answers, is held back by TCP rather than by the server's memory. Each I/O thread checks its
+ * connections about once a second and closes those that have not taken any bytes for too long.</p>
+ *
+ * <p>If accepting fails, usually because the process has run out of file descriptors, the listening socket would
+ * stay ready and the first I/O thread would spin on it. Instead it stops selecting the socket for a while,
+ * doubling the wait up to a second while the failures go on, and keeps serving its connections meanwhile.</p>
+ *
+ * <p>Traffic and handling times are counted in its {@link ServerMetrics}. Failed requests are logged through
+ * {@link SampledLogger#SHARED}, as is a sample of the requests handled, so logging never holds up a thread.</p>
+ */
+public class EventLoopServer implements ConnectionServer {
+    private static final long MIN_ACCEPT_BACKOFF_MILLIS = 5;
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000;
+    private final RequestHandler handler;
+    private final FrameCodec codec = new FrameCodec();
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final ServerLimits limits;
+    private final long sweepMillis;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    private int nextLoop;
+    private long acceptBackoffMillis; // like nextLoop, only touched by the first I/O thread
+    private long acceptResumeNanos; // 0 unless accepting is paused
+    private volatile boolean running;
+
+    /**
+     * Constructs an {@code EventLoopServer} with the default limits.
+     *
+     * @param handler       the logic that answers requests
+     * @param ioThreads     the number of threads doing network I/O
+     * @param workerThreads the number of threads running the handler
+     */
+    public EventLoopServer(RequestHandler handler, int ioThreads, int workerThreads) {
+        this(handler, ioThreads, workerThreads, ServerLimits.DEFAULT);
+    }
+
+    /**
+     * Constructs an {@code EventLoopServer}.
+     *
+     * @param handler       the logic that answers requests
+     * @param ioThreads     the number of threads doing network I/O
+     * @param workerThreads the number of threads running the handler
+     * @param limits        how much the server takes on
+     */
+    public EventLoopServer(RequestHandler handler, int ioThreads, int workerThreads, ServerLimits limits) {
+        if (ioThreads < 1 || workerThreads < 1) {
+            throw new IllegalArgumentException("Thread counts must be at least 1");
+        }
+        this.handler = handler;
+        this.limits = limits;
+        this.sweepMillis = Math.max(1, Math.min(1000, limits.getSlowClientMillis() / 2));
+        this.loops = new EventLoop[ioThreads];
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "server-worker-" + workerNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Binds to the specified port and starts the I/O threads. Returns once the server is accepting connections.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    @Override
+    public synchronized void start(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        acceptKey = serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     *
+     * @return the local port
+     */
+    @Override
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the number of open client connections.
+     *
+     * @return the connection count
+     */
+    @Override
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    @Override
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Waits until the server has been closed and its I/O threads have finished.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.thread.join();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes every open connection and stops all threads.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+        try {
+            awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing server socket: " + e.getMessage());
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accepts every pending connection and hands each to the next I/O thread in turn, or turns it away if the
+     * server is full. Runs on the first I/O thread.
+     */
+    private void acceptAll() {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                if (connectionCount.get() >= limits.getMaxConnections()) {
+                    reject(channel);
+                    continue;
+                }
+                connectionCount.incrementAndGet(); // counted now, so a burst of connections cannot overshoot
+                EventLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                SocketChannel accepted = channel;
+                loop.execute(() -> loop.register(accepted));
+                acceptBackoffMillis = 0;
+            }
+        } catch (IOException e) {
+            acceptBackoffMillis = Math.min(MAX_ACCEPT_BACKOFF_MILLIS,
+                    Math.max(MIN_ACCEPT_BACKOFF_MILLIS, acceptBackoffMillis * 2));
+            acceptKey.interestOps(0);
+            acceptResumeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acceptBackoffMillis);
+            String message = "Error accepting connection, retrying in " + acceptBackoffMillis + " ms: "
+                    + e.getMessage();
+            if (acceptBackoffMillis == MIN_ACCEPT_BACKOFF_MILLIS) {
+                SampledLogger.SHARED.log(message); // the first failure of a run is always logged
+            } else {
+                SampledLogger.SHARED.sample(() -> message);
+            }
+        }
+    }
+
+    /**
+     * Returns how long the first I/O thread may wait in {@code select}: until the next sweep, or until accepting
+     * resumes if that comes sooner.
+     *
+     * @return the timeout in milliseconds
+     */
+    private long acceptorSelectTimeout() {
+        if (acceptResumeNanos == 0) {
+            return sweepMillis;
+        }
+        long remaining = TimeUnit.NANOSECONDS.toMillis(acceptResumeNanos - System.nanoTime());
+        return Math.max(1, Math.min(sweepMillis, remaining));
+    }
+
+    /**
+     * Selects the listening socket again once an accept failure's wait is over. Runs on the first I/O thread.
+     */
+    private void resumeAcceptingIfDue() {
+        if (acceptResumeNanos != 0 && System.nanoTime() - acceptResumeNanos >= 0) {
+            acceptResumeNanos = 0;
+            if (acceptKey.isValid()) {
+                acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+            }
+        }
+    }
+
+    /**
+     * Tells a client the server is full and disconnects it. The frame is small enough for an empty socket buffer,
+     * so one non-blocking write sends it.
+     *
+     * @param channel the client's socket
+     */
+    private void reject(SocketChannel channel) {
+        metrics.connectionRejected();
+        SampledLogger.SHARED.sample(() -> "Turned away a connection with " + connectionCount.get() + " open");
+        ByteBuffer frame = null;
+        try {
+            frame = codec.encode(ServerLimits.serverFull());
+            channel.write(frame);
+        } catch (IOException e) {
+            // it is being disconnected anyway
+        } finally {
+            codec.release(frame);
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * The {@code EventLoop} class is one I/O thread and the selector over its connections.
+     */
+    private class EventLoop implements Runnable {
+        final Selector selector;
+        final Thread thread;
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "server-io-" + index);
+        }
+
+        /**
+         * Runs a task on this I/O thread.
+         *
+         * @param task the task to run
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (Thread.currentThread() != thread) {
+                selector.wakeup();
+            }
+        }
+
+        void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                metrics.connectionAccepted();
+            } catch (IOException e) {
+                System.err.println("Error registering connection: " + e.getMessage());
+                connectionCount.decrementAndGet();
+                closeQuietly(channel);
+            }
+        }
+
+        /**
+         * Closes every connection that has had frames waiting without taking any bytes for too long.
+         */
+        void closeSlowClients() {
+            long now = System.nanoTime();
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    Connection connection = (Connection) key.attachment();
+                    if (connection.isStalled(now)) {
+                        connection.closeSlow();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            long nextSweep = System.nanoTime();
+            try {
+                boolean acceptor = this == loops[0];
+                while (running) {
+                    selector.select(acceptor ? acceptorSelectTimeout() : sweepMillis);
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        try {
+                            if (key.isAcceptable()) {
+                                acceptAll();
+                                continue;
+                            }
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch (CancelledKeyException e) {
+                            // closed while its events were being handled
+                        }
+                    }
+                    // Run tasks last, so tasks queued while handling keys run before the next select
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    if (acceptor) {
+                        resumeAcceptingIfDue();
+                    }
+                    if (System.nanoTime() - nextSweep >= 0) {
+                        closeSlowClients();
+                        nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepMillis);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error in server I/O loop: " + e.getMessage());
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                closeQuietly(selector);
+            }
+        }
+    }
+
+    /**
+     * The {@code Connection} class is the state of one client: its half-read frame, the requests waiting
+     * for a worker and the responses waiting to be written. It stops being read while either queue is full.
+     */
+    private class Connection implements ClientSession {
+        final EventLoop loop;
+        final SocketChannel channel;
+        SelectionKey key;
+        private ByteBuffer partial; // only touched by the I/O thread
+        private final Queue<Frame> requests = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingRequests = new AtomicInteger();
+        private final AtomicBoolean handling = new AtomicBoolean();
+        private final Queue<Outgoing> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger backlog = new AtomicInteger();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean resumeScheduled = new AtomicBoolean();
+        private volatile boolean readPaused; // only changed by the I/O thread
+        private volatile long lastProgressNanos = System.nanoTime();
+
+        Connection(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        /**
+         * Reads what the socket has and passes every complete request to the workers. Runs on the I/O thread.
+         */
+        void read() {
+            ByteBuffer in = loop.readBuffer;
+            ((Buffer) in).clear();
+            int count;
+            try {
+                count = channel.read(in);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (count < 0) {
+                close();
+                return;
+            }
+            ((Buffer) in).flip();
+            if (partial != null) {
+                partial = ensureCapacity(partial, in.remaining());
+                partial.put(in);
+                ((Buffer) partial).flip();
+                in = partial;
+            }
+
+            try {
+                Frame frame;
+                while ((frame = codec.decode(in)) != null) {
+                    metrics.frameReceived(frame);
+                    pendingRequests.incrementAndGet();
+                    requests.add(frame);
+                }
+                scheduleHandling();
+                if (isFull()) {
+                    pauseReading();
+                }
+
+                // Keep any half frame for the next read. Only what has arrived is kept, whatever length the frame
+                // claims, so announcing a large frame costs a client as much as sending it
+                if (!in.hasRemaining()) {
+                    codec.release(partial);
+                    partial = null;
+                    return;
+                }
+                codec.frameSize(in); // rejects a bad length now rather than once the frame has arrived
+                if (in == partial) {
+                    partial.compact();
+                } else {
+                    partial = codec.getPool().acquire(in.remaining());
+                    partial.put(in);
+                }
+            } catch (ProtocolException e) {
+                metrics.protocolError();
+                SampledLogger.SHARED.log("Error decoding request: " + e.getMessage());
+                scheduleHandling();
+                close();
+            }
+        }
+
+        private ByteBuffer ensureCapacity(ByteBuffer buffer, int needed) {
+            if (buffer.remaining() >= needed) {
+                return buffer;
+            }
+            ByteBuffer larger = codec.getPool().acquire(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+            ((Buffer) buffer).flip();
+            larger.put(buffer);
+            codec.release(buffer);
+            return larger;
+        }
+
+        /**
+         * Returns whether either of this connection's queues has reached its limit.
+         *
+         * @return {@code true} if it should not be read
+         */
+        private boolean isFull() {
+            return pendingRequests.get() >= limits.getMaxPendingRequests()
+                    || backlog.get() >= limits.getMaxPendingResponses();
+        }
+
+        /**
+         * Stops reading from the socket, so TCP holds the client back. Runs on the I/O thread.
+         */
+        private void pauseReading() {
+            if (!readPaused) {
+                readPaused = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                metrics.readPaused();
+            }
+        }
+
+        /**
+         * Starts reading again if reading was paused and both queues are below their limits. Runs on the I/O
+         * thread.
+         */
+        private void resumeReading() {
+            if (readPaused && !closed.get() && !isFull()) {
+                readPaused = false;
+                try {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                } catch (CancelledKeyException e) {
+                    // closed meanwhile
+                }
+            }
+        }
+
+        /**
+         * Asks the I/O thread to start reading again, if reading is paused. Runs on a worker thread.
+         */
+        private void requestResume() {
+            if (readPaused && !isFull() && resumeScheduled.compareAndSet(false, true)) {
+                loop.execute(() -> {
+                    resumeScheduled.set(false);
+                    resumeReading();
+                });
+            }
+        }
+
+        /**
+         * Starts a worker on this connection's requests unless one is already running.
+         */
+        private void scheduleHandling() {
+            if (!requests.isEmpty() && handling.compareAndSet(false, true)) {
+                workers.execute(this::handleRequests);
+            }
+        }
+
+        /**
+         * Handles queued requests in order. Runs on a worker thread.
+         */
+        private void handleRequests() {
+            Frame request;
+            while ((request = requests.poll()) != null) {
+                pendingRequests.decrementAndGet();
+                long start = System.nanoTime();
+                try {
+                    Frame response = handler.handle(request, this);
+                    if (response != null) {
+                        send(response.withCorrelationId(request.getCorrelationId()));
+                    }
+                } catch (Exception e) {
+                    metrics.requestFailed();
+                    SampledLogger.SHARED.log("Error handling request: " + e.getMessage());
+                }
+                long nanos = System.nanoTime() - start;
+                metrics.handled(request.getType(), nanos);
+                Frame handled = request;
+                SampledLogger.SHARED.sample(() -> "Handled " + handled + " in " + nanos / 1000 + " us");
+                requestResume();
+            }
+            handling.set(false);
+            scheduleHandling(); // a request may have arrived after the queue was found empty
+        }
+
+        /**
+         * Queues a frame for this client and asks the I/O thread to write it. If the client already has too many
+         * frames waiting, the frame is dropped and the client disconnected.
+         *
+         * @param frame the frame to send
+         * @throws ProtocolException if the frame is too long
+         */
+        @Override
+        public void send(Frame frame) throws ProtocolException {
+            if (backlog.get() >= limits.getMaxBacklog()) {
+                closeQuietly(frame.getExternalBody());
+                loop.execute(this::closeSlow);
+                return;
+            }
+            ByteBuffer head;
+            try {
+                head = codec.encode(frame);
+            } catch (ProtocolException e) {
+                closeQuietly(frame.getExternalBody());
+                throw e;
+            }
+            if (backlog.incrementAndGet() == 1) {
+                lastProgressNanos = System.nanoTime(); // the client has been waited on from now
+            }
+            responses.add(new Outgoing(head, frame.getExternalBody(), frame.getEncodedLength()));
+            if (closed.get()) {
+                discardResponses(); // closed while this was being queued
+                return;
+            }
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.execute(this::flush);
+            }
+        }
+
+        /**
+         * Writes queued responses until the socket is full, and waits for it to drain if it is.
+         * Runs on the I/O thread.
+         */
+        void flush() {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                while (true) {
+                    Outgoing head;
+                    while ((head = responses.peek()) != null) {
+                        long written = head.getWritten();
+                        boolean done = head.writeTo(channel);
+                        if (head.getWritten() > written) {
+                            lastProgressNanos = System.nanoTime();
+                        }
+                        if (!done) {
+                            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                            return;
+                        }
+                        metrics.frameSent(head.encodedLength); // counted once the client has all of it
+                        responses.poll().release();
+                        backlog.decrementAndGet();
+                    }
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    resumeReading();
+                    flushScheduled.set(false);
+                    // A response may have been queued after the queue was found empty
+                    if (responses.isEmpty() || !flushScheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                if (key != null) {
+                    key.cancel();
+                }
+                closeQuietly(channel);
+                connectionCount.decrementAndGet();
+                metrics.connectionClosed();
+                discardResponses();
+                try {
+                    handler.disconnected(this);
+                } catch (RuntimeException e) {
+                    System.err.println("Error closing session: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Returns whether this connection has had frames waiting without taking any bytes for too long.
+         *
+         * @param now the current {@link System#nanoTime()}
+         * @return {@code true} if the client should be disconnected
+         */
+        boolean isStalled(long now) {
+            return backlog.get() > 0
+                    && now - lastProgressNanos > TimeUnit.MILLISECONDS.toNanos(limits.getSlowClientMillis());
+        }
+
+        /**
+         * Disconnects a client that is not reading what it is sent. Runs on the I/O thread.
+         */
+        void closeSlow() {
+            if (!closed.get()) {
+                metrics.slowClientClosed();
+                SampledLogger.SHARED.log("Closing slow client with " + backlog.get() + " frames waiting");
+                close();
+            }
+        }
+
+        private void discardResponses() {
+            Outgoing response;
+            while ((response = responses.poll()) != null) {
+                response.release();
+                backlog.decrementAndGet();
+            }
+        }
+
+        @Override
+        public int getBacklog() {
+            return backlog.get();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed.get();
+        }
+    }
+
+    /**
+     * The {@code Outgoing} class is one response waiting to be written: its encoded frame, or everything before
+     * the body if the body is a {@link FrameBody}, and then that body.
+     */
+    private class Outgoing {
+        private final ByteBuffer head;
+        private final FrameBody body;
+        private final int encodedLength;
+        private long bodyWritten;
+
+        Outgoing(ByteBuffer head, FrameBody body, int encodedLength) {
+            this.head = head;
+            this.body = body;
+            this.encodedLength = encodedLength;
+        }
+
+        /**
+         * Returns how many bytes of the response have been written.
+         *
+         * @return the bytes written so far
+         */
+        long getWritten() {
+            return head.position() + bodyWritten;
+        }
+
+        /**
+         * Writes as much of the response as the socket takes.
+         *
+         * @param channel the client's socket
+         * @return {@code true} if the whole response has been written
+         * @throws IOException if the socket or the body cannot be used
+         */
+        boolean writeTo(SocketChannel channel) throws IOException {
+            if (head.hasRemaining()) {
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    return false;
+                }
+            }
+            while (body != null && bodyWritten < body.length()) {
+                long written = body.writeTo(channel, bodyWritten);
+                if (written <= 0) {
+                    return false;
+                }
+                bodyWritten += written;
+            }
+            return true;
+        }
+
+        void release() {
+            codec.release(head);
+            closeQuietly(body);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing more to release
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package edu.sdccd.cisc191.template;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code GameRequestHandler} class answers the requests of the game client. Each request is a JSON object
+ * whose {@code action} field says what it wants:
+ *
+ * <ul>
+ *     <li>{@code submitScore} with {@code song}, {@code player} and {@code score} records the score if it is
+ *     the player's best, and answers with the player's best score, rank and whether it {@code improved}. Names
+ *     may be at most {@value #MAX_NAME_LENGTH} characters long.</li>
+ *     <li>{@code topScores} with {@code song} and an optional {@code limit} answers with the best
+ *     {@code scores}, each with its {@code rank}, {@code player} and {@code score}.</li>
+ *     <li>{@code playerRank} with {@code song} and {@code player} answers with the player's {@code rank} and
+ *     {@code score}; the rank is 0 if the player has no score on the song.</li>
+ *     <li>{@code listSongs} answers with the {@code songs} that can be downloaded.</li>
+ *     <li>{@code downloadSong} with {@code song} and a {@code format} of {@code midi} (the default) or
+ *     {@code chart} answers with the file as the frame body, described by its {@code song}, {@code format},
+ *     {@code length} and whether it was {@code cached} in memory.</li>
+ *     <li>{@code joinRoom} with {@code room} and {@code player} joins a head-to-head room and answers with the
+ *     {@code players} already there. From then on the client sends its live {@code score} and {@code combo}
+ *     as {@code UPDATE} frames, which are not answered, and receives the room's {@code BROADCAST} frames.</li>
+ *     <li>{@code leaveRoom} leaves the room; closing the connection does too.</li>
+ * </ul>
+ *
+ * <p>A request that cannot be understood is answered with an {@code ERROR} frame whose {@code error} field says
+ * why. A {@code PING} is answered with a {@code PONG}.</p>
+ */
+public class GameRequestHandler implements RequestHandler {
+    /**
+     * The number of scores {@code topScores} returns when no limit is given.
+     */
+    public static final int DEFAULT_TOP_LIMIT = 10;
+    /**
+     * The most scores {@code topScores} returns.
+     */
+    public static final int MAX_TOP_LIMIT = 1000;
+    /**
+     * The most characters in a song or player name that {@code submitScore} accepts. Keeps the names well within
+     * what a leaderboard snapshot can write.
+     */
+    public static final int MAX_NAME_LENGTH = 64;
+
+    private final LeaderboardService leaderboards;
+    private final SongDistributor songs;
+    private final RoomService rooms;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Constructs a {@code GameRequestHandler} without songs to download.
+     *
+     * @param leaderboards the scores of every song
+     */
+    public GameRequestHandler(LeaderboardService leaderboards) {
+        this(leaderboards, null, null);
+    }
+
+    /**
+     * Constructs a {@code GameRequestHandler}.
+     *
+     * @param leaderboards the scores of every song
+     * @param songs        the songs clients can download, or {@code null} if there are none
+     * @param rooms        the head-to-head rooms, or {@code null} if there are none
+     */
+    public GameRequestHandler(LeaderboardService leaderboards, SongDistributor songs, RoomService rooms) {
+        this.leaderboards = leaderboards;
+        this.songs = songs;
+        this.rooms = rooms;
+    }
+
+    @Override
+    public Frame handle(Frame request) throws Exception {
+        return handle(request, null);
+    }
+
+    @Override
+    public Frame handle(Frame request, ClientSession session) throws Exception {
+        if (request.getType() == MessageType.PING) {
+            return Frame.of(MessageType.PONG, null);
+        }
+        if (request.getType() == MessageType.UPDATE) {
+            update(request, session);
+            return null;
+        }
+        JsonNode json;
+        try {
+            json = objectMapper.readTree(request.getJson());
+        } catch (Exception e) {
+            return error("Request is not valid JSON");
+        }
+        if (json == null || !json.isObject()) {
+            return error("Request must be a JSON object");
+        }
+        String action = json.path("action").asText();
+        switch (action) {
+            case "submitScore":
+                return submitScore(json);
+            case "topScores":
+                return topScores(json);
+            case "playerRank":
+                return playerRank(json);
+            case "listSongs":
+                return listSongs();
+            case "downloadSong":
+                return downloadSong(json);
+            case "joinRoom":
+                return joinRoom(json, session);
+            case "leaveRoom":
+                return leaveRoom(session);
+            default:
+                return error("Unknown action: " + action);
+        }
+    }
+
+    private Frame submitScore(JsonNode request) throws Exception {
+        String song = text(request, "song");
+        String player = text(request, "player");
+        JsonNode score = request.get("score");
+        if (song == null || player == null || score == null || !score.isIntegralNumber() || !score.canConvertToInt()) {
+            return error("submitScore needs a song, a player and an integer score");
+        }
+        if (song.length() > MAX_NAME_LENGTH || player.length() > MAX_NAME_LENGTH) {
+            return error("Song and player names must be at most " + MAX_NAME_LENGTH + " characters");
+        }
+        boolean improved;
+        try {
+            improved = leaderboards.submit(song, player, score.intValue());
+        } catch (IllegalStateException e) {
+            return error(e.getMessage());
+        }
+        ObjectNode response = standing(song, player);
+        response.put("improved", improved);
+        return respond(response);
+    }
+
+    private Frame topScores(JsonNode request) throws Exception {
+        String song = text(request, "song");
+        if (song == null) {
+            return error("topScores needs a song");
+        }
+        int limit = Math.max(0, Math.min(MAX_TOP_LIMIT, request.path("limit").asInt(DEFAULT_TOP_LIMIT)));
+        Leaderboard leaderboard = leaderboards.find(song);
+        List<Leaderboard.Entry> top = leaderboard == null ? Collections.emptyList() : leaderboard.top(limit);
+
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("song", song);
+        ArrayNode scores = response.putArray("scores");
+        int rank = 1;
+        for (Leaderboard.Entry entry : top) {
+            scores.addObject()
+                    .put("rank", rank++)
+                    .put("player", entry.getPlayer())
+                    .put("score", entry.getScore());
+        }
+        return respond(response);
+    }
+
+    private Frame playerRank(JsonNode request) throws Exception {
+        String song = text(request, "song");
+        String player = text(request, "player");
+        if (song == null || player == null) {
+            return error("playerRank needs a song and a player");
+        }
+        return respond(standing(song, player));
+    }
+
+    private Frame listSongs() throws Exception {
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode names = response.putArray("songs");
+        if (songs != null) {
+            songs.getSongNames().forEach(names::add);
+        }
+        return respond(response);
+    }
+
+    private Frame downloadSong(JsonNode request) throws Exception {
+        String song = text(request, "song");
+        String format = request.path("format").asText("midi");
+        if (song == null || !(format.equals("midi") || format.equals("chart"))) {
+            return error("downloadSong needs a song and a format of midi or chart");
+        }
+        if (songs == null) {
+            return error("Songs cannot be downloaded from this server");
+        }
+        FrameBody body;
+        try {
+            body = songs.open(song, format.equals("chart"));
+        } catch (IOException e) {
+            return error("Cannot send " + song + ": " + e.getMessage());
+        }
+        if (body == null) {
+            return error("No " + format + " for song: " + song);
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("song", song);
+        response.put("format", format);
+        response.put("length", body.length());
+        response.put("cached", SongDistributor.isCached(body));
+        return Frame.of(MessageType.RESPONSE, objectMapper.writeValueAsString(response), body);
+    }
+
+    private Frame joinRoom(JsonNode request, ClientSession session) throws Exception {
+        String room = text(request, "room");
+        String player = text(request, "player");
+        if (room == null || player == null) {
+            return error("joinRoom needs a room and a player");
+        }
+        if (rooms == null || session == null) {
+            return error("Rooms cannot be joined on this server");
+        }
+        List<RoomService.PlayerState> others;
+        try {
+            others = rooms.join(session, room, player);
+        } catch (IllegalArgumentException e) {
+            return error(e.getMessage());
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("room", room);
+        ArrayNode players = response.putArray("players");
+        for (RoomService.PlayerState state : others) {
+            RoomService.write(players.addObject(), state);
+        }
+        return respond(response);
+    }
+
+    private Frame leaveRoom(ClientSession session) throws Exception {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("left", rooms != null && session != null && rooms.leave(session));
+        return respond(response);
+    }
+
+    /**
+     * Records a live score. Updates are never answered, so one that cannot be used is dropped.
+     */
+    private void update(Frame request, ClientSession session) {
+        if (rooms == null || session == null) {
+            return;
+        }
+        try {
+            JsonNode json = objectMapper.readTree(request.getJson());
+            JsonNode score = json.path("score");
+            JsonNode combo = json.path("combo");
+            if (score.canConvertToInt() && combo.canConvertToInt()) {
+                rooms.update(session, score.intValue(), combo.intValue());
+            }
+        } catch (IOException e) {
+            // not valid JSON
+        }
+    }
+
+    @Override
+    public void disconnected(ClientSession session) {
+        if (rooms != null) {
+            rooms.leave(session);
+        }
+    }
+
+    private ObjectNode standing(String song, String player) {
+        Leaderboard leaderboard = leaderboards.find(song);
+        Leaderboard.Entry best = leaderboard == null ? null : leaderboard.get(player);
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("song", song);
+        response.put("player", player);
+        response.put("rank", best == null ? 0 : leaderboard.rankOf(player));
+        response.put("score", best == null ? 0 : best.getScore());
+        return response;
+    }
+
+    private static String text(JsonNode request, String field) {
+        JsonNode value = request.get(field);
+        return value != null && value.isTextual() && !value.asText().isEmpty() ? value.asText() : null;
+    }
+
+    private Frame respond(ObjectNode response) throws Exception {
+        return Frame.of(MessageType.RESPONSE, objectMapper.writeValueAsString(response));
+    }
+
+    private Frame error(String message) throws Exception {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("error", message);
+        return Frame.of(MessageType.ERROR, objectMapper.writeValueAsString(response));
+    }
+}
@@ -0,0 +1,245 @@
+package edu.sdccd.cisc191.template;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The {@code Leaderboard} class holds the best score of every player on one song, ranked from highest to
+ * lowest. Equal scores are ranked by who reached them first.
+ *
+ * <p>Scores are kept in a {@link RankedSkipList}, so submitting a score and looking up a rank both take
+ * O(log n) time. Queries share a read lock and run concurrently; an improved score takes the write lock only
+ * for its two skip list updates. Most submissions do not beat the player's best, and those are turned away
+ * by a lock-free check without touching the lock at all. All methods are thread-safe.</p>
+ *
+ * <p>A leaderboard may be capped at a number of players. Once it is full, only players already on it can
+ * submit scores.</p>
+ */
+public class Leaderboard {
+    private static final Comparator<Entry> RANKING = ((Comparator<Entry>) (a, b) -> Integer.compare(b.score, a.score))
+            .thenComparingLong(entry -> entry.timeMillis)
+            .thenComparing(entry -> entry.player);
+
+    private final String song;
+    private final int maxPlayers;
+    private final RankedSkipList<Entry> ranking = new RankedSkipList<>(RANKING); // guarded by lock
+    private final Map<String, Entry> bestByPlayer = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructs an empty {@code Leaderboard} with no cap on its players.
+     *
+     * @param song the song the scores are for
+     */
+    public Leaderboard(String song) {
+        this(song, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs an empty {@code Leaderboard} that holds scores for at most the specified number of players.
+     *
+     * @param song       the song the scores are for
+     * @param maxPlayers the most players with a score
+     * @throws IllegalArgumentException if {@code maxPlayers} is less than 1
+     */
+    public Leaderboard(String song, int maxPlayers) {
+        if (maxPlayers < 1) {
+            throw new IllegalArgumentException("maxPlayers must be at least 1");
+        }
+        this.song = song;
+        this.maxPlayers = maxPlayers;
+    }
+
+    /**
+     * Returns the song the scores are for.
+     *
+     * @return the song name
+     */
+    public String getSong() {
+        return song;
+    }
+
+    /**
+     * Records a score if it is the player's best on this song.
+     *
+     * @param player     the player's name
+     * @param score      the score
+     * @param timeMillis when the score was achieved
+     * @return {@code true} if the score replaced the player's best, {@code false} if it did not beat it
+     * @throws IllegalStateException if the player has no score yet and the leaderboard is full
+     */
+    public boolean submit(String player, int score, long timeMillis) {
+        return submit(player, score, timeMillis, true);
+    }
+
+    /**
+     * Records a score if it is the player's best on this song, even if the leaderboard is full. Used to restore
+     * scores that were accepted before, in case the cap has since been lowered.
+     *
+     * @param player     the player's name
+     * @param score      the score
+     * @param timeMillis when the score was achieved
+     * @return {@code true} if the score replaced the player's best, {@code false} if it did not beat it
+     */
+    boolean restore(String player, int score, long timeMillis) {
+        return submit(player, score, timeMillis, false);
+    }
+
+    private boolean submit(String player, int score, long timeMillis, boolean capped) {
+        Entry current = bestByPlayer.get(player);
+        if (current != null && current.score >= score) {
+            return false;
+        }
+        Entry entry = new Entry(player, score, timeMillis);
+        lock.writeLock().lock();
+        try {
+            current = bestByPlayer.get(player);
+            if (current != null) {
+                if (current.score >= score) {
+                    return false; // beaten while waiting for the lock
+                }
+                ranking.remove(current);
+            } else if (capped && bestByPlayer.size() >= maxPlayers) {
+                throw new IllegalStateException("Too many players have scores on " + song);
+            }
+            ranking.add(entry);
+            bestByPlayer.put(player, entry);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns a player's best score.
+     *
+     * @param player the player's name
+     * @return the entry, or {@code null} if the player has no score on this song
+     */
+    public Entry get(String player) {
+        return bestByPlayer.get(player);
+    }
+
+    /**
+     * Returns a player's rank.
+     *
+     * @param player the player's name
+     * @return the rank, starting from 1 for the best score, or 0 if the player has no score on this song
+     */
+    public int rankOf(String player) {
+        lock.readLock().lock();
+        try {
+            Entry entry = bestByPlayer.get(player);
+            return entry == null ? 0 : ranking.rankOf(entry) + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the highest scores.
+     *
+     * @param count the most entries to return
+     * @return the entries from the best down
+     */
+    public List<Entry> top(int count) {
+        return range(0, count);
+    }
+
+    /**
+     * Returns a run of entries in rank order.
+     *
+     * @param from  the zero-based position of the first entry
+     * @param count the most entries to return
+     * @return the entries
+     */
+    public List<Entry> range(int from, int count) {
+        lock.readLock().lock();
+        try {
+            return ranking.range(from, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns every entry in rank order, as one consistent copy.
+     *
+     * @return the entries
+     */
+    public List<Entry> entries() {
+        lock.readLock().lock();
+        try {
+            return ranking.range(0, ranking.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of players with a score on this song.
+     *
+     * @return the player count
+     */
+    public int size() {
+        return bestByPlayer.size();
+    }
+
+    /**
+     * The {@code Entry} class is one player's best score on a song.
+     */
+    public static final class Entry {
+        private final String player;
+        private final int score;
+        private final long timeMillis;
+
+        /**
+         * Constructs an {@code Entry}.
+         *
+         * @param player     the player's name
+         * @param score      the score
+         * @param timeMillis when the score was achieved
+         */
+        public Entry(String player, int score, long timeMillis) {
+            this.player = player;
+            this.score = score;
+            this.timeMillis = timeMillis;
+        }
+
+        /**
+         * Returns the player's name.
+         *
+         * @return the player
+         */
+        public String getPlayer() {
+            return player;
+        }
+
+        /**
+         * Returns the score.
+         *
+         * @return the score
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Returns when the score was achieved.
+         *
+         * @return the time in milliseconds since the epoch
+         */
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return player + ": " + score;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code LeaderboardService} class keeps a {@link Leaderboard} for every song that has scores, and saves them
+ * all to a snapshot file so a restarted server picks up where it left off.
+ *
+ * <p>A snapshot starts with the magic number {@code "JHLB"} and the format version, followed by the number of
+ * songs and, for each song, its name, its number of entries and each entry's player, score and time in rank
+ * order. Strings are written with {@link DataOutputStream#writeUTF(String)}. Snapshots are written to a temporary
+ * file and moved into place, so a crash while saving leaves the previous snapshot intact. Snapshots are taken
+ * periodically once {@link #startSnapshots(long)} is called, but only when scores have changed since the last
+ * one, and once more when the service is closed.</p>
+ *
+ * <p>Since clients name the songs they submit scores for, the number of leaderboards is capped, so a client
+ * making up song names cannot grow the service without bound. So is the number of players on each leaderboard,
+ * for clients making up player names. Songs and players restored from a snapshot always get their scores
+ * back.</p>
+ */
+public class LeaderboardService implements Closeable {
+    /**
+     * The current snapshot format version.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The default most songs with a leaderboard.
+     */
+    public static final int DEFAULT_MAX_SONGS = 1_000;
+
+    /**
+     * The default most players on each leaderboard.
+     */
+    public static final int DEFAULT_MAX_PLAYERS = 10_000;
+
+    private static final int MAGIC = 0x4A484C42; // "JHLB"
+
+    private final Map<String, Leaderboard> leaderboards = new ConcurrentHashMap<>();
+    private final Path snapshotFile;
+    private final int maxSongs;
+    private final int maxPlayers;
+    private final AtomicLong changes = new AtomicLong();
+    private long savedChanges; // guarded by this
+    private ScheduledExecutorService snapshotter;
+
+    /**
+     * Constructs a {@code LeaderboardService} that keeps scores only in memory.
+     */
+    public LeaderboardService() {
+        this(null);
+    }
+
+    /**
+     * Constructs a {@code LeaderboardService} that saves its scores to a snapshot file.
+     *
+     * @param snapshotFile the snapshot file, or {@code null} to keep scores only in memory
+     */
+    public LeaderboardService(Path snapshotFile) {
+        this(snapshotFile, DEFAULT_MAX_SONGS);
+    }
+
+    /**
+     * Constructs a {@code LeaderboardService} that saves its scores to a snapshot file and keeps leaderboards
+     * for at most the specified number of songs.
+     *
+     * @param snapshotFile the snapshot file, or {@code null} to keep scores only in memory
+     * @param maxSongs     the most songs with a leaderboard
+     * @throws IllegalArgumentException if {@code maxSongs} is less than 1
+     */
+    public LeaderboardService(Path snapshotFile, int maxSongs) {
+        this(snapshotFile, maxSongs, DEFAULT_MAX_PLAYERS);
+    }
+
+    /**
+     * Constructs a {@code LeaderboardService} that saves its scores to a snapshot file and keeps leaderboards
+     * for at most the specified number of songs, each with at most the specified number of players.
+     *
+     * @param snapshotFile the snapshot file, or {@code null} to keep scores only in memory
+     * @param maxSongs     the most songs with a leaderboard
+     * @param maxPlayers   the most players on each leaderboard
+     * @throws IllegalArgumentException if {@code maxSongs} or {@code maxPlayers} is less than 1
+     */
+    public LeaderboardService(Path snapshotFile, int maxSongs, int maxPlayers) {
+        if (maxSongs < 1) {
+            throw new IllegalArgumentException("maxSongs must be at least 1");
+        }
+        if (maxPlayers < 1) {
+            throw new IllegalArgumentException("maxPlayers must be at least 1");
+        }
+        this.snapshotFile = snapshotFile;
+        this.maxSongs = maxSongs;
+        this.maxPlayers = maxPlayers;
+    }
+
+    /**
+     * Returns the leaderboard for a song, creating an empty one if the song has no scores yet. Threads creating
+     * leaderboards at the same moment can each add one past the cap, but no more.
+     *
+     * @param song the song name
+     * @return the leaderboard
+     * @throws IllegalStateException if the song has no leaderboard and the cap has been reached
+     */
+    public Leaderboard get(String song) {
+        Leaderboard leaderboard = leaderboards.get(song);
+        if (leaderboard != null) {
+            return leaderboard;
+        }
+        if (leaderboards.size() >= maxSongs) {
+            throw new IllegalStateException("Too many songs have leaderboards");
+        }
+        return leaderboards.computeIfAbsent(song, this::newLeaderboard);
+    }
+
+    /**
+     * Returns the leaderboard for a song if it has any scores.
+     *
+     * @param song the song name
+     * @return the leaderboard, or {@code null} if the song has no scores
+     */
+    public Leaderboard find(String song) {
+        return leaderboards.get(song);
+    }
+
+    /**
+     * Records a score if it is the player's best on the song.
+     *
+     * @param song   the song name
+     * @param player the player's name
+     * @param score  the score
+     * @return {@code true} if the score replaced the player's best, {@code false} if it did not beat it
+     * @throws IllegalStateException if the song has no leaderboard and the cap has been reached, or the player
+     *                               has no score on the song and its leaderboard is full
+     */
+    public boolean submit(String song, String player, int score) {
+        boolean improved = get(song).submit(player, score, System.currentTimeMillis());
+        if (improved) {
+            changes.incrementAndGet();
+        }
+        return improved;
+    }
+
+    /**
+     * Returns the number of songs with a leaderboard.
+     *
+     * @return the song count
+     */
+    public int getSongCount() {
+        return leaderboards.size();
+    }
+
+    /**
+     * Restores the scores from the snapshot file, if there is one, adding them to any already held.
+     *
+     * @return the number of entries restored
+     * @throws IOException if the snapshot cannot be read or is not a leaderboard snapshot
+     */
+    public int load() throws IOException {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return 0;
+        }
+        int restored = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a leaderboard snapshot: " + snapshotFile);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported leaderboard snapshot version: " + version);
+            }
+            int songs = in.readInt();
+            for (int i = 0; i < songs; i++) {
+                Leaderboard leaderboard = leaderboards.computeIfAbsent(in.readUTF(), this::newLeaderboard);
+                int entries = in.readInt();
+                for (int j = 0; j < entries; j++) {
+                    if (leaderboard.restore(in.readUTF(), in.readInt(), in.readLong())) {
+                        restored++;
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            savedChanges = changes.get();
+        }
+        return restored;
+    }
+
+    private Leaderboard newLeaderboard(String song) {
+        return new Leaderboard(song, maxPlayers);
+    }
+
+    /**
+     * Writes a snapshot if any score has changed since the last one.
+     *
+     * @return {@code true} if a snapshot was written
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized boolean snapshot() throws IOException {
+        long changesNow = changes.get();
+        if (snapshotFile == null || changesNow == savedChanges) {
+            return false;
+        }
+        List<Leaderboard> boards = new ArrayList<>(leaderboards.values());
+        Path parent = snapshotFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, snapshotFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(boards.size());
+                for (Leaderboard board : boards) {
+                    List<Leaderboard.Entry> entries = board.entries(); // consistent per song
+                    out.writeUTF(board.getSong());
+                    out.writeInt(entries.size());
+                    for (Leaderboard.Entry entry : entries) {
+                        out.writeUTF(entry.getPlayer());
+                        out.writeInt(entry.getScore());
+                        out.writeLong(entry.getTimeMillis());
+                    }
+                }
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        savedChanges = changesNow;
+        return true;
+    }
+
+    /**
+     * Starts writing snapshots in the background.
+     *
+     * @param periodMillis the time between snapshots
+     */
+    public synchronized void startSnapshots(long periodMillis) {
+        if (snapshotter != null || snapshotFile == null) {
+            return;
+        }
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "leaderboard-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                System.err.println("Error saving leaderboards: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background snapshots and writes a final one.
+     *
+     * @throws IOException if the final snapshot cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = snapshotter;
+            snapshotter = null;
+        }
+        if (running != null) {
+            running.shutdown();
+            try {
+                running.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        snapshot();
+    }
+}
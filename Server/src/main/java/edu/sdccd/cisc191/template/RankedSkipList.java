@@ -0,0 +1,229 @@
+package edu.sdccd.cisc191.template;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The {@code RankedSkipList} class is a sorted skip list that also knows the position of every element, so
+ * adding, removing, finding the rank of an element and finding the element at a rank all take O(log n) time.
+ *
+ * <p>Each link records how many elements it jumps over. Walking down from the top level and adding up the
+ * widths of the links taken gives the rank of wherever the walk stops, the same way a search finds the element
+ * itself. Elements that compare as equal are not both kept. This class is not thread-safe.</p>
+ *
+ * @param <E> the type of elements in this list
+ */
+public class RankedSkipList<E> {
+    private static final int MAX_LEVEL = 32;
+    private static final double PROMOTION_CHANCE = 0.25;
+
+    private final Comparator<? super E> comparator;
+    private final Node<E> head = new Node<>(null, MAX_LEVEL);
+    private int level = 1;
+    private int size;
+
+    /**
+     * Constructs an empty {@code RankedSkipList}.
+     *
+     * @param comparator the order of the elements
+     */
+    public RankedSkipList(Comparator<? super E> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns the number of elements in the list.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an element in its sorted place.
+     *
+     * @param element the element to add
+     * @return {@code true} if it was added, {@code false} if an equal element is already in the list
+     */
+    public boolean add(E element) {
+        Node<E>[] update = Node.newArray(MAX_LEVEL);
+        int[] rank = new int[MAX_LEVEL];
+        Node<E> x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && comparator.compare(x.next[i].value, element) < 0) {
+                rank[i] += x.width[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        if (x.next[0] != null && comparator.compare(x.next[0].value, element) == 0) {
+            return false;
+        }
+
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.width[i] = size;
+            }
+            level = nodeLevel;
+        }
+        Node<E> node = new Node<>(element, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            // The old link is split in two around the new node
+            node.width[i] = update[i].width[i] - (rank[0] - rank[i]);
+            update[i].width[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].width[i]++; // links above the new node now jump over one more element
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes an element.
+     *
+     * @param element the element to remove
+     * @return {@code true} if it was removed, {@code false} if it was not in the list
+     */
+    public boolean remove(E element) {
+        Node<E>[] update = Node.newArray(MAX_LEVEL);
+        Node<E> x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && comparator.compare(x.next[i].value, element) < 0) {
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        x = x.next[0];
+        if (x == null || comparator.compare(x.value, element) != 0) {
+            return false;
+        }
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == x) {
+                update[i].width[i] += x.width[i] - 1;
+                update[i].next[i] = x.next[i];
+            } else {
+                update[i].width[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * Returns the position of an element in sorted order.
+     *
+     * @param element the element to find
+     * @return the zero-based rank, or -1 if the element is not in the list
+     */
+    public int rankOf(E element) {
+        int rank = 0;
+        Node<E> x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && comparator.compare(x.next[i].value, element) <= 0) {
+                rank += x.width[i];
+                x = x.next[i];
+            }
+            if (x != head && comparator.compare(x.value, element) == 0) {
+                return rank - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the element at a position in sorted order.
+     *
+     * @param index the zero-based rank
+     * @return the element
+     * @throws IndexOutOfBoundsException if there is no element at that rank
+     */
+    public E get(int index) {
+        return nodeAt(index).value;
+    }
+
+    /**
+     * Returns a run of elements in sorted order.
+     *
+     * @param from  the zero-based rank of the first element
+     * @param count the most elements to return
+     * @return the elements, fewer than {@code count} if the list ends first
+     */
+    public List<E> range(int from, int count) {
+        List<E> result = new ArrayList<>(Math.max(0, Math.min(count, size - from)));
+        if (from < 0 || from >= size) {
+            return result;
+        }
+        for (Node<E> x = nodeAt(from); x != null && result.size() < count; x = x.next[0]) {
+            result.add(x.value);
+        }
+        return result;
+    }
+
+    private Node<E> nodeAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int target = index + 1;
+        int traversed = 0;
+        Node<E> x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.width[i] <= target) {
+                traversed += x.width[i];
+                x = x.next[i];
+            }
+            if (traversed == target) {
+                return x;
+            }
+        }
+        throw new IllegalStateException("Skip list widths are inconsistent");
+    }
+
+    private static int randomLevel() {
+        int level = 1;
+        while (level < MAX_LEVEL && ThreadLocalRandom.current().nextDouble() < PROMOTION_CHANCE) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * The {@code Node} class is one element with its links at each of its levels and how far each link jumps.
+     */
+    private static class Node<E> {
+        final E value;
+        final Node<E>[] next;
+        final int[] width;
+
+        Node(E value, int level) {
+            this.value = value;
+            this.next = newArray(level);
+            this.width = new int[level];
+        }
+
+        /**
+         * Creates an array of links. Java cannot create an array of a generic type directly, so this is the one
+         * place that creates a raw array and casts it.
+         *
+         * @param length the number of links
+         * @param <E>    the element type
+         * @return an array of {@code null} links
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static <E> Node<E>[] newArray(int length) {
+            return new Node[length];
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package edu.sdccd.cisc191.template;
+
+/**
+ * The {@code RequestHandler} interface is the server's game logic: it turns one request from a client into the
+ * response sent back to that client.
+ */
+@FunctionalInterface
+public interface RequestHandler {
+    /**
+     * Handles one request. Requests from the same connection are handled one at a time and in order, but
+     * requests from different connections may be handled concurrently.
+     *
+     * @param request the frame sent by the client
+     * @return the frame to send back, or {@code null} to send nothing; it is given the request's correlation ID
+     * @throws Exception if the request cannot be handled; the connection stays open
+     */
+    Frame handle(Frame request) throws Exception;
+
+    /**
+     * Handles one request from a client that may also be sent frames later. The default ignores the session.
+     *
+     * @param request the frame sent by the client
+     * @param session the client's connection
+     * @return the frame to send back, or {@code null} to send nothing; it is given the request's correlation ID
+     * @throws Exception if the request cannot be handled; the connection stays open
+     */
+    default Frame handle(Frame request, ClientSession session) throws Exception {
+        return handle(request);
+    }
+
+    /**
+     * Called once when a client's connection closes, so the handler can forget the session. Requests already
+     * read from the client may still be handled afterwards. The default does nothing.
+     *
+     * @param session the client's connection
+     */
+    default void disconnected(ClientSession session) {
+    }
+}
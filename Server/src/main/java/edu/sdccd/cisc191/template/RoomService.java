@@ -0,0 +1,366 @@
+package edu.sdccd.cisc191.template;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code RoomService} class runs head-to-head rooms, relaying each player's live score and combo to the
+ * other players in the same room.
+ *
+ * <p>Forwarding every update as it arrives would cost a message per player per key press for each of the other
+ * players. Instead an update only replaces the player's latest state, and once every tick the room sends each
+ * member one {@code BROADCAST} frame with the latest state of every player who changed since that member's last
+ * frame, in name order. Ticks run {@value #TICKS_PER_SECOND} times a second once {@link #startTicks(long)} is
+ * called. A frame looks like
+ * {@code {"room":"duel","tick":42,"players":[{"player":"ada","score":1200,"combo":8},{"player":"bo","left":true}]}},
+ * where {@code left} marks a player who has left the room.</p>
+ *
+ * <p>A member whose connection already has more than {@value #MAX_BACKLOG} frames waiting to be written is
+ * skipped for the tick. The players that changed keep accumulating for it, so when it catches up it gets one
+ * frame with only their newest states and the stale ones in between are never sent. All methods are
+ * thread-safe.</p>
+ */
+public class RoomService implements Closeable {
+    /**
+     * The number of broadcasts each room sends a second.
+     */
+    public static final int TICKS_PER_SECOND = 20;
+    /**
+     * The most frames a member's connection may have waiting before the member is skipped for a tick.
+     */
+    public static final int MAX_BACKLOG = 2;
+
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final Map<ClientSession, Member> members = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong statesSent = new AtomicLong();
+    private final AtomicLong deferrals = new AtomicLong();
+    private long ticks; // guarded by this
+    private ScheduledExecutorService ticker;
+
+    /**
+     * Joins a player to a room, creating the room if it is empty, and leaves any room the session was in.
+     *
+     * @param session the player's connection
+     * @param room    the room name
+     * @param player  the player's name, unique within the room
+     * @return the current state of every other player in the room
+     * @throws IllegalArgumentException if another player in the room has the same name
+     */
+    public List<PlayerState> join(ClientSession session, String room, String player) {
+        leave(session);
+        Member member = new Member(session, player);
+        Room joined = rooms.compute(room, (name, existing) -> {
+            Room target = existing != null ? existing : new Room(name);
+            if (target.members.putIfAbsent(player, member) != null) {
+                throw new IllegalArgumentException(player + " is already in room " + name);
+            }
+            return target;
+        });
+        member.room = joined;
+        members.put(session, member);
+        joined.changed.add(player);
+
+        List<PlayerState> others = new ArrayList<>();
+        for (Member other : joined.members.values()) {
+            if (other != member) {
+                others.add(other.state);
+            }
+        }
+        return others;
+    }
+
+    /**
+     * Records a player's latest state. It is sent to the rest of the room on the next tick, unless a newer one
+     * replaces it first.
+     *
+     * @param session the player's connection
+     * @param score   the player's score
+     * @param combo   the player's current combo
+     * @return {@code false} if the session is not in a room
+     */
+    public boolean update(ClientSession session, int score, int combo) {
+        Member member = members.get(session);
+        if (member == null) {
+            return false;
+        }
+        member.state = new PlayerState(member.player, score, combo);
+        member.room.changed.add(member.player);
+        updates.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Takes a player out of their room; the rest of the room is told on the next tick. Empty rooms are removed.
+     *
+     * @param session the player's connection
+     * @return {@code false} if the session was not in a room
+     */
+    public boolean leave(ClientSession session) {
+        Member member = members.remove(session);
+        if (member == null) {
+            return false;
+        }
+        Room room = member.room;
+        room.members.remove(member.player, member);
+        room.changed.add(member.player);
+        rooms.computeIfPresent(room.name, (name, existing) -> existing.members.isEmpty() ? null : existing);
+        return true;
+    }
+
+    /**
+     * Sends every room's changes to its members. Called by the ticker thread, or directly.
+     */
+    public synchronized void tick() {
+        ticks++;
+        for (Room room : rooms.values()) {
+            List<String> changed = new ArrayList<>();
+            for (Iterator<String> players = room.changed.iterator(); players.hasNext(); ) {
+                changed.add(players.next());
+                players.remove(); // a change made meanwhile is kept for the next tick
+            }
+            for (Member member : room.members.values()) {
+                for (String player : changed) {
+                    if (!player.equals(member.player)) {
+                        member.dirty.add(player);
+                    }
+                }
+                if (member.dirty.isEmpty() || !member.session.isOpen()) {
+                    continue;
+                }
+                if (member.session.getBacklog() > MAX_BACKLOG) {
+                    deferrals.incrementAndGet(); // send only the newest states once it catches up
+                    continue;
+                }
+                broadcast(room, member);
+            }
+        }
+    }
+
+    private void broadcast(Room room, Member member) {
+        ObjectNode packet = objectMapper.createObjectNode();
+        packet.put("room", room.name);
+        packet.put("tick", ticks);
+        ArrayNode players = packet.putArray("players");
+        for (String player : member.dirty) {
+            Member other = room.members.get(player);
+            if (other == null) {
+                players.addObject().put("player", player).put("left", true);
+            } else {
+                write(players.addObject(), other.state);
+            }
+        }
+        statesSent.addAndGet(member.dirty.size());
+        member.dirty.clear();
+        try {
+            member.session.send(Frame.of(MessageType.BROADCAST, objectMapper.writeValueAsString(packet)));
+            broadcasts.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("Error broadcasting to " + member.player + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a player's state into a JSON object, in the form both broadcasts and replies use.
+     *
+     * @param json  the object to fill in
+     * @param state the player's state
+     * @return the object
+     */
+    static ObjectNode write(ObjectNode json, PlayerState state) {
+        return json.put("player", state.getPlayer()).put("score", state.getScore()).put("combo", state.getCombo());
+    }
+
+    /**
+     * Starts ticking in the background.
+     *
+     * @param periodMillis the time between ticks
+     */
+    public synchronized void startTicks(long periodMillis) {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "room-ticks");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                System.err.println("Error broadcasting room state: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the number of rooms with players in them.
+     *
+     * @return the room count
+     */
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * Returns the number of state updates received from players.
+     *
+     * @return the update count
+     */
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    /**
+     * Returns the number of {@code BROADCAST} frames sent.
+     *
+     * @return the broadcast count
+     */
+    public long getBroadcastCount() {
+        return broadcasts.get();
+    }
+
+    /**
+     * Returns the number of player states carried by broadcasts; updates replaced before a tick are not counted.
+     *
+     * @return the number of states sent
+     */
+    public long getStatesSent() {
+        return statesSent.get();
+    }
+
+    /**
+     * Returns the number of times a member was skipped for a tick because its connection was behind.
+     *
+     * @return the deferral count
+     */
+    public long getDeferralCount() {
+        return deferrals.get();
+    }
+
+    /**
+     * Stops the background ticks.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = ticker;
+            ticker = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d rooms, %d players; %d updates relayed as %d states in %d broadcasts, "
+                        + "%d deferred", getRoomCount(), members.size(), getUpdateCount(), getStatesSent(),
+                getBroadcastCount(), getDeferralCount());
+    }
+
+    /**
+     * The {@code PlayerState} class is one player's live score and combo.
+     */
+    public static final class PlayerState {
+        private final String player;
+        private final int score;
+        private final int combo;
+
+        /**
+         * Constructs a {@code PlayerState}.
+         *
+         * @param player the player's name
+         * @param score  the score
+         * @param combo  the current combo
+         */
+        public PlayerState(String player, int score, int combo) {
+            this.player = player;
+            this.score = score;
+            this.combo = combo;
+        }
+
+        /**
+         * Returns the player's name.
+         *
+         * @return the player
+         */
+        public String getPlayer() {
+            return player;
+        }
+
+        /**
+         * Returns the score.
+         *
+         * @return the score
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Returns the current combo.
+         *
+         * @return the combo
+         */
+        public int getCombo() {
+            return combo;
+        }
+
+        @Override
+        public String toString() {
+            return player + ": " + score + " x" + combo;
+        }
+    }
+
+    /**
+     * The {@code Room} class is the players in one room and which of them changed since the last tick.
+     */
+    private static class Room {
+        final String name;
+        final Map<String, Member> members = new ConcurrentHashMap<>();
+        final Set<String> changed = ConcurrentHashMap.newKeySet();
+
+        Room(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * The {@code Member} class is one player in a room: their latest state and the players whose changes have
+     * not been sent to them yet.
+     */
+    private static class Member {
+        final ClientSession session;
+        final String player;
+        volatile Room room;
+        volatile PlayerState state;
+        final Set<String> dirty = new TreeSet<>(); // only touched by tick()
+
+        Member(ClientSession session, String player) {
+            this.session = session;
+            this.player = player;
+            this.state = new PlayerState(player, 0, 0);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The {@code SampledLogger} class writes log lines from a background thread, so the threads serving clients
+ * never wait on the console.
+ *
+ * <p>Lines go into a bounded queue. When the queue is full, for instance while every request is failing the
+ * same way, further lines are dropped and counted rather than slowing the server down, and the count is
+ * written once there is room again. Events that happen for every message are logged with
+ * {@link #sample(Supplier)}, which only builds and writes about one line in every {@code sampleEvery}.</p>
+ */
+public class SampledLogger {
+    /**
+     * The system property giving how many messages there are for each one {@link #SHARED} logs.
+     */
+    public static final String SAMPLE_PROPERTY = "javahero.logSampleEvery";
+
+    /**
+     * A logger writing to standard error, shared by the whole server.
+     */
+    public static final SampledLogger SHARED =
+            new SampledLogger(System.err, Integer.getInteger(SAMPLE_PROPERTY, 1000), 1024);
+
+    private final PrintStream out;
+    private final int sampleEvery;
+    private final BlockingQueue<String> lines;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    /**
+     * Constructs a {@code SampledLogger} and starts its writer thread.
+     *
+     * @param out         where lines are written
+     * @param sampleEvery how many events there are for each one sampled, or 0 to sample none
+     * @param capacity    the most lines waiting to be written
+     */
+    public SampledLogger(PrintStream out, int sampleEvery, int capacity) {
+        this.out = out;
+        this.sampleEvery = sampleEvery;
+        this.lines = new ArrayBlockingQueue<>(capacity);
+        Thread writer = new Thread(this::writeLines, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a line to be written, or drops it if the queue is full.
+     *
+     * @param line the line
+     */
+    public void log(String line) {
+        if (!lines.offer(line)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Logs about one in every {@code sampleEvery} calls. The line is only built for the calls that are logged.
+     *
+     * @param line builds the line
+     */
+    public void sample(Supplier<String> line) {
+        if (sampleEvery > 0 && ThreadLocalRandom.current().nextInt(sampleEvery) == 0) {
+            log(line.get());
+        }
+    }
+
+    /**
+     * Returns the number of lines dropped because the queue was full.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of lines written.
+     *
+     * @return the written count
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * Waits until every line queued so far has been written.
+     *
+     * @param timeoutMillis the longest time to wait
+     * @return {@code true} if the queue emptied in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitWritten(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!lines.isEmpty()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Writes queued lines until the program exits. Runs on the writer thread.
+     */
+    private void writeLines() {
+        long reportedDrops = 0;
+        try {
+            while (true) {
+                String line = lines.take();
+                long drops = dropped.sum();
+                if (drops > reportedDrops) {
+                    out.println("(" + (drops - reportedDrops) + " log lines dropped)");
+                    reportedDrops = drops;
+                }
+                out.println(line);
+                written.increment();
+            }
+        } catch (InterruptedException e) {
+            // exiting
+        }
+    }
+}
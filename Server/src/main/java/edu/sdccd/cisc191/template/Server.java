@@ -1,89 +1,271 @@
 package edu.sdccd.cisc191.template;
 
-import java.net.*;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
- * The {@code Server} class represents a simple multi-threaded server that listens for client connections
- * on a specified port. It handles each client connection in a separate thread using the {@code ClientHandler} class.
+ * The {@code Server} class represents a server that listens for client connections on a specified port and
+ * passes each request to a {@code RequestHandler}. How connections are served depends on its {@link Mode}:
+ * by default an {@code EventLoopServer} serves them with a few I/O threads using non-blocking sockets, and a
+ * {@code BlockingServer} gives each connection its own platform or virtual thread. The mode is chosen with the
+ * {@value #MODE_PROPERTY} system property or the second command-line argument.
+ *
+ * <p>By default requests are answered by a {@link GameRequestHandler} over the song leaderboards. When started
+ * from {@link #main(String[])}, the leaderboards are restored from the snapshot file named by
+ * {@value #SNAPSHOT_PROPERTY} and saved to it every {@value #SNAPSHOT_PERIOD_MILLIS} ms and on shutdown, and the
+ * MIDI files in the directory named by {@value #SONGS_PROPERTY} are converted to charts in the directory named by
+ * {@value #CHARTS_PROPERTY} and offered for download by a {@link SongDistributor}. Head-to-head rooms broadcast
+ * their players' scores {@value RoomService#TICKS_PER_SECOND} times a second. A plain-text report of the server's
+ * {@link ServerMetrics} is served on the loopback port given by {@value #STATS_PORT_PROPERTY}. How many clients
+ * are served at once, and how far each may fall behind, is bounded by {@link ServerLimits}.</p>
  */
 public class Server {
-    private ServerSocket serverSocket;
+    /**
+     * The system property that selects the mode: {@code event-loop}, {@code platform} or {@code virtual}.
+     */
+    public static final String MODE_PROPERTY = "javahero.serverMode";
+    /**
+     * The system property naming the leaderboard snapshot file.
+     */
+    public static final String SNAPSHOT_PROPERTY = "javahero.leaderboards";
+    /**
+     * The time between leaderboard snapshots.
+     */
+    public static final long SNAPSHOT_PERIOD_MILLIS = 30_000;
+    /**
+     * The system property naming the directory of MIDI files clients can download.
+     */
+    public static final String SONGS_PROPERTY = "javahero.songs";
+    /**
+     * The system property naming the directory of charts clients can download.
+     */
+    public static final String CHARTS_PROPERTY = "javahero.charts";
+    /**
+     * The most bytes of song files kept in memory.
+     */
+    public static final long SONG_CACHE_BYTES = 64L << 20;
+    /**
+     * The system property giving the loopback port of the stats report, or 0 for none.
+     */
+    public static final String STATS_PORT_PROPERTY = "javahero.statsPort";
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    /**
+     * The number of threads doing network I/O.
+     */
+    public static final int IO_THREADS = Math.max(1, Math.min(4, CORES / 2));
+    /**
+     * The number of threads handling requests.
+     */
+    public static final int WORKER_THREADS = Math.max(2, CORES);
+
+    /**
+     * The ways the server can serve connections.
+     */
+    public enum Mode {
+        /** A few I/O threads with non-blocking sockets and a pool of worker threads. */
+        EVENT_LOOP("event-loop"),
+        /** One platform thread per connection, blocking on its socket. */
+        PLATFORM("platform"),
+        /** One virtual thread per connection, blocking on its socket. Needs Java 21 or later. */
+        VIRTUAL("virtual");
+
+        private final String label;
+
+        Mode(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Returns the mode with the specified name.
+         *
+         * @param name the name of the mode, as used by {@value #MODE_PROPERTY}
+         * @return the mode
+         * @throws IllegalArgumentException if there is no mode with that name
+         */
+        public static Mode of(String name) {
+            for (Mode mode : values()) {
+                if (mode.label.equalsIgnoreCase(name.trim())) {
+                    return mode;
+                }
+            }
+            throw new IllegalArgumentException("Unknown server mode: " + name);
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final RequestHandler handler;
+    private final Mode mode;
+    private ConnectionServer connections;
 
     /**
-     * Starts the server on the specified port and listens for client connections.
-     * For each client connection, a new {@code ClientHandler} thread is started.
+     * Constructs a {@code Server} that answers game requests over leaderboards kept in memory.
+     */
+    public Server() {
+        this(new GameRequestHandler(new LeaderboardService()));
+    }
+
+    /**
+     * Constructs a {@code Server} that answers requests with the specified handler.
+     *
+     * @param handler the logic that answers requests
+     */
+    public Server(RequestHandler handler) {
+        this(handler, Mode.of(System.getProperty(MODE_PROPERTY, Mode.EVENT_LOOP.toString())));
+    }
+
+    /**
+     * Constructs a {@code Server} that answers requests with the specified handler in the specified mode.
+     *
+     * @param handler the logic that answers requests
+     * @param mode    how connections are served
+     */
+    public Server(RequestHandler handler, Mode mode) {
+        this.handler = handler;
+        this.mode = mode;
+    }
+
+    /**
+     * Creates the connection server for a mode, with the default limits and the connection limit given by
+     * {@value ServerLimits#MAX_CONNECTIONS_PROPERTY}.
+     *
+     * @param handler the logic that answers requests
+     * @param mode    how connections are served
+     * @return a connection server that has not been started
+     */
+    public static ConnectionServer create(RequestHandler handler, Mode mode) {
+        return create(handler, mode, ServerLimits.fromProperties());
+    }
+
+    /**
+     * Creates the connection server for a mode.
+     *
+     * @param handler the logic that answers requests
+     * @param mode    how connections are served
+     * @param limits  how much the server takes on
+     * @return a connection server that has not been started
+     */
+    public static ConnectionServer create(RequestHandler handler, Mode mode, ServerLimits limits) {
+        switch (mode) {
+            case PLATFORM:
+                return new BlockingServer(handler, false, limits);
+            case VIRTUAL:
+                return new BlockingServer(handler, true, limits);
+            default:
+                return new EventLoopServer(handler, IO_THREADS, WORKER_THREADS, limits);
+        }
+    }
+
+    /**
+     * Starts the server on the specified port and serves clients until the server is stopped.
      *
      * @param port the port number on which the server will listen for connections
      * @throws IOException if an I/O error occurs when opening the socket
      */
     public void start(int port) throws IOException {
-        serverSocket = new ServerSocket(port);
-        System.out.println("Server started on port " + port);
-        while (true) {
-            new ClientHandler(serverSocket.accept()).start();
+        synchronized (this) {
+            connections = create(handler, mode);
+            connections.start(port);
+        }
+        System.out.println("Server started on port " + port + " (" + mode + ")");
+        try {
+            connections.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
     /**
-     * Stops the server by closing the server socket.
+     * Returns the metrics of the running server.
      *
-     * @throws IOException if an I/O error occurs when closing the socket
+     * @return the metrics, or {@code null} if the server has not started
      */
-    public void stop() throws IOException {
-        serverSocket.close();
+    public synchronized ServerMetrics getMetrics() {
+        return connections == null ? null : connections.getMetrics();
     }
 
     /**
-     * The {@code ClientHandler} class handles communication with a connected client in a separate thread.
-     * It reads input from the client and can process it based on the server's logic.
+     * Stops the server, closing every client connection.
+     *
+     * @throws IOException if an I/O error occurs when closing the socket
      */
-    private static class ClientHandler extends Thread {
-        private Socket clientSocket;
-        private PrintWriter out;
-        private BufferedReader in;
-
-        /**
-         * Constructs a {@code ClientHandler} for the specified client socket.
-         *
-         * @param socket the client socket
-         */
-        public ClientHandler(Socket socket) {
-            this.clientSocket = socket;
-        }
-
-        /**
-         * Runs the client handler thread, reading input from the client and processing it.
-         * The connection is closed after the client disconnects.
-         */
-        public void run() {
-            try {
-                out = new PrintWriter(clientSocket.getOutputStream(), true);
-                in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                String inputLine;
-                while ((inputLine = in.readLine()) != null) {
-                    System.out.println("Received: " + inputLine);
-                    // Add your logic to handle client input
-                }
-                in.close();
-                out.close();
-                clientSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    public synchronized void stop() throws IOException {
+        if (connections != null) {
+            connections.close();
         }
     }
 
     /**
-     * The main method to start the server on port 4444.
+     * The main method to start the server, on port 4444 unless another port is given.
      *
-     * @param args the command-line arguments (not used)
+     * @param args the port and the mode, both optional
      */
     public static void main(String[] args) {
-        Server server = new Server();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4444;
+        if (args.length > 1) {
+            System.setProperty(MODE_PROPERTY, args[1]);
+        }
+        LeaderboardService leaderboards =
+                new LeaderboardService(Paths.get(System.getProperty(SNAPSHOT_PROPERTY, "leaderboards.dat")));
         try {
-            server.start(4444);
+            System.out.println("Restored " + leaderboards.load() + " leaderboard entries");
         } catch (IOException e) {
+            System.err.println("Error restoring leaderboards: " + e.getMessage());
+        }
+        leaderboards.startSnapshots(SNAPSHOT_PERIOD_MILLIS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                leaderboards.close();
+            } catch (IOException e) {
+                System.err.println("Error saving leaderboards: " + e.getMessage());
+            }
+        }, "leaderboard-shutdown"));
+
+        Path songDirectory = Paths.get(System.getProperty(SONGS_PROPERTY, "songs"));
+        Path chartDirectory = Paths.get(System.getProperty(CHARTS_PROPERTY, "charts"));
+        if (Files.isDirectory(songDirectory)) {
+            try {
+                System.out.println("Charts: " + new ChartConverter(songDirectory, chartDirectory, CORES).convertAll());
+            } catch (IOException e) {
+                System.err.println("Error converting charts: " + e.getMessage());
+            }
+        }
+        SongDistributor songs = new SongDistributor(songDirectory, chartDirectory, SONG_CACHE_BYTES,
+                FrameCodec.DEFAULT_MAX_FRAME_LENGTH - FrameCodec.HEADER_LENGTH - 4096); // room for the JSON
+        System.out.println("Serving " + songs.getSongNames().size() + " songs from " + songDirectory);
+
+        RoomService rooms = new RoomService();
+        rooms.startTicks(1000 / RoomService.TICKS_PER_SECOND);
+
+        Server server = new Server(new GameRequestHandler(leaderboards, songs, rooms));
+        int statsPort = Integer.getInteger(STATS_PORT_PROPERTY, port + 1);
+        if (statsPort > 0) {
+            StatsEndpoint stats = new StatsEndpoint(() -> {
+                ServerMetrics metrics = server.getMetrics();
+                String lineEnd = System.lineSeparator();
+                return (metrics == null ? "" : metrics.report())
+                        + "songs " + songs + lineEnd
+                        + "rooms " + rooms + lineEnd
+                        + "buffer_pool allocations=" + BufferPool.SHARED.getAllocationCount()
+                        + " reuses=" + BufferPool.SHARED.getReuseCount() + lineEnd
+                        + "log_lines_dropped " + SampledLogger.SHARED.getDroppedCount() + lineEnd;
+            });
+            try {
+                stats.start(statsPort);
+                System.out.println("Stats on localhost:" + stats.getPort());
+            } catch (IOException e) {
+                System.err.println("Error starting stats endpoint: " + e.getMessage());
+            }
+        }
+        try {
+            server.start(port);
+        } catch (IOException | UnsupportedOperationException e) {
             e.printStackTrace();
         }
     }
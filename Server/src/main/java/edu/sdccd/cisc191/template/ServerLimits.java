@@ -0,0 +1,134 @@
+package edu.sdccd.cisc191.template;
+
+/**
+ * The {@code ServerLimits} class is how much a {@link ConnectionServer} takes on, so one misbehaving client cannot
+ * slow the server down for everyone else.
+ *
+ * <ul>
+ *     <li>At most {@code maxConnections} clients are served at once. A client connecting beyond that is sent an
+ *     {@code ERROR} frame saying the server is full, with correlation ID 0, and disconnected.</li>
+ *     <li>A connection stops being read while {@code maxPendingRequests} of its requests are waiting for the
+ *     handler, or {@code maxPendingResponses} frames are waiting to be written to it. TCP then stops the client
+ *     sending, and reading starts again once the connection has caught up.</li>
+ *     <li>A client that takes no bytes from its socket for {@code slowClientMillis} while frames are waiting, or
+ *     that lets twice {@code maxPendingResponses} frames pile up, for instance pushes it never reads, is
+ *     disconnected.</li>
+ * </ul>
+ */
+public final class ServerLimits {
+    /**
+     * The system property giving the most clients served at once.
+     */
+    public static final String MAX_CONNECTIONS_PROPERTY = "javahero.maxConnections";
+
+    /**
+     * The limits used unless others are given: 20,000 connections, 64 requests and 256 frames queued on each,
+     * and ten seconds for a client to take any bytes.
+     */
+    public static final ServerLimits DEFAULT = new ServerLimits(20_000, 64, 256, 10_000);
+
+    private final int maxConnections;
+    private final int maxPendingRequests;
+    private final int maxPendingResponses;
+    private final long slowClientMillis;
+
+    /**
+     * Constructs a {@code ServerLimits}.
+     *
+     * @param maxConnections      the most clients served at once
+     * @param maxPendingRequests  the most requests from one client waiting for the handler before it stops being
+     *                            read
+     * @param maxPendingResponses the most frames waiting to be written to one client before it stops being read
+     * @param slowClientMillis    how long a client with frames waiting may take no bytes before it is disconnected
+     * @throws IllegalArgumentException if a limit is less than 1
+     */
+    public ServerLimits(int maxConnections, int maxPendingRequests, int maxPendingResponses, long slowClientMillis) {
+        if (maxConnections < 1 || maxPendingRequests < 1 || maxPendingResponses < 1 || slowClientMillis < 1) {
+            throw new IllegalArgumentException("Limits must be at least 1");
+        }
+        this.maxConnections = maxConnections;
+        this.maxPendingRequests = maxPendingRequests;
+        this.maxPendingResponses = maxPendingResponses;
+        this.slowClientMillis = slowClientMillis;
+    }
+
+    /**
+     * Returns the default limits, with the connection limit taken from {@value #MAX_CONNECTIONS_PROPERTY} if it
+     * is set.
+     *
+     * @return the limits
+     */
+    public static ServerLimits fromProperties() {
+        return DEFAULT.withMaxConnections(Integer.getInteger(MAX_CONNECTIONS_PROPERTY, DEFAULT.maxConnections));
+    }
+
+    /**
+     * Returns these limits with a different connection limit.
+     *
+     * @param maxConnections the most clients served at once
+     * @return the new limits
+     */
+    public ServerLimits withMaxConnections(int maxConnections) {
+        return new ServerLimits(maxConnections, maxPendingRequests, maxPendingResponses, slowClientMillis);
+    }
+
+    /**
+     * Returns the most clients served at once.
+     *
+     * @return the connection limit
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Returns the most requests from one client waiting for the handler before the client stops being read.
+     *
+     * @return the inbound queue limit
+     */
+    public int getMaxPendingRequests() {
+        return maxPendingRequests;
+    }
+
+    /**
+     * Returns the most frames waiting to be written to one client before the client stops being read.
+     *
+     * @return the outbound queue limit
+     */
+    public int getMaxPendingResponses() {
+        return maxPendingResponses;
+    }
+
+    /**
+     * Returns the most frames waiting to be written to one client before it is disconnected.
+     *
+     * @return twice the outbound queue limit
+     */
+    public int getMaxBacklog() {
+        return maxPendingResponses * 2;
+    }
+
+    /**
+     * Returns how long a client with frames waiting may take no bytes before it is disconnected.
+     *
+     * @return the time in milliseconds
+     */
+    public long getSlowClientMillis() {
+        return slowClientMillis;
+    }
+
+    /**
+     * Returns the frame sent to a client turned away because the server is full.
+     *
+     * @return an {@code ERROR} frame
+     */
+    static Frame serverFull() {
+        return Frame.of(MessageType.ERROR, "{\"error\":\"Server full\"}");
+    }
+
+    @Override
+    public String toString() {
+        return "connections=" + maxConnections + " requests=" + maxPendingRequests + " responses="
+                + maxPendingResponses + " slowClientMillis=" + slowClientMillis;
+    }
+}
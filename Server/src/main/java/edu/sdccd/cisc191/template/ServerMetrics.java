@@ -0,0 +1,266 @@
+package edu.sdccd.cisc191.template;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ServerMetrics} class counts what a {@link ConnectionServer} does: connections accepted, closed and
+ * turned away, frames and bytes in each direction, failed requests, how often a client was held back or
+ * disconnected for falling behind, and how long the handler took for each message type.
+ *
+ * <p>Every counter is a {@link LongAdder} and every timing goes into a {@link LatencyHistogram}, so the I/O and
+ * worker threads update them without locks or contention. {@link #report()} renders them as plain text, one
+ * {@code name value} pair per line, for people and scripts alike.</p>
+ */
+public class ServerMetrics {
+    private final long startNanos = System.nanoTime();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder readPauses = new LongAdder();
+    private final LongAdder slowClients = new LongAdder();
+    private final LongAdder framesIn = new LongAdder();
+    private final LongAdder framesOut = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder protocolErrors = new LongAdder();
+    private final Map<MessageType, LatencyHistogram> handleTimes = new EnumMap<>(MessageType.class);
+
+    /**
+     * Constructs a {@code ServerMetrics} with every count at zero.
+     */
+    public ServerMetrics() {
+        for (MessageType type : MessageType.values()) {
+            handleTimes.put(type, new LatencyHistogram()); // filled up front, so reads need no lock
+        }
+    }
+
+    /**
+     * Counts a connection accepted.
+     */
+    public void connectionAccepted() {
+        accepted.increment();
+    }
+
+    /**
+     * Counts a connection closed.
+     */
+    public void connectionClosed() {
+        closed.increment();
+    }
+
+    /**
+     * Counts a connection turned away because the server was full.
+     */
+    public void connectionRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Counts a connection that stopped being read because its queues were full.
+     */
+    public void readPaused() {
+        readPauses.increment();
+    }
+
+    /**
+     * Counts a connection closed because the client was not reading what it was sent.
+     */
+    public void slowClientClosed() {
+        slowClients.increment();
+    }
+
+    /**
+     * Counts a frame received from a client.
+     *
+     * @param frame the frame
+     */
+    public void frameReceived(Frame frame) {
+        framesIn.increment();
+        bytesIn.add(frame.getEncodedLength());
+    }
+
+    /**
+     * Counts a frame sent to a client.
+     *
+     * @param frame the frame
+     */
+    public void frameSent(Frame frame) {
+        frameSent(frame.getEncodedLength());
+    }
+
+    /**
+     * Counts a frame sent to a client, for callers that no longer hold the frame.
+     *
+     * @param encodedLength the number of bytes the frame took on the wire
+     */
+    public void frameSent(int encodedLength) {
+        framesOut.increment();
+        bytesOut.add(encodedLength);
+    }
+
+    /**
+     * Records how long the handler took for a request.
+     *
+     * @param type  the request's message type
+     * @param nanos the time in nanoseconds
+     */
+    public void handled(MessageType type, long nanos) {
+        handleTimes.get(type).record(nanos);
+    }
+
+    /**
+     * Counts a request the handler failed on.
+     */
+    public void requestFailed() {
+        failures.increment();
+    }
+
+    /**
+     * Counts a malformed frame, which closes its connection.
+     */
+    public void protocolError() {
+        protocolErrors.increment();
+    }
+
+    /**
+     * Returns the number of connections accepted.
+     *
+     * @return the accepted count
+     */
+    public long getConnectionsAccepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * Returns the number of connections open now.
+     *
+     * @return the accepted count less the closed count
+     */
+    public long getActiveConnections() {
+        return accepted.sum() - closed.sum();
+    }
+
+    /**
+     * Returns the number of connections turned away because the server was full.
+     *
+     * @return the rejected count
+     */
+    public long getConnectionsRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of times a connection stopped being read because its queues were full.
+     *
+     * @return the pause count
+     */
+    public long getReadPauses() {
+        return readPauses.sum();
+    }
+
+    /**
+     * Returns the number of connections closed because the client was not reading.
+     *
+     * @return the slow client count
+     */
+    public long getSlowClientsClosed() {
+        return slowClients.sum();
+    }
+
+    /**
+     * Returns the number of frames received.
+     *
+     * @return the frames in
+     */
+    public long getFramesIn() {
+        return framesIn.sum();
+    }
+
+    /**
+     * Returns the number of frames sent.
+     *
+     * @return the frames out
+     */
+    public long getFramesOut() {
+        return framesOut.sum();
+    }
+
+    /**
+     * Returns the number of bytes received, counting frame headers.
+     *
+     * @return the bytes in
+     */
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    /**
+     * Returns the number of bytes sent, counting frame headers.
+     *
+     * @return the bytes out
+     */
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Returns the number of requests the handler failed on.
+     *
+     * @return the failure count
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Returns how long the handler has taken for requests of one message type.
+     *
+     * @param type the message type
+     * @return the handling times in nanoseconds
+     */
+    public LatencyHistogram getHandleTimes(MessageType type) {
+        return handleTimes.get(type);
+    }
+
+    /**
+     * Renders every metric as plain text. Handling times are in microseconds and only shown for message types
+     * that have been received.
+     *
+     * @return the report, one metric per line
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "uptime_seconds %.1f%n", (System.nanoTime() - startNanos) / 1e9));
+        line(report, "connections_accepted", getConnectionsAccepted());
+        line(report, "connections_active", getActiveConnections());
+        line(report, "connections_rejected", getConnectionsRejected());
+        line(report, "read_pauses", getReadPauses());
+        line(report, "slow_clients_closed", getSlowClientsClosed());
+        line(report, "frames_in", getFramesIn());
+        line(report, "frames_out", getFramesOut());
+        line(report, "bytes_in", getBytesIn());
+        line(report, "bytes_out", getBytesOut());
+        line(report, "requests_failed", getFailures());
+        line(report, "protocol_errors", protocolErrors.sum());
+        for (Map.Entry<MessageType, LatencyHistogram> times : handleTimes.entrySet()) {
+            if (times.getValue().getCount() > 0) {
+                report.append("handle_time_us{type=").append(times.getKey()).append("} ")
+                        .append(times.getValue().summary(1000)).append(System.lineSeparator());
+            }
+        }
+        return report.toString();
+    }
+
+    private static void line(StringBuilder report, String name, long value) {
+        report.append(name).append(' ').append(value).append(System.lineSeparator());
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+}
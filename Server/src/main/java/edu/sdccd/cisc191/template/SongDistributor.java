@@ -0,0 +1,378 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * The {@code SongDistributor} class hosts a library of MIDI files, and the charts {@link ChartConverter} made
+ * from them, for clients to download. Songs are named by file name, as in {@link SongLibrary}, and only files
+ * found when the library was scanned can be downloaded, so a request cannot reach outside the library.
+ *
+ * <p>A file is sent as the {@link FrameBody} of the response, so it is never copied through the Java heap. Files
+ * asked for at least {@value #HOT_THRESHOLD} times are hot: they are read once into a direct buffer, kept in a
+ * cache bounded by total size that drops the least recently used files first, and sent from memory. Other files
+ * are sent straight from disk with {@link FileChannel#transferTo(long, long, WritableByteChannel)}. A cached
+ * file that changes on disk is read again.</p>
+ *
+ * <p>It counts downloads started, finished and cut short, those in progress, the bytes sent, cache hits, and
+ * the throughput both overall and of each download while it runs. All methods are thread-safe.</p>
+ */
+public class SongDistributor {
+    /**
+     * The number of requests after which a file is cached.
+     */
+    public static final int HOT_THRESHOLD = 2;
+
+    private final Path midiDirectory;
+    private final ChartConverter charts;
+    private final long cacheCapacity;
+    private final int maxFileLength;
+    private volatile Map<String, Path> songs = Collections.emptyMap();
+
+    private final Map<Path, CachedFile> cache = new LinkedHashMap<>(16, 0.75f, true); // guarded by itself
+    private long cachedBytes; // guarded by cache
+    private final Map<Path, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+    private final long createdNanos = System.nanoTime();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong aborted = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong transferNanos = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * Constructs a {@code SongDistributor} and scans its library.
+     *
+     * @param midiDirectory  the directory of MIDI files
+     * @param chartDirectory the directory {@code ChartConverter} writes their charts to
+     * @param cacheCapacity  the most bytes of hot files kept in memory
+     * @param maxFileLength  the largest file that can be sent
+     */
+    public SongDistributor(Path midiDirectory, Path chartDirectory, long cacheCapacity, int maxFileLength) {
+        this.midiDirectory = midiDirectory;
+        this.charts = new ChartConverter(midiDirectory, chartDirectory, 1);
+        this.cacheCapacity = cacheCapacity;
+        this.maxFileLength = maxFileLength;
+        refresh();
+    }
+
+    /**
+     * Scans the library again for added or removed MIDI files.
+     */
+    public void refresh() {
+        Map<String, Path> found = new ConcurrentHashMap<>();
+        if (Files.isDirectory(midiDirectory)) {
+            try (Stream<Path> paths = Files.walk(midiDirectory)) {
+                paths.filter(SongDistributor::isMidiFile)
+                        .forEach(path -> found.putIfAbsent(path.getFileName().toString(), path));
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Error scanning song library: " + e.getMessage());
+            }
+        }
+        songs = found;
+    }
+
+    /**
+     * Returns the names of the songs that can be downloaded.
+     *
+     * @return the song names in alphabetical order
+     */
+    public List<String> getSongNames() {
+        List<String> names = new ArrayList<>(songs.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Opens a song's MIDI file or chart for sending.
+     *
+     * @param songName the song's file name
+     * @param chart    {@code true} for the chart, {@code false} for the MIDI file
+     * @return the file's contents as a frame body, or {@code null} if there is no such song or chart
+     * @throws IOException if the file cannot be read or is too large to send
+     */
+    public FrameBody open(String songName, boolean chart) throws IOException {
+        Path midi = songs.get(songName);
+        if (midi == null) {
+            return null;
+        }
+        Path file = chart ? charts.chartPath(midi) : midi;
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        CachedFile cached = lookup(file);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+            int count = requestCounts.computeIfAbsent(file, key -> new AtomicInteger()).incrementAndGet();
+            if (count >= HOT_THRESHOLD) {
+                cached = load(file);
+            }
+        }
+
+        FrameBody body;
+        if (cached != null) {
+            body = FrameBody.of(cached.contents);
+        } else {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            long size = channel.size();
+            if (size > maxFileLength) {
+                channel.close();
+                throw new IOException(file.getFileName() + " is too large to send (" + size + " bytes)");
+            }
+            body = FrameBody.of(channel, 0, (int) size);
+        }
+        started.incrementAndGet();
+        active.incrementAndGet();
+        return new TrackedBody(body, cached != null);
+    }
+
+    /**
+     * Returns whether a body opened by a distributor is sent from memory rather than from disk.
+     *
+     * @param body a body returned by {@link #open(String, boolean)}
+     * @return {@code true} if the file was cached
+     */
+    public static boolean isCached(FrameBody body) {
+        return body instanceof TrackedBody && ((TrackedBody) body).cached;
+    }
+
+    /**
+     * Returns the cached contents of a file if they are still current.
+     */
+    private CachedFile lookup(Path file) throws IOException {
+        CachedFile cached;
+        synchronized (cache) {
+            cached = cache.get(file);
+        }
+        if (cached == null) {
+            return null;
+        }
+        if (cached.matches(file)) {
+            return cached;
+        }
+        synchronized (cache) {
+            if (cache.get(file) == cached) {
+                cache.remove(file);
+                cachedBytes -= cached.contents.capacity();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a hot file into a direct buffer and caches it, evicting the least recently used files to make room.
+     *
+     * @return the cached file, or {@code null} if the file is too large to cache
+     */
+    private CachedFile load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxFileLength || size > cacheCapacity / 4) {
+                return null; // a few big files would push out everything else
+            }
+            FileTime modified = Files.getLastModifiedTime(file);
+            ByteBuffer contents = ByteBuffer.allocateDirect((int) size);
+            while (contents.hasRemaining() && channel.read(contents) >= 0) {
+                // keep reading until full
+            }
+            ((Buffer) contents).flip();
+            CachedFile cached = new CachedFile(contents.asReadOnlyBuffer(), modified);
+
+            synchronized (cache) {
+                CachedFile previous = cache.put(file, cached);
+                if (previous != null) {
+                    cachedBytes -= previous.contents.capacity();
+                }
+                cachedBytes += size;
+                Iterator<CachedFile> oldest = cache.values().iterator();
+                while (cachedBytes > cacheCapacity && oldest.hasNext()) {
+                    CachedFile evicted = oldest.next();
+                    if (evicted != cached) {
+                        cachedBytes -= evicted.contents.capacity();
+                        oldest.remove();
+                    }
+                }
+            }
+            return cached;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of files held in memory.
+     *
+     * @return the cached size
+     */
+    public long getCachedBytes() {
+        synchronized (cache) {
+            return cachedBytes;
+        }
+    }
+
+    /**
+     * Returns the number of downloads in progress.
+     *
+     * @return the active download count
+     */
+    public int getActiveDownloads() {
+        return active.get();
+    }
+
+    /**
+     * Returns the number of downloads sent in full.
+     *
+     * @return the completed download count
+     */
+    public long getCompletedDownloads() {
+        return completed.get();
+    }
+
+    /**
+     * Returns the number of downloads cut short by a closed connection.
+     *
+     * @return the aborted download count
+     */
+    public long getAbortedDownloads() {
+        return aborted.get();
+    }
+
+    /**
+     * Returns the number of payload bytes sent.
+     *
+     * @return the bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Returns the fraction of downloads served from memory.
+     *
+     * @return the cache hit rate between 0 and 1
+     */
+    public double getCacheHitRate() {
+        long hits = cacheHits.get();
+        long total = hits + cacheMisses.get();
+        return total == 0 ? 0 : hits / (double) total;
+    }
+
+    /**
+     * Returns the bytes sent per second since the distributor was created, across all downloads.
+     *
+     * @return the overall throughput
+     */
+    public double getBytesPerSecond() {
+        return bytesSent.get() * 1e9 / Math.max(1, System.nanoTime() - createdNanos);
+    }
+
+    /**
+     * Returns the bytes sent per second by a download while it was running, averaged over finished downloads.
+     *
+     * @return the throughput of one download
+     */
+    public double getBytesPerSecondPerDownload() {
+        long nanos = transferNanos.get();
+        return nanos == 0 ? 0 : bytesSent.get() * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d active, %d completed, %d aborted; %.1f MB sent at %.1f MB/s "
+                        + "(%.1f MB/s per download); cache %.0f%% hits, %.1f MB held",
+                getActiveDownloads(), getCompletedDownloads(), getAbortedDownloads(), bytesSent.get() / 1e6,
+                getBytesPerSecond() / 1e6, getBytesPerSecondPerDownload() / 1e6, getCacheHitRate() * 100,
+                getCachedBytes() / 1e6);
+    }
+
+    private static boolean isMidiFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Files.isRegularFile(file) && (name.endsWith(".mid") || name.endsWith(".midi"));
+    }
+
+    /**
+     * The {@code CachedFile} class is a hot file held in memory and the modification time it was read at.
+     */
+    private static class CachedFile {
+        final ByteBuffer contents;
+        final FileTime modified;
+
+        CachedFile(ByteBuffer contents, FileTime modified) {
+            this.contents = contents;
+            this.modified = modified;
+        }
+
+        boolean matches(Path file) throws IOException {
+            return Files.size(file) == contents.capacity() && Files.getLastModifiedTime(file).equals(modified);
+        }
+    }
+
+    /**
+     * The {@code TrackedBody} class counts the bytes of one download as they are sent and records whether it
+     * finished when it is closed.
+     */
+    private class TrackedBody extends FrameBody {
+        private final FrameBody body;
+        private final boolean cached;
+        private final long startNanos = System.nanoTime();
+        private long sent;
+        private boolean closed;
+
+        TrackedBody(FrameBody body, boolean cached) {
+            this.body = body;
+            this.cached = cached;
+        }
+
+        @Override
+        public int length() {
+            return body.length();
+        }
+
+        @Override
+        public long writeTo(WritableByteChannel target, long offset) throws IOException {
+            long written = body.writeTo(target, offset);
+            sent += written;
+            bytesSent.addAndGet(written);
+            return written;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            active.decrementAndGet();
+            transferNanos.addAndGet(System.nanoTime() - startNanos);
+            if (sent >= body.length()) {
+                completed.incrementAndGet();
+            } else {
+                aborted.incrementAndGet();
+            }
+            body.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * The {@code StatsEndpoint} class serves a plain-text stats report on a port of its own, so an operator can run
+ * {@code nc localhost 4445} and see what the server is doing. Each connection gets the report as it stands at
+ * that moment and is then closed.
+ *
+ * <p>It listens only on the loopback address, so the stats are visible to whoever is on the server's machine and
+ * to nobody else. Connections are answered one at a time on a single thread, away from the threads serving
+ * players.</p>
+ */
+public class StatsEndpoint implements Closeable {
+    private final Supplier<String> report;
+    private ServerSocket serverSocket;
+
+    /**
+     * Constructs a {@code StatsEndpoint}.
+     *
+     * @param report builds the report each time it is asked for
+     */
+    public StatsEndpoint(Supplier<String> report) {
+        this.report = report;
+    }
+
+    /**
+     * Starts listening on the loopback address.
+     *
+     * @param port the port, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Thread thread = new Thread(this::serve, "stats-endpoint");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the port the endpoint is listening on.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            try (Socket socket = serverSocket.accept();
+                 OutputStream out = socket.getOutputStream()) {
+                socket.setSoTimeout(1000);
+                String text;
+                try {
+                    text = report.get();
+                } catch (RuntimeException e) {
+                    text = "error " + e + System.lineSeparator();
+                }
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Error serving stats: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops listening.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing stats socket: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package edu.sdccd.cisc191.template;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code IdleClients} class opens many connections to a server that never send anything, prints
+ * {@code connected} and waits to be killed. It runs in its own process so the client sockets do not count
+ * against the server process's open files. Usage: {@code IdleClients <host> <port> <count> [source address]};
+ * giving each process its own loopback source address, such as {@code 127.0.0.2}, lets several processes open
+ * more connections to one port than there are ephemeral ports.
+ */
+public class IdleClients {
+    public static void main(String[] args) throws Exception {
+        InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        int count = Integer.parseInt(args[2]);
+        InetSocketAddress source = args.length > 3 ? new InetSocketAddress(args[3], 0) : null;
+        List<SocketChannel> channels = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channels.add(channel);
+                channel.setOption(StandardSocketOptions.SO_LINGER, 0); // reset on exit, leaving no port in TIME_WAIT
+                if (source != null) {
+                    channel.bind(source);
+                }
+                channel.connect(address);
+            }
+        } catch (Exception e) {
+            System.out.println("failed after " + channels.size() + ": " + e.getMessage());
+            return;
+        }
+        System.out.println("connected");
+        System.out.flush();
+        Thread.sleep(Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,160 @@
+package edu.sdccd.cisc191.template;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code ServerBenchmark} class compares the server modes by the memory each idle connection costs and by
+ * how fast connections are accepted, at 1,000, 10,000 and 50,000 clients.
+ * Run it with {@code java -cp Common/target/classes:Server/target/classes:Server/target/test-classes
+ * edu.sdccd.cisc191.template.ServerBenchmark [mode...]}, on Java 21 or later to include virtual threads.
+ *
+ * <p>Each measurement runs in a fresh server process, so one run's threads and garbage do not affect the next.
+ * Clients are opened by {@code IdleClients} processes of at most {@value #CLIENTS_PER_PROCESS} connections each,
+ * each from its own loopback address. Memory per connection is the growth of the server's resident set
+ * (which includes thread stacks) and of its live heap, divided by the number of clients. Accept throughput is
+ * measured from the first accepted connection to the last. Runs that need more open files than the server
+ * process may have are skipped; raise {@code ulimit -n} to run them.</p>
+ */
+public class ServerBenchmark {
+    private static final int[] CLIENT_COUNTS = {1_000, 10_000, 50_000};
+    private static final int CLIENTS_PER_PROCESS = 10_000;
+    private static final long CONNECT_TIMEOUT_MILLIS = 120_000;
+
+    /**
+     * Runs the benchmark for the specified modes, or for all of them.
+     *
+     * @param args the modes to compare, or {@code --run <mode> <clients>} to run one measurement in this process
+     * @throws Exception if a process cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("--run")) {
+            run(Server.Mode.of(args[1]), Integer.parseInt(args[2]));
+            System.exit(0);
+        }
+        List<Server.Mode> modes = new ArrayList<>();
+        for (String arg : args) {
+            modes.add(Server.Mode.of(arg));
+        }
+        if (modes.isEmpty()) {
+            modes.addAll(Arrays.asList(Server.Mode.values()));
+        }
+
+        System.out.printf("%-11s %8s %12s %15s %15s%n", "mode", "clients", "accepts/s", "RSS KB/client", "heap KB/client");
+        for (Server.Mode mode : modes) {
+            for (int clients : CLIENT_COUNTS) {
+                Process process = java(ServerBenchmark.class.getName(), "--run", mode.toString(), String.valueOf(clients))
+                        .redirectErrorStream(true).start();
+                BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                String line = output.readLine();
+                process.waitFor();
+                System.out.printf("%-11s %8d %s%n", mode, clients, line);
+            }
+        }
+    }
+
+    /**
+     * Measures one mode at one number of clients and prints a single line of results.
+     *
+     * @param mode    the server mode
+     * @param clients the number of idle clients
+     */
+    private static void run(Server.Mode mode, int clients) throws Exception {
+        if (mode == Server.Mode.VIRTUAL && !BlockingServer.isVirtualThreadSupported()) {
+            System.out.println("skipped: virtual threads need Java 21, this is " + System.getProperty("java.version"));
+            return;
+        }
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            long maxFiles = ((com.sun.management.UnixOperatingSystemMXBean) os).getMaxFileDescriptorCount();
+            if (maxFiles < clients + 200) {
+                System.out.println("skipped: needs " + (clients + 200) + " open files, the limit is " + maxFiles);
+                return;
+            }
+        }
+
+        ConnectionServer server = Server.create(request -> request, mode);
+        server.start(0);
+        settle();
+        long rssBefore = residentKilobytes();
+        long heapBefore = heapUsed();
+
+        List<Process> processes = new ArrayList<>();
+        for (int opened = 0, index = 0; opened < clients; opened += CLIENTS_PER_PROCESS, index++) {
+            int count = Math.min(CLIENTS_PER_PROCESS, clients - opened);
+            processes.add(java(IdleClients.class.getName(), "127.0.0.1", String.valueOf(server.getPort()),
+                    String.valueOf(count), "127.0.0." + (index + 2)).redirectErrorStream(true).start());
+        }
+        try {
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+            long first = 0;
+            while (server.getConnectionCount() < clients && System.currentTimeMillis() < deadline) {
+                if (first == 0 && server.getConnectionCount() > 0) {
+                    first = System.nanoTime();
+                }
+                Thread.sleep(1);
+            }
+            long elapsed = System.nanoTime() - first;
+            int connected = server.getConnectionCount();
+            if (connected < clients) {
+                String reason = new BufferedReader(new InputStreamReader(processes.get(0).getInputStream())).readLine();
+                System.out.println("failed: " + connected + " of " + clients + " connected (" + reason + ")");
+                return;
+            }
+
+            settle();
+            double rssPerClient = (residentKilobytes() - rssBefore) / (double) clients;
+            double heapPerClient = (heapUsed() - heapBefore) / 1024.0 / clients;
+            System.out.printf("%12.0f %15.1f %15.2f%n", (clients - 1) * 1e9 / elapsed, rssPerClient, heapPerClient);
+        } finally {
+            processes.forEach(Process::destroy);
+        }
+    }
+
+    private static ProcessBuilder java(String mainClass, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command);
+    }
+
+    private static void settle() throws InterruptedException {
+        System.gc();
+        Thread.sleep(500);
+    }
+
+    private static long heapUsed() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the resident set size of this process, as reported by Linux.
+     *
+     * @return the resident memory in kilobytes, or 0 if it cannot be read
+     */
+    private static long residentKilobytes() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading memory usage: " + e.getMessage());
+        }
+        return 0;
+    }
+}
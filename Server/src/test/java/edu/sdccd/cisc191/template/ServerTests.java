@@ -0,0 +1,619 @@
+package edu.sdccd.cisc191.template;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ServerTests {
+    private static final FrameCodec CODEC = new FrameCodec();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // EventLoopServer Tests
+    @Test
+    public void testEventLoopServerAnswersRequestsInOrder() throws Exception {
+        try (EventLoopServer server = new EventLoopServer(ServerTests::upperCase, 1, 4)) {
+            server.start(0);
+            try (Socket socket = new Socket("localhost", server.getPort())) {
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                for (int i = 0; i < 100; i++) {
+                    CODEC.write(out, Frame.of(MessageType.REQUEST, "song " + i));
+                }
+                out.flush();
+                for (int i = 0; i < 100; i++) {
+                    Assert.assertEquals("SONG " + i, CODEC.read(in).getJson());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEventLoopServerHoldsTenThousandIdleConnections() throws Exception {
+        int clients = 10_000;
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        Assume.assumeTrue("needs the open file count", os instanceof com.sun.management.UnixOperatingSystemMXBean);
+        com.sun.management.UnixOperatingSystemMXBean unix = (com.sun.management.UnixOperatingSystemMXBean) os;
+        Assume.assumeTrue("needs " + clients + " more open files",
+                unix.getMaxFileDescriptorCount() - unix.getOpenFileDescriptorCount() > clients + 100);
+
+        try (EventLoopServer server = new EventLoopServer(request -> request, 1, 2)) {
+            server.start(0);
+            // The clients run in their own process so they do not count against this one's open files
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    IdleClients.class.getName(), "localhost", String.valueOf(server.getPort()), String.valueOf(clients))
+                    .redirectErrorStream(true).start();
+            try {
+                BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                String line = output.readLine();
+                Assume.assumeTrue("client process could not connect: " + line, "connected".equals(line));
+
+                long deadline = System.currentTimeMillis() + 30_000;
+                while (server.getConnectionCount() < clients && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(20);
+                }
+                Assert.assertEquals(clients, server.getConnectionCount());
+
+                // The server still answers promptly with every idle connection open
+                try (Socket socket = new Socket("localhost", server.getPort())) {
+                    CODEC.write(socket.getOutputStream(), Frame.of(MessageType.PING, "ping"));
+                    Assert.assertEquals("ping", CODEC.read(socket.getInputStream()).getJson());
+                }
+            } finally {
+                process.destroy();
+                process.waitFor();
+            }
+        }
+    }
+
+    // BlockingServer Tests
+    @Test
+    public void testBlockingServerAnswersOnPlatformAndVirtualThreads() throws Exception {
+        for (Server.Mode mode : new Server.Mode[]{Server.Mode.PLATFORM, Server.Mode.VIRTUAL}) {
+            if (mode == Server.Mode.VIRTUAL && !BlockingServer.isVirtualThreadSupported()) {
+                continue;
+            }
+            try (ConnectionServer server = Server.create(ServerTests::upperCase, mode)) {
+                server.start(0);
+                try (Socket socket = new Socket("localhost", server.getPort())) {
+                    OutputStream out = socket.getOutputStream();
+                    InputStream in = socket.getInputStream();
+                    CODEC.write(out, Frame.of(MessageType.REQUEST, "twinkle"));
+                    CODEC.write(out, Frame.of(MessageType.REQUEST, "star"));
+                    Assert.assertEquals("TWINKLE", CODEC.read(in).getJson());
+                    Assert.assertEquals("STAR", CODEC.read(in).getJson());
+                    Assert.assertEquals(1, server.getConnectionCount());
+                }
+            }
+        }
+    }
+
+    // Framing Tests
+    @Test
+    public void testEveryModeCarriesLargeBinaryPayloads() throws Exception {
+        char[] letters = new char[100_000];
+        Arrays.fill(letters, 'a');
+        String json = "{\"name\":\"" + new String(letters) + "\"}"; // more than writeUTF could carry
+        byte[] chart = new byte[6 * 1024 * 1024];
+        new Random(42).nextBytes(chart);
+
+        for (Server.Mode mode : Server.Mode.values()) {
+            if (mode == Server.Mode.VIRTUAL && !BlockingServer.isVirtualThreadSupported()) {
+                continue;
+            }
+            RequestHandler echo = request -> Frame.of(MessageType.RESPONSE, request.getJson(), request.getBody());
+            try (ConnectionServer server = Server.create(echo, mode)) {
+                server.start(0);
+                try (Socket socket = new Socket("localhost", server.getPort())) {
+                    OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    CODEC.write(out, Frame.of(MessageType.REQUEST, json, chart));
+                    CODEC.write(out, Frame.of(MessageType.REQUEST, "{}"));
+                    out.flush();
+
+                    Frame response = CODEC.read(in);
+                    Assert.assertEquals(mode.toString(), MessageType.RESPONSE, response.getType());
+                    Assert.assertEquals(json, response.getJson());
+                    Assert.assertArrayEquals(chart, response.getBody());
+                    Assert.assertEquals("{}", CODEC.read(in).getJson());
+
+                    // A frame claiming to be 2 GB long is refused, and the connection closed
+                    new DataOutputStream(out).writeInt(Integer.MAX_VALUE);
+                    out.flush();
+                    Assert.assertThrows(EOFException.class, () -> CODEC.read(in));
+                }
+            }
+        }
+    }
+
+    // Leaderboard Tests
+    @Test
+    public void testRankedSkipListTracksRanks() {
+        RankedSkipList<Integer> list = new RankedSkipList<>(Integer::compare);
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.remove(value), list.remove(value));
+            } else {
+                Assert.assertEquals(expected.add(value), list.add(value));
+            }
+        }
+        Assert.assertEquals(expected.size(), list.size());
+        int index = 0;
+        for (int value : expected) {
+            Assert.assertEquals(index, list.rankOf(value));
+            Assert.assertEquals(Integer.valueOf(value), list.get(index));
+            index++;
+        }
+        Assert.assertEquals(-1, list.rankOf(5_000));
+        Assert.assertEquals(new ArrayList<>(expected).subList(10, 15), list.range(10, 5));
+    }
+
+    @Test
+    public void testLeaderboardRanksConcurrentSubmissions() throws Exception {
+        LeaderboardService service = new LeaderboardService();
+        Map<String, Integer> best = new ConcurrentHashMap<>();
+        Thread[] submitters = new Thread[4];
+        for (int t = 0; t < submitters.length; t++) {
+            int seed = t;
+            submitters[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 25_000; i++) {
+                    String player = "player" + random.nextInt(500);
+                    int score = random.nextInt(1_000_000);
+                    service.submit("Moonlight Sonata", player, score);
+                    best.merge(player, score, Math::max);
+                }
+            });
+            submitters[t].start();
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        Leaderboard leaderboard = service.get("Moonlight Sonata");
+        List<Leaderboard.Entry> entries = leaderboard.entries();
+        Assert.assertEquals(best.size(), entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Leaderboard.Entry entry = entries.get(i);
+            Assert.assertEquals((int) best.get(entry.getPlayer()), entry.getScore());
+            Assert.assertEquals(i + 1, leaderboard.rankOf(entry.getPlayer()));
+            if (i > 0) {
+                Assert.assertTrue(entries.get(i - 1).getScore() >= entry.getScore());
+            }
+        }
+    }
+
+    @Test
+    public void testLeaderboardSnapshotRestoresScores() throws Exception {
+        Path file = temporaryFolder.newFolder("leaderboards").toPath().resolve("scores.dat");
+        LeaderboardService service = new LeaderboardService(file, 2, 2);
+        GameRequestHandler handler = new GameRequestHandler(service);
+        Assert.assertEquals("{\"song\":\"Canon\",\"player\":\"ada\",\"rank\":1,\"score\":900,\"improved\":true}",
+                handler.handle(request("{\"action\":\"submitScore\",\"song\":\"Canon\",\"player\":\"ada\",\"score\":900}")).getJson());
+        handler.handle(request("{\"action\":\"submitScore\",\"song\":\"Canon\",\"player\":\"bo\",\"score\":950}"));
+        handler.handle(request("{\"action\":\"submitScore\",\"song\":\"Canon\",\"player\":\"ada\",\"score\":100}"));
+        Assert.assertEquals(MessageType.ERROR, handler.handle(request("{\"action\":\"dance\"}")).getType());
+        Assert.assertEquals(MessageType.ERROR, handler.handle(
+                request("{\"action\":\"submitScore\",\"song\":\"Canon\",\"player\":\"cy\",\"score\":1.5}")).getType());
+        // Only two songs may have leaderboards
+        handler.handle(request("{\"action\":\"submitScore\",\"song\":\"Minuet\",\"player\":\"ada\",\"score\":10}"));
+        Assert.assertEquals("{\"error\":\"Too many songs have leaderboards\"}", handler.handle(
+                request("{\"action\":\"submitScore\",\"song\":\"Gymnopedie\",\"player\":\"ada\",\"score\":10}")).getJson());
+        Assert.assertEquals(2, service.getSongCount());
+        // Only two players may have scores on a song, and names are limited
+        Assert.assertEquals("{\"error\":\"Too many players have scores on Canon\"}", handler.handle(
+                request("{\"action\":\"submitScore\",\"song\":\"Canon\",\"player\":\"dee\",\"score\":10}")).getJson());
+        char[] longName = new char[GameRequestHandler.MAX_NAME_LENGTH + 1];
+        Arrays.fill(longName, 'x');
+        Assert.assertEquals(MessageType.ERROR, handler.handle(request("{\"action\":\"submitScore\",\"song\":\"Minuet\","
+                + "\"player\":\"" + new String(longName) + "\",\"score\":10}")).getType());
+        Assert.assertEquals(1, service.find("Minuet").size());
+        Assert.assertTrue(service.snapshot());
+        Assert.assertFalse(service.snapshot()); // nothing changed since
+
+        LeaderboardService reloaded = new LeaderboardService(file, 2, 1); // restored scores ignore the caps
+        Assert.assertEquals(3, reloaded.load());
+        Assert.assertEquals("{\"song\":\"Canon\",\"scores\":[{\"rank\":1,\"player\":\"bo\",\"score\":950},"
+                        + "{\"rank\":2,\"player\":\"ada\",\"score\":900}]}",
+                new GameRequestHandler(reloaded).handle(request("{\"action\":\"topScores\",\"song\":\"Canon\"}")).getJson());
+    }
+
+    // Song Distribution Tests
+    @Test
+    public void testSongDistributorSendsFilesToConcurrentDownloads() throws Exception {
+        Path songs = temporaryFolder.newFolder("songs").toPath();
+        Path charts = temporaryFolder.newFolder("charts").toPath();
+        byte[] midi = new byte[300_000]; // more than a socket takes in one write
+        new Random(7).nextBytes(midi);
+        Files.write(songs.resolve("canon.mid"), midi);
+        byte[] chart = "chart".getBytes("UTF-8");
+        Files.write(charts.resolve("canon" + ChartFile.EXTENSION), chart);
+
+        SongDistributor distributor = new SongDistributor(songs, charts, 4 << 20, 1 << 20);
+        Assert.assertEquals(Arrays.asList("canon.mid"), distributor.getSongNames());
+        RequestHandler handler = new GameRequestHandler(new LeaderboardService(), distributor, null);
+        try (EventLoopServer server = new EventLoopServer(handler, 2, 4)) {
+            server.start(0);
+            List<Thread> threads = new ArrayList<>();
+            Map<String, Throwable> failures = new ConcurrentHashMap<>();
+            for (int t = 0; t < 8; t++) {
+                Thread thread = new Thread(() -> {
+                    try (Socket socket = new Socket("localhost", server.getPort())) {
+                        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                        InputStream in = new BufferedInputStream(socket.getInputStream());
+                        for (int i = 0; i < 5; i++) {
+                            CODEC.write(out, request("{\"action\":\"downloadSong\",\"song\":\"canon.mid\"}"));
+                            out.flush();
+                            Frame response = CODEC.read(in);
+                            Assert.assertEquals(response.getJson(), MessageType.RESPONSE, response.getType());
+                            Assert.assertArrayEquals(midi, response.getBody());
+                        }
+                    } catch (Throwable e) {
+                        failures.put(Thread.currentThread().getName(), e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assert.assertEquals(Collections.emptyMap(), failures);
+
+            Frame response = handler.handle(request("{\"action\":\"downloadSong\",\"song\":\"canon.mid\",\"format\":\"chart\"}"));
+            Assert.assertArrayEquals(chart, response.getBody());
+            response.getExternalBody().close();
+            Frame again = handler.handle(request("{\"action\":\"downloadSong\",\"song\":\"canon.mid\"}"));
+            Assert.assertTrue(again.getJson(), again.getJson().contains("\"cached\":true"));
+            again.getExternalBody().close(); // never sent, so it counts as cut short
+            Assert.assertEquals(MessageType.ERROR,
+                    handler.handle(request("{\"action\":\"downloadSong\",\"song\":\"../canon.mid\"}")).getType());
+        }
+
+        // The last send finishes on the server just after the client has read it
+        long deadline = System.currentTimeMillis() + 5000;
+        while (distributor.getCompletedDownloads() < 41 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(41, distributor.getCompletedDownloads());
+        Assert.assertEquals(1, distributor.getAbortedDownloads());
+        Assert.assertEquals(0, distributor.getActiveDownloads());
+        Assert.assertEquals(40L * midi.length + chart.length, distributor.getBytesSent());
+        Assert.assertTrue(distributor.toString(), distributor.getCacheHitRate() > 0.5);
+        Assert.assertEquals(midi.length, distributor.getCachedBytes());
+    }
+
+    // Room Tests
+    @Test
+    public void testRoomCoalescesUpdatesAndSkipsSlowMembers() {
+        RoomService rooms = new RoomService();
+        RecordingSession ada = new RecordingSession();
+        RecordingSession bo = new RecordingSession();
+        RecordingSession cy = new RecordingSession();
+        Assert.assertTrue(rooms.join(ada, "duel", "ada").isEmpty());
+        Assert.assertEquals(1, rooms.join(bo, "duel", "bo").size());
+        Assert.assertEquals(2, rooms.join(cy, "duel", "cy").size());
+        Assert.assertThrows(IllegalArgumentException.class, () -> rooms.join(new RecordingSession(), "duel", "bo"));
+        rooms.tick();
+        Assert.assertEquals("{\"room\":\"duel\",\"tick\":1,\"players\":[{\"player\":\"bo\",\"score\":0,\"combo\":0},"
+                + "{\"player\":\"cy\",\"score\":0,\"combo\":0}]}", ada.frames.remove(0).getJson());
+
+        // A hundred key presses between ticks reach the others as one state
+        cy.backlog = RoomService.MAX_BACKLOG + 1;
+        for (int i = 1; i <= 100; i++) {
+            rooms.update(ada, i * 10, i);
+        }
+        rooms.tick();
+        Assert.assertEquals(1, bo.frames.size() - 1);
+        Assert.assertEquals("{\"room\":\"duel\",\"tick\":2,\"players\":[{\"player\":\"ada\",\"score\":1000,\"combo\":100}]}",
+                bo.frames.get(1).getJson());
+        Assert.assertTrue(ada.frames.isEmpty()); // nothing new from the others
+
+        // The slow member is skipped, then catches up with only the newest states
+        Assert.assertEquals(1, cy.frames.size());
+        rooms.update(bo, 500, 5);
+        rooms.update(ada, 2000, 0);
+        rooms.tick();
+        Assert.assertEquals(1, cy.frames.size());
+        cy.backlog = 0;
+        rooms.leave(bo);
+        rooms.tick();
+        Assert.assertEquals("{\"room\":\"duel\",\"tick\":4,\"players\":[{\"player\":\"ada\",\"score\":2000,\"combo\":0},"
+                + "{\"player\":\"bo\",\"left\":true}]}", cy.frames.get(1).getJson());
+        Assert.assertEquals(2, rooms.getDeferralCount());
+        Assert.assertEquals(102, rooms.getUpdateCount());
+
+        rooms.leave(ada);
+        rooms.leave(cy);
+        Assert.assertEquals(0, rooms.getRoomCount());
+    }
+
+    @Test
+    public void testRoomBroadcastsReachClientsInEveryMode() throws Exception {
+        for (Server.Mode mode : Server.Mode.values()) {
+            if (mode == Server.Mode.VIRTUAL && !BlockingServer.isVirtualThreadSupported()) {
+                continue;
+            }
+            RoomService rooms = new RoomService();
+            RequestHandler handler = new GameRequestHandler(new LeaderboardService(), null, rooms);
+            try (ConnectionServer server = Server.create(handler, mode);
+                 RoomService ticking = rooms) {
+                server.start(0);
+                try (Socket first = new Socket("localhost", server.getPort());
+                     Socket second = new Socket("localhost", server.getPort())) {
+                    OutputStream out = new BufferedOutputStream(first.getOutputStream());
+                    InputStream in = new BufferedInputStream(first.getInputStream());
+                    CODEC.write(out, request("{\"action\":\"joinRoom\",\"room\":\"duel\",\"player\":\"ada\"}"));
+                    out.flush();
+                    Assert.assertEquals("{\"room\":\"duel\",\"players\":[]}", CODEC.read(in).getJson());
+
+                    OutputStream otherOut = new BufferedOutputStream(second.getOutputStream());
+                    InputStream otherIn = new BufferedInputStream(second.getInputStream());
+                    CODEC.write(otherOut, request("{\"action\":\"joinRoom\",\"room\":\"duel\",\"player\":\"bo\"}"));
+                    for (int i = 1; i <= 50; i++) {
+                        CODEC.write(otherOut, Frame.of(MessageType.UPDATE, "{\"score\":" + i + ",\"combo\":" + i + "}"));
+                    }
+                    CODEC.write(otherOut, Frame.of(MessageType.PING, null).withCorrelationId(7));
+                    otherOut.flush();
+                    CODEC.read(otherIn); // joined
+                    Assert.assertEquals(7, CODEC.read(otherIn).getCorrelationId()); // every update handled
+
+                    ticking.startTicks(1000 / RoomService.TICKS_PER_SECOND);
+                    Frame broadcast = CODEC.read(in);
+                    Assert.assertEquals(MessageType.BROADCAST, broadcast.getType());
+                    Assert.assertEquals(0, broadcast.getCorrelationId());
+                    Assert.assertTrue(broadcast.getJson(),
+                            broadcast.getJson().contains("{\"player\":\"bo\",\"score\":50,\"combo\":50}"));
+                }
+                long deadline = System.currentTimeMillis() + 5000;
+                while (rooms.getRoomCount() > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                Assert.assertEquals(mode.toString(), 0, rooms.getRoomCount()); // closed connections leave
+            }
+        }
+    }
+
+    // Metrics Tests
+    @Test
+    public void testServerMetricsAreServedAsPlainText() throws Exception {
+        try (EventLoopServer server = new EventLoopServer(ServerTests::upperCase, 1, 2)) {
+            server.start(0);
+            try (Socket socket = new Socket("localhost", server.getPort())) {
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                for (int i = 0; i < 20; i++) {
+                    CODEC.write(out, Frame.of(MessageType.REQUEST, "song " + i));
+                }
+                CODEC.write(out, Frame.of(MessageType.PING, null));
+                out.flush();
+                for (int i = 0; i < 21; i++) {
+                    CODEC.read(in);
+                }
+            }
+
+            ServerMetrics metrics = server.getMetrics();
+            // A frame is counted once it is written, which can be just after the client has read it
+            long deadline = System.currentTimeMillis() + 5000;
+            while (metrics.getFramesOut() < 21 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(1, metrics.getConnectionsAccepted());
+            Assert.assertEquals(21, metrics.getFramesIn());
+            Assert.assertEquals(21, metrics.getFramesOut());
+            Assert.assertEquals(20, metrics.getHandleTimes(MessageType.REQUEST).getCount());
+            Assert.assertEquals(1, metrics.getHandleTimes(MessageType.PING).getCount());
+
+            try (StatsEndpoint stats = new StatsEndpoint(metrics::report)) {
+                stats.start(0);
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), stats.getPort());
+                     BufferedReader report = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"))) {
+                    Map<String, String> lines = new ConcurrentHashMap<>();
+                    String line;
+                    while ((line = report.readLine()) != null) {
+                        lines.put(line.substring(0, line.indexOf(' ')), line.substring(line.indexOf(' ') + 1));
+                    }
+                    Assert.assertEquals("21", lines.get("frames_in"));
+                    Assert.assertTrue(lines.get("handle_time_us{type=REQUEST}"),
+                            lines.get("handle_time_us{type=REQUEST}").startsWith("count=20 "));
+                    Assert.assertFalse(lines.containsKey("handle_time_us{type=UPDATE}"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSampledLoggerDropsInsteadOfBlocking() throws Exception {
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        SampledLogger logger = new SampledLogger(new PrintStream(console, true, "UTF-8"), 100, 16);
+        for (int i = 0; i < 10_000; i++) {
+            logger.sample(() -> "sampled");
+        }
+        for (int i = 0; i < 1000; i++) {
+            logger.log("burst");
+        }
+        Assert.assertTrue(logger.awaitWritten(5000));
+        long written = logger.getWrittenCount();
+        Assert.assertTrue(logger.getDroppedCount() > 0);
+        Assert.assertTrue(written + " lines", written >= 15 && written < 1200); // one may still be printing
+    }
+
+    // Backpressure Tests
+    @Test
+    public void testLimitsTurnAwayExtraClientsAndDisconnectSlowOnes() throws Exception {
+        ServerLimits limits = new ServerLimits(2, 4, 4, 300);
+        byte[] payload = new byte[64 * 1024];
+        RequestHandler echo = request -> Frame.of(MessageType.RESPONSE, request.getJson(), request.getBody());
+        for (Server.Mode mode : Server.Mode.values()) {
+            if (mode == Server.Mode.VIRTUAL && !BlockingServer.isVirtualThreadSupported()) {
+                continue;
+            }
+            try (ConnectionServer server = Server.create(echo, mode, limits)) {
+                server.start(0);
+                Socket flooder = new Socket("localhost", server.getPort());
+                Socket polite = new Socket("localhost", server.getPort());
+                awaitConnections(server, 2);
+
+                // A third client is told the server is full
+                try (Socket extra = new Socket("localhost", server.getPort())) {
+                    InputStream in = extra.getInputStream();
+                    Frame refusal = CODEC.read(in);
+                    Assert.assertEquals(mode.toString(), MessageType.ERROR, refusal.getType());
+                    Assert.assertTrue(refusal.getJson().contains("Server full"));
+                    Assert.assertEquals(-1, in.read());
+                }
+                Assert.assertEquals(1, server.getMetrics().getConnectionsRejected());
+
+                // One client sends request after request and never reads the answers
+                Thread flood = new Thread(() -> {
+                    try {
+                        OutputStream out = flooder.getOutputStream();
+                        for (int i = 0; i < 10_000; i++) {
+                            CODEC.write(out, Frame.of(MessageType.REQUEST, "{}", payload));
+                        }
+                    } catch (Exception e) {
+                        // disconnected by the server
+                    }
+                });
+                flood.start();
+
+                // The other is still answered promptly while the flood is held back
+                OutputStream out = polite.getOutputStream();
+                InputStream in = new BufferedInputStream(polite.getInputStream());
+                for (int i = 0; i < 20; i++) {
+                    long start = System.nanoTime();
+                    CODEC.write(out, Frame.of(MessageType.REQUEST, "\"note " + i + "\""));
+                    Assert.assertEquals("\"note " + i + "\"", CODEC.read(in).getJson());
+                    Assert.assertTrue(System.nanoTime() - start < 1_000_000_000L);
+                    Thread.sleep(10);
+                }
+
+                // Then the flooder, which has stopped taking bytes, is disconnected
+                flood.join(10_000);
+                Assert.assertFalse(mode.toString(), flood.isAlive());
+                if (mode == Server.Mode.EVENT_LOOP) {
+                    Assert.assertTrue(server.getMetrics().getReadPauses() > 0); // blocking modes stop at one request
+                }
+                Assert.assertEquals(mode.toString(), 1, server.getMetrics().getSlowClientsClosed());
+                awaitConnections(server, 1);
+                flooder.close();
+                polite.close();
+            }
+        }
+    }
+
+    @Test
+    public void testAnnouncedFrameLengthsDoNotReserveMemory() throws Exception {
+        int connections = 200;
+        byte[] header = {0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}; // a frame of almost 16 MB, never sent
+        Runtime runtime = Runtime.getRuntime();
+        for (Server.Mode mode : Server.Mode.values()) {
+            if (mode == Server.Mode.VIRTUAL && !BlockingServer.isVirtualThreadSupported()) {
+                continue;
+            }
+            try (ConnectionServer server = Server.create(ServerTests::upperCase, mode)) {
+                server.start(0);
+                System.gc();
+                long before = runtime.totalMemory() - runtime.freeMemory();
+                List<Socket> sockets = new ArrayList<>();
+                try {
+                    for (int i = 0; i < connections; i++) {
+                        Socket socket = new Socket("localhost", server.getPort());
+                        sockets.add(socket);
+                        socket.getOutputStream().write(header);
+                        socket.getOutputStream().write(new byte[100]);
+                    }
+                    awaitConnections(server, connections);
+                    Thread.sleep(200); // let the server read the headers
+
+                    // Reserving every announced frame would take over 3 GB
+                    System.gc();
+                    long used = runtime.totalMemory() - runtime.freeMemory() - before;
+                    Assert.assertTrue(mode + " holds " + used + " bytes", used < 256L * 1024 * 1024);
+
+                    try (Socket socket = new Socket("localhost", server.getPort())) {
+                        CODEC.write(socket.getOutputStream(), Frame.of(MessageType.REQUEST, "\"still here\""));
+                        Assert.assertEquals("\"STILL HERE\"", CODEC.read(socket.getInputStream()).getJson());
+                    }
+                } finally {
+                    for (Socket socket : sockets) {
+                        socket.close();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void awaitConnections(ConnectionServer server, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (server.getConnectionCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, server.getConnectionCount());
+    }
+
+    private static Frame request(String json) {
+        return Frame.of(MessageType.REQUEST, json);
+    }
+
+    private static Frame upperCase(Frame request) {
+        return Frame.of(MessageType.RESPONSE, request.getJson().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * A session that keeps what is sent to it and reports whatever backlog the test sets.
+     */
+    private static class RecordingSession implements ClientSession {
+        final List<Frame> frames = new ArrayList<>();
+        int backlog;
+
+        @Override
+        public void send(Frame frame) {
+            frames.add(frame);
+        }
+
+        @Override
+        public int getBacklog() {
+            return backlog;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package edu.sdccd.cisc191.template;
+
+import javafx.concurrent.Task;
+
+import javax.sound.midi.Sequencer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code ChartLoadTask} class loads a song off the JavaFX application thread.
+ * It gets the song's sequence and notes from a {@code SongPrefetcher}, which has usually loaded them already,
+ * builds the falling blocks for each track and prepares a sequencer, reporting progress after each stage. The task can be cancelled between stages and while the
+ * blocks are being built; a cancelled or failed load releases its sequencer.
+ */
+public class ChartLoadTask extends Task<ChartLoadTask.LoadedChart> {
+    private static final int STAGES = 4;
+
+    private final String songName;
+    private final SongPrefetcher songPrefetcher;
+    private final List<TrackController> trackControllers;
+    private volatile Sequencer preparedSequencer;
+
+    /**
+     * Constructs a {@code ChartLoadTask} for the specified song.
+     *
+     * @param songName         the name of the MIDI file to load
+     * @param songPrefetcher   the prefetcher the song is read and parsed through
+     * @param trackControllers the track controllers the blocks will be built for
+     */
+    public ChartLoadTask(String songName, SongPrefetcher songPrefetcher, List<TrackController> trackControllers) {
+        this.songName = songName;
+        this.songPrefetcher = songPrefetcher;
+        this.trackControllers = trackControllers;
+    }
+
+    /**
+     * Returns the name of the song being loaded.
+     *
+     * @return the song name
+     */
+    public String getSongName() {
+        return songName;
+    }
+
+    /**
+     * Runs the load pipeline on a worker thread.
+     *
+     * @return the loaded chart, or {@code null} if the task was cancelled
+     * @throws Exception if the MIDI file cannot be read or the sequencer cannot be prepared
+     */
+    @Override
+    protected LoadedChart call() throws Exception {
+        updateMessage("Reading " + songName);
+        updateProgress(0, STAGES);
+        SongPrefetcher.PreparedSong song = songPrefetcher.get(songName);
+        List<MidiInterpreter.NoteEvent> noteEvents = song.getNoteEvents();
+        updateProgress(1, STAGES);
+        if (isCancelled()) return null;
+
+        updateMessage("Building chart");
+        updateProgress(2, STAGES);
+        List<List<FallingBlock>> blocksByTrack = new ArrayList<>();
+        for (int i = 0; i < trackControllers.size(); i++) {
+            blocksByTrack.add(new ArrayList<>());
+        }
+        for (int i = 0; i < noteEvents.size(); i++) {
+            if ((i & 1023) == 0 && isCancelled()) return null;
+            MidiInterpreter.NoteEvent noteEvent = noteEvents.get(i);
+            TrackController trackController = trackControllers.get(noteEvent.noteGroup);
+            blocksByTrack.get(noteEvent.noteGroup).add(new FallingBlock(noteEvent.timeInSeconds, -40, trackController.getSpeed(), noteEvent.note, trackController.getCanvasHeight(), noteEvent.noteGroup, trackController.getColor()));
+        }
+
+        updateMessage("Preparing sequencer");
+        updateProgress(3, STAGES);
+        Sequencer sequencer = MidiUtils.prepareSequencer(song.getSequence());
+        preparedSequencer = sequencer;
+        if (isCancelled()) {
+            sequencer.close();
+            return null;
+        }
+
+        updateMessage("Ready");
+        updateProgress(STAGES, STAGES);
+        return new LoadedChart(songName, blocksByTrack, sequencer);
+    }
+
+    /**
+     * Releases the sequencer if the task is cancelled after it was prepared.
+     */
+    @Override
+    protected void cancelled() {
+        Sequencer sequencer = preparedSequencer;
+        if (sequencer != null) {
+            sequencer.close();
+        }
+    }
+
+    /**
+     * The {@code LoadedChart} class holds everything needed to start playing a song immediately.
+     */
+    public static class LoadedChart {
+        private final String songName;
+        private final List<List<FallingBlock>> blocksByTrack;
+        private final Sequencer sequencer;
+
+        /**
+         * Constructs a {@code LoadedChart}.
+         *
+         * @param songName      the name of the loaded song
+         * @param blocksByTrack the falling blocks for each track, indexed by row
+         * @param sequencer     an open sequencer with the song loaded, ready to start
+         */
+        public LoadedChart(String songName, List<List<FallingBlock>> blocksByTrack, Sequencer sequencer) {
+            this.songName = songName;
+            this.blocksByTrack = blocksByTrack;
+            this.sequencer = sequencer;
+        }
+
+        /**
+         * Returns the name of the loaded song.
+         *
+         * @return the song name
+         */
+        public String getSongName() {
+            return songName;
+        }
+
+        /**
+         * Returns the falling blocks for the specified track.
+         *
+         * @param row the row index of the track
+         * @return the blocks for that track
+         */
+        public List<FallingBlock> getBlocks(int row) {
+            return blocksByTrack.get(row);
+        }
+
+        /**
+         * Returns the prepared sequencer.
+         *
+         * @return an open sequencer with the song loaded
+         */
+        public Sequencer getSequencer() {
+            return sequencer;
+        }
+    }
+}
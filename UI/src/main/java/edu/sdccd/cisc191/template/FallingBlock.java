@@ -9,6 +9,7 @@ import javafx.scene.paint.Color;
  */
 public class FallingBlock {
     private double startTime;
+    private double startY;
     private double y;
     private double speed;
     private int note;
@@ -33,6 +34,7 @@ public class FallingBlock {
      */
     public FallingBlock(double startTime, double y, double speed, int note, double canvasHeight, int row, Color color) {
         this.startTime = startTime;
+        this.startY = y;
         this.y = y;
         this.speed = speed;
         this.note = note;
@@ -70,8 +72,9 @@ public class FallingBlock {
     }
 
     /**
-     * Updates the position of the block based on the elapsed time.
-     * The block starts moving only after the current time exceeds the start time.
+     * Updates the position of the block for the current song time.
+     * The block starts moving only after the current time exceeds the start time. Its position depends only
+     * on the current time, not on the frame timing, so a replayed session judges hits exactly as the original.
      *
      * @param elapsedTime the time elapsed since the last update
      * @param currentTime the current time in the game
@@ -81,7 +84,7 @@ public class FallingBlock {
             started = true;
         }
         if (started) {
-            y += speed * elapsedTime;
+            y = startY + speed * (currentTime - startTime);
         }
     }
 
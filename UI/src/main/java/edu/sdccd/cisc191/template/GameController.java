@@ -1,31 +1,38 @@
 package edu.sdccd.cisc191.template;
 
 import javafx.animation.AnimationTimer;
+import javafx.concurrent.Worker;
 import javafx.fxml.FXML;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.paint.Color;
+import javafx.stage.FileChooser;
 
+import javax.sound.midi.Sequencer;
+import java.io.File;
 import java.io.IOException;
-import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The {@code GameController} class controls the main gameplay of the rhythm game.
  * It handles the initialization of tracks, starting the game, and managing user input.
  */
 public class GameController {
+    private static final int MAX_PRELOADED_CHARTS = 3;
 
     @FXML
     private Button startButton;
@@ -34,6 +41,10 @@ public class GameController {
     @FXML
     private Button musicPlaylistButton;
     @FXML
+    private Button saveReplayButton;
+    @FXML
+    private Button loadReplayButton;
+    @FXML
     private Canvas trackCanvas0;
     @FXML
     private Canvas trackCanvas1;
@@ -44,13 +55,31 @@ public class GameController {
 
     @FXML
     private Label scoreLabel;
+    @FXML
+    private ProgressBar loadProgress;
 
     private List<TrackController> trackControllers;
     private AnimationTimer gameLoop;
     private boolean midiStarted = false;
     private long startTime;
+    private long frameTimeMicros;
     private int score = 0;
     private String selectedMidiFile;
+    private InputRecording recording;
+    private InputRecording.Player replay;
+    private double playbackSpeed = 1.0;
+    private Sequencer sequencer;
+    private final SongLibrary songLibrary = new SongLibrary();
+    private final SongPrefetcher songPrefetcher = new SongPrefetcher(songLibrary);
+    private SongCatalog songCatalog; // created on first use, guarded by this
+    private ConcurrentMusicPlaylist sharedPlaylist;
+    private ChartLoadTask currentLoad;
+    private final Map<String, ChartLoadTask> preloadedCharts = new LinkedHashMap<>(); // oldest first
+    private final ExecutorService chartLoader = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "chart-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Initializes the game controller by setting up the track controllers and key event handling.
@@ -80,90 +109,358 @@ public class GameController {
     }
 
     /**
-     * Opens the song catalog in a new thread for browsing.
+     * Opens the song catalog of the game's song library in a new thread for browsing. The catalog is kept for
+     * the life of the game, so opening it again only analyzes songs added since.
      */
     @FXML
     private void viewCatalog() {
-        new Thread(SongMenu::browseCatalog).start();
+        new Thread(() -> SongMenu.browseCatalog(getSongCatalog())).start();
+    }
+
+    /**
+     * Returns the catalog of the game's song library, creating it on first use.
+     *
+     * @return the catalog
+     */
+    private synchronized SongCatalog getSongCatalog() {
+        if (songCatalog == null) {
+            songCatalog = new SongCatalog(songLibrary);
+        }
+        return songCatalog;
     }
 
     /**
-     * Opens the music playlist application in a new thread.
+     * Opens the music playlist application in a new thread. Every window opened this way shares one
+     * thread-safe playlist, so they never write the playlist file over each other. The next songs of the
+     * playlist are prefetched so starting them is quick.
      */
     @FXML
     private void musicPlaylist() {
-        MusicPlaylistApp musicPlaylistApp = new MusicPlaylistApp();
+        if (sharedPlaylist == null) {
+            sharedPlaylist = new ConcurrentMusicPlaylist();
+            sharedPlaylist.setPrefetcher(songPrefetcher);
+        }
+        MusicPlaylistApp musicPlaylistApp = new MusicPlaylistApp(sharedPlaylist);
         new Thread(musicPlaylistApp::start).start();
     }
 
     /**
      * Starts the game by loading the selected MIDI file and initializing the falling blocks on each track.
+     * If the next song in the playlist is in the song library, it is played instead.
+     * The player's presses are recorded so the session can be saved as a replay.
      */
     @FXML
     public void startGame() {
-        try {
-            // Select the MIDI file if it hasn't been selected already
-            if (selectedMidiFile == null) {
-                selectMidiFile();
+        String next = nextPlaylistSong();
+        if (next != null) {
+            selectedMidiFile = next;
+        }
+        // Select the MIDI file if it hasn't been selected already
+        if (selectedMidiFile == null) {
+            selectMidiFile();
+        }
+        replay = null;
+        playbackSpeed = 1.0;
+        recording = new InputRecording(selectedMidiFile);
+        startSession();
+    }
+
+    /**
+     * Takes the next song from the playlist if it is one the song library can play.
+     *
+     * @return the song, or {@code null} if there is no playable next song
+     */
+    private String nextPlaylistSong() {
+        return upcomingPlaylistSong() != null ? sharedPlaylist.playNext() : null;
+    }
+
+    /**
+     * Returns the next song in the playlist, without taking it, if it is one the song library can play.
+     *
+     * @return the song, or {@code null} if there is no playable next song
+     */
+    private String upcomingPlaylistSong() {
+        if (sharedPlaylist == null) {
+            return null;
+        }
+        List<String> upcoming = sharedPlaylist.getUpcoming(1);
+        return upcoming.isEmpty() || !songLibrary.contains(upcoming.get(0)) ? null : upcoming.get(0);
+    }
+
+    /**
+     * Loads the selected MIDI file in the background and starts the game loop once it is ready.
+     * A chart that was already preloaded for the song is used directly, and the chart of the next playable
+     * song in the playlist starts loading alongside it.
+     */
+    private void startSession() {
+        if (selectedMidiFile == null) {
+            return;
+        }
+        if (currentLoad != null && currentLoad.isRunning()) {
+            currentLoad.cancel();
+        }
+
+        ChartLoadTask task = preloadChart(selectedMidiFile);
+        preloadedCharts.remove(selectedMidiFile);
+        currentLoad = task;
+        String next = upcomingPlaylistSong();
+        if (next != null && !next.equals(selectedMidiFile)) {
+            preloadChart(next);
+        }
+
+        if (task.getState() == Worker.State.SUCCEEDED) {
+            beginPlayback(task.getValue());
+            return;
+        }
+        loadProgress.progressProperty().bind(task.progressProperty());
+        loadProgress.setVisible(true);
+        task.setOnSucceeded(event -> {
+            loadProgress.setVisible(false);
+            if (task == currentLoad) {
+                beginPlayback(task.getValue());
+            } else {
+                task.getValue().getSequencer().close();
             }
+        });
+        task.setOnFailed(event -> {
+            loadProgress.setVisible(false);
+            task.getException().printStackTrace();
+        });
+        task.setOnCancelled(event -> loadProgress.setVisible(false));
+    }
 
-            String midiFilePath = MidiUtils.loadMidiFile(selectedMidiFile);
+    /**
+     * Starts loading the chart for a song on the background loader without playing it.
+     * A later call to start the same song picks up the loaded chart, so the next song in the playlist is
+     * prepared while the current one is still playing. At most {@value #MAX_PRELOADED_CHARTS} charts are
+     * kept waiting; the oldest is released to make room for another.
+     *
+     * @param songName the name of the MIDI file to load
+     * @return the task loading the song
+     */
+    private ChartLoadTask preloadChart(String songName) {
+        ChartLoadTask task = preloadedCharts.get(songName);
+        if (task == null || task.getState() == Worker.State.FAILED || task.getState() == Worker.State.CANCELLED) {
+            if (task != null) {
+                releaseChart(task);
+            }
+            task = new ChartLoadTask(songName, songPrefetcher, trackControllers);
+            preloadedCharts.put(songName, task);
+            chartLoader.execute(task);
+        }
+        Iterator<ChartLoadTask> oldest = preloadedCharts.values().iterator();
+        while (preloadedCharts.size() > MAX_PRELOADED_CHARTS) {
+            ChartLoadTask evicted = oldest.next();
+            oldest.remove();
+            releaseChart(evicted);
+        }
+        return task;
+    }
+
+    /**
+     * Releases the sequencer of a chart that will not be played, cancelling its load if it is still running.
+     *
+     * @param task the task that loaded or is loading the chart
+     */
+    private static void releaseChart(ChartLoadTask task) {
+        if (task.getState() == Worker.State.SUCCEEDED) {
+            task.getValue().getSequencer().close();
+        } else {
+            task.cancel(); // a cancelled load releases its own sequencer
+        }
+    }
 
-            MidiInterpreter midiInterpreter = new MidiInterpreter();
-            List<MidiInterpreter.NoteEvent> noteEvents = midiInterpreter.parseMidiFile(midiFilePath);
+    /**
+     * Stops the game and releases everything it holds: the playing sequencer, any chart being loaded or
+     * preloaded, and the chart loader. The shared playlist is saved and closed, and then the song prefetcher
+     * and the song library it loads from. Called when the application exits.
+     */
+    public void shutdown() {
+        resetGame();
+        if (currentLoad != null) {
+            currentLoad.cancel();
+        }
+        for (ChartLoadTask task : preloadedCharts.values()) {
+            releaseChart(task);
+        }
+        preloadedCharts.clear();
+        chartLoader.shutdownNow();
+        if (sharedPlaylist != null) {
+            sharedPlaylist.close();
+        }
+        songPrefetcher.close();
+        songLibrary.close();
+    }
 
-            for (MidiInterpreter.NoteEvent noteEvent : noteEvents) {
-                TrackController trackController = trackControllers.get(noteEvent.noteGroup);
-                trackController.addFallingBlock(new FallingBlock(noteEvent.timeInSeconds, -40, trackController.getSpeed(), noteEvent.note, trackController.getCanvasHeight(), noteEvent.noteGroup, trackController.getColor()));
+    /**
+     * Installs a loaded chart on the tracks and starts the game loop. Runs on the JavaFX application thread.
+     *
+     * @param chart the loaded chart to play
+     */
+    private void beginPlayback(ChartLoadTask.LoadedChart chart) {
+        resetGame();
+        sequencer = chart.getSequencer();
+        for (int row = 0; row < trackControllers.size(); row++) {
+            for (FallingBlock block : chart.getBlocks(row)) {
+                trackControllers.get(row).addFallingBlock(block);
             }
+        }
 
-            gameLoop = new AnimationTimer() {
-                private long lastUpdate = 0;
-
-                @Override
-                public void handle(long now) {
-                    if (lastUpdate == 0) {
-                        lastUpdate = now;
-                        startTime = now;
-                        return;
-                    }
-                    double elapsedTime = (now - lastUpdate) / 1_000_000_000.0;
-                    double currentTime = (now - startTime) / 1_000_000_000.0;
-
-                    for (TrackController trackController : trackControllers) {
-                        trackController.update(elapsedTime, currentTime);
-                        trackController.draw(); // Ensure drawing is happening within the game loop
-                    }
-
-                    if (!midiStarted && firstRowHitBar()) {
-                        midiStarted = true;
-                        MidiUtils.playMidiFile(midiFilePath, currentTimeInSeconds -> {});
-                    }
+        gameLoop = new AnimationTimer() {
+            private long lastUpdate = 0;
 
+            @Override
+            public void handle(long now) {
+                if (lastUpdate == 0) {
                     lastUpdate = now;
+                    startTime = now;
+                    return;
+                }
+                double elapsedTime = (now - lastUpdate) / 1_000_000_000.0 * playbackSpeed;
+                double currentTime = (now - startTime) / 1_000_000_000.0 * playbackSpeed;
+
+                frameTimeMicros = (long) (currentTime * 1_000_000);
+                if (replay != null) {
+                    replayPressesUntil(frameTimeMicros);
+                }
+
+                for (TrackController trackController : trackControllers) {
+                    trackController.update(elapsedTime, currentTime);
+                    trackController.draw(); // Ensure drawing is happening within the game loop
+                }
+
+                if (!midiStarted && playbackSpeed == 1.0 && firstRowHitBar()) {
+                    midiStarted = true;
+                    MidiUtils.playSequencer(chart.getSequencer(), currentTimeInSeconds -> {});
                 }
-            };
-            gameLoop.start();
-            trackCanvas0.requestFocus();
 
-        } catch (Exception e) {
+                lastUpdate = now;
+            }
+        };
+        gameLoop.start();
+        trackCanvas0.requestFocus();
+    }
+
+    /**
+     * Saves the presses of the current session to a replay file chosen by the user.
+     */
+    @FXML
+    private void saveReplay() {
+        if (recording == null || recording.getEventCount() == 0) {
+            System.out.println("Nothing has been recorded yet.");
+            return;
+        }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Replay");
+        fileChooser.setInitialFileName("session.jhr");
+        File file = fileChooser.showSaveDialog(trackCanvas0.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        try {
+            recording.save(file.getAbsolutePath());
+            System.out.println("Saved " + recording.getEventCount() + " presses (" + recording.getEncodedSize() + " bytes) to " + file);
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Prompts the user to select a MIDI file from the available files in the resources folder.
+     * Loads a replay file chosen by the user and plays it back at the selected speed.
+     * The recorded presses are fed through the track controllers instead of the keyboard.
      */
-    private void selectMidiFile() {
-        List<String> choices = new ArrayList<>();
+    @FXML
+    private void loadReplay() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Load Replay");
+        File file = fileChooser.showOpenDialog(trackCanvas0.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        List<String> speeds = Arrays.asList("0.5x", "1x", "2x", "4x");
+        ChoiceDialog<String> dialog = new ChoiceDialog<>("1x", speeds);
+        dialog.setTitle("Replay Speed");
+        dialog.setHeaderText("Choose a playback speed:");
+        dialog.setContentText("Speed:");
+        Optional<String> speed = dialog.showAndWait();
+        if (!speed.isPresent()) {
+            return;
+        }
+
         try {
-            choices = getMidiFilesFromResources();
-        } catch (IOException | URISyntaxException e) {
+            recording = InputRecording.load(file.getAbsolutePath());
+        } catch (IOException e) {
             e.printStackTrace();
+            return;
         }
+        playbackSpeed = Double.parseDouble(speed.get().replace("x", ""));
+        replay = recording.player();
+        selectedMidiFile = recording.getSongName();
+        startSession();
+    }
+
+    /**
+     * Stops any running game and clears the tracks and score so a new session starts from a clean state.
+     */
+    private void resetGame() {
+        if (gameLoop != null) {
+            gameLoop.stop();
+        }
+        if (sequencer != null) {
+            sequencer.close();
+            sequencer = null;
+        }
+        for (TrackController trackController : trackControllers) {
+            trackController.clearFallingBlocks();
+        }
+        midiStarted = false;
+        startTime = 0;
+        frameTimeMicros = 0;
+        score = 0;
+        updateScore();
+    }
+
+    /**
+     * Feeds every recorded press up to the specified song time through the track controllers.
+     *
+     * @param timeMicros the current song time in microseconds
+     */
+    private void replayPressesUntil(long timeMicros) {
+        while (replay.hasNext() && replay.peekTimeMicros() <= timeMicros) {
+            score += applyPress(replay.peekLane(), replay.peekTimeMicros());
+            replay.advance();
+            updateScore();
+            if (!replay.hasNext()) {
+                System.out.println("Replay finished. Final score: " + score);
+            }
+        }
+    }
+
+    /**
+     * Advances every track to the time of a press and then judges the press on its lane.
+     * Block positions depend only on song time, so the same press always scores the same.
+     *
+     * @param lane       the lane that was pressed
+     * @param timeMicros the song-relative time of the press in microseconds
+     * @return the score increment for the press
+     */
+    private int applyPress(int lane, long timeMicros) {
+        double currentTime = timeMicros / 1_000_000.0;
+        for (TrackController trackController : trackControllers) {
+            trackController.update(0, currentTime);
+        }
+        return trackControllers.get(lane).handlePress();
+    }
+
+    /**
+     * Prompts the user to select a MIDI file from the songs in the song library.
+     */
+    private void selectMidiFile() {
+        List<String> choices = songLibrary.getSongNames();
 
         if (choices.isEmpty()) {
-            System.out.println("No MIDI files found in resources.");
+            System.out.println("No MIDI files found in the song library.");
             return;
         }
 
@@ -178,26 +475,6 @@ public class GameController {
         result.ifPresent(selectedFile -> selectedMidiFile = selectedFile);
     }
 
-    /**
-     * Retrieves a list of MIDI files from the resources folder.
-     *
-     * @return a list of MIDI file names
-     * @throws IOException        if an I/O error occurs while accessing the files
-     * @throws URISyntaxException if the resource path is invalid
-     */
-    private List<String> getMidiFilesFromResources() throws IOException, URISyntaxException {
-        // Get the path to the resources folder
-        Path resourcePath = Paths.get(getClass().getClassLoader().getResource("").toURI());
-
-        // Filter and collect MIDI file names
-        return Files.walk(resourcePath)
-                .filter(Files::isRegularFile)
-                .map(Path::getFileName)
-                .map(Path::toString)
-                .filter(fileName -> fileName.endsWith(".mid"))
-                .collect(Collectors.toList());
-    }
-
     /**
      * Calculates the speed at which blocks should fall.
      * (Currently returns a default value of 100.0, but can be modified to be dynamic.)
@@ -236,27 +513,34 @@ public class GameController {
      */
     private void handleKeyPress(KeyEvent event) {
         KeyCode key = event.getCode();
-        int scoreIncrement = 0;
+        int lane;
 
         switch (key) {
             case A:
-                scoreIncrement = trackControllers.get(0).handleKeyPress(event, key);
+                lane = 0;
                 break;
             case S:
-                scoreIncrement = trackControllers.get(1).handleKeyPress(event, key);
+                lane = 1;
                 break;
             case D:
-                scoreIncrement = trackControllers.get(2).handleKeyPress(event, key);
+                lane = 2;
                 break;
             case F:
-                scoreIncrement = trackControllers.get(3).handleKeyPress(event, key);
+                lane = 3;
                 break;
             default:
                 System.out.println("Key not mapped: " + key);
-                break;
+                return;
         }
 
-        score += scoreIncrement;
+        // Presses are ignored while a replay is driving the tracks or before the first frame
+        if (replay != null || startTime == 0) {
+            return;
+        }
+        // A press is never judged earlier than the frame already drawn, so replays see the same blocks
+        long timeMicros = Math.max((System.nanoTime() - startTime) / 1_000, frameTimeMicros);
+        recording.record(lane, timeMicros);
+        score += applyPress(lane, timeMicros);
         updateScore();
     }
 }
@@ -14,6 +14,7 @@ import java.util.Objects;
  * for loading the FXML layout and setting up the primary stage.
  */
 public class RhythmGameApp extends Application {
+    private GameController controller;
 
     /**
      * Starts the JavaFX application by setting up the primary stage and loading the FXML layout.
@@ -23,12 +24,24 @@ public class RhythmGameApp extends Application {
      */
     @Override
     public void start(Stage primaryStage) throws Exception {
-        Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/game_layout.fxml")));
+        FXMLLoader loader = new FXMLLoader(Objects.requireNonNull(getClass().getResource("/game_layout.fxml")));
+        Parent root = loader.load();
+        controller = loader.getController();
         primaryStage.setTitle("JavaHero");
         primaryStage.setScene(new Scene(root, 800, 600));
         primaryStage.show();
     }
 
+    /**
+     * Releases what the game holds, such as open sequencers, when the application exits.
+     */
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.shutdown();
+        }
+    }
+
     /**
      * The main method that launches the JavaFX application.
      *
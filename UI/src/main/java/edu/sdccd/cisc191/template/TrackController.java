@@ -81,6 +81,13 @@ public class TrackController {
         fallingBlocks.add(block);
     }
 
+    /**
+     * Removes all falling blocks from this track.
+     */
+    public void clearFallingBlocks() {
+        fallingBlocks.clear();
+    }
+
     /**
      * Updates the positions of the falling blocks and removes any that have fallen off the screen.
      *
@@ -134,6 +141,16 @@ public class TrackController {
      * @return the score increment based on the accuracy of the hit
      */
     public int handleKeyPress(KeyEvent event, KeyCode key) {
+        return handlePress();
+    }
+
+    /**
+     * Checks if a block was hit by a press on this track and updates the score accordingly.
+     * This is used both for live key presses and for presses fed back from an {@code InputRecording}.
+     *
+     * @return the score increment based on the accuracy of the hit
+     */
+    public int handlePress() {
         flashHole = true; // Flash the hole whether the block is hit or not
         flashStartTime = System.currentTimeMillis();
         int scoreIncrement = 0;